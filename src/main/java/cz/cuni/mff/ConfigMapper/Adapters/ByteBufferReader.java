@@ -0,0 +1,95 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes characters directly from a byte buffer (e.g. a memory-mapped file) into the buffers of the caller,
+ * without copying the bytes into an intermediate array.
+ * Malformed input is replaced, the same way as {@link java.io.InputStreamReader} does.
+ */
+final class ByteBufferReader extends Reader {
+	private final ByteBuffer input;
+
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Characters decoded, but not returned yet (used when the caller asks for fewer characters than
+	 * a code point takes)
+	 */
+	private final CharBuffer pending = CharBuffer.allocate(2);
+
+	/**
+	 * Was the whole input decoded?
+	 */
+	private boolean decoded = false;
+
+	/**
+	 * Was the decoder flushed after decoding the whole input?
+	 */
+	private boolean flushed = false;
+
+	/**
+	 * @param input the bytes to decode (read from its position to its limit)
+	 * @param charset the charset of the bytes
+	 */
+	ByteBufferReader(ByteBuffer input, Charset charset) {
+		this.input = input;
+		this.decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.pending.flip();
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+
+		if (pending.hasRemaining()) {
+			int count = Math.min(length, pending.remaining());
+			pending.get(buffer, offset, count);
+			return count;
+		}
+
+		int count = decode(CharBuffer.wrap(buffer, offset, length));
+
+		if (count == 0 && !flushed) {
+			// The next code point doesn't fit, decode it separately
+			pending.clear();
+			decode(pending);
+			pending.flip();
+			return read(buffer, offset, length);
+		}
+
+		return count == 0 ? -1 : count;
+	}
+
+	/**
+	 * Decode as many characters as possible into the output
+	 * @return the number of decoded characters
+	 */
+	private int decode(CharBuffer output) {
+		int start = output.position();
+
+		if (!decoded && decoder.decode(input, output, true).isUnderflow()) {
+			decoded = true;
+		}
+
+		if (decoded && !flushed && decoder.flush(output).isUnderflow()) {
+			flushed = true;
+		}
+
+		return output.position() - start;
+	}
+
+	@Override
+	public void close() {
+		// The buffer is owned by the caller
+	}
+}
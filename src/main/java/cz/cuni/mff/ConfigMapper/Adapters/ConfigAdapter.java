@@ -6,6 +6,8 @@ import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Provides reading and writing functionality for a configuration file format
@@ -20,6 +22,46 @@ public interface ConfigAdapter {
 	 */
 	ConfigRoot read(InputStream input) throws ConfigurationException;
 
+	/**
+	 * Parse a file into a {@link ConfigRoot} structure.
+	 * The default implementation reads the file using {@link #read(InputStream)}.
+	 *
+	 * @param file The path to the file
+	 * @throws ConfigurationException When the input file is invalid
+	 * @throws IOException When the file cannot be opened
+	 * @return The parsed tree
+	 */
+	default ConfigRoot read(Path file) throws ConfigurationException, IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			return read(input);
+		}
+	}
+
+	/**
+	 * Read an input as a sequence of events.
+	 * Adapters that can parse their input incrementally should override this method,
+	 * the default implementation parses the whole input using {@link #read(InputStream)}.
+	 *
+	 * @param input The input stream
+	 * @throws ConfigurationException When the input file is invalid
+	 * @return A reader of the configuration events
+	 */
+	default ConfigEventReader readEvents(InputStream input) throws ConfigurationException {
+		return new TreeEventReader(read(input));
+	}
+
+	/**
+	 * Get a key that identifies how this adapter parses files.
+	 * Adapters with equal keys have to produce the same trees from the same files, so that a parsed file can be
+	 * shared by all of them (see {@link cz.cuni.mff.ConfigMapper.ParseCache}). The default implementation
+	 * returns the adapter itself, so its trees are only shared by the loads that use the same adapter.
+	 *
+	 * @return The parse key
+	 */
+	default Object getParseKey() {
+		return this;
+	}
+
 	/**
 	 * Write a {@link ConfigRoot} structure into an output stream
 	 *
@@ -0,0 +1,70 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import cz.cuni.mff.ConfigMapper.ConfigurationException;
+import cz.cuni.mff.ConfigMapper.ParsedBoolean;
+
+import java.util.List;
+
+/**
+ * Reads a configuration as a sequence of events, without building a {@link cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot}.
+ *
+ * Each call to {@link #next()} advances the reader to the next event. The getters describe the current event -
+ * {@link #getName()} and {@link #getDescription()} are available for section starts and options, the values
+ * only for the corresponding kind of option. Options that are not enclosed in a section belong to the root.
+ */
+public interface ConfigEventReader extends AutoCloseable {
+	/**
+	 * Kinds of events
+	 */
+	enum Event {
+		SECTION_START,
+		OPTION,
+		LIST_OPTION,
+		SECTION_END,
+		END
+	}
+
+	/**
+	 * Advance to the next event
+	 * @return the kind of the event ({@link Event#END} when there are no more events)
+	 * @throws ConfigurationException when the input is invalid
+	 */
+	Event next() throws ConfigurationException;
+
+	/**
+	 * @return the name of the current section or option
+	 */
+	String getName();
+
+	/**
+	 * @return the description of the current section or option
+	 */
+	String getDescription();
+
+	/**
+	 * @return the value of the current scalar option
+	 */
+	String getValue();
+
+	/**
+	 * @return the boolean value of the current scalar option
+	 */
+	ParsedBoolean getBooleanValue();
+
+	/**
+	 * @return the values of the current list option
+	 */
+	List<String> getListValue();
+
+	/**
+	 * @return the separator of the current list option
+	 */
+	String getSeparator();
+
+	/**
+	 * Release the input of the reader
+	 * @throws ConfigurationException when the input cannot be closed
+	 */
+	@Override
+	void close() throws ConfigurationException;
+}
@@ -0,0 +1,179 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A writer that encodes characters straight into an output stream or a channel
+ *
+ * Characters are collected in a small buffer and encoded into a byte buffer, which is written out whenever it
+ * fills up, so the memory used doesn't depend on the amount of written data. The encoder is supplied by the caller
+ * and can be reused after {@link #finish()}. Neither finishing nor closing the writer closes the target.
+ */
+final class EncodingWriter extends Writer {
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final CharsetEncoder encoder;
+
+	private final OutputStream stream;
+
+	private final WritableByteChannel channel;
+
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+	private final ByteBuffer bytes;
+
+	private boolean finished = false;
+
+	/**
+	 * @param encoder the encoder to use (it is reset first)
+	 * @param stream the stream to write the bytes to
+	 */
+	EncodingWriter(CharsetEncoder encoder, OutputStream stream) {
+		this(encoder, stream, null);
+	}
+
+	/**
+	 * @param encoder the encoder to use (it is reset first)
+	 * @param channel the channel to write the bytes to
+	 */
+	EncodingWriter(CharsetEncoder encoder, WritableByteChannel channel) {
+		this(encoder, null, channel);
+	}
+
+	private EncodingWriter(CharsetEncoder encoder, OutputStream stream, WritableByteChannel channel) {
+		this.encoder = encoder.reset();
+		this.stream = stream;
+		this.channel = channel;
+		this.bytes = ByteBuffer.allocate((int) Math.ceil(BUFFER_SIZE * encoder.maxBytesPerChar()));
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		checkNotFinished();
+
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write(char[] buffer, int offset, int length) throws IOException {
+		checkNotFinished();
+		int end = offset + length;
+
+		while (offset < end) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+
+			int count = Math.min(end - offset, chars.remaining());
+			chars.put(buffer, offset, count);
+			offset += count;
+		}
+	}
+
+	@Override
+	public void write(String string, int offset, int length) throws IOException {
+		checkNotFinished();
+		int end = offset + length;
+
+		while (offset < end) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+
+			int count = Math.min(end - offset, chars.remaining());
+			chars.put(string, offset, offset + count);
+			offset += count;
+		}
+	}
+
+	/**
+	 * Encode the buffered characters and write out all bytes
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!finished) {
+			encode(false);
+		}
+		writeBytes();
+
+		if (stream != null) {
+			stream.flush();
+		}
+	}
+
+	/**
+	 * Encode the rest of the characters and write out all bytes
+	 * Nothing can be written after the writer is finished.
+	 */
+	void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+
+		encode(true);
+
+		while (encoder.flush(bytes).isOverflow()) {
+			writeBytes();
+		}
+
+		finished = true;
+		flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * Encode the buffered characters (a trailing high surrogate stays buffered, unless the input ended)
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		chars.flip();
+
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+
+			if (result.isOverflow()) {
+				writeBytes();
+			} else if (result.isError()) {
+				result.throwException();
+			} else {
+				break;
+			}
+		}
+
+		chars.compact();
+	}
+
+	private void checkNotFinished() throws IOException {
+		if (finished) {
+			throw new IOException("Writing to a finished writer");
+		}
+	}
+
+	private void writeBytes() throws IOException {
+		bytes.flip();
+
+		if (channel != null) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		} else {
+			stream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+		}
+
+		bytes.clear();
+	}
+}
@@ -5,190 +5,250 @@ import cz.cuni.mff.ConfigMapper.Nodes.*;
 import cz.cuni.mff.ConfigMapper.ParsedBoolean;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A configuration adapter for INI files
  *
  * The only implementation of the {@link ConfigAdapter} interface. It enables the library
- * to read and write configuration into/from a Ini file. There are no added public methods
- * other than the overridden {@link IniAdapter#read(InputStream)} and
- * {@link IniAdapter#write(ConfigRoot, OutputStream)}.
+ * to read and write configuration into/from a Ini file. Apart from the overridden
+ * {@link IniAdapter#read(InputStream)} and {@link IniAdapter#write(ConfigRoot, OutputStream)},
+ * the adapter can be switched to produce compact configuration trees using {@link #setCompact(boolean)}
+ * to parse large files in parallel using {@link #setParallel(boolean)} and to allow links to options defined
+ * later in the file using {@link #setForwardLinks(boolean)}.
  */
 public final class IniAdapter implements ConfigAdapter {
 
 	private static final String DEFAULT_CHARSET = "UTF-8";
 
-	private static final ArrayList<String> TRUE_REPRESENTATION =
-			new ArrayList<>(Arrays.asList( "1", "t", "y", "on", "yes", "enabled" ));
+	/**
+	 * The size of the character buffer used when reading lines
+	 */
+	private static final int READER_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Files at least this large are memory-mapped, smaller ones are read into a heap buffer
+	 */
+	private static final int MAPPING_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Encoders used to write files, one per thread
+	 */
+	private static final ThreadLocal<CharsetEncoder> ENCODERS = ThreadLocal.withInitial(() ->
+			Charset.forName(DEFAULT_CHARSET).newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+	private static final Set<String> TRUE_REPRESENTATION =
+			new HashSet<>(Arrays.asList( "1", "t", "y", "on", "yes", "enabled" ));
+
+	private static final Set<String> FALSE_REPRESENTATION =
+			new HashSet<>(Arrays.asList( "0", "f", "n", "off", "no", "disabled" ));
+
+	/**
+	 * Should the parsed configuration be stored in a {@link CompactConfigRoot}?
+	 */
+	private boolean compact = false;
+
+	/**
+	 * Should whole files be lexed in parallel?
+	 */
+	private boolean parallel = false;
+
+	/**
+	 * Can links point to options defined later in the file?
+	 */
+	private boolean forwardLinks = false;
+
+	/**
+	 * Enable or disable compact output.
+	 * When enabled, {@link #read(InputStream)} builds a {@link CompactConfigRoot}, which keeps the configuration
+	 * in a few arrays instead of a node object per option. The content of the tree is the same.
+	 * @param enabled true to enable compact output
+	 */
+	public void setCompact(boolean enabled) {
+		this.compact = enabled;
+	}
 
-	private static final ArrayList<String> FALSE_REPRESENTATION =
-			new ArrayList<>(Arrays.asList( "0", "f", "n", "off", "no", "disabled" ));
+	/**
+	 * Enable or disable parallel reading.
+	 * When enabled, {@link #read(InputStream)} loads the whole file first and lexes its sections on the common
+	 * {@link ForkJoinPool}. Sections, duplicates and links are then processed in the order of the file, so
+	 * the result (or the error) is the same as with sequential reading.
+	 * @param enabled true to enable parallel reading
+	 */
+	public void setParallel(boolean enabled) {
+		this.parallel = enabled;
+	}
+
+	/**
+	 * Enable or disable links to options defined later in the file.
+	 * By default, a link can only point to an option above it. When forward links are enabled, options whose
+	 * values contain links are resolved after the whole file is read, in an order where each option is resolved
+	 * after the options it links to. Links that form a cycle are reported as an error. The events of
+	 * {@link #readEvents(InputStream)} are only available after the whole input is read in this mode.
+	 * @param enabled true to allow forward links
+	 */
+	public void setForwardLinks(boolean enabled) {
+		this.forwardLinks = enabled;
+	}
+
+	/**
+	 * INI adapters of the same class produce the same trees unless their forward links settings differ
+	 * (compact and parallel reading don't change the content of the tree)
+	 * @return The parse key
+	 */
+	@Override
+	public Object getParseKey() {
+		return Arrays.asList(getClass(), forwardLinks);
+	}
 
 	/**
 	 * Parse config from an INI file
-	 * Main reading method, reads file line by line.
+	 * Main reading method, builds the configuration from the events of {@link #readEvents(InputStream)}.
 	 * @param input The input stream
 	 * @throws ConfigurationException When the input file is invalid
 	 * @return The configuration structure
 	 */
 	@Override
 	public ConfigRoot read(InputStream input) throws ConfigurationException {
-		ConfigRoot outputRoot = new ConfigRoot("", new ArrayList<>());
-
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
-
-			String line = reader.readLine();
-			Section currentSection = null;
-			boolean lastLineWasSection = false;
-			while (line != null) {
-
-				if (isDescribingSection(line)) {
-					if (currentSection != null) {
-						outputRoot.addChild(currentSection);
-					}
-					String sectionName = extractSectionName(line);
-					currentSection = new Section(sectionName,new ArrayList<>());
-					lastLineWasSection = true;
-					line = reader.readLine();
-					continue;
-				}
+		return read(new InputStreamReader(input, StandardCharsets.UTF_8));
+	}
 
-				// handle comment
-				String comment = "";
-				int commentStartIndex = indexOfUnescaped(line,';');
-				// if the line contains an unescaped ';', strip the comment part
-				if (commentStartIndex != -1) {
-					comment = line.substring(commentStartIndex+1);
-					line = line.substring(0,commentStartIndex);
-
-					if (isLineSectionDescription(line, comment, lastLineWasSection)) {
-						assert currentSection != null;
-						currentSection.setDescription(comment.trim());
-					}
-				}
+	/**
+	 * Parse config from an INI file given by a path
+	 * Large files are memory-mapped and decoded straight from the mapped bytes, smaller files are read
+	 * into a buffer of their size. The file is closed before the method returns.
+	 * @param file The path to the file
+	 * @throws ConfigurationException When the input file is invalid
+	 * @throws IOException When the file cannot be read
+	 * @return The configuration structure
+	 */
+	@Override
+	public ConfigRoot read(Path file) throws ConfigurationException, IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
 
-				// if there is only comment on the line, do nothing
-				if (line.isEmpty()) {
-					line = reader.readLine();
-					continue;
-				}
+			if (size > Integer.MAX_VALUE) {
+				// Too large to be mapped at once
+				return read(Channels.newInputStream(channel));
+			}
 
-				// now we know, that last line did not contain a section declaration
-				lastLineWasSection = false;
+			if (size >= MAPPING_THRESHOLD) {
+				ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				return read(new ByteBufferReader(mapped, StandardCharsets.UTF_8));
+			}
 
-				// split the line in the options' key and value
-				String name = line.substring(0, line.indexOf('='));
-				name = removeSurroundingWhitespace(name);
-
-				String value = line.substring(line.indexOf('=')+1);
-				value = removeSurroundingWhitespace(value);
-
-				// determine, whether the value is a list or a simple one
-				if (isList(value)) {
-
-					List<String> listValue = parseIntoList(value);
-					String separator = getListSeparator(value);
-					SortedMap<Integer,ListOption> listsToBeInserted = new TreeMap<>(Collections.reverseOrder());
-					for (int i=0; i < listValue.size(); ++i) {
-						if (isLink(listValue.get(i))) {
-							Option targetOption = getLinkValue(listValue.get(i), outputRoot, currentSection);
-
-							if (targetOption instanceof ListOption) {
-								ListOption opt = (ListOption) targetOption;
-								/*
-								 * Lists have the same separators, so the target lists items have to be
-								 * all added. This would mean modifying the list that is being iterated
-								 * through, so the target will be noted and added after the iteration is done
-								 */
-								if (opt.getSeparator().equals(separator)) {
-									listsToBeInserted.put(i,opt);
-								/*
-								 * Lists have different separators, so the target list value is inserted
-								 * as a plain String
-								 */
-								} else {
-									StringBuilder valueStringBuilder = new StringBuilder();
-									for (String val : opt.getValue()) {
-										valueStringBuilder.append(val).append(opt.getSeparator());
-									}
-									// get rid of the last separator
-									valueStringBuilder.deleteCharAt(valueStringBuilder.length()-1);
-									listValue.set(i,valueStringBuilder.toString());
-								}
-							} else {
-								ScalarOption opt = (ScalarOption) targetOption;
-								listValue.set(i,opt.getValue());
-							}
-						}
-					}
+			// One more byte than the size, so that a file that grew can be told apart
+			ByteBuffer buffer = ByteBuffer.allocate((int) size + 1);
 
-					// Adding all the list items from list that were linked
-					for (Map.Entry<Integer,ListOption> toBeInserted : listsToBeInserted.entrySet()) {
-						int insertionIndex = toBeInserted.getKey();
-						List<String> insertingList = toBeInserted.getValue().getValue();
-						listValue.set(insertionIndex,insertingList.get(0));
-						for (int i = insertionIndex + 1; i <= insertingList.size(); ++i) {
-							listValue.add(i,insertingList.get(i-insertionIndex));
-						}
-					}
+			int count;
+			do {
+				count = channel.read(buffer);
+			} while (count > 0 && buffer.hasRemaining());
 
-					assert currentSection != null;
-					ListOption newOption = new ListOption(name,listValue,separator);
-					newOption.setDescription(comment);
-					currentSection.addChild(newOption);
-				} else { // option has a simple value
-					assert currentSection != null;
-
-					if (isLink(value)) {
-						Option targetOption = getLinkValue(value, outputRoot, currentSection);
-						if (targetOption instanceof ListOption) {
-							ListOption targetList = (ListOption)targetOption;
-							ListOption newOption = new ListOption(name,targetList.getValue(),targetList.getSeparator());
-							newOption.setDescription(comment);
-							currentSection.addChild(newOption);
-						} else { // option is of a simple value
-							ScalarOption targetValue = new ScalarOption(name,((ScalarOption)targetOption).getValue());
-							targetValue.setBooleanValue(((ScalarOption)targetOption).getBooleanValue());
-							targetValue.setDescription(comment);
-							currentSection.addChild(targetValue);
-						}
+			// The file grew while it was being read and doesn't fit in the buffer
+			if (!buffer.hasRemaining()) {
+				channel.position(0);
+				return read(Channels.newInputStream(channel));
+			}
 
-					} else { // value is not a link
-						ScalarOption newOption = new ScalarOption(name, value);
-						newOption.setDescription(comment);
+			buffer.flip();
+			return read(new ByteBufferReader(buffer, StandardCharsets.UTF_8));
+		}
+	}
 
-						// if the option can be interpreted as a boolean, set the boolean value
-						if (TRUE_REPRESENTATION.contains(value)) {
-							newOption.setBooleanValue(ParsedBoolean.TRUE);
-						} else if (FALSE_REPRESENTATION.contains(value)) {
-							newOption.setBooleanValue(ParsedBoolean.FALSE);
-						} else {
-							newOption.setBooleanValue(ParsedBoolean.NOT_BOOLEAN);
+	/**
+	 * Parse config from decoded characters
+	 * @param input The characters of the INI file
+	 * @throws ConfigurationException When the input file is invalid
+	 * @return The configuration structure
+	 */
+	private ConfigRoot read(Reader input) throws ConfigurationException {
+		TreeSink output = compact ? new CompactTreeSink() : new NodeTreeSink();
+		LineSource lines = parallel
+				? new LexedLineSource(ParallelIniLexer.lex(readFully(input), ForkJoinPool.commonPool()))
+				: new ReaderLineSource(new BufferedReader(input, READER_BUFFER_SIZE));
+
+		try (ConfigEventReader reader = new IniEventReader(lines, forwardLinks)) {
+			ConfigEventReader.Event event = reader.next();
+
+			while (event != ConfigEventReader.Event.END) {
+				switch (event) {
+					case SECTION_START:
+						output.beginSection(reader.getName());
+						if (!reader.getDescription().isEmpty()) {
+							output.setSectionDescription(reader.getDescription());
 						}
-
-						currentSection.addChild(newOption);
-					}
+						break;
+					case OPTION:
+						output.addScalar(reader.getName(), reader.getValue(), reader.getBooleanValue(), reader.getDescription());
+						break;
+					case LIST_OPTION:
+						output.addList(reader.getName(), reader.getListValue(), reader.getSeparator(), reader.getDescription());
+						break;
+					default:
+						break;
 				}
 
-				line = reader.readLine();
+				event = reader.next();
 			}
-			outputRoot.addChild(currentSection);
+		}
+
+		return output.finish();
+	}
 
+	/**
+	 * Read all characters of the input and close it
+	 * @param input The characters of the INI file
+	 * @throws ConfigurationException When the input cannot be read
+	 * @return The content of the file
+	 */
+	private String readFully(Reader input) throws ConfigurationException {
+		StringBuilder content = new StringBuilder();
+		char[] buffer = new char[READER_BUFFER_SIZE];
+
+		try (Reader reader = input) {
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				content.append(buffer, 0, count);
+			}
 		} catch (IOException exception) {
 			ConfigurationException newExcept = new ConfigurationException("Problem reading the input file");
 			newExcept.setStackTrace(exception.getStackTrace());
 			throw newExcept;
 		}
 
-		return outputRoot;
+		return content.toString();
+	}
+
+	/**
+	 * Read config from an INI file line by line, as a sequence of events.
+	 * Only the values of the options read so far are kept (to resolve links), not the whole configuration.
+	 * @param input The input stream
+	 * @return A reader of the configuration events
+	 */
+	@Override
+	public ConfigEventReader readEvents(InputStream input) {
+		return new IniEventReader(new ReaderLineSource(new BufferedReader(
+				new InputStreamReader(input, StandardCharsets.UTF_8), READER_BUFFER_SIZE)), forwardLinks);
 	}
 
 	/**
 	 * Write config into an INI file
-	 * Function goes through configuration on the input, checking its' correct format,
-	 * and writes it into the output stream.
+	 * Function checks the correct format of the configuration on the input first, then it goes through
+	 * the configuration and encodes it straight into the output stream, using a small buffer.
 	 * @param configRoot The configuration structure
 	 * @param output The output stream
 	 * @throws ConfigurationException when the input configuration has a structure incompatible with the ini format
@@ -196,399 +256,961 @@ public final class IniAdapter implements ConfigAdapter {
 	 */
 	@Override
 	public void write(ConfigRoot configRoot, OutputStream output) throws ConfigurationException, IOException {
-		StringBuilder outputString = new StringBuilder();
+		checkStructure(configRoot);
 
+		EncodingWriter writer = new EncodingWriter(ENCODERS.get(), output);
+		write(configRoot, writer);
+		writer.finish();
+	}
+
+	/**
+	 * Write config into a channel
+	 * Works like {@link #write(ConfigRoot, OutputStream)}, but the encoded bytes are written to a channel.
+	 * @param configRoot The configuration structure
+	 * @param output The channel
+	 * @throws ConfigurationException when the input configuration has a structure incompatible with the ini format
+	 * @throws IOException when writing to the channel fails
+	 */
+	public void write(ConfigRoot configRoot, WritableByteChannel output) throws ConfigurationException, IOException {
+		checkStructure(configRoot);
+
+		EncodingWriter writer = new EncodingWriter(ENCODERS.get(), output);
+		write(configRoot, writer);
+		writer.finish();
+	}
+
+//////////////////////////////////// PRIVATE METHODS /////////////////////////////////////////////////////////////////
+
+	/**
+	 * Check that a configuration can be written into an INI file
+	 * This is done before anything is written, so that nothing is written for an invalid configuration.
+	 * @param configRoot The configuration structure
+	 * @throws ConfigurationException when the configuration has a structure incompatible with the ini format
+	 */
+	private void checkStructure(ConfigRoot configRoot) throws ConfigurationException {
 		for (ConfigNode child : configRoot.getChildren()) {
 			if (isNotSection(child)) {
 				throw new ConfigurationException("Given configuration cannot be translated into an ini structure");
 			}
 
+			for (ConfigNode option : ((Section) child).getChildren()) {
+				if (!(option instanceof ListOption) && !(option instanceof ScalarOption)) {
+					throw new ConfigurationException(
+							"Given configuration cannot be translated into ini structure: " +
+									"one of the sections has children that are not options");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a configuration with a checked structure
+	 * @param configRoot The configuration structure
+	 * @param output The writer
+	 * @throws IOException when writing fails
+	 */
+	private void write(ConfigRoot configRoot, Writer output) throws IOException {
+		for (ConfigNode child : configRoot.getChildren()) {
 			Section section = (Section) child;
-			outputString.append("[").append(section.getName()).append("]\n");
+			output.write('[');
+			output.write(section.getName());
+			output.write("]\n");
 			if (!section.getDescription().isEmpty()) {
-				outputString.append("; ").append(section.getDescription()).append("\n");
+				output.write("; ");
+				output.write(section.getDescription());
+				output.write('\n');
 			}
 
 			for (ConfigNode option : section.getChildren()) {
 
 				// First write the name and "=", then the value depending on the option type
-				outputString.append(escapeSpaces(option.getName())).append("=");
+				writeEscaped(output, option.getName(), null);
+				output.write('=');
 
 				if (option instanceof ListOption) {
 
 					ListOption listOption = (ListOption) option;
-					for (String value : listOption.getValue()) {
-						String outValue = escapeSpaces(value);
-						outValue = escapeSeparator(outValue,listOption.getSeparator());
-						outputString.append(outValue).append(listOption.getSeparator());
+					boolean first = true;
+					for (String value : listOption.getValueView()) {
+						if (!first) {
+							output.write(listOption.getSeparator());
+						}
+						writeEscaped(output, value, listOption.getSeparator());
+						first = false;
 					}
-					// deleting the last list separator
-					outputString.deleteCharAt(outputString.length()-1);
 
-				} else if (option instanceof ScalarOption){
+				} else {
 
 					ScalarOption simpleOption = (ScalarOption) option;
-					outputString.append(escapeSpaces(simpleOption.getValue()));
+					writeEscaped(output, simpleOption.getValue(), null);
 
-				} else  {
-					throw new ConfigurationException(
-							"Given configuration cannot be translated into ini structure: " +
-									"one of the sections has children that are not options");
 				}
-				 if (! option.getDescription().isEmpty()) {
-					outputString.append("\t;").append(option.getDescription());
+
+				if (!option.getDescription().isEmpty()) {
+					output.write("\t;");
+					output.write(option.getDescription());
 				}
-				outputString.append("\n");
+				output.write('\n');
 			}
 		}
-
-		output.write(outputString.toString().getBytes(Charset.forName(DEFAULT_CHARSET)));
-		output.flush();
 	}
 
-//////////////////////////////////// PRIVATE METHODS /////////////////////////////////////////////////////////////////
-
 	/**
-	 * Get the real value of a link
-	 * The link has to the part of the configuration that is already parsed. The
-	 * so far parsed configuration is passed by the currentRoot and currentSection
-	 * parameters
-	 * @param linkString string representation of the link
-	 * @param currentRoot part of the configuration file, already parsed
-	 * @param currentSection section currently where parsing is in progress
-	 * @return actual value of the link
-	 * @throws ConfigurationException if the link address is invalid
+	 * Write a value with escaped surrounding whitespace and separators
+	 * Every whitespace character before and after the value is written as "\ " (an escaped space), and every
+	 * occurrence of the separator in the result is preceded with '\'. The value is written in a single pass.
+	 * @param output The writer
+	 * @param value The value
+	 * @param separator The list separator to escape, null for none
+	 * @throws IOException when writing fails
 	 */
-	private Option getLinkValue(String linkString, ConfigRoot currentRoot, Section currentSection) throws ConfigurationException {
-		String linkTarget = linkString.substring(linkString.indexOf('{')+1,linkString.indexOf('}'));
-		String targetSection = linkTarget.substring(0,linkTarget.indexOf('#'));
-		String targetOption = linkTarget.substring(linkTarget.indexOf('#')+1);
-
-		if (currentSection.getName().equals(targetSection)) {
-			return getOption(currentSection, targetOption);
-		} else {
-			for (ConfigNode section : currentRoot.getChildren()) {
-				if (section.getName().equals(targetSection)) {
-					return getOption((Section) section, targetOption);
-				}
+	private void writeEscaped(Writer output, String value, String separator) throws IOException {
+		int length = value.length();
+
+		// count leading and trailing whitespace
+		int prefixSpaces = 0;
+		while (prefixSpaces < length && Character.isWhitespace(value.charAt(prefixSpaces))) {
+			++prefixSpaces;
+		}
+
+		int suffixSpaces = 0;
+		if (prefixSpaces < length) {
+			while (Character.isWhitespace(value.charAt(length - 1 - suffixSpaces))) {
+				++suffixSpaces;
 			}
 		}
-		throw new ConfigurationException("Link pointing to an invalid address, " +
-				"section not found: " + linkTarget);
+
+		// the part of the value without the surrounding whitespace (and control characters)
+		int start = 0;
+		int end = length;
+		while (start < end && value.charAt(start) <= ' ') {
+			++start;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			--end;
+		}
+
+		if (separator != null && separator.length() > 1) {
+			// longer separators can span the escaped spaces and the value, so they are searched for afterwards
+			StringBuilder escaped = new StringBuilder(2 * prefixSpaces + (end - start) + 2 * suffixSpaces);
+			appendEscapedSpaces(escaped, prefixSpaces);
+			escaped.append(value, start, end);
+			appendEscapedSpaces(escaped, suffixSpaces);
+			writeEscapedSeparators(output, escaped, separator);
+			return;
+		}
+
+		int escapedChar = separator == null ? -1 : separator.charAt(0);
+		writeEscapedSpaces(output, prefixSpaces, escapedChar);
+
+		int segmentStart = start;
+		for (int i = start; i < end; ++i) {
+			if (value.charAt(i) == escapedChar) {
+				output.write(value, segmentStart, i - segmentStart);
+				output.write('\\');
+				segmentStart = i;
+			}
+		}
+		output.write(value, segmentStart, end - segmentStart);
+
+		writeEscapedSpaces(output, suffixSpaces, escapedChar);
 	}
 
-	/**
-	 * Extract the specified option from the section
-	 * @param currentSection the section containing the option
-	 * @param targetOption the option to be extracted
-	 * @return the option
-	 * @throws ConfigurationException if the option is not found in the section
-	 */
-	private Option getOption(Section currentSection, String targetOption) throws ConfigurationException {
-		for (ConfigNode o : currentSection.getChildren()) {
-			if (o.getName().equals(targetOption)) {
-				return (Option) o;
+	private void writeEscapedSpaces(Writer output, int count, int escapedChar) throws IOException {
+		for (int i = 0; i < count; ++i) {
+			if (escapedChar == '\\') {
+				output.write('\\');
+			}
+			output.write('\\');
+			if (escapedChar == ' ') {
+				output.write('\\');
 			}
+			output.write(' ');
 		}
-		throw new ConfigurationException("Link pointing to an invalid address, " +
-				"option" +  targetOption + " not found in section " + currentSection.getName());
 	}
 
-	/**
-	 * Determine if the String representation of the link is a valid link
-	 * A valid link has the form of .*${.*}
-	 * @param potentialLink the String to be examined
-	 * @return true if the String in the parameter satisfies the link definition, false otherwise
-	 */
-	private boolean isLink(String potentialLink) {
-		int dollarCharPosition = indexOfUnescaped(potentialLink,'$');
-		boolean valueHasDollarChar = dollarCharPosition != -1;
-		boolean valueHasOpeningParenthesis = potentialLink.charAt(dollarCharPosition+1) == '{';
-		boolean valueHasClosingParenthesis = potentialLink.substring(dollarCharPosition+2).contains("}");
-		return valueHasDollarChar && valueHasOpeningParenthesis && valueHasClosingParenthesis;
+	private void appendEscapedSpaces(StringBuilder output, int count) {
+		for (int i = 0; i < count; ++i) {
+			output.append("\\ ");
+		}
 	}
 
 	/**
-	 * Parse a value into list
-	 * @param value string representation of a list value
-	 * @return value parsed into a list
-	 * @throws ConfigurationException when one of the values is invalid
+	 * Write a string, preceding every occurrence of the separator (even an overlapping one) with '\'
 	 */
-	private List<String> parseIntoList(String value) throws ConfigurationException {
-		String separator = getListSeparator(value);
-		ArrayList<String> valueList =  new ArrayList<>();
-		for (String singleValue : value.split(separator)) {
-			valueList.add(removeSurroundingWhitespace(singleValue));
-		}
-		return valueList;
-		//return new ArrayList<>(Arrays.asList(value.split(Character.toString(separator))));
+	private void writeEscapedSeparators(Writer output, CharSequence value, String separator) throws IOException {
+		String string = value.toString();
+		int written = 0;
+		int index = string.indexOf(separator);
+
+		while (index >= 0) {
+			output.write(string, written, index - written);
+			output.write('\\');
+			written = index;
+			index = string.indexOf(separator, index + 1);
+		}
+
+		output.write(string, written, string.length() - written);
 	}
 
 	/**
-	 * Determine, which of the two possible separators (',' and ':') is the separator for this value
-	 * @param value the value in question
-	 * @return either ',' or ':', depending on what is present in the value
+	 * Determine if a ConfigNode is not a section
+	 * Just another pretty wrapper
+	 * @param node the node in question
+	 * @return true if not a section, false otherwise
 	 */
-	private String getListSeparator(String value) {
-		int indexOfComma = indexOfUnescaped(value,',');
-		return indexOfComma == -1 ? ":" : ",";
+	private boolean isNotSection(ConfigNode node) {
+		return !(node instanceof Section);
 	}
 
+
 	/**
-	 * Searches for an unescaped character
-	 * Goes through all the chars on line, for each occurrence of the wanted character checks,
-	 * if there is the escaping '\' in front of it.
-	 * @param line line to be investigated
-	 * @param wantedChar char to be searched for
-	 * @return the index of the first unescaped occurrence of the wanted character, -1 otherwise
+	 * Reads an INI file line by line and produces configuration events
+	 *
+	 * Resolved options are kept in a symbol table by section and option name, so that each link is resolved with
+	 * two hash lookups. When forward links are allowed, the whole file is read before the first event is returned.
+	 * Options with links are kept aside until then and resolved in a topological order of their links.
 	 */
-	private int indexOfUnescaped(String line, char wantedChar) {
+	private final class IniEventReader implements ConfigEventReader {
+		private final LineSource lines;
+
+		private final boolean forwardLinks;
+
+		/**
+		 * Values of the options read so far, by section and option name (used to resolve links)
+		 */
+		private final Map<String, Map<String, Option>> linkTargets = new HashMap<>();
+
+		/**
+		 * Options with unresolved links, by section and option name (only used for forward links)
+		 */
+		private final Map<String, Map<String, PendingOption>> pendingOptions = new HashMap<>();
+
+		/**
+		 * Options with unresolved links in the order of the file
+		 */
+		private final List<PendingOption> pendingOrder = new ArrayList<>();
+
+		/**
+		 * Values of lists linked from lists with a different separator, joined into a single item
+		 */
+		private final Map<ListOption, String> joinedLists = new IdentityHashMap<>();
+
+		/**
+		 * Events read ahead when forward links are allowed, null until the file is read
+		 */
+		private Queue<QueuedEvent> queuedEvents = null;
+
+		/**
+		 * A line that was read, but not processed yet
+		 */
+		private IniLine pushedBackLine = null;
+
+		/**
+		 * The section whose start wasn't reported yet (its description can follow the header)
+		 */
+		private String pendingSection = null;
+
+		private String pendingDescription = "";
+
+		private String currentSection = null;
 
-		int searchStartIndex = -1;
-		int indexOfWanted = -1;
-		while (searchStartIndex < line.length()) {
+		/**
+		 * The options of the current section
+		 */
+		private Map<String, Option> currentOptions = null;
 
-			indexOfWanted = line.indexOf(wantedChar,searchStartIndex);
+		private Map<String, PendingOption> currentPendingOptions = null;
 
-			// if wanted character was not found, mimic the indexOf behavior
-			if (indexOfWanted == -1) {
-				return -1;
+		private boolean lastLineWasSection = false;
+
+		private boolean finished = false;
+
+		private String name;
+
+		private String description;
+
+		private Option option;
+
+		/**
+		 * The option with unresolved links read by the last call to {@link #readEvent()}
+		 */
+		private PendingOption pendingOption;
+
+		IniEventReader(LineSource lines, boolean forwardLinks) {
+			this.lines = lines;
+			this.forwardLinks = forwardLinks;
+		}
+
+		@Override
+		public Event next() throws ConfigurationException {
+			if (!forwardLinks) {
+				return readEvent();
 			}
 
-			if (wasEscaped(indexOfWanted,line)) {
-				searchStartIndex = indexOfWanted +1;
-			} else {
-				break;
+			if (queuedEvents == null) {
+				queuedEvents = new ArrayDeque<>();
+				for (Event event = readEvent(); event != Event.END; event = readEvent()) {
+					queuedEvents.add(new QueuedEvent(event, name, description, option, pendingOption));
+				}
+
+				resolvePendingOptions();
 			}
+
+			QueuedEvent event = queuedEvents.poll();
+			if (event == null) {
+				name = null;
+				description = null;
+				option = null;
+				return Event.END;
+			}
+
+			name = event.name;
+			description = event.description;
+			option = event.pendingOption != null ? event.pendingOption.option : event.option;
+
+			if (event.event == Event.OPTION || event.event == Event.LIST_OPTION) {
+				return option instanceof ListOption ? Event.LIST_OPTION : Event.OPTION;
+			}
+
+			return event.event;
 		}
-		return indexOfWanted;
-	}
 
-	/**
-	 * True, if character is escaped in line
-	 * When index is invalid throws IndexOutOfBoundsException
-	 * @param indexOfChar index of character in question in line
-	 * @param line line
-	 * @return true if character was escaped
-	 */
-	private boolean wasEscaped(int indexOfChar, String line) {
-		// char in the beginning of the string cannot be escaped
-		if (indexOfChar == 0) {
-			return false;
+		/**
+		 * Read lines until the next event
+		 */
+		private Event readEvent() throws ConfigurationException {
+			name = null;
+			description = null;
+			option = null;
+			pendingOption = null;
+
+			while (!finished) {
+				IniLine line = pushedBackLine != null ? pushedBackLine : lines.next();
+				pushedBackLine = null;
+
+				if (line == null || line.getType() == IniLine.Type.SECTION) {
+					pushedBackLine = line;
+
+					if (pendingSection != null) {
+						return startSection();
+					}
+
+					if (currentOptions != null) {
+						currentSection = null;
+						currentOptions = null;
+						currentPendingOptions = null;
+						return Event.SECTION_END;
+					}
+
+					if (line == null) {
+						finished = true;
+						break;
+					}
+
+					pushedBackLine = null;
+					String sectionName = line.getSectionName();
+					if (linkTargets.containsKey(sectionName)) {
+						throw new ConfigurationException(
+								String.format("Trying to add child %s, which is already present", sectionName));
+					}
+
+					pendingSection = sectionName;
+					pendingDescription = "";
+					lastLineWasSection = true;
+					continue;
+				}
+
+				// if there is only comment on the line, it can describe the section above it
+				if (line.getType() == IniLine.Type.BLANK) {
+					if (lastLineWasSection && line.hasComment()) {
+						pendingDescription = line.getComment().trim();
+					}
+					continue;
+				}
+
+				// now we know, that last line did not contain a section declaration
+				lastLineWasSection = false;
+
+				// the section starts before its first option
+				if (pendingSection != null) {
+					pushedBackLine = line;
+					return startSection();
+				}
+
+				return readOption(line);
+			}
+
+			return Event.END;
 		}
-		if (indexOfChar < 0 || indexOfChar > line.length()) {
-			throw new IndexOutOfBoundsException("Index value " + indexOfChar);
+
+		/**
+		 * Report the start of the pending section
+		 */
+		private Event startSection() {
+			name = pendingSection;
+			description = pendingDescription;
+			currentSection = pendingSection;
+			currentOptions = new HashMap<>();
+			linkTargets.put(pendingSection, currentOptions);
+			if (forwardLinks) {
+				currentPendingOptions = new HashMap<>();
+				pendingOptions.put(pendingSection, currentPendingOptions);
+			}
+			pendingSection = null;
+			return Event.SECTION_START;
 		}
-		return line.charAt(indexOfChar - 1) == '\\';
-	}
 
-	/**
-	 * For a value determines whether it is a list
-	 * A list value is a value that contains a separator (':' or ',') that is not escaped
-	 * @param value the value to be investigated
-	 * @return true if value is of list type, false otherwise
-	 */
-	private boolean isList(String value) {
-		return (indexOfUnescaped(value, ',') != -1 || indexOfUnescaped(value, ':') != -1);
-	}
+		/**
+		 * Read an option line
+		 */
+		private Event readOption(IniLine line) throws ConfigurationException {
+			String optionName = line.getName();
 
-	/**
-	 * Remove preceding and trailing whitespaces, that are not escaped
-	 * Iterate through string and determine, where the relevant part begins and ends.
-	 * While doing so, count the number of escaped preceding and trailing whitespaces.
-	 * In the end, add the correct number of spaces to the string.
-	 * @param elementString the string from where the whitespaces shall be removed
-	 * @return input string without preceding and trailing whitespaces
-	 * @throws ConfigurationException when the input string does not validly
-	 *  describe an element (name or value)
-	 */
-	private String removeSurroundingWhitespace(final String elementString) throws ConfigurationException {
-		boolean elementStarted = false;
-		int prefixSpaces = 0;
-		int suffixSpaces = 0;
-		int startIndex = -1;
-		int endIndex = -1;
-		for (int currentPosition = 0; currentPosition < elementString.length(); ++currentPosition) {
-			char curChar = elementString.charAt(currentPosition);
-			if (curChar == '\\') {
-				if (elementStarted) {
-					++suffixSpaces;
-				} else {
-					if (Character.isWhitespace(elementString.charAt(currentPosition + 1))) {
-						++prefixSpaces;
+			// with forward links, options with links are resolved at the end
+			boolean deferred = forwardLinks && hasLinks(line);
+			Option newOption = deferred ? null : createOption(optionName, line);
+			PendingOption newPendingOption = null;
+
+			if (currentOptions == null) {
+				throw new ConfigurationException("Option " + optionName + " is not in any section");
+			}
+
+			boolean added;
+			if (deferred) {
+				newPendingOption = new PendingOption(currentSection, currentOptions, optionName, LexedLine.copyOf(line));
+				added = !currentOptions.containsKey(optionName)
+						&& currentPendingOptions.putIfAbsent(optionName, newPendingOption) == null;
+				pendingOrder.add(newPendingOption);
+			} else {
+				added = currentOptions.putIfAbsent(optionName, newOption) == null
+						&& (currentPendingOptions == null || !currentPendingOptions.containsKey(optionName));
+			}
+
+			if (!added) {
+				throw new ConfigurationException(
+						String.format("Trying to add child %s, which is already present", optionName));
+			}
+
+			name = optionName;
+			description = line.getComment();
+			option = newOption;
+			pendingOption = newPendingOption;
+			return newOption instanceof ListOption ? Event.LIST_OPTION : Event.OPTION;
+		}
+
+		/**
+		 * Build an option from an option line, resolving its links
+		 */
+		private Option createOption(String optionName, IniLine line) throws ConfigurationException {
+			Option newOption;
+
+			// determine, whether the value is a list or a simple one
+			if (line.isList()) {
+
+				String separator = line.getSeparator();
+				SplicedList.Builder listValue = new SplicedList.Builder(line.getListSize());
+
+				for (int i = 0; i < line.getListSize(); ++i) {
+					String item = line.getListItem(i);
+
+					if (!line.isListItemLink(i)) {
+						listValue.add(item);
+						continue;
+					}
+
+					Option targetOption = getLinkValue(item);
+
+					if (targetOption instanceof ListOption) {
+						ListOption opt = (ListOption) targetOption;
+						/*
+						 * Lists have the same separators, so the target lists items have to be
+						 * all added. The target list is shared, not copied.
+						 */
+						if (opt.getSeparator().equals(separator)) {
+							listValue.addAll(opt.getValueView());
+						/*
+						 * Lists have different separators, so the target list value is inserted
+						 * as a plain String
+						 */
+						} else {
+							listValue.add(joinedLists.computeIfAbsent(opt,
+									list -> String.join(list.getSeparator(), list.getValueView())));
+						}
+					} else {
+						ScalarOption opt = (ScalarOption) targetOption;
+						listValue.add(opt.getValue());
 					}
 				}
-			} else if (!Character.isWhitespace(curChar)) {
-				if (startIndex < 0) {
-					startIndex = currentPosition;
+
+				newOption = ListOption.shared(optionName,listValue.build(),separator);
+			} else if (line.isLink()) { // option has a simple value
+				Option targetOption = getLinkValue(line.getValue());
+				if (targetOption instanceof ListOption) {
+					ListOption targetList = (ListOption)targetOption;
+					newOption = ListOption.shared(optionName,targetList.getValueView(),targetList.getSeparator());
+				} else { // option is of a simple value
+					ScalarOption targetValue = (ScalarOption)targetOption;
+					newOption = new ScalarOption(optionName,targetValue.getValue(),targetValue.getBooleanValue());
+				}
+			} else { // value is not a link
+				String value = line.getValue();
+
+				// if the option can be interpreted as a boolean, set the boolean value
+				if (TRUE_REPRESENTATION.contains(value)) {
+					newOption = new ScalarOption(optionName, value, ParsedBoolean.TRUE);
+				} else if (FALSE_REPRESENTATION.contains(value)) {
+					newOption = new ScalarOption(optionName, value, ParsedBoolean.FALSE);
+				} else {
+					newOption = new ScalarOption(optionName, value, ParsedBoolean.NOT_BOOLEAN);
 				}
-				endIndex = currentPosition;
-				elementStarted = true;
-				suffixSpaces = 0;
 			}
+
+			return newOption;
 		}
-		if (startIndex < 0 || endIndex < startIndex) {
-			throw new ConfigurationException("Invalid element: '" + elementString + "'");
+
+		private boolean hasLinks(IniLine line) {
+			if (!line.isList()) {
+				return line.isLink();
+			}
+
+			for (int i = 0; i < line.getListSize(); ++i) {
+				if (line.isListItemLink(i)) {
+					return true;
+				}
+			}
+
+			return false;
 		}
 
-		// add the correct number of spaces before and after the relevant part of the string
-		StringBuilder outputElementBuilder = new StringBuilder(elementString.substring(startIndex,endIndex+1).trim());
-		for (int counter = 0; counter < prefixSpaces; ++counter) {
-			outputElementBuilder.insert(0,' ');
+		/**
+		 * Resolve the options with links once the whole file is read
+		 * An option is resolved when all options it links to are resolved. The options left unresolved
+		 * in the end form (or depend on) a cycle.
+		 * @throws ConfigurationException if a link points to an invalid address or the links form a cycle
+		 */
+		private void resolvePendingOptions() throws ConfigurationException {
+			for (PendingOption pending : pendingOrder) {
+				IniLine line = pending.line;
+
+				if (line.isList()) {
+					for (int i = 0; i < line.getListSize(); ++i) {
+						if (line.isListItemLink(i)) {
+							addLinkTarget(pending, line.getListItem(i));
+						}
+					}
+				} else {
+					addLinkTarget(pending, line.getValue());
+				}
+			}
+
+			Queue<PendingOption> resolvable = new ArrayDeque<>();
+			for (PendingOption pending : pendingOrder) {
+				if (pending.unresolvedTargets == 0) {
+					resolvable.add(pending);
+				}
+			}
+
+			while (!resolvable.isEmpty()) {
+				PendingOption pending = resolvable.poll();
+				pending.option = createOption(pending.name, pending.line);
+				pending.sectionOptions.put(pending.name, pending.option);
+
+				for (PendingOption dependent : pending.dependents) {
+					if (--dependent.unresolvedTargets == 0) {
+						resolvable.add(dependent);
+					}
+				}
+			}
+
+			for (PendingOption pending : pendingOrder) {
+				if (pending.option == null) {
+					throw new ConfigurationException("Links forming a cycle: " + describeCycle(pending));
+				}
+			}
 		}
-		for (int counter = 0; counter < suffixSpaces; ++counter) {
-			outputElementBuilder.append(' ');
+
+		/**
+		 * Note the option a link of a pending option points to, if it is pending as well
+		 * @throws ConfigurationException if the link points to an invalid address
+		 */
+		private void addLinkTarget(PendingOption pending, String linkString) throws ConfigurationException {
+			String linkTarget = linkString.substring(linkString.indexOf('{')+1,linkString.indexOf('}'));
+			String targetSection = linkTarget.substring(0,linkTarget.indexOf('#'));
+			String targetOption = linkTarget.substring(linkTarget.indexOf('#')+1);
+
+			Map<String, PendingOption> section = pendingOptions.get(targetSection);
+			PendingOption target = section == null ? null : section.get(targetOption);
+
+			if (target == null) {
+				// the target has to be an option without links
+				getLinkValue(linkString);
+				return;
+			}
+
+			target.dependents.add(pending);
+			pending.targets.add(target);
+			++pending.unresolvedTargets;
 		}
-		return outputElementBuilder.toString();
-	}
 
-	/**
-	 * Extract the section name
-	 * The string from which the section name should be extracted has to start with
-	 * the '[' character (a valid line containing a section starting label as described
-	 * by the INI documentation). The function returns only the valid section name.
-	 * @param line line with a section name beginning
-	 * @return valid section name
-	 * @throws ConfigurationException if the section name is not valid (e.g. all whitespace
-	 * or forbidden characters
-	 */
-	private String extractSectionName(String line) throws ConfigurationException {
-		String rawName =  line.substring(1,line.indexOf(']'));
-		int startIndex = 0;
-		while (isNotBeginningChar(rawName.charAt(startIndex))) {
-			++startIndex;
-			if (startIndex > rawName.length()) {
-				throw new ConfigurationException("Illegal name of section on line: " + line);
+		/**
+		 * Find a cycle of unresolved options reachable from the given one
+		 * @return the options of the cycle, as "section#option -> ... -> section#option"
+		 */
+		private String describeCycle(PendingOption start) {
+			List<PendingOption> path = new ArrayList<>();
+			Set<PendingOption> visited = new HashSet<>();
+			PendingOption current = start;
+
+			while (visited.add(current)) {
+				path.add(current);
+
+				for (PendingOption target : current.targets) {
+					if (target.option == null) {
+						current = target;
+						break;
+					}
+				}
 			}
+
+			StringBuilder cycle = new StringBuilder();
+			for (PendingOption pending : path.subList(path.indexOf(current), path.size())) {
+				cycle.append(pending.section).append('#').append(pending.name).append(" -> ");
+			}
+
+			return cycle.append(current.section).append('#').append(current.name).toString();
 		}
-		int endIndex = startIndex ;
-		do {
-			++endIndex;
-			if (endIndex >= rawName.length()) {
-				return rawName.substring(startIndex);
+
+		/**
+		 * Get the real value of a link
+		 * The link has to point to the part of the configuration that is already parsed.
+		 * @param linkString string representation of the link
+		 * @return actual value of the link
+		 * @throws ConfigurationException if the link address is invalid
+		 */
+		private Option getLinkValue(String linkString) throws ConfigurationException {
+			String linkTarget = linkString.substring(linkString.indexOf('{')+1,linkString.indexOf('}'));
+			String targetSection = linkTarget.substring(0,linkTarget.indexOf('#'));
+			String targetOption = linkTarget.substring(linkTarget.indexOf('#')+1);
+
+			Map<String, Option> section = linkTargets.get(targetSection);
+			if (section == null) {
+				throw new ConfigurationException("Link pointing to an invalid address, " +
+						"section not found: " + linkTarget);
+			}
+
+			Option option = section.get(targetOption);
+			if (option != null) {
+				return option;
 			}
-		} while (isNameChar(rawName.charAt(endIndex)));
-		return rawName.substring(startIndex, endIndex);
+			throw new ConfigurationException("Link pointing to an invalid address, " +
+					"option" +  targetOption + " not found in section " + targetSection);
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getDescription() {
+			return description;
+		}
+
+		@Override
+		public String getValue() {
+			return ((ScalarOption) option).getValue();
+		}
+
+		@Override
+		public ParsedBoolean getBooleanValue() {
+			return ((ScalarOption) option).getBooleanValue();
+		}
 
+		@Override
+		public List<String> getListValue() {
+			return ((ListOption) option).getValueView();
+		}
+
+		@Override
+		public String getSeparator() {
+			return ((ListOption) option).getSeparator();
+		}
+
+		@Override
+		public void close() throws ConfigurationException {
+			lines.close();
+		}
 	}
 
 	/**
-	 * For a line determine wether it holds a section description
-	 * That means that it has to contain only a comment (the line must start with ';'), and the
-	 * comment cannot be empty. Also, the line before this one has to describe the section
-	 * (contain section name)
-	 * @param line part of the line WITHOUT the comment
-	 * @param comment the comment part of the line
-	 * @param lastLineWasSection flag indicating, if the last line described a section
-	 * @return true if comment can be interpreted as a section description, false otherwise
+	 * An option whose links are resolved after the whole file is read
 	 */
-	private boolean isLineSectionDescription(String line, String comment, boolean lastLineWasSection) {
-		if (comment.isEmpty()) {
-			return false;
+	private static final class PendingOption {
+		private final String section;
+
+		private final String name;
+
+		private final IniLine line;
+
+		/**
+		 * The resolved options of the section of this option
+		 */
+		private final Map<String, Option> sectionOptions;
+
+		/**
+		 * Pending options this option links to
+		 */
+		private final List<PendingOption> targets = new ArrayList<>();
+
+		/**
+		 * Pending options that link to this option
+		 */
+		private final List<PendingOption> dependents = new ArrayList<>();
+
+		private int unresolvedTargets = 0;
+
+		/**
+		 * The resolved option, null until it is resolved
+		 */
+		private Option option = null;
+
+		PendingOption(String section, Map<String, Option> sectionOptions, String name, IniLine line) {
+			this.section = section;
+			this.sectionOptions = sectionOptions;
+			this.name = name;
+			this.line = line;
 		}
-		return lastLineWasSection && line.isEmpty();
 	}
 
 	/**
-	 * Check if a character can be on the beginning of a section name
-	 * @param c the character in question
-	 * @return true if the character could be on the beginning of  a section name, false otherwise
+	 * An event read ahead by the {@link IniEventReader}
 	 */
-	private boolean isNameChar(char c) {
-		return Character.toString(c).matches("[[a-z][A-Z][0-9].$: _~-]");
+	private static final class QueuedEvent {
+		private final ConfigEventReader.Event event;
+
+		private final String name;
+
+		private final String description;
+
+		private final Option option;
+
+		/**
+		 * The option of the event if its links weren't resolved when the event was read
+		 */
+		private final PendingOption pendingOption;
+
+		QueuedEvent(ConfigEventReader.Event event, String name, String description, Option option,
+				PendingOption pendingOption) {
+			this.event = event;
+			this.name = name;
+			this.description = description;
+			this.option = option;
+			this.pendingOption = pendingOption;
+		}
 	}
 
 	/**
-	 * Check if a character could be in a section name
-	 * @param c the character in question
-	 * @return true if the character could be in a section name, false otherwise
+	 * Provides the lexed lines of an INI file
 	 */
-	private boolean isNotBeginningChar(char c) {
-		return ! Character.toString(c).matches("[[a-z][A-Z].$:]");
+	private interface LineSource extends AutoCloseable {
+		/**
+		 * Read the next line
+		 * The returned line is only valid until the next call.
+		 * @return the next line, null at the end of the file
+		 * @throws ConfigurationException when the line cannot be read or lexed
+		 */
+		IniLine next() throws ConfigurationException;
+
+		@Override
+		void close() throws ConfigurationException;
 	}
 
 	/**
-	 * Check if a supplied line is valid section label line according to the INI documentation
-	 * @param line the line in question
-	 * @return true if a valid section label line, false otherwise
+	 * Reads lines from a reader and lexes them one by one
 	 */
-	private boolean isDescribingSection(String line) {
-		return !line.isEmpty() && line.charAt(0) == '[';
+	private static final class ReaderLineSource implements LineSource {
+		private final BufferedReader reader;
+
+		private final IniLexer lexer = new IniLexer();
+
+		ReaderLineSource(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public IniLine next() throws ConfigurationException {
+			String line;
+			try {
+				line = reader.readLine();
+			} catch (IOException exception) {
+				ConfigurationException newExcept = new ConfigurationException("Problem reading the input file");
+				newExcept.setStackTrace(exception.getStackTrace());
+				throw newExcept;
+			}
+
+			if (line == null) {
+				return null;
+			}
+
+			lexer.lex(line);
+			return lexer;
+		}
+
+		@Override
+		public void close() throws ConfigurationException {
+			try {
+				reader.close();
+			} catch (IOException exception) {
+				ConfigurationException newExcept = new ConfigurationException("Problem reading the input file");
+				newExcept.setStackTrace(exception.getStackTrace());
+				throw newExcept;
+			}
+		}
 	}
 
 	/**
-	 *
-	 * @param outValue
-	 * @param separator
-	 * @return
+	 * Provides lines that were lexed in advance
 	 */
-	private String escapeSeparator(String outValue, String separator) {
-		if (outValue.contains(separator)) {
-			// cycle through the string and find all separators to be escaped
-			ArrayList<Integer> occurrences = new ArrayList<>();
-			int index = outValue.indexOf(separator);
-			while (index >= 0) {
-				occurrences.add(index);
-				index = outValue.indexOf(separator, index + 1);
-			}
+	private static final class LexedLineSource implements LineSource {
+		private final Iterator<LexedLine[]> blocks;
+
+		private LexedLine[] block = new LexedLine[0];
+
+		private int position = 0;
+
+		LexedLineSource(List<LexedLine[]> blocks) {
+			this.blocks = blocks.iterator();
+		}
+
+		@Override
+		public IniLine next() throws ConfigurationException {
+			while (position == block.length) {
+				if (!blocks.hasNext()) {
+					return null;
+				}
 
-			// escape the separators
-			StringBuilder escapedOutValue = new StringBuilder(outValue);
-			for (int i = occurrences.size() - 1 ; i >= 0; --i) {
-				escapedOutValue.insert(occurrences.get(i),"\\");
+				block = blocks.next();
+				position = 0;
 			}
-			return escapedOutValue.toString();
-		} else {
-			return outValue;
+
+			LexedLine line = block[position++];
+			line.checkError();
+			return line;
+		}
+
+		@Override
+		public void close() {
 		}
 	}
 
 	/**
-	 * Cycle through value String and count leading and trailing spaces.
-	 * Once we have the counts, we trim the value and add "\ " in front for every
-	 * leading space, and the same for the trailing spaces. This will also
-	 * convert any surrounding whitespace to space.
-	 * @param value
-	 * @return value with escaped trailing and leading spaces
+	 * Receives the parsed configuration and builds a configuration tree from it
 	 */
-	private String escapeSpaces(String value) {
-		// count leading and trailing spaces
-		boolean valueStarted = false;
-		int prefixSpaces = 0;
-		int suffixSpaces = 0;
-		for (int i = 0; i < value.length(); ++i) {
-			char currentChar = value.charAt(i);
-			if (Character.isWhitespace(currentChar)) {
-				if (valueStarted) {
-					++suffixSpaces;
-				} else {
-					++prefixSpaces;
-				}
-			} else {
-				valueStarted = true;
-				suffixSpaces = 0;
+	private interface TreeSink {
+		/**
+		 * Start a new section, which receives the following options
+		 */
+		void beginSection(String name) throws ConfigurationException;
+
+		/**
+		 * Set the description of the current section
+		 */
+		void setSectionDescription(String description);
+
+		/**
+		 * Add a scalar option to the current section
+		 */
+		void addScalar(String name, String value, ParsedBoolean booleanValue, String description) throws ConfigurationException;
+
+		/**
+		 * Add a list option to the current section
+		 */
+		void addList(String name, List<String> value, String separator, String description) throws ConfigurationException;
+
+		/**
+		 * Finish the configuration tree
+		 */
+		ConfigRoot finish() throws ConfigurationException;
+	}
+
+	/**
+	 * Builds a tree of configuration nodes
+	 */
+	private static final class NodeTreeSink implements TreeSink {
+		private final ConfigRoot root = new ConfigRoot("", new ArrayList<>());
+
+		private Section currentSection = null;
+
+		@Override
+		public void beginSection(String name) throws ConfigurationException {
+			// The current section is added to the root when it's complete
+			if (currentSection != null) {
+				root.addChild(currentSection);
 			}
+			currentSection = new Section(name, new ArrayList<>());
 		}
 
-		// return the whitespaces as escaped spaces
-		StringBuilder outputValue = new StringBuilder(value.trim());
-		for (int i = 0; i<prefixSpaces; ++i) {
-			outputValue.insert(0,"\\ ");
+		@Override
+		public void setSectionDescription(String description) {
+			currentSection.setDescription(description);
 		}
-		for (int i = 0; i<suffixSpaces; ++i) {
-			outputValue.append("\\ ");
+
+		@Override
+		public void addScalar(String name, String value, ParsedBoolean booleanValue, String description) throws ConfigurationException {
+			ScalarOption newOption = new ScalarOption(name, value, booleanValue);
+			newOption.setDescription(description);
+			currentSection.addChild(newOption);
+		}
+
+		@Override
+		public void addList(String name, List<String> value, String separator, String description) throws ConfigurationException {
+			ListOption newOption = ListOption.shared(name, value, separator);
+			newOption.setDescription(description);
+			currentSection.addChild(newOption);
+		}
+
+		@Override
+		public ConfigRoot finish() throws ConfigurationException {
+			root.addChild(currentSection);
+			return root;
 		}
-		return outputValue.toString();
 	}
 
 	/**
-	 * Determine if a ConfigNode is not a section
-	 * Just another pretty wrapper
-	 * @param node the node in question
-	 * @return true if not a section, false otherwise
+	 * Builds a {@link CompactConfigRoot}
 	 */
-	private boolean isNotSection(ConfigNode node) {
-		return !(node instanceof Section);
-	}
+	private static final class CompactTreeSink implements TreeSink {
+		private final CompactConfigRoot.Builder builder = new CompactConfigRoot.Builder();
+
+		private int currentSection = -1;
 
+		@Override
+		public void beginSection(String name) {
+			if (currentSection != -1) {
+				builder.endSection();
+			}
+			currentSection = builder.beginSection(name);
+		}
+
+		@Override
+		public void setSectionDescription(String description) {
+			builder.setDescription(currentSection, description);
+		}
+
+		@Override
+		public void addScalar(String name, String value, ParsedBoolean booleanValue, String description) {
+			builder.setDescription(builder.addScalar(name, value, booleanValue), description);
+		}
+
+		@Override
+		public void addList(String name, List<String> value, String separator, String description) {
+			builder.setDescription(builder.addList(name, value, separator), description);
+		}
+
+		@Override
+		public ConfigRoot finish() {
+			return builder.build("");
+		}
+	}
 }
@@ -0,0 +1,482 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import cz.cuni.mff.ConfigMapper.ConfigurationException;
+
+import java.util.Arrays;
+
+/**
+ * Splits the lines of an INI file into their parts
+ *
+ * Every line is processed in a single forward pass over its characters, using precomputed tables of character
+ * classes. The lexer only remembers the positions of the parts of the line - the name, value, list items and
+ * comment are copied out of the line when they are requested. One lexer is reused for all lines of a file.
+ */
+final class IniLexer implements IniLine {
+	private static final byte SECTION_NAME_START = 1;
+
+	private static final byte SECTION_NAME_PART = 2;
+
+	private static final byte WHITESPACE = 4;
+
+	/**
+	 * Classes of the ASCII characters
+	 */
+	private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; ++c) {
+			CHARACTER_CLASSES[c] |= SECTION_NAME_START | SECTION_NAME_PART;
+			CHARACTER_CLASSES[Character.toUpperCase(c)] |= SECTION_NAME_START | SECTION_NAME_PART;
+		}
+
+		for (char c = '0'; c <= '9'; ++c) {
+			CHARACTER_CLASSES[c] |= SECTION_NAME_PART;
+		}
+
+		for (char c : ".$:".toCharArray()) {
+			CHARACTER_CLASSES[c] |= SECTION_NAME_START | SECTION_NAME_PART;
+		}
+
+		for (char c : " _~-".toCharArray()) {
+			CHARACTER_CLASSES[c] |= SECTION_NAME_PART;
+		}
+
+		for (char c = 0; c < CHARACTER_CLASSES.length; ++c) {
+			if (Character.isWhitespace(c)) {
+				CHARACTER_CLASSES[c] |= WHITESPACE;
+			}
+		}
+	}
+
+	private String line;
+
+	private Type type;
+
+	private int sectionNameStart;
+
+	private int sectionNameEnd;
+
+	/**
+	 * The index of the ';' that starts the comment, -1 if there is no comment
+	 */
+	private int commentStart;
+
+	private final Element name = new Element();
+
+	private final Element value = new Element();
+
+	/**
+	 * The list separator of the value, 0 if the value is not a list
+	 */
+	private char separator;
+
+	private Element[] items = new Element[0];
+
+	private int itemCount;
+
+	/**
+	 * Process a line of the file
+	 * @param line the line (without the line terminator)
+	 * @return the type of the line
+	 * @throws ConfigurationException when the line is invalid
+	 */
+	Type lex(String line) throws ConfigurationException {
+		this.line = line;
+		type = null;
+		commentStart = -1;
+		separator = 0;
+		itemCount = 0;
+
+		int length = line.length();
+
+		if (length > 0 && line.charAt(0) == '[') {
+			lexSectionName();
+			return type = Type.SECTION;
+		}
+
+		// The name ends with the first '=', unless the comment starts before it
+		int index = 0;
+		name.reset(0);
+
+		for (; index < length; ++index) {
+			char c = line.charAt(index);
+
+			if (c == '=') {
+				break;
+			}
+
+			if (c == ';' && isUnescaped(index)) {
+				commentStart = index;
+				break;
+			}
+
+			name.accept(line, index, c);
+		}
+
+		if (index == length || commentStart != -1) {
+			if (index == 0) {
+				return type = Type.BLANK;
+			}
+
+			throw new ConfigurationException("Missing '=' on line: " + line);
+		}
+
+		checkElement(name, index);
+
+		// The value ends with the first unescaped ';'
+		value.reset(++index);
+
+		for (; index < length; ++index) {
+			char c = line.charAt(index);
+
+			if (c == ';' && isUnescaped(index)) {
+				commentStart = index;
+				break;
+			}
+
+			value.accept(line, index, c);
+		}
+
+		checkElement(value, index);
+
+		// An escaped separator at the very end of the value counts as unescaped
+		if (value.start <= value.end && value.suffixSpaces == 0) {
+			char last = line.charAt(value.end);
+
+			if (last == ',' && value.comma == -1) {
+				value.comma = value.end;
+			} else if (last == ':' && value.colon == -1) {
+				value.colon = value.end;
+			}
+		}
+
+		if (value.comma != -1) {
+			separator = ',';
+		} else if (value.colon != -1) {
+			separator = ':';
+		}
+
+		if (separator != 0) {
+			splitList();
+		}
+
+		return type = Type.OPTION;
+	}
+
+	@Override
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	public String getSectionName() {
+		return line.substring(sectionNameStart, sectionNameEnd);
+	}
+
+	@Override
+	public String getComment() {
+		return commentStart == -1 ? "" : line.substring(commentStart + 1);
+	}
+
+	@Override
+	public boolean hasComment() {
+		return commentStart != -1 && commentStart + 1 < line.length();
+	}
+
+	@Override
+	public String getName() {
+		return text(name);
+	}
+
+	@Override
+	public String getValue() {
+		return text(value);
+	}
+
+	@Override
+	public boolean isLink() {
+		return isLink(value);
+	}
+
+	@Override
+	public boolean isList() {
+		return separator != 0;
+	}
+
+	@Override
+	public String getSeparator() {
+		return separator == ',' ? "," : ":";
+	}
+
+	@Override
+	public int getListSize() {
+		return itemCount;
+	}
+
+	@Override
+	public String getListItem(int index) {
+		return text(items[index]);
+	}
+
+	@Override
+	public boolean isListItemLink(int index) {
+		return isLink(items[index]);
+	}
+
+	/**
+	 * Find the section name in a section header
+	 * The name starts with the first character allowed at the beginning of a name and ends before the first
+	 * character that cannot be a part of it.
+	 */
+	private void lexSectionName() throws ConfigurationException {
+		int end = line.indexOf(']');
+		int index = 1;
+
+		while (index < end && !hasClass(line.charAt(index), SECTION_NAME_START)) {
+			++index;
+		}
+
+		if (index >= end) {
+			throw new ConfigurationException("Illegal name of section on line: " + line);
+		}
+
+		sectionNameStart = index;
+
+		do {
+			++index;
+		} while (index < end && hasClass(line.charAt(index), SECTION_NAME_PART));
+
+		sectionNameEnd = index;
+	}
+
+	/**
+	 * Split the value into list items
+	 * Every separator ends an item, even an escaped one. Empty items are only allowed at the end of the list,
+	 * where they are ignored.
+	 */
+	private void splitList() throws ConfigurationException {
+		int emptyItems = 0;
+
+		// The escaped spaces in front of the value belong to the first item
+		boolean hasCharacters = value.prefixSpaces > 0;
+		Element item = addItem(value.start);
+
+		for (int index = value.start; index <= value.end; ++index) {
+			char c = line.charAt(index);
+
+			if (c != separator) {
+				item.accept(line, index, c);
+				hasCharacters = true;
+				continue;
+			}
+
+			emptyItems = finishItem(item, index, hasCharacters, emptyItems);
+			hasCharacters = false;
+			item = addItem(index + 1);
+		}
+
+		// The escaped spaces behind the value belong to the last item
+		finishItem(item, value.end + 1, hasCharacters || value.suffixSpaces > 0, emptyItems);
+
+		// Drop the empty items at the end
+		while (itemCount > 0 && items[itemCount - 1].start == -1) {
+			--itemCount;
+		}
+	}
+
+	private Element addItem(int begin) {
+		if (itemCount == items.length) {
+			items = Arrays.copyOf(items, Math.max(8, 2 * items.length));
+		}
+
+		if (items[itemCount] == null) {
+			items[itemCount] = new Element();
+		}
+
+		Element item = items[itemCount++];
+		item.reset(begin);
+		return item;
+	}
+
+	/**
+	 * Check a list item after its last character was processed
+	 * @return the updated number of consecutive empty items
+	 */
+	private int finishItem(Element item, int end, boolean hasCharacters, int emptyItems) throws ConfigurationException {
+		if (item.start == -1) {
+			if (hasCharacters) {
+				checkElement(item, end);
+			}
+
+			return emptyItems + 1;
+		}
+
+		if (emptyItems > 0) {
+			throw new ConfigurationException("Invalid element: ''");
+		}
+
+		item.trim(line);
+		return 0;
+	}
+
+	private void checkElement(Element element, int end) throws ConfigurationException {
+		if (element.start == -1) {
+			throw new ConfigurationException("Invalid element: '" + line.substring(element.begin, end) + "'");
+		}
+
+		element.trim(line);
+	}
+
+	/**
+	 * Copy an element out of the line, with its escaped surrounding spaces
+	 */
+	private String text(Element element) {
+		int from = element.start;
+		int to = element.end + 1;
+
+		if (element.prefixSpaces == 0 && element.suffixSpaces == 0) {
+			return line.substring(from, to);
+		}
+
+		char[] chars = new char[element.prefixSpaces + (to - from) + element.suffixSpaces];
+		Arrays.fill(chars, ' ');
+		line.getChars(from, to, chars, element.prefixSpaces);
+		return new String(chars);
+	}
+
+	private boolean isLink(Element element) {
+		int dollar = element.dollar;
+		return dollar != -1
+			&& dollar < element.end
+			&& line.charAt(dollar + 1) == '{'
+			&& element.closingBrace > dollar + 1;
+	}
+
+	/**
+	 * Check if a character of the line is not escaped by a preceding backslash
+	 * The last character of the line is never considered escaped.
+	 */
+	private boolean isUnescaped(int index) {
+		return index == 0 || index == line.length() - 1 || line.charAt(index - 1) != '\\';
+	}
+
+	private static boolean hasClass(char c, byte characterClass) {
+		return c < CHARACTER_CLASSES.length && (CHARACTER_CLASSES[c] & characterClass) != 0;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c < CHARACTER_CLASSES.length ? (CHARACTER_CLASSES[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+	}
+
+	/**
+	 * A part of a line (a name, value or list item)
+	 *
+	 * Unescaped whitespace around the element is dropped. Each backslash in front of the element that escapes
+	 * a whitespace character adds a space in front of it, each backslash behind the element adds a space behind it.
+	 * The first character of the element is never escaped.
+	 */
+	private static final class Element {
+		/**
+		 * The index where the part starts
+		 */
+		int begin;
+
+		/**
+		 * The indices of the first and last significant character, -1 if there are none
+		 */
+		int start;
+
+		int end;
+
+		int prefixSpaces;
+
+		int suffixSpaces;
+
+		/**
+		 * The indices of the first unescaped ',', ':' and '$', -1 if there are none
+		 */
+		int comma;
+
+		int colon;
+
+		int dollar;
+
+		/**
+		 * The index of the last '}', -1 if there is none
+		 */
+		int closingBrace;
+
+		void reset(int begin) {
+			this.begin = begin;
+			start = -1;
+			end = -1;
+			prefixSpaces = 0;
+			suffixSpaces = 0;
+			comma = -1;
+			colon = -1;
+			dollar = -1;
+			closingBrace = -1;
+		}
+
+		/**
+		 * Drop the control characters around the significant characters (the element may become empty)
+		 */
+		void trim(String line) {
+			while (start <= end && line.charAt(start) <= ' ') {
+				++start;
+			}
+
+			while (end >= start && line.charAt(end) <= ' ') {
+				--end;
+			}
+		}
+
+		void accept(String line, int index, char c) {
+			if (c == '\\') {
+				if (start != -1) {
+					++suffixSpaces;
+				} else if (index + 1 < line.length() && isWhitespace(line.charAt(index + 1))) {
+					++prefixSpaces;
+				}
+
+				return;
+			}
+
+			if (isWhitespace(c)) {
+				return;
+			}
+
+			boolean escaped = start != -1 && line.charAt(index - 1) == '\\';
+
+			if (start == -1) {
+				start = index;
+			}
+
+			end = index;
+			suffixSpaces = 0;
+
+			switch (c) {
+				case ',':
+					if (!escaped && comma == -1) {
+						comma = index;
+					}
+					break;
+				case ':':
+					if (!escaped && colon == -1) {
+						colon = index;
+					}
+					break;
+				case '$':
+					if (!escaped && dollar == -1) {
+						dollar = index;
+					}
+					break;
+				case '}':
+					closingBrace = index;
+					break;
+				default:
+					break;
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+/**
+ * A lexed line of an INI file
+ */
+interface IniLine {
+	/**
+	 * Types of lines in an INI file
+	 */
+	enum Type {
+		/**
+		 * An empty line or a line with nothing but a comment
+		 */
+		BLANK,
+
+		/**
+		 * A section header
+		 */
+		SECTION,
+
+		/**
+		 * An option
+		 */
+		OPTION
+	}
+
+	/**
+	 * @return the type of the line
+	 */
+	Type getType();
+
+	/**
+	 * @return the name of the section on a section header line
+	 */
+	String getSectionName();
+
+	/**
+	 * @return the comment on the line (without the ';'), an empty string if there is none
+	 */
+	String getComment();
+
+	/**
+	 * @return true if the line contains a non-empty comment
+	 */
+	boolean hasComment();
+
+	/**
+	 * @return the name of the option on an option line
+	 */
+	String getName();
+
+	/**
+	 * @return the value of the option on an option line
+	 */
+	String getValue();
+
+	/**
+	 * @return true if the value of the option is a link (it has the form of .*${.*})
+	 */
+	boolean isLink();
+
+	/**
+	 * @return true if the value of the option is a list (it contains an unescaped ',' or ':')
+	 */
+	boolean isList();
+
+	/**
+	 * @return the separator of the list value
+	 */
+	String getSeparator();
+
+	/**
+	 * @return the number of items of the list value
+	 */
+	int getListSize();
+
+	/**
+	 * @param index the index of the item
+	 * @return an item of the list value
+	 */
+	String getListItem(int index);
+
+	/**
+	 * @param index the index of the item
+	 * @return true if the item of the list value is a link
+	 */
+	boolean isListItemLink(int index);
+}
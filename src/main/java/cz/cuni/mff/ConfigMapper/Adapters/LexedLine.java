@@ -0,0 +1,180 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import cz.cuni.mff.ConfigMapper.ConfigurationException;
+
+/**
+ * A copy of a line lexed by an {@link IniLexer}, which can be kept after the lexer moves on
+ *
+ * If the line couldn't be lexed, the copy holds the error, which is thrown when the line is processed.
+ */
+final class LexedLine implements IniLine {
+	private static final String[] NO_ITEMS = new String[0];
+
+	private static final boolean[] NO_LINKS = new boolean[0];
+
+	private final Type type;
+
+	private final String sectionName;
+
+	private final String comment;
+
+	private final String name;
+
+	private final String value;
+
+	private final boolean link;
+
+	private final String separator;
+
+	private final String[] items;
+
+	private final boolean[] itemLinks;
+
+	private final ConfigurationException error;
+
+	/**
+	 * Lex a line and copy the result
+	 * @param lexer the lexer to use
+	 * @param line the line
+	 * @return the lexed line
+	 */
+	static LexedLine lex(IniLexer lexer, String line) {
+		try {
+			lexer.lex(line);
+			return new LexedLine(lexer);
+		} catch (ConfigurationException exception) {
+			return new LexedLine(exception);
+		}
+	}
+
+	/**
+	 * Copy a line, so that it can be kept after its lexer moves on
+	 * @param line the line
+	 * @return a copy of the line (or the line itself, if it doesn't depend on a lexer)
+	 */
+	static LexedLine copyOf(IniLine line) {
+		return line instanceof LexedLine ? (LexedLine) line : new LexedLine(line);
+	}
+
+	private LexedLine(IniLine line) {
+		type = line.getType();
+		error = null;
+		comment = line.hasComment() ? line.getComment() : "";
+
+		if (type != Type.OPTION) {
+			sectionName = type == Type.SECTION ? line.getSectionName() : null;
+			name = null;
+			value = null;
+			link = false;
+			separator = null;
+			items = NO_ITEMS;
+			itemLinks = NO_LINKS;
+			return;
+		}
+
+		sectionName = null;
+		name = line.getName();
+
+		if (line.isList()) {
+			value = null;
+			link = false;
+			separator = line.getSeparator();
+			items = new String[line.getListSize()];
+			itemLinks = new boolean[items.length];
+
+			for (int i = 0; i < items.length; ++i) {
+				items[i] = line.getListItem(i);
+				itemLinks[i] = line.isListItemLink(i);
+			}
+		} else {
+			value = line.getValue();
+			link = line.isLink();
+			separator = null;
+			items = NO_ITEMS;
+			itemLinks = NO_LINKS;
+		}
+	}
+
+	private LexedLine(ConfigurationException error) {
+		this.error = error;
+		type = null;
+		sectionName = null;
+		comment = "";
+		name = null;
+		value = null;
+		link = false;
+		separator = null;
+		items = NO_ITEMS;
+		itemLinks = NO_LINKS;
+	}
+
+	/**
+	 * Throw the error that occurred while the line was lexed, if there was any
+	 * @throws ConfigurationException the error
+	 */
+	void checkError() throws ConfigurationException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@Override
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	public String getSectionName() {
+		return sectionName;
+	}
+
+	@Override
+	public String getComment() {
+		return comment;
+	}
+
+	@Override
+	public boolean hasComment() {
+		return !comment.isEmpty();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public boolean isLink() {
+		return link;
+	}
+
+	@Override
+	public boolean isList() {
+		return separator != null;
+	}
+
+	@Override
+	public String getSeparator() {
+		return separator;
+	}
+
+	@Override
+	public int getListSize() {
+		return items.length;
+	}
+
+	@Override
+	public String getListItem(int index) {
+		return items[index];
+	}
+
+	@Override
+	public boolean isListItemLink(int index) {
+		return itemLinks[index];
+	}
+}
@@ -0,0 +1,118 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes the lines of a whole INI file in parallel
+ *
+ * The file is split into blocks at section headers, which are lexed on a {@link ForkJoinPool}. Lines are
+ * independent of each other, so the blocks only have to be put back in order - everything that depends on
+ * the previous lines (sections, duplicates and links) is left to a sequential pass over the result.
+ */
+final class ParallelIniLexer {
+	/**
+	 * Blocks with fewer characters than this are not split any further
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private ParallelIniLexer() {
+	}
+
+	/**
+	 * Lex the lines of a file
+	 * Lines are split the same way as {@link java.io.BufferedReader#readLine()} splits them.
+	 * @param content the content of the file
+	 * @param pool the pool to run the lexing on
+	 * @return the lexed lines, in blocks ordered as in the file
+	 */
+	static List<LexedLine[]> lex(String content, ForkJoinPool pool) {
+		return pool.invoke(new LexTask(content, 0, content.length()));
+	}
+
+	/**
+	 * Find the first section header starting at or after the given position
+	 * @return the index of the '[' that starts the header, the end of the range if there is none
+	 */
+	private static int nextSection(String content, int position, int end) {
+		int index = content.indexOf('[', position);
+
+		while (index != -1 && index < end) {
+			char previous = content.charAt(index - 1);
+
+			if (previous == '\n' || previous == '\r') {
+				return index;
+			}
+
+			index = content.indexOf('[', index + 1);
+		}
+
+		return end;
+	}
+
+	/**
+	 * Lexes a range of the file that starts at the beginning of a line
+	 */
+	private static final class LexTask extends RecursiveTask<List<LexedLine[]>> {
+		private final String content;
+
+		private final int start;
+
+		private final int end;
+
+		LexTask(String content, int start, int end) {
+			this.content = content;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected List<LexedLine[]> compute() {
+			if (end - start > BLOCK_SIZE) {
+				int middle = nextSection(content, start + (end - start) / 2, end);
+
+				if (middle < end) {
+					LexTask first = new LexTask(content, start, middle);
+					LexTask second = new LexTask(content, middle, end);
+					invokeAll(first, second);
+
+					List<LexedLine[]> result = first.join();
+					result.addAll(second.join());
+					return result;
+				}
+			}
+
+			List<LexedLine[]> result = new ArrayList<>();
+			result.add(lexBlock());
+			return result;
+		}
+
+		private LexedLine[] lexBlock() {
+			IniLexer lexer = new IniLexer();
+			List<LexedLine> lines = new ArrayList<>();
+			int lineStart = start;
+
+			while (lineStart < end) {
+				int lineEnd = lineStart;
+				char c = 0;
+
+				while (lineEnd < end && (c = content.charAt(lineEnd)) != '\n' && c != '\r') {
+					++lineEnd;
+				}
+
+				lines.add(LexedLine.lex(lexer, content.substring(lineStart, lineEnd)));
+
+				// A "\r\n" pair ends just one line
+				if (c == '\r' && lineEnd + 1 < end && content.charAt(lineEnd + 1) == '\n') {
+					++lineEnd;
+				}
+
+				lineStart = lineEnd + 1;
+			}
+
+			return lines.toArray(new LexedLine[0]);
+		}
+	}
+}
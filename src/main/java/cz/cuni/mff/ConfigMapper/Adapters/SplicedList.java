@@ -0,0 +1,121 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import java.util.*;
+
+/**
+ * An immutable list made of single items and whole other lists
+ *
+ * The other lists are not copied, the spliced list only refers to them, so a large list linked from many places
+ * is stored only once. The referenced lists must not be modified. Spliced lists that are added to another spliced
+ * list are flattened, so that looking up an item never takes more than a binary search over the parts.
+ */
+final class SplicedList extends AbstractList<String> implements RandomAccess {
+	/**
+	 * The parts of the list - strings (single items) and lists of strings
+	 */
+	private final Object[] parts;
+
+	/**
+	 * The index of the first item of each part
+	 */
+	private final int[] offsets;
+
+	private final int size;
+
+	private SplicedList(Object[] parts, int[] offsets, int size) {
+		this.parts = parts;
+		this.offsets = offsets;
+		this.size = size;
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+
+		int part = Arrays.binarySearch(offsets, index);
+
+		// Not the first item of a part - find the part that starts before it
+		if (part < 0) {
+			part = -part - 2;
+		}
+
+		Object value = parts[part];
+
+		if (value instanceof String) {
+			return (String) value;
+		}
+
+		@SuppressWarnings("unchecked")
+		List<String> list = (List<String>) value;
+		return list.get(index - offsets[part]);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Collects the parts of a list value
+	 */
+	static final class Builder {
+		private final List<Object> parts;
+
+		private boolean hasLists = false;
+
+		/**
+		 * @param expectedParts the expected number of parts
+		 */
+		Builder(int expectedParts) {
+			parts = new ArrayList<>(expectedParts);
+		}
+
+		/**
+		 * Add a single item
+		 * @param item the item
+		 */
+		void add(String item) {
+			parts.add(item);
+		}
+
+		/**
+		 * Add all items of an immutable list, without copying them
+		 * @param list the list
+		 */
+		void addAll(List<String> list) {
+			if (list instanceof SplicedList) {
+				SplicedList spliced = (SplicedList) list;
+				Collections.addAll(parts, spliced.parts);
+				hasLists = true;
+				return;
+			}
+
+			if (!list.isEmpty()) {
+				parts.add(list);
+				hasLists = true;
+			}
+		}
+
+		/**
+		 * @return an immutable list of the added items
+		 */
+		List<String> build() {
+			if (!hasLists) {
+				return Collections.unmodifiableList(Arrays.asList(parts.toArray(new String[0])));
+			}
+
+			int[] offsets = new int[parts.size()];
+			int size = 0;
+
+			for (int i = 0; i < offsets.length; ++i) {
+				offsets[i] = size;
+				Object part = parts.get(i);
+				size += part instanceof String ? 1 : ((List<?>) part).size();
+			}
+
+			return new SplicedList(parts.toArray(), offsets, size);
+		}
+	}
+}
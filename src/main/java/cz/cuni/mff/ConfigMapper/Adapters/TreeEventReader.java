@@ -0,0 +1,97 @@
+package cz.cuni.mff.ConfigMapper.Adapters;
+
+import cz.cuni.mff.ConfigMapper.ConfigurationException;
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+import cz.cuni.mff.ConfigMapper.ParsedBoolean;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Produces the events of a configuration tree that was already parsed.
+ * Used by adapters that cannot read their input incrementally.
+ */
+public final class TreeEventReader implements ConfigEventReader {
+	/**
+	 * Iterators over the children of the sections that are being traversed
+	 */
+	private final Deque<Iterator<ConfigNode>> stack = new ArrayDeque<>();
+
+	/**
+	 * The node of the current event
+	 */
+	private ConfigNode current;
+
+	/**
+	 * @param config the configuration tree
+	 */
+	public TreeEventReader(ConfigRoot config) {
+		stack.push(config.getChildren().iterator());
+	}
+
+	@Override
+	public Event next() throws ConfigurationException {
+		current = null;
+
+		if (stack.isEmpty()) {
+			return Event.END;
+		}
+
+		Iterator<ConfigNode> children = stack.peek();
+
+		if (!children.hasNext()) {
+			stack.pop();
+			return stack.isEmpty() ? Event.END : Event.SECTION_END;
+		}
+
+		current = children.next();
+
+		if (current instanceof Section) {
+			stack.push(((Section) current).getChildren().iterator());
+			return Event.SECTION_START;
+		} else if (current instanceof ListOption) {
+			return Event.LIST_OPTION;
+		} else if (current instanceof ScalarOption) {
+			return Event.OPTION;
+		}
+
+		throw new ConfigurationException("Unsupported node type " + current.getClass().getName());
+	}
+
+	@Override
+	public String getName() {
+		return current.getName();
+	}
+
+	@Override
+	public String getDescription() {
+		return current.getDescription();
+	}
+
+	@Override
+	public String getValue() {
+		return ((ScalarOption) current).getValue();
+	}
+
+	@Override
+	public ParsedBoolean getBooleanValue() {
+		return ((ScalarOption) current).getBooleanValue();
+	}
+
+	@Override
+	public List<String> getListValue() {
+		return ((ListOption) current).getValueView();
+	}
+
+	@Override
+	public String getSeparator() {
+		return ((ListOption) current).getSeparator();
+	}
+
+	@Override
+	public void close() {
+		stack.clear();
+	}
+}
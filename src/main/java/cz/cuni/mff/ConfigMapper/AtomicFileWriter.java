@@ -0,0 +1,184 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces files atomically
+ *
+ * The new content is written into a temporary file in the same directory, which is then moved over the target
+ * (or over the file it links to, if it is a symbolic link), so a reader (or a crash) never sees a partially written
+ * file. When the new content is the same as the current content of the target (it has the same size and hash),
+ * the target is left untouched.
+ */
+final class AtomicFileWriter {
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Writes the content of a file
+	 */
+	interface Content {
+		void writeTo(OutputStream output) throws IOException, ConfigurationException;
+	}
+
+	private AtomicFileWriter() {
+	}
+
+	/**
+	 * Replace the content of a file
+	 * @param target The file to replace
+	 * @param content Writes the new content
+	 * @param sync Whether the new content should be forced to the storage device before the file is replaced
+	 * @return true if the file was replaced, false if it already had the same content
+	 * @throws IOException when the file cannot be written
+	 * @throws ConfigurationException when the content cannot be written
+	 */
+	static boolean write(Path target, Content content, boolean sync) throws IOException, ConfigurationException {
+		target = target.toAbsolutePath();
+
+		// Replace the file a symbolic link points to, not the link
+		if (Files.exists(target)) {
+			target = target.toRealPath();
+		}
+
+		Path directory = target.getParent();
+		Path temporary = createTemporaryFile(target);
+
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				MessageDigest digest = newDigest();
+				OutputStream output = new DigestOutputStream(
+						new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), digest);
+				content.writeTo(output);
+				output.flush();
+
+				if (hasContent(target, channel.size(), digest.digest())) {
+					return false;
+				}
+
+				if (sync) {
+					channel.force(true);
+				}
+			}
+
+			copyPermissions(target, temporary);
+			move(temporary, target);
+
+			if (sync) {
+				syncDirectory(directory);
+			}
+
+			return true;
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Create a temporary file next to a target file. If the target exists, the temporary file is only accessible
+	 * by its owner until it gets the permissions of the target. Otherwise it is created with the default permissions
+	 * (those allowed by the umask), like a file written directly.
+	 */
+	private static Path createTemporaryFile(Path target) throws IOException {
+		Path directory = target.getParent();
+		String prefix = "." + target.getFileName();
+
+		if (Files.exists(target)) {
+			return Files.createTempFile(directory, prefix, ".tmp");
+		}
+
+		while (true) {
+			Path temporary = directory.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+			try {
+				return Files.createFile(temporary);
+			} catch (FileAlreadyExistsException exception) {
+				// try another name
+			}
+		}
+	}
+
+	/**
+	 * Check if a file exists and has the given size and hash
+	 */
+	private static boolean hasContent(Path file, long size, byte[] hash) throws IOException {
+		if (!Files.isRegularFile(file) || Files.size(file) != size) {
+			return false;
+		}
+
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+
+		return Arrays.equals(hash, digest.digest());
+	}
+
+	/**
+	 * Give the temporary file the permissions of the replaced file (the temporary file is only accessible
+	 * by its owner)
+	 */
+	private static void copyPermissions(Path source, Path target) throws IOException {
+		PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+		PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+
+		if (sourceView == null || targetView == null || !Files.exists(source)) {
+			return;
+		}
+
+		targetView.setPermissions(sourceView.readAttributes().permissions());
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException exception) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Force the directory entry of the moved file to the storage device
+	 * Not every platform can open a directory, so failures are ignored.
+	 */
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException exception) {
+			// the file was already moved, syncing the directory is only a best effort
+		}
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException exception) {
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(exception);
+		}
+	}
+}
@@ -0,0 +1,706 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Annotations.*;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Mapping information extracted from the annotations of a single mapped class.
+ * Schemas are immutable and cached per class, so the fields of a class and their annotations
+ * are only inspected once, no matter how many times the class is loaded or saved.
+ * When a {@link ConfigBinding} generated at compile time is available for the class,
+ * the schema is built from it and the class is not inspected using reflection at all.
+ */
+final class ClassSchema {
+	/**
+	 * The suffix of the names of generated binding classes
+	 */
+	static final String BINDING_SUFFIX = "ConfigBinding";
+
+	/**
+	 * Compiled schemas of all classes that have been mapped so far.
+	 * A {@link ClassValue} does not prevent the mapped classes from being unloaded.
+	 */
+	private static final ClassValue<ClassSchema> SCHEMAS = new ClassValue<ClassSchema>() {
+		@Override
+		protected ClassSchema computeValue(Class<?> type) {
+			ConfigBinding<?> binding = findBinding(type);
+			return binding != null ? new ClassSchema(type, binding) : new ClassSchema(type);
+		}
+	};
+
+	/**
+	 * The described class
+	 */
+	final Class<?> type;
+
+	/**
+	 * The default constructor of the class (null if there is none or if the class has a binding)
+	 */
+	private final Constructor<?> constructor;
+
+	/**
+	 * The generated binding of the class (null if there is none)
+	 */
+	final ConfigBinding<?> binding;
+
+	/**
+	 * Annotated fields of the class in the order of declaration.
+	 * A field with more than one mapping annotation has an entry for each of them.
+	 */
+	final List<FieldSchema> fields;
+
+	/**
+	 * The fields annotated with {@link ConfigSection}
+	 */
+	final List<SectionSchema> sections;
+
+	/**
+	 * Describes why the class cannot be mapped (null if it can)
+	 */
+	private final String mappingError;
+
+	/**
+	 * Build the schema by inspecting the class using reflection
+	 * @param type the mapped class
+	 */
+	private ClassSchema(Class<?> type) {
+		this.type = type;
+		this.constructor = findConstructor(type);
+		this.binding = null;
+
+		List<FieldBinding> bindings = new ArrayList<>();
+		String mappingError = null;
+
+		for (Field field : type.getDeclaredFields()) {
+			ConfigOption optionAnnotation = field.getAnnotation(ConfigOption.class);
+			ConfigSection sectionAnnotation = field.getAnnotation(ConfigSection.class);
+			UndeclaredOptions undeclaredAnnotation = field.getAnnotation(UndeclaredOptions.class);
+
+			if (optionAnnotation == null && sectionAnnotation == null && undeclaredAnnotation == null) {
+				continue;
+			}
+
+			int modifiers = field.getModifiers();
+
+			if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+				// The value of a static final field cannot be set
+				if (mappingError == null) {
+					mappingError = String.format(
+						"Field %s of class %s is static and final, so it cannot be mapped",
+						field.getName(),
+						type.getName()
+					);
+				}
+
+				continue;
+			}
+
+			FieldAccess access = new FieldAccessor(field);
+
+			if (optionAnnotation != null) {
+				bindings.add(optionBinding(field, optionAnnotation, access));
+			}
+
+			if (sectionAnnotation != null) {
+				bindings.add(FieldBinding.section(field.getName(), access)
+					.name(sectionAnnotation.name())
+					.description(sectionAnnotation.description())
+					.optional(sectionAnnotation.optional()));
+			}
+
+			if (undeclaredAnnotation != null) {
+				bindings.add(FieldBinding.undeclaredOptions(field.getName(), access));
+			}
+		}
+
+		this.fields = buildFields(bindings);
+		this.sections = collectSections(fields);
+		this.mappingError = mappingError;
+	}
+
+	/**
+	 * Build the schema from a generated binding
+	 * @param type the mapped class
+	 * @param binding the binding of the class
+	 */
+	private ClassSchema(Class<?> type, ConfigBinding<?> binding) {
+		this.type = type;
+		this.constructor = null;
+		this.binding = binding;
+		this.fields = buildFields(binding.fields());
+		this.sections = collectSections(fields);
+		this.mappingError = null;
+	}
+
+	/**
+	 * Get the schema of given class, compiling it if necessary
+	 * @param type the mapped class
+	 * @return the schema of the class
+	 */
+	static ClassSchema of(Class<?> type) {
+		return SCHEMAS.get(type);
+	}
+
+	/**
+	 * Check that all annotated fields of the class can be mapped
+	 * @throws MappingException when a field cannot be mapped
+	 */
+	void checkMappable() throws MappingException {
+		if (mappingError != null) {
+			throw new MappingException(mappingError);
+		}
+	}
+
+	/**
+	 * Can instances of the class be created by the mapper?
+	 * @return true if the class has a default constructor or a binding
+	 */
+	boolean isInstantiable() {
+		return constructor != null || binding != null;
+	}
+
+	/**
+	 * Create an instance of the class using its default constructor
+	 * @return the new instance
+	 * @throws MappingException when the class has no default constructor or when the constructor fails
+	 */
+	Object newInstance() throws MappingException {
+		if (binding != null) {
+			try {
+				return binding.newInstance();
+			} catch (RuntimeException e) {
+				throw new MappingException(String.format(
+					"The constructor of class %s threw an exception",
+					type.getName()
+				), e);
+			}
+		}
+
+		if (constructor == null) {
+			throw new MappingException(String.format(
+				"Mapped class %s has no default constructor",
+				type.getName()
+			));
+		}
+
+		try {
+			return constructor.newInstance();
+		} catch (InstantiationException e) {
+			throw new MappingException(String.format(
+				"Could not instantiate mapped class %s",
+				type.getName()
+			), e);
+		} catch (InvocationTargetException e) {
+			throw new MappingException(String.format(
+				"The constructor of class %s threw an exception",
+				type.getName()
+			), e);
+		} catch (IllegalAccessException e) {
+			// This shouldn't happen, the constructor has been made accessible
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Get the name of the binding class generated for given class
+	 * @param binaryName the binary name of the mapped class
+	 * @return the binary name of the binding class
+	 */
+	static String bindingName(String binaryName) {
+		int packageEnd = binaryName.lastIndexOf('.') + 1;
+		return binaryName.substring(0, packageEnd) + binaryName.substring(packageEnd).replace('$', '_') + BINDING_SUFFIX;
+	}
+
+	/**
+	 * Find the generated binding of a class
+	 * @param type the mapped class
+	 * @return the binding or null if there is none
+	 */
+	private static ConfigBinding<?> findBinding(Class<?> type) {
+		if (type.isPrimitive() || type.isArray()) {
+			return null;
+		}
+
+		Class<?> bindingClass;
+
+		try {
+			bindingClass = Class.forName(bindingName(type.getName()), true, type.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+
+		if (!ConfigBinding.class.isAssignableFrom(bindingClass)) {
+			return null;
+		}
+
+		try {
+			ConfigBinding<?> binding = (ConfigBinding<?>) bindingClass.getConstructor().newInstance();
+			return binding.type() == type ? binding : null;
+		} catch (ReflectiveOperationException e) {
+			// An unusable binding - fall back to reflection
+			return null;
+		}
+	}
+
+	/**
+	 * Describe a field annotated with {@link ConfigOption} using its annotations
+	 * @param field the field
+	 * @param annotation the option annotation of the field
+	 * @param access reads and writes the value of the field
+	 * @return the binding of the field
+	 */
+	private static FieldBinding optionBinding(Field field, ConfigOption annotation, FieldAccess access) {
+		FieldBinding binding = FieldBinding.option(field.getName(), access)
+			.name(annotation.name())
+			.section(annotation.section())
+			.description(annotation.description())
+			.optional(annotation.optional());
+
+		IntegralConstraint integralConstraint = field.getAnnotation(IntegralConstraint.class);
+		if (integralConstraint != null) {
+			binding.integralConstraint(integralConstraint.min(), integralConstraint.max(), integralConstraint.unsigned());
+		}
+
+		DecimalConstraint decimalConstraint = field.getAnnotation(DecimalConstraint.class);
+		if (decimalConstraint != null) {
+			binding.decimalConstraint(decimalConstraint.min(), decimalConstraint.max(), decimalConstraint.unsigned());
+		}
+
+		for (ConstantAlias alias : field.getAnnotationsByType(ConstantAlias.class)) {
+			binding.alias(alias.constant(), alias.alias());
+		}
+
+		return binding;
+	}
+
+	/**
+	 * Create the schemas of annotated fields
+	 * @param bindings the mapping information of the fields
+	 * @return the schemas of the fields
+	 */
+	private static List<FieldSchema> buildFields(List<FieldBinding> bindings) {
+		List<FieldSchema> fields = new ArrayList<>();
+
+		for (FieldBinding binding : bindings) {
+			switch (binding.kind) {
+				case OPTION:
+					fields.add(new OptionSchema(binding));
+					break;
+				case SECTION:
+					fields.add(new SectionSchema(binding));
+					break;
+				case UNDECLARED_OPTIONS:
+					fields.add(new UndeclaredOptionsSchema(binding));
+					break;
+			}
+		}
+
+		return Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Select the section fields
+	 * @param fields the schemas of annotated fields
+	 * @return the schemas of section fields
+	 */
+	private static List<SectionSchema> collectSections(List<FieldSchema> fields) {
+		List<SectionSchema> sections = new ArrayList<>();
+
+		for (FieldSchema field : fields) {
+			if (field instanceof SectionSchema) {
+				sections.add((SectionSchema) field);
+			}
+		}
+
+		return Collections.unmodifiableList(sections);
+	}
+
+	/**
+	 * Find the default constructor of a class and make it accessible
+	 * @param type the class
+	 * @return the constructor or null if the class doesn't have one
+	 */
+	private static Constructor<?> findConstructor(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			if (!constructor.isAccessible()) {
+				constructor.setAccessible(true);
+			}
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
+
+/**
+ * Information about an annotated field of a mapped class
+ */
+abstract class FieldSchema {
+	/**
+	 * The name of the field
+	 */
+	final String fieldName;
+
+	/**
+	 * The type of the field
+	 */
+	final Class<?> fieldType;
+
+	/**
+	 * Reads and writes the value of the field
+	 */
+	final FieldAccess accessor;
+
+	FieldSchema(FieldBinding binding) {
+		this.fieldName = binding.fieldName;
+		this.fieldType = binding.access.getType();
+		this.accessor = binding.access;
+	}
+}
+
+/**
+ * A field annotated with {@link ConfigOption}
+ */
+final class OptionSchema extends FieldSchema {
+	/**
+	 * The kinds of values an option field can hold
+	 */
+	enum Kind {
+		STRING,
+		INTEGER,
+		FLOAT,
+		DOUBLE,
+		BOOLEAN,
+		ENUM,
+		OTHER
+	}
+
+	/**
+	 * The name of the option in the configuration
+	 */
+	final String name;
+
+	/**
+	 * The name of the section given in the annotation (empty if there is none)
+	 */
+	final String section;
+
+	/**
+	 * The description of the option (empty if there is none)
+	 */
+	final String description;
+
+	/**
+	 * Is the option optional?
+	 */
+	final boolean optional;
+
+	/**
+	 * The kind of value stored in the field
+	 */
+	final Kind kind;
+
+	/**
+	 * Is the field of a numeric type?
+	 */
+	final boolean numeric;
+
+	/**
+	 * Does the field have an {@link IntegralConstraint}?
+	 */
+	final boolean hasIntegralConstraint;
+
+	/**
+	 * Bounds of the integral constraint
+	 */
+	final long integralMin, integralMax;
+
+	/**
+	 * Does the integral constraint only allow unsigned numbers?
+	 */
+	final boolean integralUnsigned;
+
+	/**
+	 * Does the field have a {@link DecimalConstraint}?
+	 */
+	final boolean hasDecimalConstraint;
+
+	/**
+	 * Bounds of the decimal constraint
+	 */
+	final double decimalMin, decimalMax;
+
+	/**
+	 * Does the decimal constraint only allow unsigned numbers?
+	 */
+	final boolean decimalUnsigned;
+
+	/**
+	 * Maps constant aliases to the names of the constants
+	 */
+	final Map<String, String> aliasToConstant;
+
+	/**
+	 * Maps constant names to their aliases
+	 */
+	final Map<String, String> constantToAlias;
+
+	/**
+	 * Maps the string representations of enum constants to the constants (empty for other types)
+	 */
+	final Map<String, Object> enumConstants;
+
+	OptionSchema(FieldBinding binding) {
+		super(binding);
+
+		Class<?> type = fieldType;
+
+		this.name = !binding.name.isEmpty() ? binding.name : fieldName;
+		this.section = binding.section;
+		this.description = binding.description;
+		this.optional = binding.optional;
+		this.kind = kindOf(type);
+		this.numeric = type == Integer.class || type == int.class
+			|| type == Long.class || type == long.class
+			|| type == Float.class || type == float.class
+			|| type == Double.class || type == double.class;
+
+		this.hasIntegralConstraint = binding.hasIntegralConstraint;
+		this.integralMin = binding.integralMin;
+		this.integralMax = binding.integralMax;
+		this.integralUnsigned = binding.integralUnsigned;
+
+		this.hasDecimalConstraint = binding.hasDecimalConstraint;
+		this.decimalMin = binding.decimalMin;
+		this.decimalMax = binding.decimalMax;
+		this.decimalUnsigned = binding.decimalUnsigned;
+
+		// When more aliases match, the first one declared is used
+		Map<String, String> aliasToConstant = new HashMap<>();
+		Map<String, String> constantToAlias = new HashMap<>();
+
+		for (String[] alias : binding.aliases) {
+			aliasToConstant.putIfAbsent(alias[1], alias[0]);
+			constantToAlias.putIfAbsent(alias[0], alias[1]);
+		}
+
+		Map<String, Object> enumConstants = new HashMap<>();
+
+		if (type.isEnum()) {
+			Object[] constants = binding.enumConstants != null ? binding.enumConstants : type.getEnumConstants();
+			for (Object constant : constants) {
+				enumConstants.putIfAbsent(constant.toString(), constant);
+			}
+		}
+
+		this.aliasToConstant = Collections.unmodifiableMap(aliasToConstant);
+		this.constantToAlias = Collections.unmodifiableMap(constantToAlias);
+		this.enumConstants = Collections.unmodifiableMap(enumConstants);
+	}
+
+	/**
+	 * Check whether an option value satisfies the {@link IntegralConstraint} and {@link DecimalConstraint} of the field
+	 * @param valueString A string representation of the option value
+	 * @throws MappingException When a constraint is not satisfied or when it is on a wrong type of field
+	 * @throws NumberFormatException When the value is not a number and the field has a constraint
+	 */
+	void checkConstraints(String valueString) throws MappingException {
+		if (hasIntegralConstraint) {
+			checkIntegralConstraint(valueString);
+		}
+
+		if (hasDecimalConstraint) {
+			checkDecimalConstraint(valueString);
+		}
+	}
+
+	/**
+	 * Check whether the option value satisfies the integral constraint
+	 * @param valueString A string representation of the option value
+	 * @throws MappingException When the constraint is not satisfied or when the annotation is on a wrong type of field
+	 */
+	private void checkIntegralConstraint(String valueString) throws MappingException {
+		if (!numeric) {
+			throw new MappingException(String.format(
+				"@IntegralConstraint is not supported on field %s with type %s",
+				fieldName,
+				fieldType.getName()
+			));
+		}
+
+		long value = Long.parseLong(valueString);
+
+		if (value > integralMax) {
+			throw new MappingException(String.format(
+				"Value %d is higher than the maximum allowed value (%d) in field %s",
+				value,
+				integralMax,
+				fieldName
+			));
+		}
+
+		if (value < integralMin) {
+			throw new MappingException(String.format(
+				"Value %d is lower than the minimum allowed value (%d) in field %s",
+				value,
+				integralMin,
+				fieldName
+			));
+		}
+
+		if (integralUnsigned && value < 0) {
+			throw new MappingException(String.format(
+				"Value of field %s is negative, but the field is unsigned",
+				fieldName
+			));
+		}
+	}
+
+	/**
+	 * Check whether the option value satisfies the decimal constraint
+	 * @param valueString A string representation of the option value
+	 * @throws MappingException When the constraint is not satisfied or when the annotation is on a wrong type of field
+	 */
+	private void checkDecimalConstraint(String valueString) throws MappingException {
+		if (!numeric) {
+			throw new MappingException(String.format(
+				"@DecimalConstraint is not supported on field %s with type %s",
+				fieldName,
+				fieldType.getName()
+			));
+		}
+
+		double value = Double.parseDouble(valueString);
+
+		if (value > decimalMax) {
+			throw new MappingException(String.format(
+				"Value %f is higher than the maximum allowed value (%f) in field %s",
+				value,
+				decimalMax,
+				fieldName
+			));
+		}
+
+		if (value < decimalMin) {
+			throw new MappingException(String.format(
+				"Value %f is lower than the minimum allowed value (%f) in field %s",
+				value,
+				decimalMin,
+				fieldName
+			));
+		}
+
+		if (decimalUnsigned && value < 0) {
+			throw new MappingException(String.format(
+				"Value of field %s is negative, but the field is unsigned",
+				fieldName
+			));
+		}
+	}
+
+	/**
+	 * Find the enum constant represented by an option value (which can also be an alias)
+	 * @param value the option value
+	 * @return the constant
+	 * @throws MappingException when there is no such constant
+	 */
+	Object resolveEnumConstant(String value) throws MappingException {
+		value = aliasToConstant.getOrDefault(value, value);
+		Object enumConstant = enumConstants.get(value);
+
+		if (enumConstant == null) {
+			throw new MappingException(String.format(
+				"Undefined constant %s",
+				value
+			));
+		}
+
+		return enumConstant;
+	}
+
+	/**
+	 * Get the string that represents an enum constant in the configuration
+	 * @param constant the constant
+	 * @return the alias of the constant or its name if it has no alias
+	 */
+	String enumConstantAlias(Object constant) {
+		String name = constant.toString();
+		return constantToAlias.getOrDefault(name, name);
+	}
+
+	/**
+	 * Determine the kind of value held by a field of given type
+	 * @param type the type of the field
+	 * @return the kind of the value
+	 */
+	private static Kind kindOf(Class<?> type) {
+		if (type == String.class) {
+			return Kind.STRING;
+		}
+
+		if (type == int.class || type == Integer.class) {
+			return Kind.INTEGER;
+		}
+
+		if (type == float.class || type == Float.class) {
+			return Kind.FLOAT;
+		}
+
+		if (type == double.class || type == Double.class) {
+			return Kind.DOUBLE;
+		}
+
+		if (type == boolean.class || type == Boolean.class) {
+			return Kind.BOOLEAN;
+		}
+
+		if (type.isEnum()) {
+			return Kind.ENUM;
+		}
+
+		return Kind.OTHER;
+	}
+}
+
+/**
+ * A field annotated with {@link ConfigSection}
+ */
+final class SectionSchema extends FieldSchema {
+	/**
+	 * The name of the section in the configuration
+	 */
+	final String name;
+
+	/**
+	 * The description of the section (empty if there is none)
+	 */
+	final String description;
+
+	/**
+	 * Is the section optional?
+	 */
+	final boolean optional;
+
+	SectionSchema(FieldBinding binding) {
+		super(binding);
+
+		this.name = !binding.name.isEmpty() ? binding.name : fieldName;
+		this.description = binding.description;
+		this.optional = binding.optional;
+	}
+}
+
+/**
+ * A field annotated with {@link UndeclaredOptions}
+ */
+final class UndeclaredOptionsSchema extends FieldSchema {
+	UndeclaredOptionsSchema(FieldBinding binding) {
+		super(binding);
+	}
+}
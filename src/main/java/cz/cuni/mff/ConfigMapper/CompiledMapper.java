@@ -0,0 +1,728 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+
+import java.util.*;
+
+/**
+ * A mapper specialized for a single root class.
+ *
+ * On first use, the layout of the class is compiled into a tree of binders - one for each option field,
+ * specialized by the type of the field, that parses the value, checks its constraints and writes it
+ * through the field's accessor. Options are dispatched to binders by name, without building paths,
+ * and saved configurations are assembled using a precomputed section tree.
+ * The results (and errors) are the same as those of the reflective path in {@link ConfigMapper}.
+ */
+final class CompiledMapper {
+	/**
+	 * Compiled mappers of root classes (classes that cannot be compiled are mapped to {@link #NOT_COMPILED})
+	 */
+	private static final ClassValue<CompiledMapper> MAPPERS = new ClassValue<CompiledMapper>() {
+		@Override
+		protected CompiledMapper computeValue(Class<?> type) {
+			return compile(type);
+		}
+	};
+
+	/**
+	 * A placeholder for classes that cannot be compiled
+	 */
+	private static final CompiledMapper NOT_COMPILED = new CompiledMapper();
+
+	/**
+	 * The layout of the mapped class
+	 */
+	private final MappingLayout layout;
+
+	/**
+	 * Binders of options placed directly in the root of the configuration, by name
+	 */
+	private final Map<String, OptionBinder> rootOptions;
+
+	/**
+	 * Binders of options placed in top-level sections, by section name and option name
+	 */
+	private final Map<String, Map<String, OptionBinder>> sectionOptions;
+
+	/**
+	 * The section tree used to assemble saved configurations
+	 */
+	private final SaveGroup saveRoot;
+
+	private CompiledMapper() {
+		this.layout = null;
+		this.rootOptions = null;
+		this.sectionOptions = null;
+		this.saveRoot = null;
+	}
+
+	private CompiledMapper(MappingLayout layout) {
+		this.layout = layout;
+		this.rootOptions = new HashMap<>();
+		this.sectionOptions = new HashMap<>();
+
+		for (int i = 0; i < layout.options.size(); i++) {
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			OptionBinder binder = OptionBinder.create(i, slot);
+
+			// Only options in the root and in top-level sections can appear in a loaded configuration
+			if (slot.path.size() == 1) {
+				rootOptions.put(slot.path.get(0), binder);
+			} else if (slot.path.size() == 2) {
+				sectionOptions.computeIfAbsent(slot.path.get(0), name -> new HashMap<>())
+					.put(slot.path.get(1), binder);
+			}
+		}
+
+		this.saveRoot = SaveGroup.build(layout);
+	}
+
+	/**
+	 * Get the compiled mapper of a root class
+	 * @param type the root mapped class
+	 * @return the compiled mapper or null if the class cannot be compiled
+	 */
+	static CompiledMapper of(Class<?> type) {
+		CompiledMapper mapper = MAPPERS.get(type);
+		return mapper != NOT_COMPILED ? mapper : null;
+	}
+
+	/**
+	 * Compile a mapper for given root class
+	 * @param type the root mapped class
+	 * @return the compiled mapper or {@link #NOT_COMPILED}
+	 */
+	private static CompiledMapper compile(Class<?> type) {
+		if (!ClassSchema.of(type).isInstantiable()) {
+			// The reflective path reports the missing constructor
+			return NOT_COMPILED;
+		}
+
+		MappingLayout layout = MappingLayout.of(type);
+
+		try {
+			layout.checkMappable();
+		} catch (MappingException e) {
+			// The reflective path reports the invalid field
+			return NOT_COMPILED;
+		}
+
+		if (!SaveGroup.isTree(layout)) {
+			// The reflective path merges options whose paths collide in an order-dependent way
+			return NOT_COMPILED;
+		}
+
+		return new CompiledMapper(layout);
+	}
+
+	/**
+	 * Map config to a newly created instance of the class
+	 * @param config The configuration tree to be mapped
+	 * @param cls The class the configuration will be mapped to
+	 * @param mode The mapping mode
+	 * @throws MappingException When the loaded configuration cannot be mapped onto an object of given class
+	 * @return A new instance of given class with options from config or null if its sections hold instances
+	 *         of subclasses, which can only be loaded by the reflective path
+	 */
+	<MappedObject> MappedObject load(ConfigRoot config, Class<MappedObject> cls, LoadingMode mode) throws MappingException {
+		MappedObject instance = ConfigMapper.constructObject(cls);
+		ConfigMapper.constructSections(instance, false);
+
+		if (!layout.matches(instance)) {
+			// The sections hold instances of subclasses, which are mapped reflectively
+			return null;
+		}
+
+		Object[] owners = ConfigMapper.resolveOwners(layout, instance);
+		Map<String, String> undeclaredOptions = ConfigMapper.resolveUndeclaredOptions(layout, owners);
+
+		if (mode == LoadingMode.RELAXED && undeclaredOptions == null) {
+			throw new MappingException(String.format(
+				"Class %s has no field with @UndeclaredOptions",
+				cls.getName()
+			));
+		}
+
+		// Options of missing optional sections are treated as undeclared
+		boolean[] removed = new boolean[layout.options.size()];
+		boolean[] set = new boolean[layout.options.size()];
+
+		for (int i = 0; i < layout.sections.size(); i++) {
+			MappingLayout.SectionSlot slot = layout.sections.get(i);
+			Object owner = owners[slot.owner];
+
+			if (owner == null || ConfigMapper.isSectionPresent(config, slot.path)) {
+				continue;
+			}
+
+			if (!slot.schema.optional) {
+				throw new MappingException(String.format(
+					"Section %s is missing in the configuration",
+					slot.path.toString()
+				));
+			}
+
+			slot.schema.accessor.set(owner, null);
+
+			for (int index : layout.sectionOptions(i)) {
+				removed[index] = true;
+			}
+		}
+
+		if (config instanceof CompactConfigRoot) {
+			loadEntries((CompactConfigRoot) config, owners, removed, set, mode, undeclaredOptions);
+		} else {
+			for (ConfigNode node : config.getChildren()) {
+				if (node instanceof Section) {
+					Map<String, OptionBinder> binders = sectionOptions.get(node.getName());
+
+					for (ConfigNode child : ((Section) node).getChildren()) {
+						if (!(child instanceof Option)) {
+							throw new MappingException("Unsupported configuration structure");
+						}
+
+						OptionBinder binder = binders != null ? binders.get(child.getName()) : null;
+						loadOption((Option) child, binder, node.getName(), owners, removed, set, mode, undeclaredOptions);
+					}
+				} else if (node instanceof Option) {
+					OptionBinder binder = rootOptions.get(node.getName());
+					loadOption((Option) node, binder, null, owners, removed, set, mode, undeclaredOptions);
+				} else {
+					throw new MappingException("Unsupported structure of the configuration tree");
+				}
+			}
+		}
+
+		for (int i = 0; i < set.length; i++) {
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+
+			if (!removed[i] && owners[slot.owner] != null && !slot.schema.optional && !set[i]) {
+				throw new MappingException(String.format(
+					"Required option %s is missing",
+					slot.path.toString()
+				));
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Map the entries of a compact configuration tree using the binders, without creating nodes
+	 */
+	private void loadEntries(
+		CompactConfigRoot config,
+		Object[] owners,
+		boolean[] removed,
+		boolean[] set,
+		LoadingMode mode,
+		Map<String, String> undeclaredOptions
+	) throws MappingException {
+		for (int entry = 0; entry < config.getEntryCount(); entry = config.getEnd(entry)) {
+			String name = config.getName(entry);
+
+			if (!config.isSection(entry)) {
+				loadEntry(config, entry, rootOptions.get(name), null, owners, removed, set, mode, undeclaredOptions);
+				continue;
+			}
+
+			Map<String, OptionBinder> binders = sectionOptions.get(name);
+
+			for (int child = entry + 1; child < config.getEnd(entry); child = config.getEnd(child)) {
+				if (config.isSection(child)) {
+					throw new MappingException("Unsupported configuration structure");
+				}
+
+				OptionBinder binder = binders != null ? binders.get(config.getName(child)) : null;
+				loadEntry(config, child, binder, name, owners, removed, set, mode, undeclaredOptions);
+			}
+		}
+	}
+
+	/**
+	 * Map an option using its binder
+	 * @param option the option to be mapped
+	 * @param binder the binder of the option (null for undeclared options)
+	 * @param sectionName the name of the section that contains the option (null for options in the root)
+	 */
+	private void loadOption(
+		Option option,
+		OptionBinder binder,
+		String sectionName,
+		Object[] owners,
+		boolean[] removed,
+		boolean[] set,
+		LoadingMode mode,
+		Map<String, String> undeclaredOptions
+	) throws MappingException {
+		Object owner = binder != null && !removed[binder.index] ? owners[binder.owner] : null;
+
+		if (owner == null) {
+			String path = undeclaredPath(option.getName(), sectionName, mode);
+
+			if (option instanceof ScalarOption) {
+				undeclaredOptions.put(path, ((ScalarOption) option).getValue());
+			} else if (option instanceof ListOption) {
+				ListOption listOption = (ListOption) option;
+				undeclaredOptions.put(path, String.join(listOption.getSeparator(), listOption.getValueView()));
+			}
+
+			return;
+		}
+
+		try {
+			if (binder.bind(owner, option)) {
+				set[binder.index] = true;
+			}
+		} catch (IllegalArgumentException e) {
+			throw ConfigMapper.invalidValue(binder.schema);
+		}
+	}
+
+	/**
+	 * Map an option entry of a compact configuration tree using its binder
+	 * @param config the configuration tree
+	 * @param entry the option entry
+	 * @param binder the binder of the option (null for undeclared options)
+	 * @param sectionName the name of the section that contains the option (null for options in the root)
+	 */
+	private void loadEntry(
+		CompactConfigRoot config,
+		int entry,
+		OptionBinder binder,
+		String sectionName,
+		Object[] owners,
+		boolean[] removed,
+		boolean[] set,
+		LoadingMode mode,
+		Map<String, String> undeclaredOptions
+	) throws MappingException {
+		Object owner = binder != null && !removed[binder.index] ? owners[binder.owner] : null;
+
+		if (owner == null) {
+			String path = undeclaredPath(config.getName(entry), sectionName, mode);
+			undeclaredOptions.put(path, config.isList(entry)
+				? String.join(config.getSeparator(entry), config.getListValue(entry))
+				: config.getValue(entry));
+			return;
+		}
+
+		try {
+			boolean bound = config.isList(entry)
+				? binder.bindList(owner, config.getListValue(entry))
+				: binder.bindScalarValue(owner, config.getValue(entry), config.getBooleanValue(entry));
+
+			if (bound) {
+				set[binder.index] = true;
+			}
+		} catch (IllegalArgumentException e) {
+			throw ConfigMapper.invalidValue(binder.schema);
+		}
+	}
+
+	/**
+	 * Get the path under which an undeclared option is stored
+	 * @param name the name of the option
+	 * @param sectionName the name of the section that contains the option (null for options in the root)
+	 * @param mode the loading mode
+	 * @return the path
+	 * @throws MappingException when strict {@link LoadingMode} is used
+	 */
+	private static String undeclaredPath(String name, String sectionName, LoadingMode mode) throws MappingException {
+		String path = sectionName != null
+			? sectionName + Path.COMPONENT_SEPARATOR + name
+			: name;
+
+		if (mode != LoadingMode.RELAXED) {
+			throw new MappingException(String.format(
+				"Undeclared option %s",
+				path
+			));
+		}
+
+		return path;
+	}
+
+	/**
+	 * Store mapped options from an object to a new configuration structure
+	 * @param object The source instance
+	 * @param hints The hints recorded from the configuration used to load the object (null if there are none)
+	 * @param keepDefaults Should the result contain default values?
+	 * @throws MappingException When the mapped object is invalid
+	 * @return The new configuration structure or null if the object contains undeclared options or its sections
+	 *         hold instances of subclasses, which can only be saved by the reflective path
+	 */
+	ConfigRoot save(Object object, SaveHints hints, boolean keepDefaults) throws MappingException {
+		if (!layout.matches(object)) {
+			return null;
+		}
+
+		Object[] owners = ConfigMapper.resolveOwners(layout, object);
+		Map<String, String> undeclaredOptions = ConfigMapper.resolveUndeclaredOptions(layout, owners);
+
+		if (undeclaredOptions != null && !undeclaredOptions.isEmpty()) {
+			return null;
+		}
+
+		Object[] defaultOwners = null;
+
+		if (!keepDefaults) {
+			Object defaultObject = ConfigMapper.constructObject(object.getClass());
+			ConfigMapper.constructSections(defaultObject, true);
+
+			if (!layout.matches(defaultObject)) {
+				return null;
+			}
+
+			defaultOwners = ConfigMapper.resolveOwners(layout, defaultObject);
+			ConfigMapper.resolveUndeclaredOptions(layout, defaultOwners);
+		}
+
+		for (int i = 0; i < layout.sections.size(); i++) {
+			MappingLayout.SectionSlot slot = layout.sections.get(i);
+
+			if (owners[slot.owner] != null && !slot.schema.optional && owners[i + 1] == null) {
+				throw new MappingException(String.format("Section %s is null", slot.path));
+			}
+		}
+
+		Option[] nodes = new Option[layout.options.size()];
+
+		for (int i = 0; i < nodes.length; i++) {
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			OptionSchema schema = slot.schema;
+			Object owner = owners[slot.owner];
+
+			if (owner == null) {
+				continue;
+			}
+
+			if (!schema.accessor.isPrimitive() && schema.accessor.get(owner) == null) {
+				if (!schema.optional) {
+					throw new MappingException(String.format("Missing option %s", slot.path));
+				}
+
+				continue;
+			}
+
+			boolean present = hints != null && hints.isPresent(i);
+			Option node = ConfigMapper.storeOptionValue(slot.path.lastComponent(), schema, owner);
+
+			if (present && !hints.getDescription(i).isEmpty()) {
+				node.setDescription(hints.getDescription(i));
+			}
+
+			if (!keepDefaults && defaultOwners[slot.owner] != null) {
+				boolean defaultEqual = schema.accessor.valuesEqual(owner, defaultOwners[slot.owner]);
+				boolean originalEqual = present && hints.isOriginal(i, node);
+
+				if (!originalEqual && schema.optional && defaultEqual) {
+					continue;
+				}
+			}
+
+			nodes[i] = node;
+		}
+
+		List<ConfigNode> children = saveRoot.assemble(nodes, owners);
+
+		return new ConfigRoot("", children.isEmpty() ? Collections.emptyList() : children);
+	}
+
+	/**
+	 * A node of the precomputed section tree of a saved configuration
+	 */
+	private static final class SaveGroup {
+		/**
+		 * The name of the section
+		 */
+		final String name;
+
+		/**
+		 * Index of the section field with the same path in the layout (-1 if there is none)
+		 */
+		final int section;
+
+		/**
+		 * Children in the order of appearance - option indices (Integer) and subsections (SaveGroup)
+		 */
+		final List<Object> children = new ArrayList<>();
+
+		/**
+		 * The layout the group belongs to
+		 */
+		final MappingLayout layout;
+
+		private SaveGroup(String name, int section, MappingLayout layout) {
+			this.name = name;
+			this.section = section;
+			this.layout = layout;
+		}
+
+		/**
+		 * Check if no option path of a layout is a prefix of another option path
+		 * (only then the options form a tree that the save algorithm reproduces)
+		 * @param layout the layout
+		 * @return true if the options form a tree
+		 */
+		static boolean isTree(MappingLayout layout) {
+			Set<Path> prefixes = new HashSet<>();
+
+			for (MappingLayout.OptionSlot slot : layout.options) {
+				for (Path path = slot.path.prefix(); path.size() > 0; path = path.prefix()) {
+					prefixes.add(path);
+				}
+			}
+
+			for (MappingLayout.OptionSlot slot : layout.options) {
+				if (prefixes.contains(slot.path)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Build the section tree of a layout
+		 * @param layout the layout
+		 * @return the root of the tree
+		 */
+		static SaveGroup build(MappingLayout layout) {
+			Map<Path, Integer> sectionIndices = new HashMap<>();
+			for (int i = 0; i < layout.sections.size(); i++) {
+				sectionIndices.put(layout.sections.get(i).path, i);
+			}
+
+			Map<Path, SaveGroup> groups = new HashMap<>();
+			SaveGroup root = new SaveGroup("", -1, layout);
+			groups.put(Path.ROOT, root);
+
+			Map<Object, Integer> ordinals = new IdentityHashMap<>();
+
+			for (int i = 0; i < layout.options.size(); i++) {
+				Path path = layout.options.get(i).path;
+				Integer index = i;
+
+				ordinals.put(index, layout.ordinal(path));
+				group(path.prefix(), groups, sectionIndices, ordinals, layout).children.add(index);
+			}
+
+			// Sort children by their order of appearance in the mapped class
+			for (SaveGroup group : groups.values()) {
+				group.children.sort(Comparator.comparingInt(ordinals::get));
+			}
+
+			return root;
+		}
+
+		/**
+		 * Find the group with given path, creating it (and its ancestors) if necessary
+		 */
+		private static SaveGroup group(
+			Path path,
+			Map<Path, SaveGroup> groups,
+			Map<Path, Integer> sectionIndices,
+			Map<Object, Integer> ordinals,
+			MappingLayout layout
+		) {
+			SaveGroup group = groups.get(path);
+
+			if (group == null) {
+				group = new SaveGroup(path.lastComponent(), sectionIndices.getOrDefault(path, -1), layout);
+				groups.put(path, group);
+				ordinals.put(group, layout.ordinal(path));
+				group(path.prefix(), groups, sectionIndices, ordinals, layout).children.add(group);
+			}
+
+			return group;
+		}
+
+		/**
+		 * Assemble the nodes of the group
+		 * @param nodes option nodes by their index (null for skipped options)
+		 * @param owners the objects that contain the fields of the saved object
+		 * @return child nodes of the group
+		 */
+		List<ConfigNode> assemble(Option[] nodes, Object[] owners) {
+			List<ConfigNode> result = new ArrayList<>();
+
+			for (Object child : children) {
+				if (child instanceof Integer) {
+					Option node = nodes[(Integer) child];
+
+					if (node != null) {
+						result.add(node);
+					}
+				} else {
+					SaveGroup group = (SaveGroup) child;
+					List<ConfigNode> groupChildren = group.assemble(nodes, owners);
+
+					if (groupChildren.isEmpty()) {
+						continue;
+					}
+
+					Section section = new Section(group.name, groupChildren);
+
+					if (group.section != -1 && owners[layout.sections.get(group.section).owner] != null) {
+						section.setDescription(layout.sections.get(group.section).schema.description);
+					}
+
+					result.add(section);
+				}
+			}
+
+			return result;
+		}
+	}
+}
+
+/**
+ * Maps option values onto a single field, specialized by the type of the field
+ */
+abstract class OptionBinder {
+	/**
+	 * Index of the option in the layout
+	 */
+	final int index;
+
+	/**
+	 * Owner number of the field
+	 */
+	final int owner;
+
+	/**
+	 * The option field
+	 */
+	final OptionSchema schema;
+
+	/**
+	 * The accessor of the field
+	 */
+	final FieldAccess accessor;
+
+	OptionBinder(int index, MappingLayout.OptionSlot slot) {
+		this.index = index;
+		this.owner = slot.owner;
+		this.schema = slot.schema;
+		this.accessor = slot.schema.accessor;
+	}
+
+	/**
+	 * Create a binder for an option field
+	 * @param index index of the option in the layout
+	 * @param slot the option
+	 * @return a binder specialized for the type of the field
+	 */
+	static OptionBinder create(int index, MappingLayout.OptionSlot slot) {
+		switch (slot.schema.kind) {
+			case STRING:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) {
+						accessor.set(owner, value);
+					}
+				};
+			case INTEGER:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) {
+						accessor.setInt(owner, Integer.parseInt(value));
+					}
+				};
+			case FLOAT:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) {
+						accessor.setFloat(owner, Float.parseFloat(value));
+					}
+				};
+			case DOUBLE:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) {
+						accessor.setDouble(owner, Double.parseDouble(value));
+					}
+				};
+			case BOOLEAN:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) throws MappingException {
+						if (booleanValue == ParsedBoolean.NOT_BOOLEAN) {
+							throw new MappingException(String.format(
+								"Field %s requires a boolean value",
+								schema.fieldName
+							));
+						}
+
+						accessor.setBoolean(owner, booleanValue == ParsedBoolean.TRUE);
+					}
+				};
+			case ENUM:
+				return new OptionBinder(index, slot) {
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) throws MappingException {
+						accessor.set(owner, schema.resolveEnumConstant(value));
+					}
+				};
+			default:
+				// Values of other types are not mapped
+				return new OptionBinder(index, slot) {
+					@Override
+					boolean bindScalarValue(Object owner, String value, ParsedBoolean booleanValue) throws MappingException {
+						schema.checkConstraints(value);
+						return false;
+					}
+
+					@Override
+					void bindScalar(Object owner, String value, ParsedBoolean booleanValue) {
+					}
+				};
+		}
+	}
+
+	/**
+	 * Store the value of an option in the field
+	 * @param owner the object that contains the field
+	 * @param option the option
+	 * @return true if the field was set
+	 * @throws MappingException when the value violates a constraint
+	 * @throws IllegalArgumentException when the value cannot be stored in the field
+	 */
+	final boolean bind(Object owner, Option option) throws MappingException {
+		if (option instanceof ListOption) {
+			return bindList(owner, ((ListOption) option).getValueView());
+		}
+
+		if (option instanceof ScalarOption) {
+			ScalarOption scalarOption = (ScalarOption) option;
+			return bindScalarValue(owner, scalarOption.getValue(), scalarOption.getBooleanValue());
+		}
+
+		return false;
+	}
+
+	/**
+	 * Store a copy of a list value in the field
+	 * @return true if the field was set
+	 */
+	final boolean bindList(Object owner, List<String> value) {
+		accessor.set(owner, new ArrayList<>(value));
+		return true;
+	}
+
+	/**
+	 * Check the constraints of a scalar value and store it
+	 * @return true if the field was set
+	 */
+	boolean bindScalarValue(Object owner, String value, ParsedBoolean booleanValue) throws MappingException {
+		schema.checkConstraints(value);
+		bindScalar(owner, value, booleanValue);
+		return true;
+	}
+
+	/**
+	 * Parse a scalar value and store it in the field
+	 */
+	abstract void bindScalar(Object owner, String value, ParsedBoolean booleanValue) throws MappingException;
+}
@@ -0,0 +1,57 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+
+import java.util.List;
+
+/**
+ * Mapping information of a class, generated at compile time by
+ * {@link cz.cuni.mff.ConfigMapper.Processor.ConfigBindingProcessor}.
+ *
+ * A binding of class Foo is named FooConfigBinding and placed in the same package (nested classes use
+ * their binary name with '$' replaced by '_'). When a binding is present, the mapper uses it instead
+ * of inspecting the fields and annotations of the class using reflection.
+ * @param <MappedObject> the mapped class
+ */
+public interface ConfigBinding<MappedObject> {
+	/**
+	 * Get the mapped class
+	 * @return the mapped class
+	 */
+	Class<MappedObject> type();
+
+	/**
+	 * Create an instance of the mapped class using its default constructor
+	 * @return the new instance
+	 */
+	MappedObject newInstance();
+
+	/**
+	 * Describe the annotated fields of the mapped class in the order of declaration
+	 * @return the bindings of the fields
+	 */
+	List<FieldBinding> fields();
+
+	/**
+	 * Load a configuration into a new instance of the mapped class
+	 * @param config the configuration
+	 * @param mode the loading mode
+	 * @return the loaded object
+	 * @throws MappingException when the configuration doesn't match the class
+	 */
+	default MappedObject load(ConfigRoot config, LoadingMode mode) throws MappingException {
+		return new ConfigMapper().load(config, type(), mode);
+	}
+
+	/**
+	 * Save an instance of the mapped class into a configuration tree
+	 * @param object the saved object
+	 * @param original the configuration that was loaded into the object (null if there is none)
+	 * @param keepDefaults if true, options with default values are saved too
+	 * @return the configuration tree
+	 * @throws MappingException when the object cannot be saved
+	 */
+	default ConfigRoot save(MappedObject object, ConfigRoot original, boolean keepDefaults) throws MappingException {
+		return new ConfigMapper().save(object, original, keepDefaults);
+	}
+}
@@ -0,0 +1,83 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.Option;
+
+import java.util.*;
+
+/**
+ * The differences between a mapped object and the configuration it was loaded from.
+ * Options are identified by their paths (the names of their sections and the option name separated with a hash
+ * sign, e.g. section#option). The diff is created by {@link ConfigMapper#diff(Object, cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot)}.
+ */
+public final class ConfigDiff {
+	/**
+	 * New nodes of the options that are not present in the original configuration, in the order of the mapped class
+	 */
+	final Map<Path, Option> added = new LinkedHashMap<>();
+
+	/**
+	 * New nodes of the options whose values differ from the original configuration
+	 */
+	final Map<Path, Option> changed = new LinkedHashMap<>();
+
+	/**
+	 * Options of the original configuration that should be removed
+	 */
+	final List<Path> removed = new ArrayList<>();
+
+	/**
+	 * Descriptions of the sections that contain added options
+	 */
+	final Map<Path, String> sectionDescriptions = new HashMap<>();
+
+	ConfigDiff() {
+	}
+
+	/**
+	 * Get the paths of options that are not present in the original configuration
+	 * @return the paths of added options
+	 */
+	public List<String> getAdded() {
+		return toStrings(added.keySet());
+	}
+
+	/**
+	 * Get the paths of options whose values differ from the original configuration
+	 * @return the paths of changed options
+	 */
+	public List<String> getChanged() {
+		return toStrings(changed.keySet());
+	}
+
+	/**
+	 * Get the paths of options that are present in the original configuration, but not in the mapped object
+	 * (e.g. optional options set to their default values)
+	 * @return the paths of removed options
+	 */
+	public List<String> getRemoved() {
+		return toStrings(removed);
+	}
+
+	/**
+	 * Check if there are no differences
+	 * @return true if the mapped object matches the original configuration
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("added: %s, changed: %s, removed: %s", getAdded(), getChanged(), getRemoved());
+	}
+
+	private static List<String> toStrings(Collection<Path> paths) {
+		List<String> result = new ArrayList<>(paths.size());
+
+		for (Path path : paths) {
+			result.add(path.toString());
+		}
+
+		return result;
+	}
+}
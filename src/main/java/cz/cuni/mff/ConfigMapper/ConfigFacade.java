@@ -4,11 +4,13 @@ import cz.cuni.mff.ConfigMapper.Adapters.ConfigAdapter;
 import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 
 /**
  * Provides a simple API for the configuration mapping functionality
+ *
+ * A facade can be shared by multiple threads, as long as each mapped object is only used by one thread at a time.
  */
 public class ConfigFacade {
 	/**
@@ -22,9 +24,30 @@ public class ConfigFacade {
 	private final ConfigMapper mapper;
 
 	/**
-	 * Stores the configuration structures used for loading objects
+	 * Stores the save hints of the loaded objects (unless their configuration structures are kept).
+	 * The objects are compared by identity and held weakly, so that they can be collected along with their hints.
 	 */
-	private final Map<Object, ConfigRoot> originalConfigs = new HashMap<>();
+	private final WeakIdentityMap<Object, SaveHints> saveHints = new WeakIdentityMap<>();
+
+	/**
+	 * Stores the configuration structures used for loading objects (only if they are kept)
+	 */
+	private final WeakIdentityMap<Object, ConfigRoot> originalConfigs = new WeakIdentityMap<>();
+
+	/**
+	 * Whether saved files are forced to the storage device before they replace the old ones
+	 */
+	private volatile boolean syncOnSave = false;
+
+	/**
+	 * Whether the configuration structures of loaded objects are kept
+	 */
+	private volatile boolean keepLoadedConfigs = false;
+
+	/**
+	 * The cache of parsed files (null if files are always parsed)
+	 */
+	private volatile ParseCache parseCache = null;
 
 	/**
 	 * @param adapter The adapter used to read and write configuration files
@@ -34,6 +57,54 @@ public class ConfigFacade {
 		this.mapper = new ConfigMapper();
 	}
 
+	/**
+	 * Set whether saved files should be forced to the storage device (using fsync) before they replace
+	 * the old ones. This makes sure that a saved file survives a crash of the system, but it makes saving slower.
+	 * @param syncOnSave true to force saved files to the storage device
+	 */
+	public void setSyncOnSave(boolean syncOnSave) {
+		this.syncOnSave = syncOnSave;
+	}
+
+	/**
+	 * Set whether the whole configuration structures of loaded objects should be kept.
+	 * By default, only compact save hints are kept (see {@link ConfigMapper#saveHints(Class, ConfigRoot)}),
+	 * which is enough for saving objects, but saveChanges then cannot keep the order and formatting
+	 * of the loaded files.
+	 * @param keep true to keep the configuration structures
+	 */
+	public void setKeepLoadedConfigs(boolean keep) {
+		this.keepLoadedConfigs = keep;
+	}
+
+	/**
+	 * Set the cache used when loading files, so that a file that didn't change since it was parsed
+	 * is neither read nor parsed again. The cache can be shared by multiple facades (see {@link ParseCache#shared()}).
+	 * @param cache The cache or null to parse files on every load
+	 */
+	public void setParseCache(ParseCache cache) {
+		this.parseCache = cache;
+	}
+
+	/**
+	 * Enable or disable dirty tracking of loaded objects (see {@link ConfigMapper#setDirtyTracking(boolean)})
+	 * @param enabled true to enable dirty tracking
+	 */
+	public void setDirtyTracking(boolean enabled) {
+		mapper.setDirtyTracking(enabled);
+	}
+
+	/**
+	 * Check if an object changed since it was loaded (or saved using saveChanges).
+	 * Without dirty tracking, every object is considered dirty.
+	 * @param object The mapped object
+	 * @return true if the object might have changed
+	 * @throws MappingException when the mapped object is invalid
+	 */
+	public boolean isDirty(Object object) throws MappingException {
+		return mapper.isDirty(object);
+	}
+
 	/**
 	 * Load an object from an InputStream
 	 * @param input The input stream
@@ -44,12 +115,44 @@ public class ConfigFacade {
 	 * @throws ConfigurationException when the configuration file is malformed
 	 */
 	public <MappedObject> MappedObject load(InputStream input, Class<MappedObject> cls, LoadingMode mode) throws MappingException, ConfigurationException {
-		ConfigRoot config = adapter.read(input);
+		return map(adapter.read(input), cls, mode);
+	}
+
+	/**
+	 * Map a configuration structure and remember it (or its save hints) for saving the object later
+	 */
+	private <MappedObject> MappedObject map(ConfigRoot config, Class<MappedObject> cls, LoadingMode mode) throws MappingException {
 		MappedObject object = mapper.load(config, cls, mode);
-		originalConfigs.put(object, config);
+		remember(object, config);
 		return object;
 	}
 
+	/**
+	 * Remember the configuration that matches an object
+	 */
+	private void remember(Object object, ConfigRoot config) {
+		if (keepLoadedConfigs) {
+			originalConfigs.put(object, config);
+			saveHints.remove(object);
+		} else {
+			saveHints.put(object, mapper.saveHintsOf(object, config));
+			originalConfigs.remove(object);
+		}
+	}
+
+	/**
+	 * Create the configuration structure of an object, using the remembered configuration or save hints
+	 */
+	private ConfigRoot saveConfig(Object object) throws MappingException {
+		ConfigRoot originalConfig = originalConfigs.get(object);
+
+		if (originalConfig != null) {
+			return mapper.save(object, originalConfig, false);
+		}
+
+		return mapper.saveWithHints(object, saveHints.get(object), false);
+	}
+
 	/**
 	 * Load an object from an InputStream, using the strict mode
 	 * @param input The input stream
@@ -73,7 +176,25 @@ public class ConfigFacade {
 	 * @throws ConfigurationException when the configuration file is malformed
 	 */
 	public <MappedObject> MappedObject load(File file, Class<MappedObject> cls, LoadingMode mode) throws FileNotFoundException, MappingException, ConfigurationException {
-		return load(new FileInputStream(file), cls, mode);
+		ParseCache cache = parseCache;
+
+		if (cache != null) {
+			try {
+				return map(cache.read(adapter, file.toPath()), cls, mode);
+			} catch (NoSuchFileException exception) {
+				throw new FileNotFoundException(file.getPath());
+			} catch (IOException exception) {
+				throw new ConfigurationException("Problem reading the input file", exception);
+			}
+		}
+
+		try (InputStream input = new FileInputStream(file)) {
+			return load(input, cls, mode);
+		} catch (FileNotFoundException exception) {
+			throw exception;
+		} catch (IOException exception) {
+			throw new ConfigurationException("Problem reading the input file", exception);
+		}
 	}
 
 	/**
@@ -86,7 +207,36 @@ public class ConfigFacade {
 	 * @throws ConfigurationException when the configuration file is malformed
 	 */
 	public <MappedObject> MappedObject load(File file, Class<MappedObject> cls) throws FileNotFoundException, MappingException, ConfigurationException {
-		return load(new FileInputStream(file), cls, LoadingMode.STRICT);
+		return load(file, cls, LoadingMode.STRICT);
+	}
+
+	/**
+	 * Load an object from a file given by a path.
+	 * The adapter can read the file directly (e.g. using a memory mapping), which is faster for large files.
+	 * @param file The path to the input file
+	 * @param cls The class on which the configuration file should be mapped
+	 * @param mode The loading mode
+	 * @return A new instance of the mapped class
+	 * @throws IOException when the input file cannot be read
+	 * @throws MappingException when the configuration file cannot be mapped onto this mappers class
+	 * @throws ConfigurationException when the configuration file is malformed
+	 */
+	public <MappedObject> MappedObject load(Path file, Class<MappedObject> cls, LoadingMode mode) throws IOException, MappingException, ConfigurationException {
+		ParseCache cache = parseCache;
+		return map(cache != null ? cache.read(adapter, file) : adapter.read(file), cls, mode);
+	}
+
+	/**
+	 * Load an object from a file given by a path, using the strict mode
+	 * @param file The path to the input file
+	 * @param cls The class on which the configuration file should be mapped
+	 * @return A new instance of the mapped class
+	 * @throws IOException when the input file cannot be read
+	 * @throws MappingException when the configuration file cannot be mapped onto this mappers class
+	 * @throws ConfigurationException when the configuration file is malformed
+	 */
+	public <MappedObject> MappedObject load(Path file, Class<MappedObject> cls) throws IOException, MappingException, ConfigurationException {
+		return load(file, cls, LoadingMode.STRICT);
 	}
 
 	/**
@@ -96,19 +246,61 @@ public class ConfigFacade {
 	 * @throws ConfigurationException When the file cannot be saved in the format supported by the adapter
 	 */
 	public <MappedObject> void save(MappedObject object, OutputStream output) throws MappingException, ConfigurationException, IOException {
-		ConfigRoot config = mapper.save(object, originalConfigs.get(object), false);
+		ConfigRoot config = saveConfig(object);
 		adapter.write(config, output);
 	}
 
 	/**
 	 * Save an object into a file
+	 * The configuration is written into a temporary file, which then atomically replaces the output file.
+	 * If the output file already contains the same configuration, it is not modified at all.
 	 * @param object The mapped object
 	 * @param file The output file
 	 * @throws IOException when there is a problem with the output file
 	 * @throws ConfigurationException When the file cannot be saved in the format supported by the adapter
 	 */
 	public <MappedObject> void save(MappedObject object, File file) throws IOException, MappingException, ConfigurationException {
-		save(object, new FileOutputStream(file));
+		ConfigRoot config = saveConfig(object);
+		AtomicFileWriter.write(file.toPath(), output -> adapter.write(config, output), syncOnSave);
+	}
+
+	/**
+	 * Save an object into an OutputStream, changing only the options that differ from the loaded configuration.
+	 * Unlike {@link #save(Object, OutputStream)}, the order and formatting of the loaded configuration are kept
+	 * and only the nodes of changed options are created. The loaded configuration is updated to match the object.
+	 * This needs the loaded configuration structure (see {@link #setKeepLoadedConfigs(boolean)}),
+	 * otherwise the object is saved like with {@link #save(Object, OutputStream)}.
+	 * @param object The mapped object
+	 * @param output The output stream
+	 * @throws ConfigurationException When the file cannot be saved in the format supported by the adapter
+	 */
+	public <MappedObject> void saveChanges(MappedObject object, OutputStream output) throws MappingException, ConfigurationException, IOException {
+		adapter.write(applyChanges(object), output);
+	}
+
+	/**
+	 * Save an object into a file, changing only the options that differ from the loaded configuration.
+	 * The file is replaced atomically, like in {@link #save(Object, File)}.
+	 * @param object The mapped object
+	 * @param file The output file
+	 * @throws IOException when there is a problem with the output file
+	 * @throws ConfigurationException When the file cannot be saved in the format supported by the adapter
+	 */
+	public <MappedObject> void saveChanges(MappedObject object, File file) throws IOException, MappingException, ConfigurationException {
+		ConfigRoot config = applyChanges(object);
+		AtomicFileWriter.write(file.toPath(), output -> adapter.write(config, output), syncOnSave);
+	}
+
+	/**
+	 * Store the changes of an object in the configuration it was loaded from
+	 */
+	private ConfigRoot applyChanges(Object object) throws MappingException {
+		ConfigRoot originalConfig = originalConfigs.get(object);
+
+		// Without the loaded configuration, its order and formatting cannot be kept
+		ConfigRoot config = originalConfig != null ? mapper.saveChanges(object, originalConfig) : saveConfig(object);
+		remember(object, config);
+		return config;
 	}
 
 	/**
@@ -124,11 +316,13 @@ public class ConfigFacade {
 
 	/**
 	 * Save the default values for the mapped class into a file
+	 * The file is replaced atomically, like in {@link #save(Object, File)}.
 	 * @param file The output file
 	 * @throws IOException when there is a problem with the output file
 	 * @throws ConfigurationException when the default values cannot be saved in the format supported by the adapter
 	 */
 	public <MappedObject> void saveDefaults(Class<MappedObject> cls, File file) throws IOException, MappingException, ConfigurationException {
-		saveDefaults(cls, new FileOutputStream(file));
+		ConfigRoot config = mapper.saveDefaults(cls);
+		AtomicFileWriter.write(file.toPath(), output -> adapter.write(config, output), syncOnSave);
 	}
 }
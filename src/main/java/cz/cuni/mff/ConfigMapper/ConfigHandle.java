@@ -0,0 +1,187 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current version of a mapped object.
+ *
+ * Reading the current object is a single volatile read. A new object is published with {@link #set(Object)}
+ * after it is fully mapped, and every thread that reads it afterwards sees all of its fields - provided that
+ * published objects are not modified anymore. Change listeners are called asynchronously, so a slow listener
+ * never blocks the publishing thread or the readers. Each listener is called by one thread at a time, in the order
+ * of the changes, but when it falls behind, it is only told about the newest object.
+ */
+public class ConfigHandle<MappedObject> {
+	/**
+	 * Notified when a new object is published
+	 */
+	@FunctionalInterface
+	public interface ChangeListener<MappedObject> {
+		/**
+		 * @param previous the object the listener was last notified about (the initial one for the first call)
+		 * @param current the newly published object
+		 */
+		void changed(MappedObject previous, MappedObject current);
+	}
+
+	/**
+	 * Runs the listeners of handles created without an executor (there is at most one thread per listener)
+	 */
+	private static final class DefaultExecutor {
+		private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+		static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "ConfigHandle listener " + THREAD_NUMBER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * A registered listener along with the state of its notifications, which can be closed to unregister it
+	 */
+	public final class Subscription implements AutoCloseable {
+		private final ChangeListener<? super MappedObject> listener;
+
+		/**
+		 * Is a notification task queued or running?
+		 */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/**
+		 * The object the listener was last notified about (only accessed by the notification task)
+		 */
+		private MappedObject delivered;
+
+		private volatile boolean closed = false;
+
+		private Subscription(ChangeListener<? super MappedObject> listener, MappedObject delivered) {
+			this.listener = listener;
+			this.delivered = delivered;
+		}
+
+		private void schedule() {
+			if (closed || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+
+			try {
+				executor.execute(this::deliver);
+			} catch (RejectedExecutionException exception) {
+				scheduled.set(false);
+			}
+		}
+
+		/**
+		 * Notify the listener until it has seen the current object
+		 */
+		private void deliver() {
+			while (!closed) {
+				MappedObject value = current.get();
+
+				if (value != delivered) {
+					MappedObject previous = delivered;
+					delivered = value;
+					notifyListener(previous, value);
+					continue;
+				}
+
+				scheduled.set(false);
+
+				// Another change might have been published before the flag was cleared
+				if (current.get() == delivered || !scheduled.compareAndSet(false, true)) {
+					return;
+				}
+			}
+		}
+
+		private void notifyListener(MappedObject previous, MappedObject value) {
+			try {
+				listener.changed(previous, value);
+			} catch (RuntimeException exception) {
+				// A failing listener still gets the next changes
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, exception);
+			}
+		}
+
+		/**
+		 * Stop notifying the listener
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			subscriptions.remove(this);
+		}
+	}
+
+	private final AtomicReference<MappedObject> current;
+
+	private final Executor executor;
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Create a handle whose listeners run on a shared pool of daemon threads
+	 * @param initial The initial object
+	 */
+	public ConfigHandle(MappedObject initial) {
+		this(initial, DefaultExecutor.INSTANCE);
+	}
+
+	/**
+	 * @param initial The initial object
+	 * @param executor The executor used to call the listeners
+	 */
+	public ConfigHandle(MappedObject initial, Executor executor) {
+		this.current = new AtomicReference<>(initial);
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the current object
+	 * @return the most recently published object
+	 */
+	public MappedObject get() {
+		return current.get();
+	}
+
+	/**
+	 * Publish a new object and notify the listeners
+	 * @param value The new object, which must not be modified afterwards
+	 * @return The previous object
+	 */
+	public MappedObject set(MappedObject value) {
+		MappedObject previous = current.getAndSet(value);
+
+		if (previous != value) {
+			for (Subscription subscription : subscriptions) {
+				subscription.schedule();
+			}
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Register a listener for the objects published from now on
+	 * @param listener The listener
+	 * @return A subscription, which unregisters the listener when closed
+	 */
+	public Subscription addListener(ChangeListener<? super MappedObject> listener) {
+		Subscription subscription = new Subscription(listener, current.get());
+		subscriptions.add(subscription);
+
+		// An object might have been published while the listener was being added
+		subscription.schedule();
+		return subscription;
+	}
+}
@@ -1,14 +1,12 @@
 package cz.cuni.mff.ConfigMapper;
 
+import cz.cuni.mff.ConfigMapper.Adapters.ConfigEventReader;
 import cz.cuni.mff.ConfigMapper.Annotations.*;
 import cz.cuni.mff.ConfigMapper.Nodes.*;
 
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * Maps {@link ConfigNode} structures to objects and back.
@@ -17,6 +15,72 @@ import java.util.stream.Collectors;
  * Mapped classes also need to have a default (parameterless) constructor to set default values of their fields.
  */
 public class ConfigMapper {
+	/**
+	 * Should classes be mapped using compiled mappers?
+	 */
+	private volatile boolean compiledMappers = false;
+
+	/**
+	 * Should loaded objects be checked for changes?
+	 */
+	private volatile boolean dirtyTracking = false;
+
+	/**
+	 * Fingerprints of the loaded objects, by object identity (only if dirty tracking is enabled)
+	 */
+	private final WeakIdentityMap<Object, ObjectFingerprint> fingerprints = new WeakIdentityMap<>();
+
+	/**
+	 * Enable or disable compiled mappers.
+	 * When enabled, each mapped class is compiled into a specialized mapper on first use,
+	 * which makes subsequent loads and saves faster. The results are the same as with the default reflective mapping.
+	 * Classes that cannot be compiled (and saved objects with undeclared options) are still mapped reflectively.
+	 * @param enabled true to enable compiled mappers
+	 */
+	public void setCompiledMappers(boolean enabled) {
+		this.compiledMappers = enabled;
+	}
+
+	/**
+	 * Enable or disable dirty tracking.
+	 * When enabled, the values of the mapped fields of each loaded object are recorded, so that
+	 * {@link #isDirty(Object)} can tell if the object changed, and saving doesn't have to walk the configuration
+	 * the object was loaded from again. Unchanged options that would be written the same way reuse the original nodes.
+	 * @param enabled true to enable dirty tracking
+	 */
+	public void setDirtyTracking(boolean enabled) {
+		this.dirtyTracking = enabled;
+
+		if (!enabled) {
+			fingerprints.clear();
+		}
+	}
+
+	/**
+	 * Check if the mapped fields of an object changed since it was loaded (or saved using
+	 * {@link #saveChanges(Object, ConfigRoot)}). Objects that are not tracked are always dirty.
+	 * @param object The mapped object
+	 * @throws MappingException When the mapped object is invalid
+	 * @return false if dirty tracking is enabled and the object didn't change, true otherwise
+	 */
+	public boolean isDirty(Object object) throws MappingException {
+		ObjectFingerprint fingerprint = fingerprints.get(object);
+		return fingerprint == null || !fingerprint.isClean(object);
+	}
+
+	/**
+	 * Record the fingerprint of a loaded object if dirty tracking is enabled
+	 * @param object the object
+	 * @param config the configuration that matches the object (null if there is none)
+	 * @return the object
+	 */
+	private <MappedObject> MappedObject track(MappedObject object, ConfigRoot config) throws MappingException {
+		if (dirtyTracking) {
+			fingerprints.put(object, ObjectFingerprint.of(object, config));
+		}
+
+		return object;
+	}
 
 	/**
 	 * Map config to a newly created instance of a class
@@ -28,46 +92,142 @@ public class ConfigMapper {
 	 * @return A new instance of given class with options from config
 	 */
 	public <MappedObject> MappedObject load(ConfigRoot config, Class<MappedObject> cls, LoadingMode mode) throws MappingException {
+		if (compiledMappers) {
+			CompiledMapper compiled = CompiledMapper.of(cls);
+			MappedObject loaded = compiled != null ? compiled.load(config, cls, mode) : null;
+			if (loaded != null) {
+				return track(loaded, config);
+			}
+		}
+
 		// Create a new instance of the mapped class
 		MappedObject instance = constructObject(cls);
+		Context context = prepareLoad(instance, mode);
+
+		// Check if all declared sections are present in the configuration file.
+		checkSections(context, path -> isSectionPresent(config, path));
+
+		// Traverse the configuration tree and map it onto the newly created instance
+		if (config instanceof CompactConfigRoot) {
+			loadEntries((CompactConfigRoot) config, context);
+		} else {
+			for (ConfigNode node : config.getChildren()) {
+				if (node instanceof Section) {
+					loadSection((Section) node, Path.ROOT.add(node.getName()), context);
+				} else if (node instanceof Option) {
+					loadOption((Option) node, Path.ROOT.add(node.getName()), context);
+				} else {
+					throw new MappingException("Unsupported structure of the configuration tree");
+				}
+			}
+		}
+
+		checkRequiredOptions(context);
+		return track(instance, config);
+	}
+
+	/**
+	 * Map a configuration read as a sequence of events to a newly created instance of a class.
+	 * The options are stored in the fields as soon as they are read, so the configuration doesn't
+	 * have to be kept in memory. Errors are reported in the order in which they are encountered,
+	 * missing sections are detected after the whole configuration is read.
+	 * Compiled mappers are not used by this method.
+	 *
+	 * @param events The configuration events to be mapped
+	 * @param cls The class the configuration will be mapped to
+	 * @param mode The mapping mode
+	 * @throws MappingException When the loaded configuration cannot be mapped onto an object of given class
+	 * @throws ConfigurationException When the configuration cannot be read
+	 * @return A new instance of given class with options from the configuration
+	 */
+	public <MappedObject> MappedObject load(ConfigEventReader events, Class<MappedObject> cls, LoadingMode mode) throws MappingException, ConfigurationException {
+		MappedObject instance = constructObject(cls);
+		Context context = prepareLoad(instance, mode);
+
+		Set<Path> presentSections = new HashSet<>();
+		Path path = Path.ROOT;
+
+		for (ConfigEventReader.Event event = events.next(); event != ConfigEventReader.Event.END; event = events.next()) {
+			switch (event) {
+				case SECTION_START:
+					if (path.size() > 0) {
+						throw new MappingException("Unsupported configuration structure");
+					}
+
+					path = path.add(events.getName());
+					presentSections.add(path);
+					break;
+				case SECTION_END:
+					path = path.prefix();
+					break;
+				case OPTION:
+					loadValue(path.add(events.getName()), events.getValue(), events.getBooleanValue(), null, null, context);
+					break;
+				case LIST_OPTION:
+					loadValue(path.add(events.getName()), null, null, events.getListValue(), events.getSeparator(), context);
+					break;
+				default:
+					break;
+			}
+		}
+
+		checkSections(context, presentSections::contains);
+		checkRequiredOptions(context);
+		return track(instance, null);
+	}
 
+	/**
+	 * Construct the sections of a new instance of a mapped class and create a mapping context for it
+	 * @param instance the new instance
+	 * @param mode the mapping mode
+	 * @return the mapping context
+	 * @throws MappingException When the mapped class is not valid for given mode
+	 */
+	private Context prepareLoad(Object instance, LoadingMode mode) throws MappingException {
 		// Construct all sections of the mapped class
 		constructSections(instance, false);
 
-		// Create a new mapping context
-		Context context = new Context();
+		// Create a new mapping context that maps available configuration option names to corresponding fields
+		Context context = extractMappingData(instance);
 		context.mode = mode;
 
-		// Map available configuration option names to reflections of corresponding fields
-		extractMappingData(instance, context, new Path());
-
 		// If we're using the relaxed loading mode,
 		// make sure that there is a container for undeclared options
 		if (mode == LoadingMode.RELAXED && context.undeclaredOptions == null) {
 			throw new MappingException(String.format(
 				"Class %s has no field with @UndeclaredOptions",
-				cls.getName()
+				instance.getClass().getName()
 			));
 		}
 
-		// Check if all declared sections are present in the configuration file.
-		for (Map.Entry<Path, Destination> entry : context.sections.entrySet()) {
-			Path path = entry.getKey();
-			Destination destination = entry.getValue();
+		return context;
+	}
+
+	/**
+	 * Remove missing optional sections from the mapped object and their options from the context
+	 * @param context the mapping context
+	 * @param isPresent tells if the section with given path is present in the configuration
+	 * @throws MappingException When a required section is missing
+	 */
+	private void checkSections(Context context, Predicate<Path> isPresent) throws MappingException {
+		for (int i = 0; i < context.sections.length; i++) {
+			Destination destination = context.sections[i];
+
+			if (destination == null) {
+				continue;
+			}
+
+			Path path = context.layout.sections.get(i).path;
 
 			// Handle the case when a section is not present in the configuration
-			if (!isSectionPresent(config, path)) {
+			if (!isPresent.test(path)) {
 				if (destination.isOptional) {
 					// Remove optional sections from the mapped class
 					// and their options from the context
 					destination.set(null);
 
-					List<Path> toRemove = context.options.keySet().stream()
-						.filter((Path optionPath) -> optionPath.prefix().equals(path))
-						.collect(Collectors.toList());
-
-					for (Path removedPath : toRemove) {
-						context.options.remove(removedPath);
+					for (int option : context.layout.sectionOptions(i)) {
+						context.options[option] = null;
 					}
 				} else {
 					// Throw an exception if a required section is missing
@@ -78,32 +238,24 @@ public class ConfigMapper {
 				}
 			}
 		}
+	}
 
-		// Traverse the configuration tree and map it onto the newly created instance
-		for (ConfigNode node : config.getChildren()) {
-			if (node instanceof Section) {
-				loadSection((Section) node, new Path(node.getName()), context);
-			} else if (node instanceof Option) {
-				loadOption((Option) node, new Path(node.getName()), context);
-			} else {
-				throw new MappingException("Unsupported structure of the configuration tree");
-			}
-		}
-
-		// Check if all required fields have been set
-		for (Map.Entry<Path, Destination> entry : context.options.entrySet()) {
-			Destination destination = entry.getValue();
-			Path path = entry.getKey();
+	/**
+	 * Check if all required fields have been set
+	 * @param context the mapping context
+	 * @throws MappingException When a required option is missing
+	 */
+	private void checkRequiredOptions(Context context) throws MappingException {
+		for (int i = 0; i < context.options.length; i++) {
+			Destination destination = context.options[i];
 
-			if (!destination.isOptional && !destination.isSet) {
+			if (destination != null && !destination.isOptional && !destination.isSet) {
 				throw new MappingException(String.format(
 					"Required option %s is missing",
-					path.toString()
+					context.layout.options.get(i).path.toString()
 				));
 			}
 		}
-
-		return instance;
 	}
 
 	/**
@@ -113,31 +265,8 @@ public class ConfigMapper {
 	 * @return a new instance of given class
 	 * @throws MappingException when the instantiation fails
 	 */
-	private <MappedObject> MappedObject constructObject(Class<MappedObject> cls) throws MappingException {
-		try {
-			Constructor<MappedObject> constructor = cls.getDeclaredConstructor();
-			makeAccessible(constructor);
-			return constructor.newInstance();
-		} catch (NoSuchMethodException e) {
-			throw new MappingException(String.format(
-				"Mapped class %s has no default constructor",
-				cls.getName()
-			));
-		} catch (InstantiationException e) {
-			throw new MappingException(String.format(
-				"Could not instantiate mapped class %s",
-				cls.getName()
-			), e);
-		} catch (InvocationTargetException e) {
-			throw new MappingException(String.format(
-				"The constructor of class %s threw an exception",
-				cls.getName()
-			), e);
-		} catch (IllegalAccessException e) {
-			// This shouldn't happen if makeAccessible() succeeded
-			assert false;
-			throw new MappingException(""); // just to make the compiler happy
-		}
+	static <MappedObject> MappedObject constructObject(Class<MappedObject> cls) throws MappingException {
+		return cls.cast(ClassSchema.of(cls).newInstance());
 	}
 
 	/**
@@ -147,181 +276,143 @@ public class ConfigMapper {
 	 * @param requiredOnly if set to true, optional sections will not be initialized
 	 * @throws MappingException When the construction of an object fails
 	 */
-	private void constructSections(Object instance, boolean requiredOnly) throws MappingException {
-		Class<?> cls = instance.getClass();
-
-		// Traverse the fields of the object
-		for (Field field : cls.getDeclaredFields()) {
-			ConfigSection sectionAnnotation = field.getAnnotation(ConfigSection.class);
-
-			// If the field is an annotated section, check its value
-			if (sectionAnnotation != null) {
-				try {
-					makeAccessible(field);
-					boolean constructIfNotPresent = !(requiredOnly && sectionAnnotation.optional());
-
-					// If necessary, construct the section object
-					if (field.get(instance) == null && constructIfNotPresent) {
-						field.set(instance, constructObject(field.getType()));
-					}
+	static void constructSections(Object instance, boolean requiredOnly) throws MappingException {
+		// Traverse the section fields of the object
+		for (SectionSchema section : ClassSchema.of(instance.getClass()).sections) {
+			boolean constructIfNotPresent = !(requiredOnly && section.optional);
+			Object value = section.accessor.get(instance);
+
+			// If necessary, construct the section object
+			if (value == null && constructIfNotPresent) {
+				value = constructObject(section.fieldType);
+				section.accessor.set(instance, value);
+			}
 
-					// Also construct the subsections of the section
-					if (field.get(instance) != null) {
-						constructSections(field.get(instance), requiredOnly);
-					}
-				} catch (IllegalAccessException e) {
-					// If makeAccessible() succeeded, this shouldn't happen
-					assert false;
-				}
+			// Also construct the subsections of the section
+			if (value != null) {
+				constructSections(value, requiredOnly);
 			}
 		}
 	}
 
 	/**
-	 * Make the value of an object accessible via reflection API.
-	 * If the object is already accessible, there will be no reflection call.
-	 * @param object object to be made accessible
+	 * Look up the objects that contain the fields described by the layout of the object
+	 * and store them in a new mapping context.
+	 * @param instance an instance of the class to extract mapping data from
+	 * @return a mapping context for the instance
+	 * @throws MappingException When the undeclared option container is not valid
 	 */
-	private void makeAccessible(AccessibleObject object) {
-		if (!object.isAccessible()) {
-			object.setAccessible(true);
-		}
+	private Context extractMappingData(Object instance) throws MappingException {
+		return extractMappingData(instance, MappingLayout.of(instance));
 	}
 
 	/**
-	 * Extract information about annotated options, sections, etc. from given object and store them in the mapping context.
-	 * For section fields, the function is called recursively.
+	 * Look up the objects that contain the fields described by a layout and store them in a new mapping context.
 	 * @param instance an instance of the class to extract mapping data from
-	 * @param context output parameter - the mapping context where extracted options should be stored
-	 * @param path path where we currently are in the configuration tree
-	 *             (important for recursive calls on section fields)
-	 * @throws MappingException
+	 * @param layout the layout (fields of sections that hold instances of other classes are left out)
+	 * @return a mapping context for the instance
+	 * @throws MappingException When a field cannot be mapped or when the undeclared option container is not valid
 	 */
-	private void extractMappingData(Object instance, Context context, Path path) throws MappingException {
-		Class<?> cls = instance.getClass();
+	private Context extractMappingData(Object instance, MappingLayout layout) throws MappingException {
+		layout.checkMappable();
 
-		// Traverse declared fields
-		for (Field field : cls.getDeclaredFields()) {
-			processOptionAnnotation(field, instance, context, path);
-			processSectionAnnotation(field, instance, context, path);
-			processUndeclaredOptionsAnnotation(field, instance, context);
-		}
-	}
+		Context context = new Context(layout);
+		Object[] owners = resolveOwners(layout, instance);
 
-	/**
-	 * If given field has the {@link ConfigOption} annotation, save information about the option into the context
-	 * @param field the field to check
-	 * @param instance instance to check
-	 * @param context the context where the resulting information should be stored
-	 * @param path path of the section containing the field
-	 */
-	private void processOptionAnnotation(Field field, Object instance, Context context, Path path) {
-		ConfigOption optionAnnotation = field.getAnnotation(ConfigOption.class);
+		for (int i = 0; i < context.sections.length; i++) {
+			MappingLayout.SectionSlot slot = layout.sections.get(i);
+			Object owner = owners[slot.owner];
 
-		if (optionAnnotation == null) {
-			return;
+			if (owner != null) {
+				context.sections[i] = new Destination(owner, slot.schema.accessor, slot.schema.optional);
+			}
 		}
 
-		String name = !optionAnnotation.name().isEmpty()
-			? optionAnnotation.name()
-			: field.getName();
+		for (int i = 0; i < context.options.length; i++) {
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			Object owner = owners[slot.owner];
 
-		Path optionPath;
-
-		if (!optionAnnotation.section().isEmpty()) {
-			optionPath = path.add(optionAnnotation.section()).add(name);
-			context.paths.add(path.add(optionAnnotation.section()));
-		} else {
-			optionPath = path.add(name);
+			if (owner != null) {
+				context.options[i] = new Destination(owner, slot.schema.accessor, slot.schema.optional);
+			}
 		}
 
-		context.paths.add(optionPath);
+		context.undeclaredOptions = resolveUndeclaredOptions(layout, owners);
 
-		context.options.put(
-			optionPath,
-			new Destination(instance, field, optionAnnotation.optional())
-		);
+		return context;
 	}
 
 	/**
-	 * If given field has the {@link ConfigSection} annotation, save information about the section into the context
-	 * @param field the field to check
-	 * @param instance instance to check
-	 * @param context the context where the resulting information should be stored
-	 * @param path path of the section containing the field
-	 * @throws MappingException
+	 * Find the objects that contain the fields of a mapped object - the object itself and the instances of its sections
+	 * @param layout the layout of the object (see {@link MappingLayout#of(Object)})
+	 * @param instance the mapped object
+	 * @return the owners, numbered as in the layout (null for sections that are not present or that hold
+	 *         an instance of another class than the layout)
 	 */
-	private void processSectionAnnotation(Field field, Object instance, Context context, Path path) throws MappingException {
-		ConfigSection sectionAnnotation = field.getAnnotation(ConfigSection.class);
-
-		if (sectionAnnotation == null) {
-			return;
-		}
-
-		String name = !sectionAnnotation.name().isEmpty()
-			? sectionAnnotation.name()
-			: field.getName();
+	static Object[] resolveOwners(MappingLayout layout, Object instance) {
+		Object[] owners = new Object[layout.sections.size() + 1];
+		owners[0] = instance;
 
-		Path sectionPath = path.add(name);
-		context.paths.add(sectionPath);
+		// Sections precede their own fields in the layout, so their owners are always resolved first
+		for (int i = 0; i < layout.sections.size(); i++) {
+			MappingLayout.SectionSlot slot = layout.sections.get(i);
+			Object owner = owners[slot.owner];
 
-		context.sections.put(
-			sectionPath,
-			new Destination(instance, field, sectionAnnotation.optional())
-		);
+			if (owner == null) {
+				continue;
+			}
 
-		try {
-			makeAccessible(field);
-			Object sectionInstance = field.get(instance);
+			Object section = slot.schema.accessor.get(owner);
 
-			if (sectionInstance != null) {
-				extractMappingData(sectionInstance, context, sectionPath);
+			// The fields of the layout don't belong to an instance of another class
+			if (section != null && section.getClass() == slot.type) {
+				owners[i + 1] = section;
 			}
-		} catch (IllegalAccessException e) {
-			// If makeAccessible() succeeded, this shouldn't happen
-			assert false;
 		}
+
+		return owners;
 	}
 
 	/**
-	 * If given field has the {@link UndeclaredOptions} annotation, save information about the undeclared option container into the context
-	 * @param field the field to check
-	 * @param instance instance to check
-	 * @param context the context where the resulting information should be stored
-	 * @throws MappingException
+	 * Find the undeclared option container of a mapped object
+	 * @param layout the layout of the object's class
+	 * @param owners the objects that contain the fields of the mapped object
+	 * @return the container or null if there is none
+	 * @throws MappingException when there is more than one container or when the container is not a map
 	 */
-	private void processUndeclaredOptionsAnnotation(Field field, Object instance, Context context) throws MappingException {
-		UndeclaredOptions undeclaredAnnotation = field.getAnnotation(UndeclaredOptions.class);
+	static Map<String, String> resolveUndeclaredOptions(MappingLayout layout, Object[] owners) throws MappingException {
+		Map<String, String> result = null;
 
-		if (undeclaredAnnotation == null) {
-			return;
-		}
+		for (MappingLayout.UndeclaredOptionsSlot slot : layout.undeclaredOptions) {
+			Object instance = owners[slot.owner];
+
+			if (instance == null) {
+				continue;
+			}
 
-		Class<?> cls = instance.getClass();
+			Class<?> cls = instance.getClass();
 
-		if (context.undeclaredOptions != null) {
-			throw new MappingException(String.format(
-				"Class %s contains more than one field with @UndeclaredOptions",
-				cls.getName()
-			));
-		}
+			if (result != null) {
+				throw new MappingException(String.format(
+					"Class %s contains more than one field with @UndeclaredOptions",
+					cls.getName()
+				));
+			}
 
-		try {
-			makeAccessible(field);
+			Object value = slot.schema.accessor.get(instance);
 
-			if (!(field.get(instance) instanceof Map<?, ?>)) {
+			if (!(value instanceof Map<?, ?>)) {
 				throw new MappingException(String.format(
 					"Field %s of class %s is not of type Map<String, String>",
-					field.getName(),
+					slot.schema.fieldName,
 					cls.getName()
 				));
 			}
 
-			context.undeclaredOptions = (Map<String, String>) field.get(instance);
-		} catch (IllegalAccessException e) {
-			// If makeAccessible() succeeded, this shouldn't happen
-			assert false;
+			result = (Map<String, String>) value;
 		}
+
+		return result;
 	}
 
 	/**
@@ -335,71 +426,103 @@ public class ConfigMapper {
 	 * @return The new configuration structure
 	 */
 	public ConfigRoot save(Object object, ConfigRoot originalConfig, boolean keepDefaults) throws MappingException {
-		// Load metadata from the class
-		Context context = new Context();
-		extractMappingData(object, context, new Path());
+		if (originalConfig == null) {
+			return save(object, null, null, keepDefaults);
+		}
 
-		// Make another context from a default object of the mapped class
-		Context defaultContext = new Context();
+		// The hints recorded by dirty tracking save walking the configuration again
+		ObjectFingerprint fingerprint = fingerprints.get(object);
+		SaveHints hints = fingerprint != null && fingerprint.isFor(originalConfig)
+			? fingerprint.hints
+			: saveHintsOf(object, originalConfig);
+		return save(object, originalConfig, hints, keepDefaults);
+	}
 
-		if (!keepDefaults) {
-			Object defaultObject = constructObject(object.getClass());
-			constructSections(defaultObject, true);
-			extractMappingData(defaultObject, defaultContext, new Path());
-		}
+	/**
+	 * Store mapped options from an object to a new configuration structure,
+	 * using the hints recorded from the configuration the object was loaded from instead of the configuration itself.
+	 *
+	 * @param object The source instance
+	 * @param hints The hints recorded from the configuration used to load the object (null if there are none)
+	 * @param keepDefaults Should the result contain default values?
+	 * @throws MappingException When the mapped object is invalid
+	 * @return The new configuration structure
+	 */
+	public ConfigRoot saveWithHints(Object object, SaveHints hints, boolean keepDefaults) throws MappingException {
+		return save(object, null, hints, keepDefaults);
+	}
 
-		// Check if all non-optional sections are present
-		for (Path path : context.sections.keySet()) {
-			Destination destination = context.sections.get(path);
-			Object value = destination.get();
+	/**
+	 * Record what saving an object needs to know about the configuration it was loaded from.
+	 * The hints take much less memory than the configuration.
+	 *
+	 * @param cls The mapped class
+	 * @param config The configuration used to load an object of the class
+	 * @return The hints for {@link #saveWithHints(Object, SaveHints, boolean)}
+	 */
+	public SaveHints saveHints(Class<?> cls, ConfigRoot config) {
+		return SaveHints.of(MappingLayout.of(cls), config);
+	}
 
-			if (!destination.isOptional && value == null) {
-				throw new MappingException(String.format("Section %s is null", path));
-			}
+	/**
+	 * Record the save hints of a loaded object, whose sections might hold instances of subclasses
+	 * of their declared types
+	 * @param object the mapped object
+	 * @param config the configuration used to load the object
+	 * @return the hints
+	 */
+	SaveHints saveHintsOf(Object object, ConfigRoot config) {
+		return SaveHints.of(MappingLayout.of(object), config);
+	}
+
+	private ConfigRoot save(Object object, ConfigRoot originalConfig, SaveHints hints, boolean keepDefaults) throws MappingException {
+		MappingLayout layout = MappingLayout.of(object);
+
+		if (hints != null && !hints.isFor(layout)) {
+			hints = null;
 		}
 
-		/**
-		 * A simple holder for a config node and its path
-		 */
-		class ConfigItem {
-			private Path path;
-			private ConfigNode node;
+		// The fingerprint is only useful if it was recorded for the same configuration
+		ObjectFingerprint fingerprint = originalConfig != null ? fingerprints.get(object) : null;
+		if (fingerprint != null && !(fingerprint.isFor(originalConfig) && fingerprint.isFor(layout))) {
+			fingerprint = null;
+		}
 
-			private ConfigItem(Path path, ConfigNode node) {
-				this.path = path;
-				this.node = node;
+		if (compiledMappers && fingerprint == null) {
+			CompiledMapper compiled = CompiledMapper.of(object.getClass());
+			ConfigRoot result = compiled != null ? compiled.save(object, hints, keepDefaults) : null;
+			if (result != null) {
+				return result;
 			}
 		}
 
-		// Make a data structure that will contain configuration nodes along with their paths,
-		// sorted by the length of their paths (longest path first),
-		// and then by their order of appearance in the mapped class
-		SortedSet<ConfigItem> items = new TreeSet<>((ConfigItem i1, ConfigItem i2) -> {
-			// Items with longer paths go first
-			int diff = i2.path.size() - i1.path.size();
+		// Load metadata from the class
+		Context context = extractMappingData(object, layout);
+
+		// Another context from a default object of the mapped class (created when it's needed)
+		Context defaultContext = null;
 
-			if (diff != 0) {
-				return diff;
-			}
+		checkRequiredSections(context);
 
-			// When paths have equal lengths, compare order of appearance
-			int pos1 = context.paths.indexOf(i1.path);
-			int pos2 = context.paths.indexOf(i2.path);
+		// Positions of paths of undeclared options that are not declared in the mapped class
+		Map<Path, Integer> undeclaredOrdinals = new HashMap<>();
 
-			// Both of the paths should be present in the context
-			assert pos1 != -1;
-			assert pos2 != -1;
+		// Option nodes with their paths, in the order of insertion
+		List<ConfigItem> items = new ArrayList<>();
 
-			return pos1 - pos2;
-		});
+		// Collect the option nodes
+		for (int i = 0; i < context.options.length; i++) {
+			Destination destination = context.options[i];
+
+			if (destination == null) {
+				continue;
+			}
 
-		// Populate the item set with option nodes
-		for (Path path : context.options.keySet()) {
-			Destination destination = context.options.get(path);
-			Object value = destination.get();
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			Path path = slot.path;
 
 			// If a required option is missing, throw an exception
-			if (value == null) {
+			if (destination.isNull()) {
 				if (!destination.isOptional) {
 					throw new MappingException(String.format("Missing option %s", path));
 				}
@@ -407,28 +530,35 @@ public class ConfigMapper {
 				continue;
 			}
 
-			Option originalOption = null;
-			if (originalConfig != null) {
-				ConfigNode node = getNode(originalConfig, path);
-				if (node instanceof Option) {
-					originalOption = (Option) node;
-				}
+			boolean present = hints != null && hints.isPresent(i);
+			String originalDescription = present ? hints.getDescription(i) : "";
+
+			Option node = storeOptionValue(path.lastComponent(), slot.schema, destination.instance);
+
+			if (!originalDescription.isEmpty()) {
+				node.setDescription(originalDescription);
 			}
 
-			Option node = storeOptionValue(path.lastComponent(), destination.field, value);
+			// An unchanged option reuses the original node, unless the original is written differently
+			if (fingerprint != null && present && fingerprint.isClean(i, destination.instance)) {
+				ConfigNode original = getNode(originalConfig, path);
 
-			if (originalOption != null && !originalOption.getDescription().isEmpty()) {
-				node.setDescription(originalOption.getDescription());
+				if (node.equals(original)) {
+					node = (Option) original;
+				}
+			}
+
+			if (!keepDefaults && defaultContext == null) {
+				defaultContext = createDefaultContext(object.getClass(), layout);
 			}
 
 			// If an option is optional and equal to its default value, skip it
 			// (unless keepDefaults is set or it was in the original config)
-			if (!keepDefaults && defaultContext.options.containsKey(path)) {
-				Destination defaultDestination = defaultContext.options.get(path);
-				Object defaultValue = defaultDestination.get();
+			if (!keepDefaults && defaultContext.options[i] != null) {
+				Destination defaultDestination = defaultContext.options[i];
 
-				boolean defaultEqual = Objects.equals(value, defaultValue);
-				boolean originalEqual = Objects.equals(node, originalOption);
+				boolean defaultEqual = destination.valueEquals(defaultDestination);
+				boolean originalEqual = present && hints.isOriginal(i, node);
 
 				if (!originalEqual && defaultDestination.isOptional && defaultEqual) {
 					continue;
@@ -441,17 +571,19 @@ public class ConfigMapper {
 		// Insert undeclared options into the item list
 		if (context.undeclaredOptions != null) {
 			for (Map.Entry<String, String> entry : context.undeclaredOptions.entrySet()) {
-				Path path = new Path(entry.getKey().split(Path.COMPONENT_SEPARATOR));
+				Path path = Path.of(entry.getKey().split(Path.COMPONENT_SEPARATOR));
 
 				ConfigItem item = new ConfigItem(
 					path,
 					new ScalarOption(path.lastComponent(), entry.getValue())
 				);
 
-				// Insert all prefixes of the option path into the path list,
+				// Record the positions of all prefixes of the option path,
 				// so that undeclared options can be sorted in order of appearance
 				while (path.size() > 0) {
-					context.paths.add(path);
+					if (layout.ordinal(path) == -1) {
+						undeclaredOrdinals.putIfAbsent(path, layout.pathCount() + undeclaredOrdinals.size());
+					}
 					path = path.prefix();
 				}
 
@@ -464,375 +596,765 @@ public class ConfigMapper {
 			return new ConfigRoot("", Collections.emptyList());
 		}
 
-		// Until all items are at the top level (i.e. their paths only have one component)
-		while (!items.stream().allMatch((item) -> item.path.size() == 1)) {
-			// Pick item with the longest path
-			ConfigItem item = items.first();
+		// Section fields by their paths
+		Map<Path, SectionSchema> sectionSchemas = new HashMap<>();
+		for (int i = 0; i < context.sections.length; i++) {
+			if (context.sections[i] != null) {
+				sectionSchemas.put(layout.sections.get(i).path, layout.sections.get(i).schema);
+			}
+		}
 
-			// Find all items that belong in the same section and remove them from the set
-			List<ConfigItem> pickedItems = items.stream()
-				.filter(otherItem -> otherItem.path.prefix().equals(item.path.prefix()))
-				.collect(Collectors.toList());
+		return assembleTree(items, layout, undeclaredOrdinals, sectionSchemas);
+	}
 
-			items.removeAll(pickedItems);
+	/**
+	 * Create a mapping context for a new default object of a mapped class
+	 * @param cls the mapped class
+	 * @param layout the layout of the mapped object, so that the options of both contexts have the same indices
+	 * @return the mapping context
+	 * @throws MappingException When the default object cannot be created
+	 */
+	private Context createDefaultContext(Class<?> cls, MappingLayout layout) throws MappingException {
+		Object defaultObject = constructObject(cls);
+		constructSections(defaultObject, true);
+		return extractMappingData(defaultObject, layout);
+	}
 
-			// Create a new section node that contains the removed items
-			Path sectionPath = item.path.prefix();
-			Section section = new Section(sectionPath.lastComponent(), pickedItems.stream()
-				.map((ConfigItem val) -> val.node)
-				.collect(Collectors.toList())
-			);
+	/**
+	 * Check if all non-optional sections of a mapped object are present
+	 * @param context the mapping context of the object
+	 * @throws MappingException When a required section is null
+	 */
+	private static void checkRequiredSections(Context context) throws MappingException {
+		for (int i = 0; i < context.sections.length; i++) {
+			Destination destination = context.sections[i];
 
-			// Set the section description (if possible)
-			Destination sectionDestination = context.sections.get(sectionPath);
-			if (sectionDestination != null) {
-				ConfigSection sectionAnnotation = sectionDestination.field.getAnnotation(ConfigSection.class);
-				section.setDescription(sectionAnnotation.description());
+			if (destination != null && !destination.isOptional && destination.get() == null) {
+				throw new MappingException(String.format("Section %s is null", context.layout.sections.get(i).path));
 			}
-
-			// Insert the new node back into the item set
-			items.add(new ConfigItem(sectionPath, section));
 		}
-
-		// Group the top-level nodes under a root node and return it
-		return new ConfigRoot("", items.stream()
-			.map((ConfigItem item) -> item.node)
-			.collect(Collectors.toList())
-		);
 	}
 
 	/**
-	 * Create a new option node with given value
-	 * @param name name of the option
-	 * @param field the field where the option was stored
-	 * @param value the value of the option
-	 * @return a new option node
-	 * @throws MappingException when a constraint fails
+	 * Compare a mapped object with the configuration used to load it.
+	 * An option is changed when the value of its field is not equal to the original value (so that e.g. "on"
+	 * is equal to true). Optional options equal to their default values are removed, unless they are unchanged,
+	 * the same as in {@link #save(Object, ConfigRoot, boolean)}. Only the option nodes of added and changed options
+	 * are created - the configuration tree is not built.
+	 *
+	 * @param object The mapped object
+	 * @param originalConfig The configuration used to load the object (null for an empty configuration)
+	 * @throws MappingException When the mapped object is invalid
+	 * @return The differences between the object and the configuration
 	 */
-	private Option storeOptionValue(String name, Field field, Object value) throws MappingException {
-		Option node;
+	public ConfigDiff diff(Object object, ConfigRoot originalConfig) throws MappingException {
+		Context context = extractMappingData(object);
+		MappingLayout layout = context.layout;
+		Context defaultContext = createDefaultContext(object.getClass(), layout);
 
-		if (value instanceof List) {
-			node = new ListOption(name, (List<String>) value);
-		} else if (field.getType().isEnum()) {
-			String stringValue = value.toString();
+		checkRequiredSections(context);
 
-			for (ConstantAlias alias : field.getAnnotationsByType(ConstantAlias.class)) {
-				if (alias.constant().equals(stringValue)) {
-					stringValue = alias.alias();
-					break;
+		ConfigDiff diff = new ConfigDiff();
+
+		for (int i = 0; i < context.options.length; i++) {
+			Destination destination = context.options[i];
+
+			if (destination == null) {
+				continue;
+			}
+
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			Path path = slot.path;
+			Option originalOption = originalConfig != null ? getOption(originalConfig, path) : null;
+			Option node = null;
+
+			if (destination.isNull()) {
+				if (!destination.isOptional) {
+					throw new MappingException(String.format("Missing option %s", path));
+				}
+			} else {
+				node = storeOptionValue(path.lastComponent(), slot.schema, destination.instance);
+
+				if (originalOption != null && valueMatches(slot.schema, node, originalOption)) {
+					continue;
+				}
+
+				Destination defaultDestination = defaultContext.options[i];
+
+				if (defaultDestination != null && defaultDestination.isOptional && destination.valueEquals(defaultDestination)) {
+					node = null;
 				}
 			}
 
-			node = new ScalarOption(name, stringValue);
-		} else {
-			String stringValue = value.toString();
+			addDifference(diff, path, node, originalOption);
+		}
+
+		if (context.undeclaredOptions != null) {
+			for (Map.Entry<String, String> entry : context.undeclaredOptions.entrySet()) {
+				Path path = Path.of(entry.getKey().split(Path.COMPONENT_SEPARATOR));
 
-			checkIntegralConstraint(field, stringValue);
-			checkDecimalConstraint(field, stringValue);
+				// Declared options take precedence
+				if (isDeclared(path, context)) {
+					continue;
+				}
 
-			node = new ScalarOption(name, stringValue);
+				Option originalOption = originalConfig != null ? getOption(originalConfig, path) : null;
+
+				if (originalOption != null && undeclaredValueMatches(entry.getValue(), originalOption)) {
+					continue;
+				}
+
+				addDifference(diff, path, new ScalarOption(path.lastComponent(), entry.getValue()), originalOption);
+			}
 		}
 
-		ConfigOption optionAnnotation = field.getAnnotation(ConfigOption.class);
-		if (!optionAnnotation.description().isEmpty()) {
-			node.setDescription(optionAnnotation.description());
+		if (originalConfig != null) {
+			addRemovedOptions(diff, originalConfig, Path.ROOT, context);
 		}
 
-		return node;
-	}
+		// Remember the descriptions of the sections that might have to be created for the added options
+		if (!diff.added.isEmpty()) {
+			for (int i = 0; i < context.sections.length; i++) {
+				if (context.sections[i] != null) {
+					MappingLayout.SectionSlot slot = layout.sections.get(i);
+					diff.sectionDescriptions.put(slot.path, slot.schema.description);
+				}
+			}
+		}
 
-	/**
-	 * Save the default values for given class into a new ConfigNode structure
-	 * @param cls the class to save
-	 * @return a newly created configuration structure
-	 * @throws MappingException when the mapping of the class isn't correctly defined
-	 */
-	public ConfigRoot saveDefaults(Class<?> cls) throws MappingException {
-		Object object = constructObject(cls);
-		constructSections(object, true);
-		return save(object, null, true);
+		return diff;
 	}
 
 	/**
-	 * Map a section of the configuration onto an instance of the mapped class.
-	 * @param section The section to be mapped
-	 * @param path The path to the section
-	 * @param context The mapping context
-	 * @throws MappingException When the section is ill-formed
+	 * Record the difference between a new option node and the original one
+	 * @param diff the diff
+	 * @param path the path of the option
+	 * @param node the new node (null if the option shouldn't be present)
+	 * @param originalOption the original node (null if the option is not present)
 	 */
-	private void loadSection(Section section, Path path, Context context) throws MappingException {
-		for (ConfigNode node : section.getChildren()) {
-			if (node instanceof Option) {
-				loadOption((Option) node, path.add(node.getName()), context);
-			} else {
-				throw new MappingException("Unsupported configuration structure");
+	private static void addDifference(ConfigDiff diff, Path path, Option node, Option originalOption) {
+		if (node == null) {
+			if (originalOption != null) {
+				diff.removed.add(path);
 			}
+
+			return;
 		}
-	}
 
-	/**
-	 * Map an option onto an instance of the mapped class.
-	 * @param option The option to be mapped
-	 * @param path The path to the option
-	 * @param context The mapping context
-	 * @throws MappingException When the option value is not compatible with its corresponding field
-	 *                          or when the option field is undeclared and strict {@link LoadingMode} is used
+		// Lists in the configuration must not be shared with the mapped object
+		if (node instanceof ListOption) {
+			ListOption list = (ListOption) node;
+			String separator = originalOption instanceof ListOption
+				? ((ListOption) originalOption).getSeparator()
+				: list.getSeparator();
+
+			Option copy = new ListOption(list.getName(), new ArrayList<>(list.getValueView()), separator);
+			copy.setDescription(list.getDescription());
+			node = copy;
+		}
+
+		if (originalOption == null) {
+			diff.added.put(path, node);
+			return;
+		}
+
+		if (!originalOption.getDescription().isEmpty()) {
+			node.setDescription(originalOption.getDescription());
+		}
+
+		diff.changed.put(path, node);
+	}
+
+	/**
+	 * Record the options of the original configuration that are neither declared by the mapped class,
+	 * nor stored among its undeclared options
+	 * @param diff the diff
+	 * @param section a section of the original configuration
+	 * @param path the path of the section
+	 * @param context the mapping context of the mapped object
 	 */
-	private void loadOption(Option option, Path path, Context context) throws MappingException {
-		Destination destination = context.options.get(path);
+	private static void addRemovedOptions(ConfigDiff diff, Section section, Path path, Context context) {
+		for (ConfigNode node : section.getChildren()) {
+			Path nodePath = path.add(node.getName());
 
-		// Handle the case of an undeclared option
-		if (destination == null) {
-			if (context.mode != LoadingMode.RELAXED) {
-				throw new MappingException(String.format(
-					"Undeclared option %s",
-					path
-				));
+			if (node instanceof Section) {
+				addRemovedOptions(diff, (Section) node, nodePath, context);
+			} else if (node instanceof Option && !isDeclared(nodePath, context)
+				&& (context.undeclaredOptions == null || !context.undeclaredOptions.containsKey(nodePath.toString()))) {
+				diff.removed.add(nodePath);
 			}
+		}
+	}
 
-			loadUndeclaredOption(option, path, context);
-			return;
+	/**
+	 * Check if an option is declared by a present section of the mapped object
+	 */
+	private static boolean isDeclared(Path path, Context context) {
+		int index = context.layout.optionIndex(path);
+		return index != -1 && context.options[index] != null;
+	}
+
+	/**
+	 * Check if a new option node holds the same value as the original node, when interpreted as the type of the field
+	 * @param schema the field of the option
+	 * @param node the new option node
+	 * @param originalOption the original node
+	 * @return true if the values are equal
+	 */
+	private static boolean valueMatches(OptionSchema schema, Option node, Option originalOption) {
+		if (node instanceof ListOption) {
+			return originalOption instanceof ListOption
+				&& ((ListOption) node).getValueView().equals(((ListOption) originalOption).getValueView());
+		}
+
+		if (!(originalOption instanceof ScalarOption)) {
+			return false;
 		}
 
-		Field field = destination.field;
+		String value = ((ScalarOption) node).getValue();
+		ScalarOption original = (ScalarOption) originalOption;
+
+		if (value.equals(original.getValue())) {
+			return true;
+		}
 
 		try {
-			loadOptionValue(option, destination);
-		} catch (IllegalArgumentException e) {
-			throw new MappingException(String.format(
-				"Invalid value supplied for field %s of type %s",
-				field.getName(),
-				field.getType().getName()
-			));
+			switch (schema.kind) {
+				case INTEGER:
+					return Long.parseLong(value) == Long.parseLong(original.getValue());
+				case FLOAT:
+					return Float.compare(Float.parseFloat(value), Float.parseFloat(original.getValue())) == 0;
+				case DOUBLE:
+					return Double.compare(Double.parseDouble(value), Double.parseDouble(original.getValue())) == 0;
+				case BOOLEAN:
+					return original.getBooleanValue() != ParsedBoolean.NOT_BOOLEAN
+						&& (original.getBooleanValue() == ParsedBoolean.TRUE) == Boolean.parseBoolean(value);
+				case ENUM:
+					return schema.resolveEnumConstant(value) == schema.resolveEnumConstant(original.getValue());
+				default:
+					return false;
+			}
+		} catch (NumberFormatException | MappingException e) {
+			return false;
 		}
 	}
 
 	/**
-	 * Map an option to the corresponding destination
-	 * @param option the option to be mapped
-	 * @param destination where the option value shall be stored
-	 * @throws IllegalAccessException
-	 * @throws MappingException
+	 * Check if an undeclared option value is the same as the original node (lists are compared in their joined form)
 	 */
-	private void loadOptionValue(Option option, Destination destination) throws MappingException {
-		if (option instanceof ListOption) {
-			destination.set(new ArrayList<>(((ListOption) option).getValue()));
-			return;
+	private static boolean undeclaredValueMatches(String value, Option originalOption) {
+		if (originalOption instanceof ListOption) {
+			ListOption list = (ListOption) originalOption;
+			return value.equals(String.join(list.getSeparator(), list.getValueView()));
 		}
 
-		if (option instanceof ScalarOption) {
-			Field field = destination.field;
-			String value = ((ScalarOption) option).getValue();
+		return originalOption instanceof ScalarOption && value.equals(((ScalarOption) originalOption).getValue());
+	}
 
-			checkIntegralConstraint(field, value);
-			checkDecimalConstraint(field, value);
+	/**
+	 * Apply the differences between a mapped object and its original configuration to the configuration.
+	 * Changed options are replaced in place, removed options are removed (along with the sections they leave empty)
+	 * and added options are appended to their sections, which are created if necessary. The rest of the configuration
+	 * is not touched.
+	 *
+	 * @param diff The differences created by {@link #diff(Object, ConfigRoot)}
+	 * @param config The configuration the diff was created for (it is modified)
+	 * @throws MappingException When the configuration doesn't match the diff
+	 * @throws UnsupportedOperationException When the structure of the configuration cannot be modified
+	 */
+	public void apply(ConfigDiff diff, ConfigRoot config) throws MappingException {
+		for (Map.Entry<Path, Option> entry : diff.changed.entrySet()) {
+			Path path = entry.getKey();
+			Section section = findSection(config, path.prefix());
+			ConfigNode original = section != null ? section.getChild(path.lastComponent()) : null;
 
-			if (field.getType() == String.class) {
-				destination.set(value);
+			if (!(original instanceof Option)) {
+				throw new MappingException(String.format("Option %s is not present in the configuration", path));
 			}
 
-			if (field.getType() == int.class || field.getType() == Integer.class) {
-				destination.set(Integer.parseInt(value));
+			section.replaceChild(original, entry.getValue());
+		}
+
+		for (Path path : diff.removed) {
+			Path sectionPath = path.prefix();
+			Section section = findSection(config, sectionPath);
+			ConfigNode original = section != null ? section.getChild(path.lastComponent()) : null;
+
+			if (!(original instanceof Option)) {
+				throw new MappingException(String.format("Option %s is not present in the configuration", path));
 			}
 
-			if (field.getType() == float.class || field.getType() == Float.class) {
-				destination.set(Float.parseFloat(value));
+			section.removeChild(original);
+
+			// Remove the sections that were left empty
+			while (sectionPath.size() > 0 && section.getChildren().isEmpty()) {
+				Section parent = findSection(config, sectionPath.prefix());
+				parent.removeChild(section);
+				section = parent;
+				sectionPath = sectionPath.prefix();
 			}
+		}
+
+		for (Map.Entry<Path, Option> entry : diff.added.entrySet()) {
+			Path path = entry.getKey();
+			Section section = createSection(config, path.prefix(), diff.sectionDescriptions);
+			addChild(section, entry.getValue(), path);
+		}
+	}
+
+	/**
+	 * Add a node to a section of a configuration structure
+	 * @param section the section
+	 * @param node the new node
+	 * @param path the path of the new node
+	 * @throws MappingException When there already is a node with the same path
+	 */
+	private static void addChild(Section section, ConfigNode node, Path path) throws MappingException {
+		try {
+			section.addChild(node);
+		} catch (ConfigurationException e) {
+			throw new MappingException(String.format("Node %s is already present in the configuration", path), e);
+		}
+	}
+
+	/**
+	 * Store the differences between a mapped object and the configuration used to load it into the configuration.
+	 * Unlike {@link #save(Object, ConfigRoot, boolean)}, this only creates nodes for the changed options and keeps
+	 * the order of the original configuration. Compact configurations cannot be modified, so a new configuration
+	 * is created for them (and when there is no original configuration).
+	 *
+	 * @param object The mapped object
+	 * @param originalConfig The configuration used to load the object (it is modified)
+	 * @throws MappingException When the mapped object is invalid
+	 * @return The configuration of the object (the original one, unless a new one had to be created)
+	 */
+	public ConfigRoot saveChanges(Object object, ConfigRoot originalConfig) throws MappingException {
+		if (originalConfig == null || originalConfig instanceof CompactConfigRoot) {
+			ConfigRoot config = save(object, originalConfig, false);
+			track(object, config);
+			return config;
+		}
+
+		ObjectFingerprint fingerprint = fingerprints.get(object);
+		if (fingerprint != null && fingerprint.isFor(originalConfig) && fingerprint.isClean(object)) {
+			return originalConfig;
+		}
+
+		apply(diff(object, originalConfig), originalConfig);
+		track(object, originalConfig);
+		return originalConfig;
+	}
+
+	/**
+	 * Find a section with given path in a configuration structure
+	 * @return the section or null if there is none
+	 */
+	private static Section findSection(ConfigRoot config, Path path) {
+		if (path.size() == 0) {
+			return config;
+		}
+
+		ConfigNode node = getNode(config, path);
+		return node instanceof Section ? (Section) node : null;
+	}
+
+	/**
+	 * Find a section with given path in a configuration structure, creating it (and its parents) if necessary
+	 * @param config the configuration structure
+	 * @param path the path of the section
+	 * @param descriptions descriptions of new sections by their paths
+	 * @return the section
+	 * @throws MappingException When there is an option in place of the section
+	 */
+	private static Section createSection(ConfigRoot config, Path path, Map<Path, String> descriptions) throws MappingException {
+		if (path.size() == 0) {
+			return config;
+		}
+
+		Section parent = createSection(config, path.prefix(), descriptions);
+		ConfigNode node = parent.getChild(path.lastComponent());
+
+		if (node == null) {
+			Section section = new Section(path.lastComponent(), new ArrayList<>());
+			section.setDescription(descriptions.getOrDefault(path, ""));
+			addChild(parent, section, path);
+			return section;
+		}
+
+		if (!(node instanceof Section)) {
+			throw new MappingException(String.format("Option %s is present in place of a section", path));
+		}
+
+		return (Section) node;
+	}
+
+	/**
+	 * Find an option with given path in a configuration structure
+	 * @return the option or null if there is none
+	 */
+	private static Option getOption(ConfigRoot config, Path path) {
+		ConfigNode node = getNode(config, path);
+		return node instanceof Option ? (Option) node : null;
+	}
+
+	/**
+	 * Build a configuration tree from option nodes and their paths.
+	 * Nodes are processed level by level, starting with the longest paths. On each level, the nodes are sorted
+	 * by their order of appearance in the mapped class and grouped by their prefix into new sections, which
+	 * are then moved to the level above. When more nodes share a path, the one inserted first is kept.
+	 * @param items option nodes with their paths
+	 * @param layout the layout of the mapped class
+	 * @param undeclaredOrdinals positions of paths that are not declared in the mapped class
+	 * @param sectionSchemas section fields by their paths (used to set descriptions)
+	 * @return the configuration tree
+	 */
+	private static ConfigRoot assembleTree(
+		List<ConfigItem> items,
+		MappingLayout layout,
+		Map<Path, Integer> undeclaredOrdinals,
+		Map<Path, SectionSchema> sectionSchemas
+	) {
+		// Marks the positions (and therefore paths) that already have a node
+		boolean[] occupied = new boolean[layout.pathCount() + undeclaredOrdinals.size()];
+
+		// Items by the length of their path
+		List<List<ConfigItem>> levels = new ArrayList<>();
+
+		for (ConfigItem item : items) {
+			item.ordinal = ordinalOf(item.path, layout, undeclaredOrdinals);
+			addToLevel(levels, occupied, item);
+		}
+
+		for (int depth = levels.size() - 1; depth >= 2; depth--) {
+			List<ConfigItem> level = levels.get(depth);
 
-			if (field.getType() == double.class || field.getType() == Double.class) {
-				destination.set(Double.parseDouble(value));
+			if (level == null) {
+				continue;
 			}
 
-			if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-				ParsedBoolean booleanValue = ((ScalarOption) option).getBooleanValue();
-				if (booleanValue == ParsedBoolean.NOT_BOOLEAN) {
-					throw new MappingException(String.format(
-						"Field %s requires a boolean value",
-						field.getName()
-					));
-				}
+			level.sort(ConfigItem.BY_ORDINAL);
 
-				destination.set(booleanValue == ParsedBoolean.TRUE);
+			// Group the items of this level by their prefix, keeping the order of appearance
+			Map<Path, List<ConfigNode>> groups = new LinkedHashMap<>();
+
+			for (ConfigItem item : level) {
+				groups.computeIfAbsent(item.path.prefix(), prefix -> new ArrayList<>()).add(item.node);
 			}
 
-			if (field.getType().isEnum()) {
-				value = resolveEnumConstantAlias(field, value);
-				Object enumConstant = getEnumConstantByName(field.getType(), value);
+			for (Map.Entry<Path, List<ConfigNode>> group : groups.entrySet()) {
+				Path sectionPath = group.getKey();
+				Section section = new Section(sectionPath.lastComponent(), group.getValue());
 
-				if (enumConstant == null) {
-					throw new MappingException(String.format(
-						"Undefined constant %s",
-						value
-					));
+				// Set the section description (if possible)
+				SectionSchema sectionSchema = sectionSchemas.get(sectionPath);
+				if (sectionSchema != null) {
+					section.setDescription(sectionSchema.description);
 				}
 
-				destination.set(enumConstant);
+				ConfigItem sectionItem = new ConfigItem(sectionPath, section);
+				sectionItem.ordinal = ordinalOf(sectionPath, layout, undeclaredOrdinals);
+				addToLevel(levels, occupied, sectionItem);
 			}
 		}
+
+		List<ConfigItem> topLevel = levels.size() > 1 && levels.get(1) != null ? levels.get(1) : new ArrayList<>();
+		topLevel.sort(ConfigItem.BY_ORDINAL);
+
+		// Group the top-level nodes under a root node and return it
+		List<ConfigNode> children = new ArrayList<>(topLevel.size());
+		for (ConfigItem item : topLevel) {
+			children.add(item.node);
+		}
+
+		return new ConfigRoot("", children);
 	}
 
 	/**
-	 * Store an option in the undeclared option container
-	 * @param option the option to store
-	 * @param path path to the option
-	 * @param context mapping context
+	 * Get the position of a path in the order of appearance
+	 * @param path the path
+	 * @param layout the layout of the mapped class
+	 * @param undeclaredOrdinals positions of paths that are not declared in the mapped class
+	 * @return the position
 	 */
-	private void loadUndeclaredOption(Option option, Path path, Context context) {
-		if (option instanceof ScalarOption) {
-			context.undeclaredOptions.put(
-				path.toString(),
-				((ScalarOption) option).getValue()
-			);
-		} else if (option instanceof ListOption) {
-			ListOption listOption = (ListOption) option;
-			context.undeclaredOptions.put(
-				path.toString(),
-				String.join(listOption.getSeparator(), listOption.getValue())
-			);
+	private static int ordinalOf(Path path, MappingLayout layout, Map<Path, Integer> undeclaredOrdinals) {
+		int ordinal = layout.ordinal(path);
+
+		if (ordinal == -1) {
+			ordinal = undeclaredOrdinals.getOrDefault(path, -1);
 		}
+
+		// All of the paths should be known at this point
+		assert ordinal != -1;
+		return ordinal;
 	}
 
 	/**
-	 * For given enum class and string, find an enum constant with name equal to the string
-	 * @param cls an enum class
-	 * @param value the string to search for
-	 * @return enum constant with name equal to given string or null
+	 * Add an item to the list of items with the same path length, unless there already is an item with the same path
+	 * @param levels items by the length of their path
+	 * @param occupied marks the positions that already have an item
+	 * @param item the new item
 	 */
-	private Object getEnumConstantByName(Class<?> cls, String value) {
-		for (Object constant : cls.getEnumConstants()) {
-			if (constant.toString().equals(value)) {
-				return constant;
-			}
+	private static void addToLevel(List<List<ConfigItem>> levels, boolean[] occupied, ConfigItem item) {
+		if (occupied[item.ordinal]) {
+			return;
 		}
 
-		return null;
+		occupied[item.ordinal] = true;
+
+		int depth = item.path.size();
+		while (levels.size() <= depth) {
+			levels.add(null);
+		}
+
+		if (levels.get(depth) == null) {
+			levels.set(depth, new ArrayList<>());
+		}
+
+		levels.get(depth).add(item);
 	}
 
 	/**
-	 * If given string is an alias of another enum constant, return the string representation of that constant
-	 * @param field the field that contains given string
-	 * @param value the string value
-	 * @return the resolved constant name
+	 * Create a new option node with the value of a field
+	 * @param name name of the option
+	 * @param option the field where the option was stored
+	 * @param owner the object that contains the field
+	 * @return a new option node
+	 * @throws MappingException when a constraint fails
 	 */
-	private String resolveEnumConstantAlias(Field field, String value) {
-		for (ConstantAlias alias : field.getAnnotationsByType(ConstantAlias.class)) {
-			if (alias.alias().equals(value)) {
-				return alias.constant();
-			}
+	static Option storeOptionValue(String name, OptionSchema option, Object owner) throws MappingException {
+		Option node;
+		FieldAccess accessor = option.accessor;
+		Object value = accessor.isPrimitive() ? null : accessor.get(owner);
+
+		if (value instanceof List) {
+			node = new ListOption(name, (List<String>) value);
+		} else if (option.kind == OptionSchema.Kind.ENUM) {
+			node = new ScalarOption(name, option.enumConstantAlias(value));
+		} else {
+			String stringValue = value != null ? value.toString() : accessor.getString(owner);
+
+			option.checkConstraints(stringValue);
+
+			node = new ScalarOption(name, stringValue);
+		}
+
+		if (!option.description.isEmpty()) {
+			node.setDescription(option.description);
 		}
 
-		return value;
+		return node;
 	}
 
 	/**
-	 * If a {@link IntegralConstraint} annotation is present, check whether the option value satisfies the constraint
-	 * @param field The field to check
-	 * @param valueString A string representation of the option value
-	 * @throws MappingException When the constraint is not satisfied or when the annotation is on a wrong type of field
+	 * Save the default values for given class into a new ConfigNode structure
+	 * @param cls the class to save
+	 * @return a newly created configuration structure
+	 * @throws MappingException when the mapping of the class isn't correctly defined
 	 */
-	private void checkIntegralConstraint(Field field, String valueString) throws MappingException {
-		IntegralConstraint constraint = field.getAnnotation(IntegralConstraint.class);
+	public ConfigRoot saveDefaults(Class<?> cls) throws MappingException {
+		Object object = constructObject(cls);
+		constructSections(object, true);
+		return save(object, null, true);
+	}
 
-		if (constraint == null) {
-			return;
+	/**
+	 * Map a section of the configuration onto an instance of the mapped class.
+	 * @param section The section to be mapped
+	 * @param path The path to the section
+	 * @param context The mapping context
+	 * @throws MappingException When the section is ill-formed
+	 */
+	private void loadSection(Section section, Path path, Context context) throws MappingException {
+		for (ConfigNode node : section.getChildren()) {
+			if (node instanceof Option) {
+				loadOption((Option) node, path.add(node.getName()), context);
+			} else {
+				throw new MappingException("Unsupported configuration structure");
+			}
 		}
+	}
 
-		if (!isNumericField(field)) {
-			throw new MappingException(String.format(
-				"@IntegralConstraint is not supported on field %s with type %s",
-				field.getName(),
-				field.getType().getName()
-			));
-		}
+	/**
+	 * Map the entries of a compact configuration tree onto an instance of the mapped class, without creating nodes.
+	 * @param config The configuration tree
+	 * @param context The mapping context
+	 * @throws MappingException When the configuration cannot be mapped
+	 */
+	private void loadEntries(CompactConfigRoot config, Context context) throws MappingException {
+		for (int entry = 0; entry < config.getEntryCount(); entry = config.getEnd(entry)) {
+			Path path = Path.ROOT.add(config.getName(entry));
 
-		long value = Long.parseLong(valueString);
+			if (!config.isSection(entry)) {
+				loadEntry(config, entry, path, context);
+				continue;
+			}
 
-		if (value > constraint.max()) {
-			throw new MappingException(String.format(
-				"Value %d is higher than the maximum allowed value (%d) in field %s",
-				value,
-				constraint.max(),
-				field.getName()
-			));
+			for (int child = entry + 1; child < config.getEnd(entry); child = config.getEnd(child)) {
+				if (config.isSection(child)) {
+					throw new MappingException("Unsupported configuration structure");
+				}
+
+				loadEntry(config, child, path.add(config.getName(child)), context);
+			}
 		}
+	}
 
-		if (value < constraint.min()) {
-			throw new MappingException(String.format(
-				"Value %d is lower than the minimum allowed value (%d) in field %s",
-				value,
-				constraint.min(),
-				field.getName()
-			));
+	/**
+	 * Map an option onto an instance of the mapped class.
+	 * @param option The option to be mapped
+	 * @param path The path to the option
+	 * @param context The mapping context
+	 * @throws MappingException When the option value is not compatible with its corresponding field
+	 *                          or when the option field is undeclared and strict {@link LoadingMode} is used
+	 */
+	private void loadOption(Option option, Path path, Context context) throws MappingException {
+		if (option instanceof ListOption) {
+			ListOption listOption = (ListOption) option;
+			loadValue(path, null, null, listOption.getValueView(), listOption.getSeparator(), context);
+		} else if (option instanceof ScalarOption) {
+			ScalarOption scalarOption = (ScalarOption) option;
+			loadValue(path, scalarOption.getValue(), scalarOption.getBooleanValue(), null, null, context);
+		} else {
+			// Other kinds of options are not mapped
+			findOption(path, context);
 		}
+	}
 
-		if (constraint.unsigned() && value < 0) {
-			throw new MappingException(String.format(
-				"Value of field %s is negative, but the field is unsigned",
-				field.getName()
-			));
+	/**
+	 * Map an option entry of a compact configuration tree onto an instance of the mapped class.
+	 * @param config The configuration tree
+	 * @param entry The option entry
+	 * @param path The path to the option
+	 * @param context The mapping context
+	 * @throws MappingException When the option value is not compatible with its corresponding field
+	 *                          or when the option field is undeclared and strict {@link LoadingMode} is used
+	 */
+	private void loadEntry(CompactConfigRoot config, int entry, Path path, Context context) throws MappingException {
+		if (config.isList(entry)) {
+			loadValue(path, null, null, config.getListValue(entry), config.getSeparator(entry), context);
+		} else {
+			loadValue(path, config.getValue(entry), config.getBooleanValue(entry), null, null, context);
 		}
 	}
 
 	/**
-	 * If a {@link DecimalConstraint} annotation is present, check whether the option value satisfies the constraint
-	 * @param field The field to check
-	 * @param valueString A string representation of the option value
-	 * @throws MappingException When the constraint is not satisfied or when the annotation is on a wrong type of field
+	 * Map an option value onto an instance of the mapped class.
+	 * @param path The path to the option
+	 * @param value The value of a scalar option (null for lists)
+	 * @param booleanValue The value of a scalar option interpreted as a boolean
+	 * @param listValue The values of a list option (null for scalars)
+	 * @param separator The separator of a list option
+	 * @param context The mapping context
+	 * @throws MappingException When the option value is not compatible with its corresponding field
+	 *                          or when the option field is undeclared and strict {@link LoadingMode} is used
 	 */
-	private void checkDecimalConstraint(Field field, String valueString) throws MappingException {
-		DecimalConstraint constraint = field.getAnnotation(DecimalConstraint.class);
+	private void loadValue(
+		Path path,
+		String value,
+		ParsedBoolean booleanValue,
+		List<String> listValue,
+		String separator,
+		Context context
+	) throws MappingException {
+		int index = findOption(path, context);
 
-		if (constraint == null) {
+		// Handle the case of an undeclared option
+		if (index == -1) {
+			context.undeclaredOptions.put(path.toString(), listValue != null ? String.join(separator, listValue) : value);
 			return;
 		}
 
-		if (!isNumericField(field)) {
-			throw new MappingException(String.format(
-				"@DecimalConstraint is not supported on field %s with type %s",
-				field.getName(),
-				field.getType().getName()
-			));
+		OptionSchema schema = context.layout.options.get(index).schema;
+		Destination destination = context.options[index];
+
+		try {
+			if (listValue != null) {
+				destination.set(new ArrayList<>(listValue));
+			} else {
+				loadScalarValue(value, booleanValue, schema, destination);
+			}
+		} catch (IllegalArgumentException e) {
+			throw invalidValue(schema);
 		}
+	}
 
-		double value = Double.parseDouble(valueString);
+	/**
+	 * Find the destination of an option
+	 * @param path The path to the option
+	 * @param context The mapping context
+	 * @return the index of the option in the layout or -1 if the option is undeclared
+	 * @throws MappingException When the option is undeclared and strict {@link LoadingMode} is used
+	 */
+	private int findOption(Path path, Context context) throws MappingException {
+		int index = context.layout.optionIndex(path);
 
-		if (value > constraint.max()) {
-			throw new MappingException(String.format(
-				"Value %f is higher than the maximum allowed value (%f) in field %s",
-				value,
-				constraint.max(),
-				field.getName()
-			));
+		if (index != -1 && context.options[index] != null) {
+			return index;
 		}
 
-		if (value < constraint.min()) {
+		if (context.mode != LoadingMode.RELAXED) {
 			throw new MappingException(String.format(
-				"Value %f is lower than the minimum allowed value (%f) in field %s",
-				value,
-				constraint.min(),
-				field.getName()
+				"Undeclared option %s",
+				path
 			));
 		}
 
-		if (constraint.unsigned() && value < 0) {
-			throw new MappingException(String.format(
-				"Value of field %s is negative, but the field is unsigned",
-				field.getName()
-			));
-		}
+		return -1;
 	}
 
 	/**
-	 * Check if a field's type is numeric
-	 * @param field the field to be checked
-	 * @return true if the field is numeric, false otherwise
+	 * Create an exception for a value that cannot be stored in a field
+	 * @param schema the field
+	 * @return the exception
 	 */
-	private boolean isNumericField(Field field) {
-		return field.getType() == Integer.class || field.getType() == int.class
-			|| field.getType() == Long.class || field.getType() == long.class
-			|| field.getType() == Float.class || field.getType() == float.class
-			|| field.getType() == Double.class || field.getType() == double.class;
+	static MappingException invalidValue(OptionSchema schema) {
+		return new MappingException(String.format(
+			"Invalid value supplied for field %s of type %s",
+			schema.fieldName,
+			schema.fieldType.getName()
+		));
+	}
+
+	/**
+	 * Map a scalar value to the corresponding destination
+	 * @param value the value to be mapped
+	 * @param booleanValue the value interpreted as a boolean
+	 * @param schema the field where the option value shall be stored
+	 * @param destination where the option value shall be stored
+	 * @throws MappingException
+	 */
+	private void loadScalarValue(String value, ParsedBoolean booleanValue, OptionSchema schema, Destination destination) throws MappingException {
+		schema.checkConstraints(value);
+
+		switch (schema.kind) {
+			case STRING:
+				destination.set(value);
+				break;
+			case INTEGER:
+				destination.setInt(Integer.parseInt(value));
+				break;
+			case FLOAT:
+				destination.setFloat(Float.parseFloat(value));
+				break;
+			case DOUBLE:
+				destination.setDouble(Double.parseDouble(value));
+				break;
+			case BOOLEAN:
+				if (booleanValue == ParsedBoolean.NOT_BOOLEAN) {
+					throw new MappingException(String.format(
+						"Field %s requires a boolean value",
+						schema.fieldName
+					));
+				}
+
+				destination.setBoolean(booleanValue == ParsedBoolean.TRUE);
+				break;
+			case ENUM:
+				destination.set(schema.resolveEnumConstant(value));
+				break;
+			default:
+				break;
+		}
 	}
 
 	/**
@@ -841,7 +1363,12 @@ public class ConfigMapper {
 	 * @param path the path of required node
 	 * @return the node or null
 	 */
-	private ConfigNode getNode(ConfigRoot config, Path path) {
+	static ConfigNode getNode(ConfigRoot config, Path path) {
+		if (config instanceof CompactConfigRoot) {
+			int entry = findEntry((CompactConfigRoot) config, path);
+			return entry != -1 ? ((CompactConfigRoot) config).getNode(entry) : null;
+		}
+
 		Section cursor = config;
 
 		// Traverse all path components
@@ -849,22 +1376,20 @@ public class ConfigMapper {
 			String componentName = path.get(i);
 
 			// Find a child node with given name
-			Optional<ConfigNode> node = cursor.getChildren().stream()
-				.filter((ConfigNode child) -> child.getName().equals(componentName))
-				.findFirst();
+			ConfigNode node = cursor.getChild(componentName);
 
-			if (!node.isPresent()) {
+			if (node == null) {
 				// Given node was not found in the configuration
 				return null;
 			}
 
 			if (i == path.size() - 1) {
 				// Last iteration - return the node
-				return node.get();
+				return node;
 			}
 
 			// Go deeper into the configuration structure
-			cursor = (Section) node.get();
+			cursor = (Section) node;
 		}
 
 		return null;
@@ -876,86 +1401,286 @@ public class ConfigMapper {
 	 * @param path path to the section
 	 * @return true if there is a section with given path, false otherwise
 	 */
-	private boolean isSectionPresent(ConfigRoot config, Path path) {
+	static boolean isSectionPresent(ConfigRoot config, Path path) {
+		if (config instanceof CompactConfigRoot) {
+			int entry = findEntry((CompactConfigRoot) config, path);
+			return entry != -1 && ((CompactConfigRoot) config).isSection(entry);
+		}
+
 		return getNode(config, path) instanceof Section;
 	}
+
+	/**
+	 * Find an entry with given path in a compact configuration structure
+	 * @param config configuration structure to search in
+	 * @param path the path of required entry
+	 * @return the position of the entry or -1 if there is none
+	 */
+	private static int findEntry(CompactConfigRoot config, Path path) {
+		int entry = -1;
+
+		for (int i = 0; i < path.size(); i++) {
+			entry = config.findChild(entry, path.get(i));
+
+			if (entry == -1) {
+				return -1;
+			}
+		}
+
+		return entry;
+	}
+}
+
+/**
+ * A simple holder for a config node and its path
+ */
+final class ConfigItem {
+	/**
+	 * Orders items by their position in the mapped class
+	 */
+	static final Comparator<ConfigItem> BY_ORDINAL = Comparator.comparingInt(item -> item.ordinal);
+
+	final Path path;
+
+	final ConfigNode node;
+
+	/**
+	 * The position of the path in the order of appearance
+	 */
+	int ordinal;
+
+	ConfigItem(Path path, ConfigNode node) {
+		this.path = path;
+		this.node = node;
+	}
 }
 
 /**
  * A helper class that contains parts of a fully qualified name of an option.
+ *
+ * Paths are nodes of a trie - each path points to its prefix and caches its hash code and size.
+ * Only the paths declared by mapped classes are interned (see {@link #intern(String)}). Extending a path
+ * with a component returns the interned node if there is one, so building the paths of known options
+ * does not allocate anything and equal paths are usually the same object. Other paths (e.g. those of undeclared
+ * options read from a file) are created as separate nodes, which are still equal to their interned counterparts,
+ * so that the trie doesn't grow with the content of configuration files.
+ * To keep memory use bounded, a node only interns a limited number of children.
  */
-class Path {
+final class Path {
 	/**
 	 * The string used to separate path components in text representations of the path
 	 */
 	static final String COMPONENT_SEPARATOR = "#";
 
 	/**
-	 * The components of the option name.
+	 * The maximum number of children interned by a single node
+	 */
+	static final int MAX_INTERNED_CHILDREN = 1024;
+
+	/**
+	 * The empty path
+	 */
+	static final Path ROOT = new Path(null, null, true);
+
+	/**
+	 * The path without its last component (null for the empty path)
+	 */
+	private final Path parent;
+
+	/**
+	 * The last component of the path (null for the empty path)
+	 */
+	private final String component;
+
+	/**
+	 * The number of components
+	 */
+	private final int size;
+
+	/**
+	 * The hash code of the path (computed the same way as that of a list of the components)
+	 */
+	private final int hash;
+
+	/**
+	 * Is this node reachable from the root through interned nodes?
 	 */
-	private final List<String> components;
+	private final boolean interned;
 
 	/**
-	 * Constructs a new path with given components.
-	 * @param components Components of the new path
+	 * Interned children of this node by their last component (created lazily)
 	 */
-	Path(String... components) {
-		this.components = new ArrayList<>(Arrays.asList(components));
+	private volatile ConcurrentHashMap<String, Path> children;
+
+	private Path(Path parent, String component, boolean interned) {
+		this.parent = parent;
+		this.component = component;
+		this.interned = interned;
+
+		if (parent == null) {
+			this.size = 0;
+			this.hash = 1;
+		} else {
+			this.size = parent.size + 1;
+			this.hash = 31 * parent.hash + component.hashCode();
+		}
 	}
 
-	private Path(List<String> components) {
-		this.components = components;
+	/**
+	 * Get a path with given components.
+	 * @param components Components of the path
+	 * @return The path
+	 */
+	static Path of(String... components) {
+		Path path = ROOT;
+
+		for (String component : components) {
+			path = path.add(component);
+		}
+
+		return path;
 	}
 
 	/**
-	 * Construct a new path with given component appended to the path of current instance.
+	 * Get a path with given component appended to the path of current instance.
+	 * The path is not interned, but an existing interned path is returned if there is one.
 	 * @param component The path component to be added
-	 * @return A new path with
+	 * @return The extended path
 	 */
 	Path add(String component) {
-		List<String> components = new ArrayList<>(this.components);
-		components.add(component);
+		ConcurrentHashMap<String, Path> children = this.children;
+		Path child = children != null ? children.get(component) : null;
+		return child != null ? child : new Path(this, component, false);
+	}
+
+	/**
+	 * Get an interned path with given component appended to the path of current instance.
+	 * Only paths declared by mapped classes should be interned, because interned paths are never released.
+	 * @param component The path component to be added
+	 * @return The extended path (not interned if this path is not interned or has too many interned children)
+	 */
+	Path intern(String component) {
+		if (!interned) {
+			return new Path(this, component, false);
+		}
+
+		ConcurrentHashMap<String, Path> children = this.children;
+
+		if (children == null) {
+			synchronized (this) {
+				children = this.children;
+				if (children == null) {
+					children = new ConcurrentHashMap<>();
+					this.children = children;
+				}
+			}
+		}
 
-		return new Path(components);
+		Path child = children.get(component);
+
+		if (child != null) {
+			return child;
+		}
+
+		if (children.size() >= MAX_INTERNED_CHILDREN) {
+			return new Path(this, component, false);
+		}
+
+		child = new Path(this, component, true);
+		Path existing = children.putIfAbsent(component, child);
+		return existing != null ? existing : child;
 	}
 
 	@Override
 	public boolean equals(Object other) {
-		return other instanceof Path && components.equals(((Path) other).components);
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof Path)) {
+			return false;
+		}
+
+		Path path = (Path) other;
+
+		// Interned paths are unique, so two different interned nodes are never equal
+		if (interned && path.interned) {
+			return false;
+		}
+
+		Path left = this;
+		Path right = path;
+
+		if (left.hash != right.hash || left.size != right.size) {
+			return false;
+		}
+
+		while (left != right) {
+			if (!left.component.equals(right.component)) {
+				return false;
+			}
+
+			left = left.parent;
+			right = right.parent;
+		}
+
+		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		return components.hashCode();
+		return hash;
 	}
 
 	public String toString() {
+		if (size == 0) {
+			return "";
+		}
+
+		String[] components = new String[size];
+		Path path = this;
+
+		for (int i = size - 1; i >= 0; i--) {
+			components[i] = path.component;
+			path = path.parent;
+		}
+
 		return String.join(COMPONENT_SEPARATOR, components);
 	}
 
 	int size() {
-		return components.size();
+		return size;
 	}
 
 	String lastComponent() {
-		return components.get(components.size() - 1);
+		if (size == 0) {
+			throw new IndexOutOfBoundsException("The empty path has no components");
+		}
+
+		return component;
 	}
 
 	Path prefix() {
-		if (components.size() <= 1) {
-			return new Path();
-		}
-
-		return new Path(components.subList(0, components.size() - 1));
+		return size == 0 ? this : parent;
 	}
 
 	String get(int index) {
-		return components.get(index);
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+		}
+
+		Path path = this;
+
+		for (int i = size - 1; i > index; i--) {
+			path = path.parent;
+		}
+
+		return path.component;
 	}
 }
 
 /**
- * Contains a reflection of a field along with an instance of the object that contains it
+ * Contains an accessor of a field along with an instance of the object that contains it
  */
 class Destination {
 	/**
@@ -964,9 +1689,9 @@ class Destination {
 	final Object instance;
 
 	/**
-	 * Reflection of the destination field
+	 * Accessor of the destination field
 	 */
-	final Field field;
+	final FieldAccess accessor;
 
 	/**
 	 * Has the field been set yet?
@@ -978,28 +1703,56 @@ class Destination {
 	 */
 	boolean isOptional;
 
-	Destination(Object instance, Field field, boolean isOptional) {
+	Destination(Object instance, FieldAccess accessor, boolean isOptional) {
 		this.instance = instance;
-		this.field = field;
+		this.accessor = accessor;
 		this.isOptional = isOptional;
-
-		if (!field.isAccessible()) {
-			field.setAccessible(true);
-		}
 	}
 
 	/**
 	 * Set the field's value
 	 * @param value value to set
+	 * @throws IllegalArgumentException when the value cannot be stored in the field
 	 */
 	public void set(Object value) {
-		try {
-			field.set(instance, value);
-			isSet = true;
-		} catch (IllegalAccessException e) {
-			// This shouldn't happen if setAccessible() succeeded
-			assert false;
-		}
+		accessor.set(instance, value);
+		isSet = true;
+	}
+
+	/**
+	 * Set the value of an integer field
+	 * @param value value to set
+	 */
+	public void setInt(int value) {
+		accessor.setInt(instance, value);
+		isSet = true;
+	}
+
+	/**
+	 * Set the value of a float field
+	 * @param value value to set
+	 */
+	public void setFloat(float value) {
+		accessor.setFloat(instance, value);
+		isSet = true;
+	}
+
+	/**
+	 * Set the value of a double field
+	 * @param value value to set
+	 */
+	public void setDouble(double value) {
+		accessor.setDouble(instance, value);
+		isSet = true;
+	}
+
+	/**
+	 * Set the value of a boolean field
+	 * @param value value to set
+	 */
+	public void setBoolean(boolean value) {
+		accessor.setBoolean(instance, value);
+		isSet = true;
 	}
 
 	/**
@@ -1007,14 +1760,24 @@ class Destination {
 	 * @return the field'S value
 	 */
 	public Object get() {
-		try {
-			return field.get(instance);
-		} catch (IllegalAccessException e) {
-			// This shouldn't happen if setAccessible() succeeded
-			assert false;
-		}
+		return accessor.get(instance);
+	}
 
-		return null;
+	/**
+	 * Check if the field is null (primitive fields never are)
+	 * @return true if the field is null
+	 */
+	public boolean isNull() {
+		return !accessor.isPrimitive() && accessor.get(instance) == null;
+	}
+
+	/**
+	 * Check if another destination of the same field holds an equal value
+	 * @param other the other destination
+	 * @return true if the values are equal
+	 */
+	public boolean valueEquals(Destination other) {
+		return accessor.valuesEqual(instance, other.instance);
 	}
 }
 
@@ -1023,19 +1786,21 @@ class Destination {
  */
 class Context {
 	/**
-	 * Maps fully qualified option names to fields that should contain their values
+	 * The layout of the mapped class
 	 */
-	final Map<Path, Destination> options = new LinkedHashMap<>();
+	final MappingLayout layout;
 
 	/**
-	 * Records the order of field paths in the mapped class
+	 * Fields that should contain option values, indexed like the options of the layout
+	 * (null for fields whose section is not present)
 	 */
-	final List<Path> paths = new ArrayList<>();
+	final Destination[] options;
 
 	/**
-	 * Maps section names to fields that contain their data in the mapped object
+	 * Fields that contain section data in the mapped object, indexed like the sections of the layout
+	 * (null for fields whose parent section is not present)
 	 */
-	final Map<Path, Destination> sections = new HashMap<>();
+	final Destination[] sections;
 
 	/**
 	 * A map where undeclared options should be stored
@@ -1046,4 +1811,10 @@ class Context {
 	 * The loading mode of the current mapping operation
 	 */
 	LoadingMode mode;
-}
\ No newline at end of file
+
+	Context(MappingLayout layout) {
+		this.layout = layout;
+		this.options = new Destination[layout.options.size()];
+		this.sections = new Destination[layout.sections.size()];
+	}
+}
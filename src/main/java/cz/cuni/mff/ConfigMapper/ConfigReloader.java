@@ -0,0 +1,226 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a mapped object up to date with a configuration file.
+ *
+ * The file is loaded when the reloader is created. After {@link #start()} is called, the file is watched
+ * (using a {@link ConfigWatcher}) and loaded again whenever it is created or modified.
+ * A new object is only published if the whole file is read and mapped successfully - when a reload fails,
+ * the previous object stays in use and the failure is recorded.
+ */
+public class ConfigReloader<MappedObject> implements Closeable {
+	/**
+	 * The facade used to load the file
+	 */
+	private final ConfigFacade facade;
+
+	/**
+	 * The watched file
+	 */
+	private final Path file;
+
+	/**
+	 * The mapped class
+	 */
+	private final Class<MappedObject> cls;
+
+	/**
+	 * The loading mode
+	 */
+	private final LoadingMode mode;
+
+	/**
+	 * Holds the most recent successfully loaded object
+	 */
+	private final ConfigHandle<MappedObject> handle;
+
+	private volatile long reloadCount = 0;
+
+	private volatile long failureCount = 0;
+
+	/**
+	 * The exception thrown by the last failed reload (null if there was none)
+	 */
+	private volatile Exception lastFailure;
+
+	/**
+	 * The duration of the last reload in nanoseconds
+	 */
+	private volatile long lastReloadNanos;
+
+	/**
+	 * The registration of the file in a watcher (null if the file isn't watched)
+	 */
+	private ConfigWatcher.Registration registration;
+
+	/**
+	 * The watcher created by {@link #start()}, which is closed along with the reloader
+	 */
+	private ConfigWatcher ownWatcher;
+
+	/**
+	 * Load a configuration file, using the strict mode
+	 * @param facade The facade used to load the file
+	 * @param file The configuration file
+	 * @param cls The class on which the configuration file should be mapped
+	 * @throws IOException when the file cannot be read
+	 * @throws MappingException when the configuration file cannot be mapped onto the class
+	 * @throws ConfigurationException when the configuration file is malformed
+	 */
+	public ConfigReloader(ConfigFacade facade, Path file, Class<MappedObject> cls) throws IOException, MappingException, ConfigurationException {
+		this(facade, file, cls, LoadingMode.STRICT);
+	}
+
+	/**
+	 * Load a configuration file
+	 * @param facade The facade used to load the file
+	 * @param file The configuration file
+	 * @param cls The class on which the configuration file should be mapped
+	 * @param mode The loading mode
+	 * @throws IOException when the file cannot be read
+	 * @throws MappingException when the configuration file cannot be mapped onto the class
+	 * @throws ConfigurationException when the configuration file is malformed
+	 */
+	public ConfigReloader(ConfigFacade facade, Path file, Class<MappedObject> cls, LoadingMode mode) throws IOException, MappingException, ConfigurationException {
+		this.facade = facade;
+		this.file = file.toAbsolutePath();
+		this.cls = cls;
+		this.mode = mode;
+		this.handle = new ConfigHandle<>(facade.load(this.file, cls, mode));
+	}
+
+	/**
+	 * Get the most recent successfully loaded object
+	 * @return the mapped object
+	 */
+	public MappedObject get() {
+		return handle.get();
+	}
+
+	/**
+	 * Get the handle that holds the most recent successfully loaded object.
+	 * Listeners registered on the handle are notified about every published reload.
+	 * @return the handle
+	 */
+	public ConfigHandle<MappedObject> getHandle() {
+		return handle;
+	}
+
+	/**
+	 * Load the file again and publish the new object if it is valid
+	 * @return true if the new object was published, false if the reload failed
+	 */
+	public synchronized boolean reload() {
+		long start = System.nanoTime();
+
+		try {
+			handle.set(facade.load(file, cls, mode));
+			lastFailure = null;
+			return true;
+		} catch (IOException | MappingException | ConfigurationException | RuntimeException exception) {
+			lastFailure = exception;
+			failureCount++;
+			return false;
+		} finally {
+			lastReloadNanos = System.nanoTime() - start;
+			reloadCount++;
+		}
+	}
+
+	/**
+	 * Start watching the file using a watcher of its own
+	 * @throws IOException when the directory of the file cannot be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (registration != null) {
+			return;
+		}
+
+		ConfigWatcher watcher = new ConfigWatcher(ConfigWatcher.DEFAULT_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS, 1);
+
+		try {
+			start(watcher);
+		} catch (IOException exception) {
+			watcher.close();
+			throw exception;
+		}
+
+		ownWatcher = watcher;
+	}
+
+	/**
+	 * Start watching the file using a shared watcher
+	 * @param watcher The watcher
+	 * @throws IOException when the directory of the file cannot be watched
+	 */
+	public synchronized void start(ConfigWatcher watcher) throws IOException {
+		if (registration != null) {
+			return;
+		}
+
+		registration = watcher.watch(file, this::reload);
+	}
+
+	/**
+	 * Stop watching the file
+	 * @throws IOException when the watcher cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		ConfigWatcher.Registration registration;
+		ConfigWatcher watcher;
+
+		synchronized (this) {
+			registration = this.registration;
+			watcher = ownWatcher;
+			this.registration = null;
+			ownWatcher = null;
+		}
+
+		if (registration != null) {
+			registration.close();
+		}
+
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
+
+	/**
+	 * Get the number of reloads (including failed ones)
+	 * @return the number of reloads
+	 */
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Get the number of failed reloads
+	 * @return the number of failed reloads
+	 */
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * Get the reason of the last reload failure
+	 * @return the exception thrown by the last reload or null if it succeeded
+	 */
+	public Exception getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Get the time it took to read and map the file during the last reload
+	 * @param unit the unit of the result
+	 * @return the duration of the last reload
+	 */
+	public long getLastReloadTime(TimeUnit unit) {
+		return unit.convert(lastReloadNanos, TimeUnit.NANOSECONDS);
+	}
+}
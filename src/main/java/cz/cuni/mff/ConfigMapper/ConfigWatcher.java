@@ -0,0 +1,360 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches many configuration files using a single {@link WatchService} and reloads them on a bounded pool of threads.
+ *
+ * Events are coalesced per file - a file is reloaded once its events stop arriving for the debounce delay,
+ * and events that arrive while a reload of the file is queued are ignored. Events that arrive while the file
+ * is being reloaded cause one more reload after the current one finishes. A burst of changes therefore costs
+ * at most a couple of reloads per file, regardless of the number of events.
+ */
+public class ConfigWatcher implements Closeable {
+	/**
+	 * The default debounce delay in milliseconds
+	 */
+	static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+	private enum State {
+		/**
+		 * Nothing to do
+		 */
+		IDLE,
+
+		/**
+		 * Waiting for the debounce delay to pass, or queued for reloading
+		 */
+		PENDING,
+
+		/**
+		 * Being reloaded
+		 */
+		RUNNING,
+
+		/**
+		 * Being reloaded, but changed again since the reload started
+		 */
+		RUNNING_AGAIN
+	}
+
+	/**
+	 * A watched file with its reload actions and state
+	 */
+	private final class Entry {
+		final Path file;
+
+		final List<Runnable> actions = new CopyOnWriteArrayList<>();
+
+		private State state = State.IDLE;
+
+		/**
+		 * The time of the last event (as returned by {@link System#nanoTime()})
+		 */
+		private long lastEvent;
+
+		Entry(Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * Handle an event of the file
+		 */
+		synchronized void signal() {
+			lastEvent = System.nanoTime();
+
+			if (state == State.IDLE) {
+				state = State.PENDING;
+				schedule(debounceNanos);
+			} else if (state == State.RUNNING) {
+				state = State.RUNNING_AGAIN;
+			}
+		}
+
+		/**
+		 * Queue a reload, unless there were more events during the debounce delay
+		 */
+		void fire() {
+			synchronized (this) {
+				long remaining = lastEvent + debounceNanos - System.nanoTime();
+
+				if (remaining > 0) {
+					schedule(remaining);
+					return;
+				}
+			}
+
+			try {
+				executor.execute(this::run);
+			} catch (RejectedExecutionException exception) {
+				// The watcher was closed
+			}
+		}
+
+		private void run() {
+			synchronized (this) {
+				state = State.RUNNING;
+			}
+
+			try {
+				for (Runnable action : actions) {
+					action.run();
+				}
+			} finally {
+				reloadCount.increment();
+
+				synchronized (this) {
+					if (state == State.RUNNING_AGAIN) {
+						state = State.PENDING;
+						schedule(debounceNanos);
+					} else {
+						state = State.IDLE;
+					}
+				}
+			}
+		}
+
+		private void schedule(long delay) {
+			try {
+				timer.schedule(this::fire, delay, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException exception) {
+				// The watcher was closed
+			}
+		}
+	}
+
+	/**
+	 * A registration of a reload action, which can be closed to stop watching the file
+	 */
+	public final class Registration implements Closeable {
+		private final Entry entry;
+
+		private final Runnable action;
+
+		private Registration(Entry entry, Runnable action) {
+			this.entry = entry;
+			this.action = action;
+		}
+
+		/**
+		 * Stop calling the action when the file changes
+		 */
+		@Override
+		public void close() {
+			unregister(this);
+		}
+	}
+
+	private final long debounceNanos;
+
+	private final WatchService watchService;
+
+	/**
+	 * Watched files by their absolute paths
+	 */
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Watch keys of the watched directories
+	 */
+	private final Map<Path, WatchKey> directories = new HashMap<>();
+
+	/**
+	 * The number of watched files in each watched directory
+	 */
+	private final Map<Path, Integer> directoryFiles = new HashMap<>();
+
+	private final ScheduledExecutorService timer;
+
+	private final ExecutorService executor;
+
+	private final Thread watchThread;
+
+	private final LongAdder eventCount = new LongAdder();
+
+	private final LongAdder reloadCount = new LongAdder();
+
+	/**
+	 * Create a watcher with the default debounce delay, which reloads files on as many threads as there are processors
+	 * @throws IOException when the watch service cannot be created
+	 */
+	public ConfigWatcher() throws IOException {
+		this(DEFAULT_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param debounce How long the events of a file have to stop arriving before it's reloaded
+	 * @param unit The unit of the debounce delay
+	 * @param threads The maximum number of files reloaded at the same time
+	 * @throws IOException when the watch service cannot be created
+	 */
+	public ConfigWatcher(long debounce, TimeUnit unit, int threads) throws IOException {
+		this.debounceNanos = unit.toNanos(debounce);
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "ConfigWatcher reload " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ConfigWatcher timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.watchThread = new Thread(this::watch, "ConfigWatcher");
+		this.watchThread.setDaemon(true);
+		this.watchThread.start();
+	}
+
+	/**
+	 * Call an action whenever a file changes
+	 * @param file The watched file
+	 * @param action The action (usually a reload of the file)
+	 * @return The registration, which stops the watching when closed
+	 * @throws IOException when the directory of the file cannot be watched
+	 */
+	public synchronized Registration watch(Path file, Runnable action) throws IOException {
+		file = file.toAbsolutePath().normalize();
+		Path directory = file.getParent();
+
+		if (!directories.containsKey(directory)) {
+			directories.put(directory, directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY));
+		}
+
+		Entry entry = entries.get(file);
+
+		if (entry == null) {
+			entry = new Entry(file);
+			entries.put(file, entry);
+			directoryFiles.merge(directory, 1, Integer::sum);
+		}
+
+		entry.actions.add(action);
+		return new Registration(entry, action);
+	}
+
+	/**
+	 * Keep a mapped object up to date with a configuration file, reloading it using this watcher
+	 * @param facade The facade used to load the file
+	 * @param file The configuration file
+	 * @param cls The class on which the configuration file should be mapped
+	 * @return A started reloader (closing it stops the watching)
+	 * @throws IOException when the file cannot be read or watched
+	 * @throws MappingException when the configuration file cannot be mapped onto the class
+	 * @throws ConfigurationException when the configuration file is malformed
+	 */
+	public <MappedObject> ConfigReloader<MappedObject> watch(ConfigFacade facade, Path file, Class<MappedObject> cls) throws IOException, MappingException, ConfigurationException {
+		ConfigReloader<MappedObject> reloader = new ConfigReloader<>(facade, file, cls);
+		reloader.start(this);
+		return reloader;
+	}
+
+	private synchronized void unregister(Registration registration) {
+		Entry entry = registration.entry;
+
+		if (!entry.actions.remove(registration.action) || !entry.actions.isEmpty()) {
+			return;
+		}
+
+		entries.remove(entry.file);
+		Path directory = entry.file.getParent();
+
+		if (directoryFiles.merge(directory, -1, Integer::sum) == 0) {
+			directoryFiles.remove(directory);
+			directories.remove(directory).cancel();
+		}
+	}
+
+	/**
+	 * Get the number of events of the watched files received so far
+	 * @return the number of events
+	 */
+	public long getEventCount() {
+		return eventCount.sum();
+	}
+
+	/**
+	 * Get the number of reloads performed so far
+	 * @return the number of reloads
+	 */
+	public long getReloadCount() {
+		return reloadCount.sum();
+	}
+
+	/**
+	 * Stop watching all files. Queued reloads are dropped and running ones are interrupted.
+	 * @throws IOException when the watch service cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		timer.shutdownNow();
+		executor.shutdownNow();
+
+		try {
+			watchThread.join();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Dispatch the events of the watched directories to the files, until the watch service is closed
+	 */
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path directory = (Path) key.watchable();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						// We can't tell which files changed
+						for (Entry entry : entries.values()) {
+							if (entry.file.getParent().equals(directory)) {
+								entry.signal();
+							}
+						}
+
+						continue;
+					}
+
+					Entry entry = entries.get(directory.resolve((Path) event.context()));
+
+					if (entry != null) {
+						eventCount.increment();
+						entry.signal();
+					}
+				}
+
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException | InterruptedException exception) {
+			// The watcher was closed
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package cz.cuni.mff.ConfigMapper;
+
+/**
+ * Reads and writes the value of a mapped field.
+ *
+ * The mapper uses an implementation based on method handles for classes mapped via reflection.
+ * Bindings generated by {@link cz.cuni.mff.ConfigMapper.Processor.ConfigBindingProcessor} access the fields directly.
+ * Implementations for fields of type int, float, double and boolean should override the corresponding
+ * primitive methods, so that their values can be read and written without boxing.
+ */
+public abstract class FieldAccess {
+	/**
+	 * The type of the accessed field
+	 */
+	private final Class<?> type;
+
+	/**
+	 * @param type the type of the accessed field
+	 */
+	protected FieldAccess(Class<?> type) {
+		this.type = type;
+	}
+
+	/**
+	 * Get the type of the accessed field
+	 * @return the type of the field
+	 */
+	public final Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Get the value of the field
+	 * @param instance the object that contains the field
+	 * @return the value
+	 */
+	public abstract Object get(Object instance);
+
+	/**
+	 * Store a value in the field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 * @throws ClassCastException when the value has a wrong type
+	 * @throws NullPointerException when the value is null and the field is primitive
+	 */
+	protected abstract void store(Object instance, Object value);
+
+	/**
+	 * Set the value of the field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 * @throws IllegalArgumentException when the value cannot be stored in the field
+	 */
+	public final void set(Object instance, Object value) {
+		try {
+			store(instance, value);
+		} catch (ClassCastException | NullPointerException e) {
+			// A value of a wrong type (or null for a primitive field)
+			throw new IllegalArgumentException(String.format(
+				"Cannot store a value in a field of type %s",
+				type.getName()
+			), e);
+		}
+	}
+
+	/**
+	 * Get the value of an integer field
+	 * @param instance the object that contains the field
+	 * @return the value
+	 */
+	public int getInt(Object instance) {
+		return (Integer) get(instance);
+	}
+
+	/**
+	 * Set the value of an integer field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 */
+	public void setInt(Object instance, int value) {
+		set(instance, value);
+	}
+
+	/**
+	 * Get the value of a float field
+	 * @param instance the object that contains the field
+	 * @return the value
+	 */
+	public float getFloat(Object instance) {
+		return (Float) get(instance);
+	}
+
+	/**
+	 * Set the value of a float field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 */
+	public void setFloat(Object instance, float value) {
+		set(instance, value);
+	}
+
+	/**
+	 * Get the value of a double field
+	 * @param instance the object that contains the field
+	 * @return the value
+	 */
+	public double getDouble(Object instance) {
+		return (Double) get(instance);
+	}
+
+	/**
+	 * Set the value of a double field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 */
+	public void setDouble(Object instance, double value) {
+		set(instance, value);
+	}
+
+	/**
+	 * Get the value of a boolean field
+	 * @param instance the object that contains the field
+	 * @return the value
+	 */
+	public boolean getBoolean(Object instance) {
+		return (Boolean) get(instance);
+	}
+
+	/**
+	 * Set the value of a boolean field
+	 * @param instance the object that contains the field
+	 * @param value the new value
+	 */
+	public void setBoolean(Object instance, boolean value) {
+		set(instance, value);
+	}
+
+	/**
+	 * Does the field have a primitive type?
+	 * @return true if the field has a primitive type, false otherwise
+	 */
+	final boolean isPrimitive() {
+		return type.isPrimitive();
+	}
+
+	/**
+	 * Get the string representation of the field value.
+	 * Values of int, float, double and boolean fields are converted using the primitive getters.
+	 * @param instance the object that contains the field
+	 * @return the string representation or null if the field is null
+	 */
+	final String getString(Object instance) {
+		if (type == int.class) {
+			return Integer.toString(getInt(instance));
+		}
+
+		if (type == float.class) {
+			return Float.toString(getFloat(instance));
+		}
+
+		if (type == double.class) {
+			return Double.toString(getDouble(instance));
+		}
+
+		if (type == boolean.class) {
+			return Boolean.toString(getBoolean(instance));
+		}
+
+		Object value = get(instance);
+		return value != null ? value.toString() : null;
+	}
+
+	/**
+	 * Check if the field has the same value in two objects (in the sense of {@link Object#equals(Object)}).
+	 * Values of int, float, double and boolean fields are compared using the primitive getters.
+	 * @param first an object that contains the field
+	 * @param second another object that contains the field
+	 * @return true if the values are equal, false otherwise
+	 */
+	final boolean valuesEqual(Object first, Object second) {
+		// Floating point values are compared the same way as Float.equals() and Double.equals() do
+		if (type == int.class) {
+			return getInt(first) == getInt(second);
+		}
+
+		if (type == float.class) {
+			return Float.floatToIntBits(getFloat(first)) == Float.floatToIntBits(getFloat(second));
+		}
+
+		if (type == double.class) {
+			return Double.doubleToLongBits(getDouble(first)) == Double.doubleToLongBits(getDouble(second));
+		}
+
+		if (type == boolean.class) {
+			return getBoolean(first) == getBoolean(second);
+		}
+
+		Object firstValue = get(first);
+		Object secondValue = get(second);
+		return firstValue == null ? secondValue == null : firstValue.equals(secondValue);
+	}
+}
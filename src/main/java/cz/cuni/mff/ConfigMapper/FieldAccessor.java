@@ -0,0 +1,231 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes the value of a mapped field using method handles.
+ * The handles are resolved once per field. Fields of type int, float, double and boolean
+ * also get handles typed with the primitive type, so that their values can be read and written without boxing.
+ */
+final class FieldAccessor extends FieldAccess {
+	/**
+	 * The type of the generic getter handle
+	 */
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	/**
+	 * The type of the generic setter handle
+	 */
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	/**
+	 * Reads the field value as an object - (Object) Object
+	 */
+	private final MethodHandle getter;
+
+	/**
+	 * Writes an object into the field - (Object, Object) void
+	 */
+	private final MethodHandle setter;
+
+	/**
+	 * Reads the field value as a primitive - (Object) type (null if the field type is not a supported primitive)
+	 */
+	private final MethodHandle primitiveGetter;
+
+	/**
+	 * Writes a primitive into the field - (Object, type) void (null if the field type is not a supported primitive)
+	 */
+	private final MethodHandle primitiveSetter;
+
+	FieldAccessor(Field field) {
+		super(field.getType());
+
+		Class<?> type = field.getType();
+
+		if (!field.isAccessible()) {
+			field.setAccessible(true);
+		}
+
+		MethodHandle getter;
+		MethodHandle setter;
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			getter = lookup.unreflectGetter(field);
+			setter = lookup.unreflectSetter(field);
+		} catch (IllegalAccessException e) {
+			// The field has been made accessible, this shouldn't happen
+			throw new IllegalStateException(e);
+		}
+
+		// Handles of static fields don't take an instance - make them ignore it
+		if (Modifier.isStatic(field.getModifiers())) {
+			getter = MethodHandles.dropArguments(getter, 0, Object.class);
+			setter = MethodHandles.dropArguments(setter, 0, Object.class);
+		}
+
+		this.getter = getter.asType(GETTER_TYPE);
+		this.setter = setter.asType(SETTER_TYPE);
+
+		if (type == int.class || type == float.class || type == double.class || type == boolean.class) {
+			this.primitiveGetter = getter.asType(MethodType.methodType(type, Object.class));
+			this.primitiveSetter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+		} else {
+			this.primitiveGetter = null;
+			this.primitiveSetter = null;
+		}
+	}
+
+	@Override
+	public Object get(Object instance) {
+		try {
+			return (Object) getter.invokeExact(instance);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// Field getters don't throw checked exceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	protected void store(Object instance, Object value) {
+		try {
+			setter.invokeExact(instance, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// Field setters don't throw checked exceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public int getInt(Object instance) {
+		if (getType() != int.class) {
+			return super.getInt(instance);
+		}
+
+		try {
+			return (int) primitiveGetter.invokeExact(instance);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void setInt(Object instance, int value) {
+		if (getType() != int.class) {
+			super.setInt(instance, value);
+			return;
+		}
+
+		try {
+			primitiveSetter.invokeExact(instance, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public float getFloat(Object instance) {
+		if (getType() != float.class) {
+			return super.getFloat(instance);
+		}
+
+		try {
+			return (float) primitiveGetter.invokeExact(instance);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void setFloat(Object instance, float value) {
+		if (getType() != float.class) {
+			super.setFloat(instance, value);
+			return;
+		}
+
+		try {
+			primitiveSetter.invokeExact(instance, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public double getDouble(Object instance) {
+		if (getType() != double.class) {
+			return super.getDouble(instance);
+		}
+
+		try {
+			return (double) primitiveGetter.invokeExact(instance);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void setDouble(Object instance, double value) {
+		if (getType() != double.class) {
+			super.setDouble(instance, value);
+			return;
+		}
+
+		try {
+			primitiveSetter.invokeExact(instance, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean getBoolean(Object instance) {
+		if (getType() != boolean.class) {
+			return super.getBoolean(instance);
+		}
+
+		try {
+			return (boolean) primitiveGetter.invokeExact(instance);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void setBoolean(Object instance, boolean value) {
+		if (getType() != boolean.class) {
+			super.setBoolean(instance, value);
+			return;
+		}
+
+		try {
+			primitiveSetter.invokeExact(instance, value);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
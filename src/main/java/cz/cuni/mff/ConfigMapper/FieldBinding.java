@@ -0,0 +1,225 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mapping information of a single field, equivalent to the annotations of the field.
+ * Instances are created by generated {@link ConfigBinding} classes, so that the mapper doesn't have to
+ * inspect the annotations using reflection. The values that are not set explicitly
+ * are the same as the defaults of the corresponding annotations.
+ */
+public final class FieldBinding {
+	/**
+	 * The mapping annotations a binding can represent
+	 */
+	enum Kind {
+		OPTION,
+		SECTION,
+		UNDECLARED_OPTIONS
+	}
+
+	/**
+	 * The annotation represented by the binding
+	 */
+	final Kind kind;
+
+	/**
+	 * The name of the field
+	 */
+	final String fieldName;
+
+	/**
+	 * Reads and writes the value of the field
+	 */
+	final FieldAccess access;
+
+	/**
+	 * The name of the option or section (empty if the field name should be used)
+	 */
+	String name = "";
+
+	/**
+	 * The name of the section of an option (empty if there is none)
+	 */
+	String section = "";
+
+	/**
+	 * The description of the option or section
+	 */
+	String description = "";
+
+	/**
+	 * Is the option or section optional?
+	 */
+	boolean optional = false;
+
+	/**
+	 * Does the field have an {@link IntegralConstraint}?
+	 */
+	boolean hasIntegralConstraint = false;
+
+	/**
+	 * Bounds of the integral constraint
+	 */
+	long integralMin = Long.MIN_VALUE, integralMax = Long.MAX_VALUE;
+
+	/**
+	 * Does the integral constraint only allow unsigned numbers?
+	 */
+	boolean integralUnsigned = false;
+
+	/**
+	 * Does the field have a {@link DecimalConstraint}?
+	 */
+	boolean hasDecimalConstraint = false;
+
+	/**
+	 * Bounds of the decimal constraint
+	 */
+	double decimalMin = Double.MIN_VALUE, decimalMax = Double.MAX_VALUE;
+
+	/**
+	 * Does the decimal constraint only allow unsigned numbers?
+	 */
+	boolean decimalUnsigned = false;
+
+	/**
+	 * Constant aliases in the order of declaration - pairs of a constant name and its alias
+	 */
+	final List<String[]> aliases = new ArrayList<>();
+
+	/**
+	 * The constants of an enum field (null if they should be obtained from the field type)
+	 */
+	Object[] enumConstants = null;
+
+	private FieldBinding(Kind kind, String fieldName, FieldAccess access) {
+		this.kind = kind;
+		this.fieldName = fieldName;
+		this.access = access;
+	}
+
+	/**
+	 * Describe a field annotated with {@link ConfigOption}
+	 * @param fieldName the name of the field
+	 * @param access reads and writes the value of the field
+	 * @return the binding
+	 */
+	public static FieldBinding option(String fieldName, FieldAccess access) {
+		return new FieldBinding(Kind.OPTION, fieldName, access);
+	}
+
+	/**
+	 * Describe a field annotated with {@link ConfigSection}
+	 * @param fieldName the name of the field
+	 * @param access reads and writes the value of the field
+	 * @return the binding
+	 */
+	public static FieldBinding section(String fieldName, FieldAccess access) {
+		return new FieldBinding(Kind.SECTION, fieldName, access);
+	}
+
+	/**
+	 * Describe a field annotated with {@link UndeclaredOptions}
+	 * @param fieldName the name of the field
+	 * @param access reads and writes the value of the field
+	 * @return the binding
+	 */
+	public static FieldBinding undeclaredOptions(String fieldName, FieldAccess access) {
+		return new FieldBinding(Kind.UNDECLARED_OPTIONS, fieldName, access);
+	}
+
+	/**
+	 * Set the name of the option or section
+	 * @param name the name (empty if the field name should be used)
+	 * @return this binding
+	 */
+	public FieldBinding name(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Set the section of the option
+	 * @param section the name of the section
+	 * @return this binding
+	 */
+	public FieldBinding section(String section) {
+		this.section = section;
+		return this;
+	}
+
+	/**
+	 * Set the description of the option or section
+	 * @param description the description
+	 * @return this binding
+	 */
+	public FieldBinding description(String description) {
+		this.description = description;
+		return this;
+	}
+
+	/**
+	 * Set whether the option or section is optional
+	 * @param optional true if the option or section is optional
+	 * @return this binding
+	 */
+	public FieldBinding optional(boolean optional) {
+		this.optional = optional;
+		return this;
+	}
+
+	/**
+	 * Add an {@link IntegralConstraint} to the option
+	 * @param min the minimum allowed value
+	 * @param max the maximum allowed value
+	 * @param unsigned true if only unsigned values are allowed
+	 * @return this binding
+	 */
+	public FieldBinding integralConstraint(long min, long max, boolean unsigned) {
+		this.hasIntegralConstraint = true;
+		this.integralMin = min;
+		this.integralMax = max;
+		this.integralUnsigned = unsigned;
+		return this;
+	}
+
+	/**
+	 * Add a {@link DecimalConstraint} to the option
+	 * @param min the minimum allowed value
+	 * @param max the maximum allowed value
+	 * @param unsigned true if only unsigned values are allowed
+	 * @return this binding
+	 */
+	public FieldBinding decimalConstraint(double min, double max, boolean unsigned) {
+		this.hasDecimalConstraint = true;
+		this.decimalMin = min;
+		this.decimalMax = max;
+		this.decimalUnsigned = unsigned;
+		return this;
+	}
+
+	/**
+	 * Add a {@link ConstantAlias} to the option
+	 * @param constant the name of the constant
+	 * @param alias the alias of the constant
+	 * @return this binding
+	 */
+	public FieldBinding alias(String constant, String alias) {
+		aliases.add(new String[]{constant, alias});
+		return this;
+	}
+
+	/**
+	 * Supply the constants of an enum option
+	 * @param constants the constants in the order of declaration
+	 * @return this binding
+	 */
+	public FieldBinding enumConstants(Object[] constants) {
+		this.enumConstants = constants;
+		return this;
+	}
+}
@@ -0,0 +1,370 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * The mapping information of a root mapped class, with the schemas of all its (nested) sections
+ * flattened into lists of paths in the configuration tree.
+ *
+ * The objects that contain the mapped fields are identified by owner numbers -
+ * 0 is the root object and i + 1 is the object stored in the i-th section.
+ * Layouts are immutable and cached per class, so a mapping operation only has to look up
+ * the objects that hold the fields. The cached layout of a class uses the declared types of its sections.
+ * An object whose section holds an instance of a subclass gets its own layout, which uses the runtime class
+ * of the instance (see {@link #of(Object)}).
+ */
+final class MappingLayout {
+	/**
+	 * Compiled layouts of all root classes that have been mapped so far
+	 */
+	private static final ClassValue<MappingLayout> LAYOUTS = new ClassValue<MappingLayout>() {
+		@Override
+		protected MappingLayout computeValue(Class<?> type) {
+			return new MappingLayout(type);
+		}
+	};
+
+	/**
+	 * An option field along with its path and owner
+	 */
+	static final class OptionSlot {
+		final Path path;
+		final OptionSchema schema;
+		final int owner;
+
+		OptionSlot(Path path, OptionSchema schema, int owner) {
+			this.path = path;
+			this.schema = schema;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * A section field along with its path and owner
+	 */
+	static final class SectionSlot {
+		final Path path;
+		final SectionSchema schema;
+		final int owner;
+
+		/**
+		 * The class whose fields are mapped for the section
+		 */
+		final Class<?> type;
+
+		SectionSlot(Path path, SectionSchema schema, int owner, Class<?> type) {
+			this.path = path;
+			this.schema = schema;
+			this.owner = owner;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * An undeclared option container along with its owner
+	 */
+	static final class UndeclaredOptionsSlot {
+		final UndeclaredOptionsSchema schema;
+		final int owner;
+
+		UndeclaredOptionsSlot(UndeclaredOptionsSchema schema, int owner) {
+			this.schema = schema;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * The root class
+	 */
+	final Class<?> type;
+
+	/**
+	 * Option fields in the order of appearance (if there are more fields with the same path, the last one is used)
+	 */
+	final List<OptionSlot> options;
+
+	/**
+	 * Section fields in the order of appearance
+	 */
+	final List<SectionSlot> sections;
+
+	/**
+	 * Undeclared option containers in the order of appearance
+	 */
+	final List<UndeclaredOptionsSlot> undeclaredOptions;
+
+	/**
+	 * Indices of the options that are direct children of each section (in the order of the section list)
+	 */
+	private final int[][] sectionOptions;
+
+	/**
+	 * Maps option paths to indices in the option list
+	 */
+	private final Map<Path, Integer> optionIndices;
+
+	/**
+	 * Maps all field paths to the position of their first appearance in the mapped class
+	 */
+	private final Map<Path, Integer> ordinals;
+
+	/**
+	 * Can a section hold an instance of a class other than the one used by the layout?
+	 */
+	private final boolean subclassable;
+
+	private MappingLayout(Class<?> type) {
+		this(type, null);
+	}
+
+	/**
+	 * @param type the root class
+	 * @param instance an instance whose section objects determine the classes of the sections
+	 *                 (null to use the declared types)
+	 */
+	private MappingLayout(Class<?> type, Object instance) {
+		this.type = type;
+
+		List<OptionSlot> options = new ArrayList<>();
+		List<SectionSlot> sections = new ArrayList<>();
+		List<UndeclaredOptionsSlot> undeclaredOptions = new ArrayList<>();
+		Map<Path, Integer> optionIndices = new HashMap<>();
+		Map<Path, Integer> ordinals = new HashMap<>();
+
+		flatten(ClassSchema.of(type), instance, Path.ROOT, 0, options, sections, undeclaredOptions, optionIndices, ordinals);
+
+		this.options = Collections.unmodifiableList(options);
+		this.sections = Collections.unmodifiableList(sections);
+		this.undeclaredOptions = Collections.unmodifiableList(undeclaredOptions);
+		this.optionIndices = optionIndices;
+		this.ordinals = ordinals;
+		this.sectionOptions = indexSectionOptions(this.options, this.sections);
+		this.subclassable = sections.stream().anyMatch(slot -> !Modifier.isFinal(slot.type.getModifiers()));
+	}
+
+	/**
+	 * Check that all mapped fields of the root class and its sections can be mapped
+	 * @throws MappingException when a field cannot be mapped
+	 */
+	void checkMappable() throws MappingException {
+		ClassSchema.of(type).checkMappable();
+
+		for (SectionSlot slot : sections) {
+			ClassSchema.of(slot.type).checkMappable();
+		}
+	}
+
+	/**
+	 * Find the options that are direct children of each section
+	 * @param options the option slots
+	 * @param sections the section slots
+	 * @return indices of the child options of each section
+	 */
+	private static int[][] indexSectionOptions(List<OptionSlot> options, List<SectionSlot> sections) {
+		// More section fields can share a path
+		Map<Path, List<Integer>> sectionsByPath = new HashMap<>();
+		for (int i = 0; i < sections.size(); i++) {
+			sectionsByPath.computeIfAbsent(sections.get(i).path, path -> new ArrayList<>()).add(i);
+		}
+
+		List<List<Integer>> children = new ArrayList<>();
+		for (int i = 0; i < sections.size(); i++) {
+			children.add(new ArrayList<>());
+		}
+
+		for (int i = 0; i < options.size(); i++) {
+			List<Integer> parents = sectionsByPath.get(options.get(i).path.prefix());
+
+			if (parents != null) {
+				for (int parent : parents) {
+					children.get(parent).add(i);
+				}
+			}
+		}
+
+		int[][] result = new int[sections.size()][];
+		for (int i = 0; i < sections.size(); i++) {
+			result[i] = children.get(i).stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the layout of given root class, compiling it if necessary
+	 * @param type the root mapped class
+	 * @return the layout of the class
+	 */
+	static MappingLayout of(Class<?> type) {
+		return LAYOUTS.get(type);
+	}
+
+	/**
+	 * Get the layout of a mapped object - the layout of its class, unless a section of the object holds
+	 * an instance of a subclass of its declared type
+	 * @param instance the mapped object
+	 * @return the layout of the object
+	 */
+	static MappingLayout of(Object instance) {
+		MappingLayout layout = of(instance.getClass());
+		return layout.matches(instance) ? layout : new MappingLayout(instance.getClass(), instance);
+	}
+
+	/**
+	 * Check if the sections of an object hold instances of the classes used by the layout
+	 * @param instance an instance of the root class
+	 * @return true if the layout describes all mapped fields of the object
+	 */
+	boolean matches(Object instance) {
+		if (!subclassable) {
+			return true;
+		}
+
+		Object[] owners = new Object[sections.size() + 1];
+		owners[0] = instance;
+
+		for (int i = 0; i < sections.size(); i++) {
+			SectionSlot slot = sections.get(i);
+			Object owner = owners[slot.owner];
+			Object section = owner != null ? slot.schema.accessor.get(owner) : null;
+
+			if (section != null && section.getClass() != slot.type) {
+				return false;
+			}
+
+			owners[i + 1] = section;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if another layout maps the same fields to the same positions
+	 * @param other the other layout
+	 * @return true if both layouts use the same classes for the root and all sections
+	 */
+	boolean hasShapeOf(MappingLayout other) {
+		if (other == this) {
+			return true;
+		}
+
+		if (other.type != type || other.sections.size() != sections.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < sections.size(); i++) {
+			if (sections.get(i).type != other.sections.get(i).type) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Add the fields of a class (and recursively of its sections) to the layout
+	 * @param schema schema of the class
+	 * @param instance an instance of the class (null if the declared types of sections should be used)
+	 * @param path path of the class in the configuration tree
+	 * @param owner owner number of the objects of the class
+	 */
+	private static void flatten(
+		ClassSchema schema,
+		Object instance,
+		Path path,
+		int owner,
+		List<OptionSlot> options,
+		List<SectionSlot> sections,
+		List<UndeclaredOptionsSlot> undeclaredOptions,
+		Map<Path, Integer> optionIndices,
+		Map<Path, Integer> ordinals
+	) {
+		for (FieldSchema field : schema.fields) {
+			if (field instanceof OptionSchema) {
+				OptionSchema option = (OptionSchema) field;
+				Path optionPath;
+
+				if (!option.section.isEmpty()) {
+					Path sectionPath = path.intern(option.section);
+					ordinals.putIfAbsent(sectionPath, ordinals.size());
+					optionPath = sectionPath.intern(option.name);
+				} else {
+					optionPath = path.intern(option.name);
+				}
+
+				ordinals.putIfAbsent(optionPath, ordinals.size());
+
+				OptionSlot slot = new OptionSlot(optionPath, option, owner);
+				Integer index = optionIndices.get(optionPath);
+
+				if (index != null) {
+					options.set(index, slot);
+				} else {
+					optionIndices.put(optionPath, options.size());
+					options.add(slot);
+				}
+			} else if (field instanceof SectionSchema) {
+				SectionSchema section = (SectionSchema) field;
+				Path sectionPath = path.intern(section.name);
+				ordinals.putIfAbsent(sectionPath, ordinals.size());
+
+				// Like the object itself, sections are mapped by the runtime classes of their instances
+				Object value = instance != null ? section.accessor.get(instance) : null;
+				Class<?> type = value != null ? value.getClass() : section.fieldType;
+				sections.add(new SectionSlot(sectionPath, section, owner, type));
+
+				flatten(
+					ClassSchema.of(type),
+					value,
+					sectionPath,
+					sections.size(),
+					options,
+					sections,
+					undeclaredOptions,
+					optionIndices,
+					ordinals
+				);
+			} else if (field instanceof UndeclaredOptionsSchema) {
+				undeclaredOptions.add(new UndeclaredOptionsSlot((UndeclaredOptionsSchema) field, owner));
+			}
+		}
+	}
+
+	/**
+	 * Find the option with given path
+	 * @param path the path of the option
+	 * @return index of the option in the option list or -1 if there is no such option
+	 */
+	int optionIndex(Path path) {
+		Integer index = optionIndices.get(path);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Get the options that are direct children of a section
+	 * @param section index of the section in the section list
+	 * @return indices of the options in the option list (the array must not be modified)
+	 */
+	int[] sectionOptions(int section) {
+		return sectionOptions[section];
+	}
+
+	/**
+	 * Get the position of the first appearance of a path in the mapped class
+	 * @param path the path
+	 * @return the position or -1 if the path doesn't appear in the mapped class
+	 */
+	int ordinal(Path path) {
+		Integer ordinal = ordinals.get(path);
+		return ordinal != null ? ordinal : -1;
+	}
+
+	/**
+	 * Get the number of distinct paths in the mapped class
+	 * @return the number of paths
+	 */
+	int pathCount() {
+		return ordinals.size();
+	}
+}
@@ -0,0 +1,677 @@
+package cz.cuni.mff.ConfigMapper.Nodes;
+
+import cz.cuni.mff.ConfigMapper.ParsedBoolean;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A configuration tree stored in parallel arrays instead of a graph of node objects.
+ *
+ * Every section and option of the tree is an entry identified by its position in a pre-order traversal.
+ * Names, values and descriptions of the entries are kept in arrays and each section records where its span
+ * of descendants ends. The entry methods (e.g. {@link #getValue(int)} or {@link #findChild(int, String)})
+ * read the tree without creating any objects. The usual {@link ConfigNode} API is also supported - nodes
+ * are created when they are first accessed and kept for subsequent calls.
+ *
+ * The tree cannot be changed - the child lists of the root and its sections and the values of list options
+ * are read-only and the setters of the nodes throw {@link UnsupportedOperationException}. A tree can be read
+ * by multiple threads at once, each entry is always represented by the same node.
+ * Instances are created using a {@link Builder} or by copying another tree with {@link #copyOf(ConfigRoot)}.
+ */
+public final class CompactConfigRoot extends ConfigRoot {
+	private static final byte SECTION = 0;
+	private static final byte SCALAR = 1;
+	private static final byte LIST = 2;
+
+	private static final ParsedBoolean[] BOOLEANS = ParsedBoolean.values();
+
+	/**
+	 * Sizes used to estimate the memory retained by a tree (those of a 64-bit JVM without compressed references)
+	 */
+	private static final int OBJECT_SIZE = 16;
+	private static final int ARRAY_SIZE = 24;
+	private static final int REFERENCE_SIZE = 8;
+	private static final int NODE_SIZE = 64;
+
+	/**
+	 * The number of entries
+	 */
+	private final int count;
+
+	/**
+	 * The kinds of entries (section, scalar option or list option)
+	 */
+	private final byte[] kinds;
+
+	/**
+	 * Names of the entries
+	 */
+	private final String[] names;
+
+	/**
+	 * The position after the last descendant of each entry
+	 */
+	private final int[] ends;
+
+	/**
+	 * Values of scalar options (null for other entries)
+	 */
+	private final String[] values;
+
+	/**
+	 * Ordinals of the boolean values of scalar options
+	 */
+	private final byte[] booleans;
+
+	/**
+	 * Values of list options (null if there are no list options)
+	 */
+	private final String[][] lists;
+
+	/**
+	 * Separators of list options (null if there are no list options)
+	 */
+	private final String[] separators;
+
+	/**
+	 * Descriptions of the entries (null if no entry has a description)
+	 */
+	private final String[] descriptions;
+
+	/**
+	 * Nodes of the entries that were already accessed
+	 */
+	private final AtomicReferenceArray<ConfigNode> nodes;
+
+	/**
+	 * The top-level nodes
+	 */
+	private final List<ConfigNode> rootChildren;
+
+	/**
+	 * An open addressing table of entry positions, keyed by the parent entry and the name (built lazily)
+	 */
+	private volatile int[] lookupTable;
+
+	/**
+	 * The parent of each entry, -1 for top-level entries (built along with the lookup table, which publishes it)
+	 */
+	private int[] parents;
+
+	private CompactConfigRoot(String name, String description, Builder builder) {
+		super(name, Collections.emptyList());
+		setDescription(description);
+
+		this.count = builder.count;
+		this.kinds = Arrays.copyOf(builder.kinds, count);
+		this.names = Arrays.copyOf(builder.names, count);
+		this.ends = Arrays.copyOf(builder.ends, count);
+		this.values = Arrays.copyOf(builder.values, count);
+		this.booleans = Arrays.copyOf(builder.booleans, count);
+		this.lists = builder.lists != null ? Arrays.copyOf(builder.lists, count) : null;
+		this.separators = builder.separators != null ? Arrays.copyOf(builder.separators, count) : null;
+		this.descriptions = builder.descriptions != null ? Arrays.copyOf(builder.descriptions, count) : null;
+		this.nodes = new AtomicReferenceArray<>(count);
+		this.rootChildren = new EntryList(-1);
+		makeReadOnly();
+	}
+
+	/**
+	 * Make a compact copy of a configuration tree
+	 * @param root the tree to copy
+	 * @return the compact tree
+	 */
+	public static CompactConfigRoot copyOf(ConfigRoot root) {
+		if (root instanceof CompactConfigRoot) {
+			return (CompactConfigRoot) root;
+		}
+
+		Builder builder = new Builder();
+		copyChildren(root, builder);
+
+		return builder.build(root.getName(), root.getDescription());
+	}
+
+	private static void copyChildren(Section section, Builder builder) {
+		for (ConfigNode node : section.getChildren()) {
+			int entry;
+
+			if (node instanceof Section) {
+				entry = builder.beginSection(node.getName());
+				copyChildren((Section) node, builder);
+				builder.endSection();
+			} else if (node instanceof ListOption) {
+				ListOption option = (ListOption) node;
+				entry = builder.addList(node.getName(), option.getValue(), option.getSeparator());
+			} else if (node instanceof ScalarOption) {
+				ScalarOption option = (ScalarOption) node;
+				entry = builder.addScalar(node.getName(), option.getValue(), option.getBooleanValue());
+			} else {
+				throw new IllegalArgumentException("Unsupported node type " + node.getClass().getName());
+			}
+
+			builder.setDescription(entry, node.getDescription());
+		}
+	}
+
+	/**
+	 * Get the number of entries in the tree
+	 * @return the number of entries
+	 */
+	public int getEntryCount() {
+		return count;
+	}
+
+	/**
+	 * Estimate the memory retained by the tree, including the lookup table and the nodes of all entries
+	 * (which are only created when they are accessed)
+	 * @return the estimated size in bytes
+	 */
+	public long estimateSize() {
+		// The tree, its arrays and the kind, boolean value, end, parent and lookup table slots of each entry
+		long size = OBJECT_SIZE + 10L * ARRAY_SIZE + count * (2L + 6 * Integer.BYTES);
+
+		// The name, value, list, separator, description and node references and the nodes themselves
+		size += count * (6L * REFERENCE_SIZE + NODE_SIZE);
+
+		for (int entry = 0; entry < count; entry++) {
+			size += stringSize(names[entry]) + stringSize(values[entry]);
+
+			if (lists != null && lists[entry] != null) {
+				size += ARRAY_SIZE + (long) lists[entry].length * REFERENCE_SIZE + stringSize(separators[entry]);
+
+				for (String item : lists[entry]) {
+					size += stringSize(item);
+				}
+			}
+
+			if (descriptions != null) {
+				size += stringSize(descriptions[entry]);
+			}
+		}
+
+		return size;
+	}
+
+	private static long stringSize(String string) {
+		return string != null ? OBJECT_SIZE + ARRAY_SIZE + 2L * string.length() : 0;
+	}
+
+	/**
+	 * Get the position after the last descendant of an entry, which is also the position of its next sibling
+	 * (if there is any). Top-level entries can be traversed by starting at 0 and following this method.
+	 * @param entry the entry
+	 * @return the position after the entry and its descendants
+	 */
+	public int getEnd(int entry) {
+		return ends[entry];
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return true if the entry is a section
+	 */
+	public boolean isSection(int entry) {
+		return kinds[entry] == SECTION;
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return true if the entry is a list option
+	 */
+	public boolean isList(int entry) {
+		return kinds[entry] == LIST;
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return the name of the entry
+	 */
+	public String getName(int entry) {
+		return names[entry];
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return the description of the entry
+	 */
+	public String getDescription(int entry) {
+		String description = descriptions != null ? descriptions[entry] : null;
+		return description != null ? description : "";
+	}
+
+	/**
+	 * @param entry a scalar option entry
+	 * @return the value of the option
+	 */
+	public String getValue(int entry) {
+		return values[entry];
+	}
+
+	/**
+	 * @param entry a scalar option entry
+	 * @return the boolean value of the option
+	 */
+	public ParsedBoolean getBooleanValue(int entry) {
+		return BOOLEANS[booleans[entry]];
+	}
+
+	/**
+	 * @param entry a list option entry
+	 * @return an unmodifiable view of the values of the option
+	 */
+	public List<String> getListValue(int entry) {
+		return Collections.unmodifiableList(Arrays.asList(lists[entry]));
+	}
+
+	/**
+	 * @param entry a list option entry
+	 * @return the separator of the option
+	 */
+	public String getSeparator(int entry) {
+		return separators[entry];
+	}
+
+	/**
+	 * Find a child entry by its name
+	 * @param parent the parent section entry (-1 for the root)
+	 * @param name the name of the child
+	 * @return the first child with given name or -1 if there is none
+	 */
+	public int findChild(int parent, String name) {
+		int[] table = lookupTable();
+		int mask = table.length - 1;
+
+		for (int slot = hash(parent, name) & mask; table[slot] != -1; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+
+			if (parents[entry] == parent && names[entry].equals(name)) {
+				return entry;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the node that represents an entry, creating it if necessary
+	 * @param entry the entry
+	 * @return the node
+	 */
+	public ConfigNode getNode(int entry) {
+		ConfigNode node = nodes.get(entry);
+
+		if (node != null) {
+			return node;
+		}
+
+		switch (kinds[entry]) {
+			case SECTION:
+				node = new EntrySection(entry);
+				break;
+			case LIST:
+				// The node can be reached by multiple threads, so its list is never copied into it
+				node = new ListOption(names[entry], getListValue(entry), separators[entry]);
+				break;
+			default:
+				node = new ScalarOption(names[entry], values[entry], getBooleanValue(entry));
+				break;
+		}
+
+		node.setDescription(getDescription(entry));
+		node.makeReadOnly();
+
+		// Another thread might have created the node in the meantime
+		return nodes.compareAndSet(entry, null, node) ? node : nodes.get(entry);
+	}
+
+	@Override
+	public List<ConfigNode> getChildren() {
+		return rootChildren;
+	}
+
+	@Override
+	public ConfigNode getChild(String name) {
+		int entry = findChild(-1, name);
+		return entry != -1 ? getNode(entry) : null;
+	}
+
+	@Override
+	public boolean addChild(ConfigNode newChild) {
+		throw new UnsupportedOperationException("The structure of a compact configuration tree cannot be changed");
+	}
+
+	@Override
+	public boolean replaceChild(ConfigNode oldChild, ConfigNode newChild) {
+		throw new UnsupportedOperationException("The structure of a compact configuration tree cannot be changed");
+	}
+
+	@Override
+	public boolean removeChild(ConfigNode child) {
+		throw new UnsupportedOperationException("The structure of a compact configuration tree cannot be changed");
+	}
+
+	@Override
+	public boolean isFlat() {
+		for (int entry = 0; entry < count; entry = ends[entry]) {
+			if (kinds[entry] == SECTION) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int hash(int parent, String name) {
+		int hash = 31 * parent + name.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Get the lookup table, building it if necessary
+	 */
+	private int[] lookupTable() {
+		int[] lookupTable = this.lookupTable;
+
+		if (lookupTable != null) {
+			return lookupTable;
+		}
+
+		int[] parents = new int[count];
+		int[] stack = new int[count + 1];
+		int depth = 0;
+		stack[0] = -1;
+
+		for (int entry = 0; entry < count; entry++) {
+			// Leave the sections that end before this entry
+			while (depth > 0 && ends[stack[depth]] <= entry) {
+				depth--;
+			}
+
+			parents[entry] = stack[depth];
+
+			if (kinds[entry] == SECTION) {
+				stack[++depth] = entry;
+			}
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(1, count)) << 2;
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+		int mask = capacity - 1;
+
+		for (int entry = 0; entry < count; entry++) {
+			int slot = hash(parents[entry], names[entry]) & mask;
+			boolean duplicate = false;
+
+			while (table[slot] != -1) {
+				int other = table[slot];
+
+				// Keep the first entry with given name
+				if (parents[other] == parents[entry] && names[other].equals(names[entry])) {
+					duplicate = true;
+					break;
+				}
+
+				slot = (slot + 1) & mask;
+			}
+
+			if (!duplicate) {
+				table[slot] = entry;
+			}
+		}
+
+		this.parents = parents;
+		this.lookupTable = table;
+		return table;
+	}
+
+	/**
+	 * A section entry, whose children are looked up in the table of the tree
+	 * (the name index of {@link Section} is built lazily, so it cannot be shared by threads)
+	 */
+	private final class EntrySection extends Section {
+		private final int entry;
+
+		EntrySection(int entry) {
+			super(names[entry], new EntryList(entry));
+			this.entry = entry;
+		}
+
+		@Override
+		public ConfigNode getChild(String name) {
+			int child = findChild(entry, name);
+			return child != -1 ? getNode(child) : null;
+		}
+
+		@Override
+		Class<?> nodeType() {
+			return Section.class;
+		}
+	}
+
+	/**
+	 * A read-only list of the nodes of the children of an entry
+	 */
+	private final class EntryList extends AbstractList<ConfigNode> {
+		/**
+		 * Positions of the children
+		 */
+		private final int[] children;
+
+		EntryList(int parent) {
+			int start = parent + 1;
+			int end = parent == -1 ? count : ends[parent];
+
+			int size = 0;
+			for (int entry = start; entry < end; entry = ends[entry]) {
+				size++;
+			}
+
+			children = new int[size];
+			int i = 0;
+			for (int entry = start; entry < end; entry = ends[entry]) {
+				children[i++] = entry;
+			}
+		}
+
+		@Override
+		public ConfigNode get(int index) {
+			return getNode(children[index]);
+		}
+
+		@Override
+		public int size() {
+			return children.length;
+		}
+	}
+
+	/**
+	 * Builds compact configuration trees entry by entry, in the order of a pre-order traversal
+	 */
+	public static final class Builder {
+		private int count = 0;
+		private byte[] kinds = new byte[16];
+		private String[] names = new String[16];
+		private int[] ends = new int[16];
+		private String[] values = new String[16];
+		private byte[] booleans = new byte[16];
+		private String[][] lists;
+		private String[] separators;
+		private String[] descriptions;
+
+		/**
+		 * Sections that have been started, but not ended yet
+		 */
+		private final Deque<Integer> openSections = new ArrayDeque<>();
+
+		/**
+		 * Positions of the first children with given names, by the position of their parent
+		 */
+		private final Map<Integer, Map<String, Integer>> childIndex = new HashMap<>();
+
+		/**
+		 * Start a new section in the current section (or in the root)
+		 * @param name the name of the section
+		 * @return the position of the section entry
+		 */
+		public int beginSection(String name) {
+			int entry = add(SECTION, name);
+			openSections.push(entry);
+			return entry;
+		}
+
+		/**
+		 * End the section started most recently
+		 */
+		public void endSection() {
+			if (openSections.isEmpty()) {
+				throw new IllegalStateException("There is no open section");
+			}
+
+			ends[openSections.pop()] = count;
+		}
+
+		/**
+		 * Add a scalar option to the current section (or to the root)
+		 * @param name the name of the option
+		 * @param value the value of the option
+		 * @param booleanValue the boolean value of the option
+		 * @return the position of the option entry
+		 */
+		public int addScalar(String name, String value, ParsedBoolean booleanValue) {
+			int entry = add(SCALAR, name);
+			values[entry] = value;
+			booleans[entry] = (byte) booleanValue.ordinal();
+			return entry;
+		}
+
+		/**
+		 * Add a list option to the current section (or to the root)
+		 * @param name the name of the option
+		 * @param value the values of the option
+		 * @param separator the separator of the values
+		 * @return the position of the option entry
+		 */
+		public int addList(String name, List<String> value, String separator) {
+			int entry = add(LIST, name);
+
+			if (lists == null) {
+				lists = new String[kinds.length][];
+				separators = new String[kinds.length];
+			}
+
+			// Let ListOption choose the separator, if it isn't given
+			lists[entry] = value.toArray(new String[0]);
+			separators[entry] = separator.isEmpty() ? new ListOption(name, value, separator).getSeparator() : separator;
+			return entry;
+		}
+
+		/**
+		 * Set the description of an entry
+		 * @param entry the position of the entry
+		 * @param description the description
+		 */
+		public void setDescription(int entry, String description) {
+			if (description == null || description.isEmpty()) {
+				if (descriptions != null) {
+					descriptions[entry] = null;
+				}
+				return;
+			}
+
+			if (descriptions == null) {
+				descriptions = new String[kinds.length];
+			}
+
+			descriptions[entry] = description;
+		}
+
+		/**
+		 * Find a child of a section added so far
+		 * @param parent the parent section entry (-1 for the root)
+		 * @param name the name of the child
+		 * @return the first child with given name or -1 if there is none
+		 */
+		public int findChild(int parent, String name) {
+			Map<String, Integer> children = childIndex.get(parent);
+			Integer entry = children != null ? children.get(name) : null;
+			return entry != null ? entry : -1;
+		}
+
+		/**
+		 * Get the section that children are currently added to
+		 * @return the position of the section or -1 for the root
+		 */
+		public int currentSection() {
+			return openSections.isEmpty() ? -1 : openSections.peek();
+		}
+
+		/**
+		 * Create a node that represents an option added so far
+		 * @param entry the position of the option
+		 * @return a new node
+		 */
+		public Option getOption(int entry) {
+			Option option;
+
+			if (kinds[entry] == LIST) {
+				option = new ListOption(names[entry], Collections.unmodifiableList(Arrays.asList(lists[entry])), separators[entry]);
+			} else if (kinds[entry] == SCALAR) {
+				option = new ScalarOption(names[entry], values[entry], BOOLEANS[booleans[entry]]);
+			} else {
+				throw new IllegalArgumentException("Entry " + entry + " is not an option");
+			}
+
+			String description = descriptions != null ? descriptions[entry] : null;
+			option.setDescription(description != null ? description : "");
+			return option;
+		}
+
+		/**
+		 * Finish the tree, closing all open sections
+		 * @param name the name of the root
+		 * @return the tree
+		 */
+		public CompactConfigRoot build(String name) {
+			return build(name, "");
+		}
+
+		private CompactConfigRoot build(String name, String description) {
+			while (!openSections.isEmpty()) {
+				endSection();
+			}
+
+			return new CompactConfigRoot(name, description, this);
+		}
+
+		private int add(byte kind, String name) {
+			if (count == kinds.length) {
+				int capacity = count * 2;
+				kinds = Arrays.copyOf(kinds, capacity);
+				names = Arrays.copyOf(names, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				values = Arrays.copyOf(values, capacity);
+				booleans = Arrays.copyOf(booleans, capacity);
+
+				if (lists != null) {
+					lists = Arrays.copyOf(lists, capacity);
+					separators = Arrays.copyOf(separators, capacity);
+				}
+
+				if (descriptions != null) {
+					descriptions = Arrays.copyOf(descriptions, capacity);
+				}
+			}
+
+			int entry = count++;
+			childIndex.computeIfAbsent(currentSection(), parent -> new HashMap<>()).putIfAbsent(name, entry);
+			kinds[entry] = kind;
+			names[entry] = name;
+			ends[entry] = kind == SECTION ? -1 : entry + 1;
+			booleans[entry] = (byte) ParsedBoolean.NOT_BOOLEAN.ordinal();
+			return entry;
+		}
+	}
+}
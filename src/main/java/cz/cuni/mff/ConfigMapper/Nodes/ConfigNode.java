@@ -18,6 +18,11 @@ public abstract class ConfigNode {
 	 */
 	private String description = "";
 
+	/**
+	 * Is the node part of a tree that may be shared by multiple threads?
+	 */
+	private boolean readOnly = false;
+
 	/**
 	 * @param name the name of the node
 	 */
@@ -45,9 +50,26 @@ public abstract class ConfigNode {
 	 * @param description the description to set
 	 */
 	public void setDescription(String description) {
+		checkWritable();
 		this.description = description;
 	}
 
+	/**
+	 * Prevent further changes of the node, so that it can be shared (it must not be published before)
+	 */
+	void makeReadOnly() {
+		readOnly = true;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if the node is read-only
+	 */
+	void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("The node belongs to a read-only configuration tree");
+		}
+	}
+
 	/**
 	 * Check if the nodes are equal
 	 * @param other the node to compare this one to
@@ -59,9 +81,17 @@ public abstract class ConfigNode {
 			return true;
 		}
 
-		return other != null
-			&& getClass() == other.getClass()
+		return other instanceof ConfigNode
+			&& nodeType() == ((ConfigNode) other).nodeType()
 			&& Objects.equals(this.description, ((ConfigNode) other).description)
 			&& Objects.equals(this.name, ((ConfigNode) other).name);
 	}
+
+	/**
+	 * Get the type of the node, which has to be the same for equal nodes
+	 * @return the class of the node (internal subclasses return the class they stand for)
+	 */
+	Class<?> nodeType() {
+		return getClass();
+	}
 }
@@ -1,11 +1,12 @@
 package cz.cuni.mff.ConfigMapper.Nodes;
 
 import java.util.List;
+import java.util.Objects;
 
 /**
  * The root node of a configuration
  */
-public final class ConfigRoot extends Section {
+public class ConfigRoot extends Section {
 	/**
 	 * @param name the name of the section
 	 * @param children a list of children of the section
@@ -13,4 +14,27 @@ public final class ConfigRoot extends Section {
 	public ConfigRoot(String name, List<ConfigNode> children) {
 		super(name, children);
 	}
+
+	/**
+	 * Check if both objects are configuration roots with equal children.
+	 * Unlike other nodes, roots with different representations (e.g. {@link CompactConfigRoot}) can be equal.
+	 * @param obj the object to compare this root to
+	 * @return true if both objects are equal roots that have equal children, false otherwise
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof ConfigRoot)) {
+			return false;
+		}
+
+		ConfigRoot other = (ConfigRoot) obj;
+
+		return Objects.equals(getName(), other.getName())
+			&& Objects.equals(getDescription(), other.getDescription())
+			&& Objects.equals(getChildren(), other.getChildren());
+	}
 }
@@ -1,5 +1,6 @@
 package cz.cuni.mff.ConfigMapper.Nodes;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -14,6 +15,11 @@ public final class ListOption extends Option {
 	 */
 	private List<String> value;
 
+	/**
+	 * Is the list immutable and possibly shared with other options?
+	 */
+	private boolean shared = false;
+
 	private String separator;
 
 	/**
@@ -59,11 +65,40 @@ public final class ListOption extends Option {
 		}
 	}
 
+	/**
+	 * Create an option with an immutable list, which may be shared with other options (e.g. those that link to it).
+	 * The list is copied into the option when it's first requested by {@link #getValue()}, so the option must only
+	 * be used by one thread at a time (unlike options of a {@link CompactConfigRoot}, whose lists are never copied).
+	 * @param name the name of the option
+	 * @param value the immutable value of the option
+	 * @param separator separator
+	 * @return the option
+	 */
+	public static ListOption shared(String name, List<String> value, String separator) {
+		ListOption option = new ListOption(name, value, separator);
+		option.shared = true;
+		return option;
+	}
+
 	/**
 	 * Get the values
+	 * A shared list is copied first, so the result can always be modified.
 	 * @return a list of values
 	 */
 	public List<String> getValue() {
+		if (shared) {
+			value = new ArrayList<>(value);
+			shared = false;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Get the values without copying a shared list
+	 * @return a list of values, which must not be modified
+	 */
+	public List<String> getValueView() {
 		return value;
 	}
 
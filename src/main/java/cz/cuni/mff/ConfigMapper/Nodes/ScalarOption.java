@@ -61,6 +61,7 @@ public final class ScalarOption extends Option {
 	 * @param booleanValue the boolean value of the option
 	 */
 	public void setBooleanValue(ParsedBoolean booleanValue) {
+		checkWritable();
 		this.booleanValue = booleanValue;
 	}
 
@@ -2,7 +2,9 @@ package cz.cuni.mff.ConfigMapper.Nodes;
 
 import cz.cuni.mff.ConfigMapper.ConfigurationException;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -15,6 +17,21 @@ public class Section extends ConfigNode {
 	 */
 	private List<ConfigNode> children;
 
+	/**
+	 * Maps child names to the position of the first child with that name (built lazily)
+	 */
+	private Map<String, Integer> index;
+
+	/**
+	 * The number of children covered by the index
+	 */
+	private int indexedCount;
+
+	/**
+	 * The last child covered by the index (used to detect insertions)
+	 */
+	private ConfigNode lastIndexed;
+
 	/**
 	 * @param name the name of the section
 	 * @param children a list of children of the section
@@ -32,17 +49,139 @@ public class Section extends ConfigNode {
 		return children;
 	}
 
-	public boolean addChild(ConfigNode newChild) throws ConfigurationException{
+	/**
+	 * Find a child node by its name.
+	 * Children are looked up using an index, which is kept up to date by {@link #addChild(ConfigNode)}.
+	 * Nodes added to or removed from the list returned by {@link #getChildren()} are detected
+	 * on the next lookup, except for in-place replacements that keep the size of the list.
+	 * @param name the name of the child
+	 * @return the first child with given name or null if there is none
+	 */
+	public ConfigNode getChild(String name) {
+		Integer position = updateIndex().get(name);
+
+		if (position != null) {
+			ConfigNode child = children.get(position);
+
+			if (child.getName().equals(name)) {
+				return child;
+			}
+
+			// The list of children was modified directly, rebuild the index
+			index = null;
+			position = updateIndex().get(name);
+			return position != null ? children.get(position) : null;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Add a child node to the end of the section
+	 * @param newChild the new node
+	 * @return true (as specified by {@link List#add(Object)})
+	 * @throws ConfigurationException if there already is a child with the same name
+	 */
+	public boolean addChild(ConfigNode newChild) throws ConfigurationException {
 		String newChildsName = newChild.getName();
-		for (ConfigNode child : children) {
-			if (child.getName().equals(newChildsName)) {
-				throw new ConfigurationException(
-						String.format("Trying to add child %s, which is already present", newChildsName));
+
+		if (getChild(newChildsName) != null) {
+			throw new ConfigurationException(
+					String.format("Trying to add child %s, which is already present", newChildsName));
+		}
+
+		boolean result = children.add(newChild);
+		updateIndex();
+		return result;
+	}
+
+	/**
+	 * Replace a child node with another one with the same name
+	 * @param oldChild the replaced node
+	 * @param newChild the new node
+	 * @return true if the old node was found and replaced, false otherwise
+	 */
+	public boolean replaceChild(ConfigNode oldChild, ConfigNode newChild) {
+		int position = positionOf(oldChild);
+
+		if (position == -1) {
+			return false;
+		}
+
+		if (!oldChild.getName().equals(newChild.getName())) {
+			throw new IllegalArgumentException(String.format(
+					"Trying to replace child %s with child %s", oldChild.getName(), newChild.getName()));
+		}
+
+		children.set(position, newChild);
+
+		// The positions in the index are still valid
+		if (lastIndexed == oldChild) {
+			lastIndexed = newChild;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove a child node
+	 * @param child the removed node
+	 * @return true if the node was found and removed, false otherwise
+	 */
+	public boolean removeChild(ConfigNode child) {
+		int position = positionOf(child);
+
+		if (position == -1) {
+			return false;
+		}
+
+		children.remove(position);
+		index = null;
+		return true;
+	}
+
+	/**
+	 * Find the position of a child node (compared by identity)
+	 * @param child the node
+	 * @return the position or -1 if the node is not a child of this section
+	 */
+	private int positionOf(ConfigNode child) {
+		Integer position = updateIndex().get(child.getName());
+
+		if (position != null && children.get(position) == child) {
+			return position;
+		}
+
+		for (int i = 0; i < children.size(); i++) {
+			if (children.get(i) == child) {
+				return i;
 			}
 		}
-        return children.add(newChild);
-    }
 
+		return -1;
+	}
+
+	/**
+	 * Make sure the name index covers all children
+	 * @return the index
+	 */
+	private Map<String, Integer> updateIndex() {
+		int count = children.size();
+
+		// Unless nodes were only appended since the last update, the positions can't be trusted anymore
+		if (index == null || count < indexedCount || (indexedCount > 0 && children.get(indexedCount - 1) != lastIndexed)) {
+			index = new HashMap<>();
+			indexedCount = 0;
+		}
+
+		for (int i = indexedCount; i < count; i++) {
+			index.putIfAbsent(children.get(i).getName(), i);
+		}
+
+		indexedCount = count;
+		lastIndexed = count > 0 ? children.get(count - 1) : null;
+		return index;
+	}
 
 	/**
 	 * Does the section only contain values?
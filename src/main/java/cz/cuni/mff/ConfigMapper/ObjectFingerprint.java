@@ -0,0 +1,191 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * The values of the mapped fields of an object, recorded when the object was loaded (or saved)
+ *
+ * Values of primitive fields are stored as their bits, immutable values (strings, enum constants) are stored
+ * by reference and lists are copied. The objects that hold the sections are compared by identity, so replacing
+ * a section object makes all of its options dirty. The mapped object itself is not referenced, so that
+ * fingerprints can be stored in a weak map. Neither is the configuration used to load the object, only its save hints
+ * are kept.
+ */
+final class ObjectFingerprint {
+	/**
+	 * The configuration used to load the object (null if it was loaded from events)
+	 */
+	private final WeakReference<ConfigRoot> config;
+
+	/**
+	 * The save hints of the configuration used to load the object (null if it was loaded from events)
+	 */
+	final SaveHints hints;
+
+	/**
+	 * The objects that hold the fields, numbered as in the layout (the root object is not stored)
+	 */
+	private final Object[] owners;
+
+	/**
+	 * The bits of primitive int, float, double and boolean fields, indexed like the options of the layout
+	 */
+	private final long[] bits;
+
+	/**
+	 * The values of other fields, indexed like the options of the layout
+	 */
+	private final Object[] values;
+
+	/**
+	 * A copy of the undeclared options (null if there is no container)
+	 */
+	private final Map<String, String> undeclaredOptions;
+
+	private final MappingLayout layout;
+
+	private ObjectFingerprint(MappingLayout layout, ConfigRoot config, Object[] owners, Map<String, String> undeclaredOptions) {
+		this.layout = layout;
+		this.config = config != null ? new WeakReference<>(config) : null;
+		this.hints = config != null ? SaveHints.of(layout, config) : null;
+		this.owners = owners;
+		this.bits = new long[layout.options.size()];
+		this.values = new Object[layout.options.size()];
+		this.undeclaredOptions = undeclaredOptions != null ? new HashMap<>(undeclaredOptions) : null;
+
+		for (int i = 0; i < values.length; i++) {
+			MappingLayout.OptionSlot slot = layout.options.get(i);
+			Object owner = owners[slot.owner];
+
+			if (owner == null) {
+				continue;
+			}
+
+			FieldAccess accessor = slot.schema.accessor;
+
+			if (hasBits(accessor)) {
+				bits[i] = bitsOf(accessor, owner);
+			} else {
+				Object value = accessor.get(owner);
+				values[i] = value instanceof List ? Arrays.asList(((List<?>) value).toArray()) : value;
+			}
+		}
+
+		// The root object must not be referenced
+		owners[0] = null;
+	}
+
+	/**
+	 * Record the values of the mapped fields of an object
+	 * @param instance the mapped object
+	 * @param config the configuration used to load the object (null if there is none)
+	 * @return the fingerprint
+	 * @throws MappingException when a field cannot be mapped or when the undeclared option container is not valid
+	 */
+	static ObjectFingerprint of(Object instance, ConfigRoot config) throws MappingException {
+		MappingLayout layout = MappingLayout.of(instance);
+		layout.checkMappable();
+		Object[] owners = ConfigMapper.resolveOwners(layout, instance);
+		Map<String, String> undeclaredOptions = ConfigMapper.resolveUndeclaredOptions(layout, owners);
+		return new ObjectFingerprint(layout, config, owners, undeclaredOptions);
+	}
+
+	/**
+	 * Check if the fingerprint was recorded for a configuration
+	 * @param config the configuration
+	 * @return true if the object was loaded from (or saved to) the configuration
+	 */
+	boolean isFor(ConfigRoot config) {
+		return this.config != null && this.config.get() == config;
+	}
+
+	/**
+	 * Check if the fingerprint was recorded with a layout
+	 * @param layout the layout of the mapped object
+	 * @return true if the option indices of the fingerprint are valid for the layout
+	 */
+	boolean isFor(MappingLayout layout) {
+		return this.layout.hasShapeOf(layout);
+	}
+
+	/**
+	 * Check if an option field has the recorded value
+	 * @param option the index of the option in the layout
+	 * @param owner the current object that holds the field (null if its section is not present)
+	 * @return true if the field is held by the same object and has the same value
+	 */
+	boolean isClean(int option, Object owner) {
+		MappingLayout.OptionSlot slot = layout.options.get(option);
+		Object recordedOwner = slot.owner == 0 ? owner : owners[slot.owner];
+
+		if (owner != recordedOwner) {
+			return false;
+		}
+
+		if (owner == null) {
+			return true;
+		}
+
+		FieldAccess accessor = slot.schema.accessor;
+
+		if (hasBits(accessor)) {
+			return bits[option] == bitsOf(accessor, owner);
+		}
+
+		return Objects.equals(values[option], accessor.get(owner));
+	}
+
+	/**
+	 * Check if all mapped fields of an object have the recorded values
+	 * @param instance the mapped object
+	 * @return true if nothing changed since the fingerprint was recorded
+	 * @throws MappingException when the undeclared option container is not valid
+	 */
+	boolean isClean(Object instance) throws MappingException {
+		if (instance.getClass() != layout.type) {
+			return false;
+		}
+
+		Object[] current = ConfigMapper.resolveOwners(layout, instance);
+
+		for (int i = 1; i < current.length; i++) {
+			if (current[i] != owners[i]) {
+				return false;
+			}
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			if (!isClean(i, current[layout.options.get(i).owner])) {
+				return false;
+			}
+		}
+
+		return Objects.equals(undeclaredOptions, ConfigMapper.resolveUndeclaredOptions(layout, current));
+	}
+
+	private static boolean hasBits(FieldAccess accessor) {
+		Class<?> type = accessor.getType();
+		return type == int.class || type == float.class || type == double.class || type == boolean.class;
+	}
+
+	private static long bitsOf(FieldAccess accessor, Object owner) {
+		Class<?> type = accessor.getType();
+
+		if (type == int.class) {
+			return accessor.getInt(owner);
+		}
+
+		if (type == float.class) {
+			return Float.floatToIntBits(accessor.getFloat(owner));
+		}
+
+		if (type == double.class) {
+			return Double.doubleToLongBits(accessor.getDouble(owner));
+		}
+
+		return accessor.getBoolean(owner) ? 1 : 0;
+	}
+}
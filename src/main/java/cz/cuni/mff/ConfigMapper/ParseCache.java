@@ -0,0 +1,335 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.ConfigAdapter;
+import cz.cuni.mff.ConfigMapper.Nodes.CompactConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches parsed configuration files, so that loading an unchanged file again needs neither reading nor parsing it
+ *
+ * Files are identified by their canonical paths and by the parse key of the adapter
+ * (see {@link ConfigAdapter#getParseKey()}). A cached tree is used as long as the size, the modification time and
+ * the file key (e.g. the inode) of the file stay the same. Files modified shortly before they were read could be
+ * modified again without changing their modification time, so their content is also compared with the hash of the
+ * cached content. The cached trees are {@link CompactConfigRoot}s, which cannot be changed, so that they
+ * can be shared by all loads of the file. When multiple threads read the same file at once, only one of them parses
+ * it and the others wait for its tree.
+ *
+ * The weight of an entry is the estimated memory retained by its tree (see {@link CompactConfigRoot#estimateSize()}).
+ * When the total weight exceeds the limit, the least recently used entries are evicted.
+ */
+public final class ParseCache {
+	/**
+	 * The default maximum weight of the shared cache (64 MiB of parsed trees)
+	 */
+	static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+	/**
+	 * Files modified less than this long before they were read are checked by their content
+	 * (covers the timestamp granularity of common file systems)
+	 */
+	private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * The shared cache, created when it's first used
+	 */
+	private static final class Shared {
+		static final ParseCache INSTANCE = new ParseCache(DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * A canonical path along with the parse key of an adapter
+	 */
+	private static final class Key {
+		final Path file;
+
+		final Object parseKey;
+
+		Key(Path file, Object parseKey) {
+			this.file = file;
+			this.parseKey = parseKey;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key
+				&& file.equals(((Key) other).file)
+				&& parseKey.equals(((Key) other).parseKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * file.hashCode() + parseKey.hashCode();
+		}
+	}
+
+	/**
+	 * A parsed file along with the attributes and the content hash of the file when it was read
+	 */
+	private static final class Entry {
+		final ConfigRoot config;
+
+		/**
+		 * The estimated memory retained by the tree
+		 */
+		final long weight;
+
+		final long size;
+
+		final long modified;
+
+		final Object fileKey;
+
+		final byte[] hash;
+
+		/**
+		 * Does the content have to be compared with the hash?
+		 */
+		final boolean racy;
+
+		/**
+		 * The value of the access clock when the entry was last used
+		 */
+		volatile long lastAccess;
+
+		Entry(ConfigRoot config, long weight, BasicFileAttributes attributes, byte[] hash, long readTime) {
+			this.config = config;
+			this.weight = weight;
+			this.size = attributes.size();
+			this.modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+			this.fileKey = attributes.fileKey();
+			this.hash = hash;
+			this.racy = readTime - modified < RACY_NANOS;
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size()
+				&& modified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+				&& Objects.equals(fileKey, attributes.fileKey());
+		}
+	}
+
+	private final long maxWeight;
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Parses in progress, so that a file read by multiple threads at once is only parsed once
+	 */
+	private final Map<Key, CompletableFuture<Entry>> parsing = new ConcurrentHashMap<>();
+
+	private final AtomicLong weight = new AtomicLong();
+
+	/**
+	 * Orders the entries by their last use
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param maxWeight The maximum estimated memory retained by the cached trees in bytes
+	 */
+	public ParseCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Get the cache shared by the whole process
+	 * @return the shared cache
+	 */
+	public static ParseCache shared() {
+		return Shared.INSTANCE;
+	}
+
+	/**
+	 * Parse a file, or get the cached tree if the file didn't change since it was parsed
+	 * @param adapter The adapter used to parse the file
+	 * @param file The path to the file
+	 * @return The parsed tree, which is shared by all reads of the file and cannot be modified
+	 * @throws IOException when the file cannot be read
+	 * @throws ConfigurationException when the file is malformed
+	 */
+	public ConfigRoot read(ConfigAdapter adapter, Path file) throws IOException, ConfigurationException {
+		Path canonical = file.toRealPath();
+		Key key = new Key(canonical, adapter.getParseKey());
+
+		while (true) {
+			long readTime = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+			BasicFileAttributes attributes = Files.readAttributes(canonical, BasicFileAttributes.class);
+			Entry entry = entries.get(key);
+
+			if (entry != null && entry.matches(attributes) && !entry.racy) {
+				return hit(entry);
+			}
+
+			CompletableFuture<Entry> pending = new CompletableFuture<>();
+			CompletableFuture<Entry> running = parsing.putIfAbsent(key, pending);
+
+			if (running == null) {
+				try {
+					Entry parsed = parse(adapter, key, entry, attributes, readTime);
+					pending.complete(parsed);
+					return parsed.config;
+				} catch (Throwable exception) {
+					// The waiting threads check the file again
+					pending.completeExceptionally(exception);
+					throw exception;
+				} finally {
+					parsing.remove(key, pending);
+				}
+			}
+
+			// Use the tree parsed by another thread if the file didn't change since, otherwise check the file again
+			Entry parsed;
+
+			try {
+				parsed = running.join();
+			} catch (CompletionException exception) {
+				continue;
+			}
+
+			if (parsed.matches(attributes) && !parsed.racy) {
+				return hit(parsed);
+			}
+		}
+	}
+
+	/**
+	 * Read a file and parse it, unless its content is the same as that of the cached entry
+	 */
+	private Entry parse(ConfigAdapter adapter, Key key, Entry entry, BasicFileAttributes attributes, long readTime) throws IOException, ConfigurationException {
+		byte[] content = Files.readAllBytes(key.file);
+		byte[] hash = AtomicFileWriter.newDigest().digest(content);
+
+		if (entry != null && entry.matches(attributes) && Arrays.equals(entry.hash, hash)) {
+			// Once the file is old enough, its content doesn't have to be checked anymore
+			Entry checked = new Entry(entry.config, entry.weight, attributes, hash, readTime);
+			entries.replace(key, entry, checked);
+			hit(checked);
+			return checked;
+		}
+
+		missCount.increment();
+		CompactConfigRoot config = CompactConfigRoot.copyOf(adapter.read(new ByteArrayInputStream(content)));
+		Entry parsed = new Entry(config, config.estimateSize(), attributes, hash, readTime);
+
+		if (parsed.weight <= maxWeight) {
+			store(key, parsed);
+		}
+
+		return parsed;
+	}
+
+	private ConfigRoot hit(Entry entry) {
+		entry.lastAccess = clock.incrementAndGet();
+		hitCount.increment();
+		return entry.config;
+	}
+
+	private void store(Key key, Entry entry) {
+		entry.lastAccess = clock.incrementAndGet();
+		Entry previous = entries.put(key, entry);
+		weight.addAndGet(entry.weight - (previous != null ? previous.weight : 0));
+
+		if (weight.get() > maxWeight) {
+			evict();
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until the weight is within the limit
+	 */
+	private synchronized void evict() {
+		if (weight.get() <= maxWeight) {
+			return;
+		}
+
+		List<Map.Entry<Key, Entry>> candidates = new ArrayList<>(entries.entrySet());
+		candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess));
+
+		for (Map.Entry<Key, Entry> candidate : candidates) {
+			if (weight.get() <= maxWeight) {
+				break;
+			}
+
+			if (entries.remove(candidate.getKey(), candidate.getValue())) {
+				weight.addAndGet(-candidate.getValue().weight);
+				evictionCount.increment();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached trees
+	 */
+	public void invalidateAll() {
+		for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+			if (entries.remove(entry.getKey(), entry.getValue())) {
+				weight.addAndGet(-entry.getValue().weight);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of reads that used a cached tree
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Get the number of reads that had to parse the file
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Get the number of trees evicted to keep the weight within the limit
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Get the estimated memory retained by the cached trees
+	 * @return the weight in bytes
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Get the number of cached trees
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,431 @@
+package cz.cuni.mff.ConfigMapper.Processor;
+
+import cz.cuni.mff.ConfigMapper.Annotations.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a {@link cz.cuni.mff.ConfigMapper.ConfigBinding} for every class with fields annotated with
+ * {@link ConfigOption}, {@link ConfigSection} or {@link UndeclaredOptions}.
+ *
+ * The generated binding of class Foo is named FooConfigBinding and placed in the same package.
+ * It accesses the fields directly and creates instances using the default constructor, so the mapper
+ * doesn't have to inspect the class using reflection. Classes whose fields or constructor cannot be accessed
+ * from generated code (e.g. private fields) are skipped - the mapper handles them using reflection.
+ */
+@SupportedAnnotationTypes({
+	"cz.cuni.mff.ConfigMapper.Annotations.ConfigOption",
+	"cz.cuni.mff.ConfigMapper.Annotations.ConfigSection",
+	"cz.cuni.mff.ConfigMapper.Annotations.UndeclaredOptions"
+})
+public class ConfigBindingProcessor extends AbstractProcessor {
+	/**
+	 * The suffix of the names of generated binding classes
+	 */
+	private static final String BINDING_SUFFIX = "ConfigBinding";
+
+	/**
+	 * Names of the bindings generated so far (in any round)
+	 */
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<TypeElement> types = new LinkedHashSet<>();
+
+		for (Class<? extends java.lang.annotation.Annotation> annotation : Arrays.asList(
+			ConfigOption.class, ConfigSection.class, UndeclaredOptions.class
+		)) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.FIELD) {
+					types.add((TypeElement) element.getEnclosingElement());
+				}
+			}
+		}
+
+		for (TypeElement type : types) {
+			String bindingName = bindingName(type);
+
+			if (!generated.add(bindingName)) {
+				continue;
+			}
+
+			String problem = findProblem(type);
+
+			if (problem != null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, String.format(
+					"No ConfigBinding generated for %s (%s), it will be mapped using reflection",
+					type.getQualifiedName(),
+					problem
+				), type);
+				continue;
+			}
+
+			try {
+				writeBinding(type, bindingName);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, String.format(
+					"Could not write %s: %s",
+					bindingName,
+					e.getMessage()
+				), type);
+			}
+		}
+
+		// Other processors may also be interested in the annotations
+		return false;
+	}
+
+	/**
+	 * Get the qualified name of the binding class generated for a type
+	 * @param type the mapped type
+	 * @return the name of the binding
+	 */
+	private String bindingName(TypeElement type) {
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		int packageEnd = binaryName.lastIndexOf('.') + 1;
+		return binaryName.substring(0, packageEnd) + binaryName.substring(packageEnd).replace('$', '_') + BINDING_SUFFIX;
+	}
+
+	/**
+	 * Find the reason why a binding cannot be generated for a type
+	 * @param type the mapped type
+	 * @return a description of the problem or null if the binding can be generated
+	 */
+	private String findProblem(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return "not a concrete class";
+		}
+
+		if (!type.getTypeParameters().isEmpty()) {
+			return "generic class";
+		}
+
+		if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+			return "local or anonymous class";
+		}
+
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+			return "inner class that is not static";
+		}
+
+		if (!isAccessible(type)) {
+			return "private class";
+		}
+
+		boolean hasConstructor = false;
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				hasConstructor = true;
+			}
+		}
+
+		if (!hasConstructor) {
+			return "no accessible default constructor";
+		}
+
+		for (VariableElement field : mappedFields(type)) {
+			if (field.getModifiers().contains(Modifier.PRIVATE)) {
+				return "private field " + field.getSimpleName();
+			}
+
+			if (field.getModifiers().contains(Modifier.FINAL)) {
+				return "final field " + field.getSimpleName();
+			}
+
+			if (!isAccessible(field.asType())) {
+				return "inaccessible type of field " + field.getSimpleName();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Check if a type element can be referenced from its package
+	 * @param element the type element
+	 * @return true if neither the type nor any of its enclosing types is private
+	 */
+	private static boolean isAccessible(Element element) {
+		for (Element current = element; current instanceof TypeElement; current = current.getEnclosingElement()) {
+			if (current.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if a type can be referenced from generated code
+	 * @param type the type
+	 * @return true if the type is accessible
+	 */
+	private boolean isAccessible(TypeMirror type) {
+		TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+
+		while (erasure.getKind() == TypeKind.ARRAY) {
+			erasure = ((ArrayType) erasure).getComponentType();
+		}
+
+		if (erasure.getKind().isPrimitive()) {
+			return true;
+		}
+
+		return erasure.getKind() == TypeKind.DECLARED && isAccessible(((DeclaredType) erasure).asElement());
+	}
+
+	/**
+	 * Get the fields of a type that have a mapping annotation, in the order of declaration
+	 * @param type the mapped type
+	 * @return the annotated fields
+	 */
+	private static List<VariableElement> mappedFields(TypeElement type) {
+		List<VariableElement> fields = new ArrayList<>();
+
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getAnnotation(ConfigOption.class) != null
+				|| field.getAnnotation(ConfigSection.class) != null
+				|| field.getAnnotation(UndeclaredOptions.class) != null) {
+				fields.add(field);
+			}
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Write the source of a binding class
+	 * @param type the mapped type
+	 * @param bindingName the qualified name of the binding class
+	 * @throws IOException when the source file cannot be written
+	 */
+	private void writeBinding(TypeElement type, String bindingName) throws IOException {
+		String typeName = type.getQualifiedName().toString();
+		int packageEnd = bindingName.lastIndexOf('.');
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(bindingName, type).openWriter();
+		     PrintWriter out = new PrintWriter(writer)) {
+			if (packageEnd >= 0) {
+				out.printf("package %s;%n%n", bindingName.substring(0, packageEnd));
+			}
+
+			out.printf("/**%n");
+			out.printf(" * Mapping of {@link %s}, generated by %s%n", typeName, getClass().getName());
+			out.printf(" */%n");
+			out.printf("public final class %s implements cz.cuni.mff.ConfigMapper.ConfigBinding<%s> {%n",
+				bindingName.substring(packageEnd + 1), typeName);
+
+			out.printf("\t@Override%n");
+			out.printf("\tpublic Class<%s> type() {%n", typeName);
+			out.printf("\t\treturn %s.class;%n", typeName);
+			out.printf("\t}%n%n");
+
+			out.printf("\t@Override%n");
+			out.printf("\tpublic %s newInstance() {%n", typeName);
+			out.printf("\t\treturn new %s();%n", typeName);
+			out.printf("\t}%n%n");
+
+			out.printf("\t@Override%n");
+			out.printf("\t@SuppressWarnings(\"unchecked\")%n");
+			out.printf("\tpublic java.util.List<cz.cuni.mff.ConfigMapper.FieldBinding> fields() {%n");
+			out.printf("\t\tjava.util.List<cz.cuni.mff.ConfigMapper.FieldBinding> fields = new java.util.ArrayList<>();%n");
+
+			for (VariableElement field : mappedFields(type)) {
+				writeFieldBindings(out, typeName, field);
+			}
+
+			out.printf("\t\treturn fields;%n");
+			out.printf("\t}%n");
+			out.printf("}%n");
+		}
+	}
+
+	/**
+	 * Write the statements that add the bindings of a field
+	 * @param out the output
+	 * @param typeName the qualified name of the mapped type
+	 * @param field the field
+	 */
+	private void writeFieldBindings(PrintWriter out, String typeName, VariableElement field) {
+		String fieldName = field.getSimpleName().toString();
+		String access = fieldAccess(typeName, field);
+
+		ConfigOption option = field.getAnnotation(ConfigOption.class);
+		if (option != null) {
+			out.printf("\t\tfields.add(cz.cuni.mff.ConfigMapper.FieldBinding.option(%s, %s)", literal(fieldName), access);
+			writeCommonAttributes(out, option.name(), option.description(), option.optional());
+
+			if (!option.section().isEmpty()) {
+				out.printf("%n\t\t\t.section(%s)", literal(option.section()));
+			}
+
+			IntegralConstraint integralConstraint = field.getAnnotation(IntegralConstraint.class);
+			if (integralConstraint != null) {
+				out.printf("%n\t\t\t.integralConstraint(%s, %s, %s)",
+					literal(integralConstraint.min()),
+					literal(integralConstraint.max()),
+					integralConstraint.unsigned());
+			}
+
+			DecimalConstraint decimalConstraint = field.getAnnotation(DecimalConstraint.class);
+			if (decimalConstraint != null) {
+				out.printf("%n\t\t\t.decimalConstraint(%s, %s, %s)",
+					literal(decimalConstraint.min()),
+					literal(decimalConstraint.max()),
+					decimalConstraint.unsigned());
+			}
+
+			for (ConstantAlias alias : field.getAnnotationsByType(ConstantAlias.class)) {
+				out.printf("%n\t\t\t.alias(%s, %s)", literal(alias.constant()), literal(alias.alias()));
+			}
+
+			TypeMirror type = field.asType();
+			if (type.getKind() == TypeKind.DECLARED
+				&& ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+				out.printf("%n\t\t\t.enumConstants(%s.values())", erasure(type));
+			}
+
+			out.printf(");%n");
+		}
+
+		ConfigSection section = field.getAnnotation(ConfigSection.class);
+		if (section != null) {
+			out.printf("\t\tfields.add(cz.cuni.mff.ConfigMapper.FieldBinding.section(%s, %s)", literal(fieldName), access);
+			writeCommonAttributes(out, section.name(), section.description(), section.optional());
+			out.printf(");%n");
+		}
+
+		if (field.getAnnotation(UndeclaredOptions.class) != null) {
+			out.printf("\t\tfields.add(cz.cuni.mff.ConfigMapper.FieldBinding.undeclaredOptions(%s, %s));%n",
+				literal(fieldName), access);
+		}
+	}
+
+	/**
+	 * Write the attributes shared by options and sections, omitting those with default values
+	 * @param out the output
+	 * @param name the name given in the annotation
+	 * @param description the description
+	 * @param optional is the option or section optional?
+	 */
+	private void writeCommonAttributes(PrintWriter out, String name, String description, boolean optional) {
+		if (!name.isEmpty()) {
+			out.printf("%n\t\t\t.name(%s)", literal(name));
+		}
+
+		if (!description.isEmpty()) {
+			out.printf("%n\t\t\t.description(%s)", literal(description));
+		}
+
+		if (optional) {
+			out.printf("%n\t\t\t.optional(true)");
+		}
+	}
+
+	/**
+	 * Make an expression that creates a FieldAccess for a field
+	 * @param typeName the qualified name of the mapped type
+	 * @param field the field
+	 * @return the source of the expression
+	 */
+	private String fieldAccess(String typeName, VariableElement field) {
+		Types types = processingEnv.getTypeUtils();
+		TypeMirror type = field.asType();
+		String fieldType = erasure(type);
+		String fieldName = field.getSimpleName().toString();
+		String target = field.getModifiers().contains(Modifier.STATIC)
+			? typeName + "." + fieldName
+			: "((" + typeName + ") instance)." + fieldName;
+
+		StringBuilder source = new StringBuilder();
+		source.append(String.format("new cz.cuni.mff.ConfigMapper.FieldAccess(%s.class) {%n", fieldType));
+
+		source.append(String.format("\t\t\t@Override%n"));
+		source.append(String.format("\t\t\tpublic Object get(Object instance) {%n"));
+		source.append(String.format("\t\t\t\treturn %s;%n", target));
+		source.append(String.format("\t\t\t}%n%n"));
+
+		// Primitive fields are stored by unboxing the value, which throws NullPointerException on null
+		String castType = type.getKind().isPrimitive()
+			? types.boxedClass((PrimitiveType) type).getQualifiedName().toString()
+			: fieldType;
+
+		source.append(String.format("\t\t\t@Override%n"));
+		source.append(String.format("\t\t\tprotected void store(Object instance, Object value) {%n"));
+		source.append(String.format("\t\t\t\t%s = (%s) value;%n", target, castType));
+		source.append(String.format("\t\t\t}%n"));
+
+		String primitiveName = primitiveAccessorName(type.getKind());
+		if (primitiveName != null) {
+			source.append(String.format("%n\t\t\t@Override%n"));
+			source.append(String.format("\t\t\tpublic %s get%s(Object instance) {%n", fieldType, primitiveName));
+			source.append(String.format("\t\t\t\treturn %s;%n", target));
+			source.append(String.format("\t\t\t}%n%n"));
+
+			source.append(String.format("\t\t\t@Override%n"));
+			source.append(String.format("\t\t\tpublic void set%s(Object instance, %s value) {%n", primitiveName, fieldType));
+			source.append(String.format("\t\t\t\t%s = value;%n", target));
+			source.append(String.format("\t\t\t}%n"));
+		}
+
+		source.append("\t\t}");
+		return source.toString();
+	}
+
+	/**
+	 * Get the name suffix of the FieldAccess methods specialized for a primitive type
+	 * @param kind the kind of the field type
+	 * @return the suffix or null if there are no specialized methods for the type
+	 */
+	private static String primitiveAccessorName(TypeKind kind) {
+		switch (kind) {
+			case INT:
+				return "Int";
+			case FLOAT:
+				return "Float";
+			case DOUBLE:
+				return "Double";
+			case BOOLEAN:
+				return "Boolean";
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Get the source representation of the erasure of a type
+	 * @param type the type
+	 * @return the name of the erased type
+	 */
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	/**
+	 * Get the source representation of a constant
+	 * @param value the constant
+	 * @return a Java literal
+	 */
+	private String literal(Object value) {
+		Elements elements = processingEnv.getElementUtils();
+		return elements.getConstantExpression(value);
+	}
+}
@@ -0,0 +1,241 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigNode;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ListOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Option;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What saving a mapped object needs to know about the configuration it was loaded from, without the configuration itself
+ *
+ * The hints record which declared options were present in the configuration, their values (so that options
+ * that were explicitly set to their default value are kept) and their descriptions. Options are identified by their
+ * positions in the layout of the mapped class, so no paths or nodes are stored. Short scalar values are kept as they
+ * are, other values are reduced to a 64-bit hash and their length. Short descriptions are deduplicated.
+ * The hints are created by {@link ConfigMapper#saveHints(Class, ConfigRoot)}.
+ */
+public final class SaveHints {
+	/**
+	 * Scalar values up to this length are kept, longer values and lists are only hashed
+	 */
+	private static final int KEPT_VALUE_LENGTH = 64;
+
+	/**
+	 * Descriptions up to this length are deduplicated
+	 */
+	private static final int SHARED_DESCRIPTION_LENGTH = 256;
+
+	/**
+	 * The maximum number of deduplicated descriptions
+	 */
+	private static final int MAX_SHARED_DESCRIPTIONS = 1024;
+
+	/**
+	 * Deduplicated descriptions (unlike interned strings, the table is bounded)
+	 */
+	private static final ConcurrentHashMap<String, String> SHARED_DESCRIPTIONS = new ConcurrentHashMap<>();
+
+	/**
+	 * A hashed value of an option
+	 */
+	private static final class ValueDigest {
+		private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+		private static final long FNV_PRIME = 0x100000001b3L;
+
+		final long hash;
+
+		/**
+		 * The length of a scalar value, or the number of items of a list as a negative number
+		 */
+		final int length;
+
+		ValueDigest(long hash, int length) {
+			this.hash = hash;
+			this.length = length;
+		}
+
+		static ValueDigest of(Option option) {
+			if (option instanceof ListOption) {
+				ListOption list = (ListOption) option;
+				long hash = update(FNV_OFFSET, list.getSeparator());
+
+				for (String item : list.getValueView()) {
+					hash = update(hash, item);
+				}
+
+				return new ValueDigest(hash, -1 - list.getValueView().size());
+			}
+
+			String value = ((ScalarOption) option).getValue();
+			return new ValueDigest(update(FNV_OFFSET, value), value != null ? value.length() : 0);
+		}
+
+		boolean matches(ValueDigest other) {
+			return hash == other.hash && length == other.length;
+		}
+
+		/**
+		 * Add a string and its terminator to a FNV-1a hash
+		 */
+		private static long update(long hash, String value) {
+			if (value != null) {
+				for (int i = 0; i < value.length(); i++) {
+					hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+				}
+			}
+
+			// The terminator is not a valid character, so that items cannot be shifted between positions
+			return (hash ^ 0x10000) * FNV_PRIME;
+		}
+	}
+
+	private final MappingLayout layout;
+
+	/**
+	 * The options present in the configuration
+	 */
+	private final BitSet present;
+
+	/**
+	 * Values of present options - short scalar values or digests of other values (see {@link ValueDigest})
+	 */
+	private final Object[] values;
+
+	/**
+	 * Descriptions of present options (null if no option has a description)
+	 */
+	private final String[] descriptions;
+
+	private SaveHints(MappingLayout layout, BitSet present, Object[] values, String[] descriptions) {
+		this.layout = layout;
+		this.present = present;
+		this.values = values;
+		this.descriptions = descriptions;
+	}
+
+	/**
+	 * Record the options of a configuration
+	 * @param layout the layout of the mapped class
+	 * @param config the configuration
+	 * @return the hints
+	 */
+	static SaveHints of(MappingLayout layout, ConfigRoot config) {
+		int count = layout.options.size();
+		BitSet present = new BitSet(count);
+		Object[] values = new Object[count];
+		String[] descriptions = null;
+
+		for (int i = 0; i < count; i++) {
+			ConfigNode node = ConfigMapper.getNode(config, layout.options.get(i).path);
+
+			if (!(node instanceof Option)) {
+				continue;
+			}
+
+			Option option = (Option) node;
+			present.set(i);
+			values[i] = valueOf(option);
+
+			if (!option.getDescription().isEmpty()) {
+				if (descriptions == null) {
+					descriptions = new String[count];
+				}
+
+				descriptions[i] = share(option.getDescription());
+			}
+		}
+
+		return new SaveHints(layout, present, values, descriptions);
+	}
+
+	/**
+	 * Check if the hints were created for a layout
+	 * @param layout the layout of the mapped object
+	 * @return true if the option indices of the hints are valid for the layout
+	 */
+	boolean isFor(MappingLayout layout) {
+		return this.layout.hasShapeOf(layout);
+	}
+
+	/**
+	 * Check if an option was present in the configuration
+	 * @param option the index of the option in the layout
+	 * @return true if the option was present
+	 */
+	boolean isPresent(int option) {
+		return present.get(option);
+	}
+
+	/**
+	 * Get the description of an option in the configuration
+	 * @param option the index of the option in the layout
+	 * @return the description (empty if there was none or the option was not present)
+	 */
+	String getDescription(int option) {
+		return descriptions != null && descriptions[option] != null ? descriptions[option] : "";
+	}
+
+	/**
+	 * Check if a new option node matches the node that was present in the configuration.
+	 * Long values are compared by their 64-bit hashes and lengths.
+	 * @param option the index of the option in the layout
+	 * @param node the new node
+	 * @return true if the option was present with the same value and description
+	 */
+	boolean isOriginal(int option, Option node) {
+		if (!present.get(option) || !node.getDescription().equals(getDescription(option))) {
+			return false;
+		}
+
+		Object original = values[option];
+
+		if (original instanceof String) {
+			return node instanceof ScalarOption && original.equals(((ScalarOption) node).getValue());
+		}
+
+		Object value = valueOf(node);
+		return value instanceof ValueDigest && ((ValueDigest) original).matches((ValueDigest) value);
+	}
+
+	/**
+	 * Get the value of an option node as it is recorded
+	 */
+	private static Object valueOf(Option option) {
+		if (option instanceof ScalarOption) {
+			String value = ((ScalarOption) option).getValue();
+
+			if (value != null && value.length() <= KEPT_VALUE_LENGTH) {
+				return value;
+			}
+		}
+
+		return ValueDigest.of(option);
+	}
+
+	/**
+	 * Get a shared instance of a description, so that the same descriptions of many hints are only stored once
+	 */
+	private static String share(String description) {
+		if (description.length() > SHARED_DESCRIPTION_LENGTH) {
+			return description;
+		}
+
+		String shared = SHARED_DESCRIPTIONS.get(description);
+
+		if (shared != null) {
+			return shared;
+		}
+
+		if (SHARED_DESCRIPTIONS.size() >= MAX_SHARED_DESCRIPTIONS) {
+			return description;
+		}
+
+		shared = SHARED_DESCRIPTIONS.putIfAbsent(description, description);
+		return shared != null ? shared : description;
+	}
+}
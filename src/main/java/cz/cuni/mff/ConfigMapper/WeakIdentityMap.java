@@ -0,0 +1,140 @@
+package cz.cuni.mff.ConfigMapper;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map that compares its keys by identity and holds them weakly
+ *
+ * Entries whose keys were garbage collected are removed during the following updates. Reads never lock
+ * (the entries are stored in a {@link ConcurrentHashMap}) and updates of different keys rarely contend.
+ * Values must not reference their keys, otherwise the keys are never collected.
+ */
+final class WeakIdentityMap<K, V> {
+	/**
+	 * A key compared by the identity of the object it refers to
+	 */
+	private interface Key {
+		Object referent();
+	}
+
+	/**
+	 * A key stored in the map
+	 */
+	private static final class WeakKey extends WeakReference<Object> implements Key {
+		private final int hash;
+
+		WeakKey(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public Object referent() {
+			return get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other == this || other instanceof Key && sameReferent(this, (Key) other);
+		}
+	}
+
+	/**
+	 * A key used for lookups, which is cheaper to create than a weak reference
+	 */
+	private static final class LookupKey implements Key {
+		private final Object referent;
+
+		LookupKey(Object referent) {
+			this.referent = referent;
+		}
+
+		@Override
+		public Object referent() {
+			return referent;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(referent);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && sameReferent(this, (Key) other);
+		}
+	}
+
+	private final ConcurrentHashMap<Key, V> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Keys whose referents were collected
+	 */
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+	/**
+	 * Get the value associated with a key
+	 * @param key the key
+	 * @return the value or null if there is none
+	 */
+	V get(K key) {
+		return key == null ? null : entries.get(new LookupKey(key));
+	}
+
+	/**
+	 * Associate a value with a key
+	 * @param key the key
+	 * @param value the value (not null)
+	 */
+	void put(K key, V value) {
+		expungeStaleEntries();
+		entries.put(new WeakKey(key, queue), value);
+	}
+
+	/**
+	 * Remove the value associated with a key
+	 * @param key the key
+	 */
+	void remove(K key) {
+		expungeStaleEntries();
+		entries.remove(new LookupKey(key));
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	void clear() {
+		entries.clear();
+		expungeStaleEntries();
+	}
+
+	/**
+	 * Get the number of entries, including those whose keys were collected but not removed yet
+	 * @return the number of entries
+	 */
+	int size() {
+		expungeStaleEntries();
+		return entries.size();
+	}
+
+	private void expungeStaleEntries() {
+		Object reference;
+
+		while ((reference = queue.poll()) != null) {
+			// A collected key is only equal to itself
+			entries.remove(reference);
+		}
+	}
+
+	private static boolean sameReferent(Key first, Key second) {
+		Object referent = first.referent();
+		return referent != null && referent == second.referent();
+	}
+}
@@ -0,0 +1,147 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigSection;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Section;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ClassSchemaTest {
+	static class MappedClass {
+		static class SectionClass {
+			@ConfigOption
+			String option;
+		}
+
+		@ConfigOption(section = "first", name = "renamed")
+		int optionInt;
+
+		@ConfigSection(name = "second")
+		SectionClass section;
+	}
+
+	static class SubsectionClass extends MappedClass.SectionClass {
+		@ConfigOption
+		String extra = "value";
+	}
+
+	static class SubsectionMappedClass {
+		@ConfigSection(name = "second")
+		MappedClass.SectionClass section = new SubsectionClass();
+	}
+
+	static class StaticFinalClass {
+		@ConfigOption
+		static final String constant = "value";
+	}
+
+	static class StaticFinalSectionClass {
+		@ConfigSection(name = "section")
+		StaticFinalClass section = new StaticFinalClass();
+	}
+
+	@Test
+	public void schemaIsCached() {
+		assertSame(ClassSchema.of(MappedClass.class), ClassSchema.of(MappedClass.class));
+		assertSame(MappingLayout.of(MappedClass.class), MappingLayout.of(MappedClass.class));
+	}
+
+	@Test
+	public void layoutPaths() {
+		MappingLayout layout = MappingLayout.of(MappedClass.class);
+
+		assertEquals(2, layout.options.size());
+		assertEquals(Path.of("first", "renamed"), layout.options.get(0).path);
+		assertEquals(Path.of("second", "option"), layout.options.get(1).path);
+		assertEquals(1, layout.options.get(1).owner);
+
+		assertEquals(1, layout.optionIndex(Path.of("second", "option")));
+		assertEquals(-1, layout.optionIndex(Path.of("second", "missing")));
+		assertTrue(layout.ordinal(Path.of("first")) < layout.ordinal(Path.of("second")));
+
+		// Only the options declared in the section class belong to the section
+		assertEquals(1, layout.sections.size());
+		assertArrayEquals(new int[]{1}, layout.sectionOptions(0));
+	}
+
+	@Test
+	public void repeatedLoadsAreIndependent() throws Exception {
+		ConfigMapper mapper = new ConfigMapper();
+
+		MappedClass first = mapper.load(config("10", "foo"), MappedClass.class, LoadingMode.STRICT);
+		MappedClass second = mapper.load(config("20", "bar"), MappedClass.class, LoadingMode.STRICT);
+
+		assertEquals(10, first.optionInt);
+		assertEquals("foo", first.section.option);
+		assertEquals(20, second.optionInt);
+		assertEquals("bar", second.section.option);
+	}
+
+	@Test
+	public void subclassSectionIsMapped() throws Exception {
+		for (boolean compiled : new boolean[] {false, true}) {
+			ConfigMapper mapper = new ConfigMapper();
+			mapper.setCompiledMappers(compiled);
+
+			// Like the root object, a section is mapped by the fields declared in the runtime class of its instance
+			SubsectionMappedClass object = new SubsectionMappedClass();
+			object.section.option = "foo";
+
+			ConfigRoot expected = new ConfigRoot("", Arrays.asList(
+				new Section("second", Arrays.asList(
+					new ScalarOption("extra", "value")
+				))
+			));
+
+			ConfigRoot saved = mapper.save(object, null, true);
+			assertEquals(expected, saved);
+
+			SubsectionMappedClass loaded = mapper.load(expected, SubsectionMappedClass.class, LoadingMode.STRICT);
+			assertEquals(SubsectionClass.class, loaded.section.getClass());
+			assertEquals("value", ((SubsectionClass) loaded.section).extra);
+
+			((SubsectionClass) object.section).extra = "changed";
+			assertEquals(new ScalarOption("extra", "changed"), ((Section) mapper.save(object, saved, false).getChild("second")).getChild("extra"));
+		}
+	}
+
+	@Test
+	public void staticFinalFieldIsReported() {
+		for (boolean compiled : new boolean[] {false, true}) {
+			ConfigMapper mapper = new ConfigMapper();
+			mapper.setCompiledMappers(compiled);
+
+			for (Class<?> cls : Arrays.asList(StaticFinalClass.class, StaticFinalSectionClass.class)) {
+				try {
+					mapper.load(new ConfigRoot("", Arrays.asList()), cls, LoadingMode.RELAXED);
+					fail();
+				} catch (MappingException e) {
+					assertTrue(e.getMessage().contains("constant"));
+				}
+
+				try {
+					mapper.saveDefaults(cls);
+					fail();
+				} catch (MappingException e) {
+					assertTrue(e.getMessage().contains("constant"));
+				}
+			}
+		}
+	}
+
+	private static ConfigRoot config(String intValue, String stringValue) {
+		return new ConfigRoot("", Arrays.asList(
+			new Section("first", Arrays.asList(
+				new ScalarOption("renamed", intValue)
+			)),
+			new Section("second", Arrays.asList(
+				new ScalarOption("option", stringValue)
+			))
+		));
+	}
+}
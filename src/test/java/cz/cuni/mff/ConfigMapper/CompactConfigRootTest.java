@@ -0,0 +1,285 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that compact configuration trees behave like regular ones
+ */
+public class CompactConfigRootTest {
+	private static final byte[] INPUT = String.join("\n",
+		"[first]",
+		"; first section",
+		"string = foo\t; a comment",
+		"flag = on",
+		"list = a:b:c",
+		"[second]",
+		"linked = ${first#string}",
+		"linkedList = x, ${first#list}",
+		"string = bar",
+		""
+	).getBytes();
+
+	private static ConfigRoot tree() {
+		ScalarOption string = new ScalarOption("string", "foo");
+		string.setDescription("comment");
+
+		Section first = new Section("first", Arrays.asList(
+			string,
+			new ScalarOption("flag", "on", ParsedBoolean.TRUE),
+			new ListOption("list", Arrays.asList("a", "b", "c"), ":")
+		));
+		first.setDescription("First section");
+
+		return new ConfigRoot("", Arrays.asList(
+			first,
+			new Section("second", Arrays.asList(
+				new ScalarOption("string", "bar")
+			)),
+			new ScalarOption("top", "level")
+		));
+	}
+
+	@Test
+	public void concurrentReads() throws Exception {
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree());
+		int threads = 8;
+		List<ConfigNode> found = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> readers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			readers.add(new Thread(() -> found.add(((Section) compact.getChild("first")).getChild("flag"))));
+		}
+
+		for (Thread reader : readers) {
+			reader.start();
+		}
+
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		// Each entry is represented by a single node
+		assertEquals(threads, found.size());
+		for (ConfigNode node : found) {
+			assertSame(found.get(0), node);
+		}
+
+		assertEquals(new ScalarOption("flag", "on"), found.get(0));
+		assertEquals(tree().getChild("first"), compact.getChild("first"));
+		assertEquals(compact.getChild("first"), tree().getChild("first"));
+	}
+
+	@Test
+	public void copyEqualsOriginal() {
+		ConfigRoot tree = tree();
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree);
+
+		assertEquals(tree, compact);
+		assertEquals(compact, tree);
+		assertSame(compact, CompactConfigRoot.copyOf(compact));
+		assertFalse(compact.isFlat());
+		assertTrue(((Section) compact.getChild("second")).isFlat());
+	}
+
+	@Test
+	public void entries() {
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree());
+
+		assertEquals(7, compact.getEntryCount());
+
+		int first = compact.findChild(-1, "first");
+		assertTrue(compact.isSection(first));
+		assertEquals("First section", compact.getDescription(first));
+		assertEquals(compact.findChild(-1, "second"), compact.getEnd(first));
+
+		int string = compact.findChild(first, "string");
+		assertEquals("foo", compact.getValue(string));
+		assertEquals("comment", compact.getDescription(string));
+		assertEquals(ParsedBoolean.TRUE, compact.getBooleanValue(compact.findChild(first, "flag")));
+
+		int list = compact.findChild(first, "list");
+		assertTrue(compact.isList(list));
+		assertEquals(Arrays.asList("a", "b", "c"), compact.getListValue(list));
+		assertEquals(":", compact.getSeparator(list));
+
+		int second = compact.findChild(-1, "second");
+		assertEquals("bar", compact.getValue(compact.findChild(second, "string")));
+		assertEquals(-1, compact.findChild(second, "flag"));
+		assertEquals(-1, compact.findChild(-1, "string"));
+		assertEquals("level", compact.getValue(compact.findChild(-1, "top")));
+	}
+
+	@Test
+	public void nodesAreReused() {
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree());
+		Section first = (Section) compact.getChild("first");
+
+		assertSame(first, compact.getChildren().get(0));
+		assertSame(first.getChild("list"), first.getChildren().get(2));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void structureIsReadOnly() throws Exception {
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree());
+		((Section) compact.getChild("first")).addChild(new ScalarOption("new", "value"));
+	}
+
+	@Test
+	public void listValuesAreReadOnly() {
+		CompactConfigRoot compact = CompactConfigRoot.copyOf(tree());
+		ListOption list = (ListOption) ((Section) compact.getChild("first")).getChild("list");
+
+		try {
+			list.getValue().add("d");
+			fail();
+		} catch (UnsupportedOperationException exception) {
+			// the list is shared by all users of the tree
+		}
+
+		assertSame(list.getValue(), list.getValue());
+		assertEquals(Arrays.asList("a", "b", "c"), list.getValue());
+		assertEquals(Arrays.asList("a", "b", "c"), compact.getListValue(compact.findChild(compact.findChild(-1, "first"), "list")));
+	}
+
+	@Test
+	public void builderKeepsFirstDuplicate() {
+		CompactConfigRoot.Builder builder = new CompactConfigRoot.Builder();
+		int section = builder.beginSection("section");
+		int option = builder.addScalar("option", "first", ParsedBoolean.NOT_BOOLEAN);
+		builder.addScalar("option", "second", ParsedBoolean.NOT_BOOLEAN);
+
+		assertEquals(option, builder.findChild(section, "option"));
+		assertEquals(section, builder.currentSection());
+
+		CompactConfigRoot compact = builder.build("");
+		assertEquals("first", compact.getValue(compact.findChild(compact.findChild(-1, "section"), "option")));
+	}
+
+	@Test
+	public void adapterReadsSameTree() throws Exception {
+		IniAdapter adapter = new IniAdapter();
+		ConfigRoot expected = adapter.read(new ByteArrayInputStream(INPUT));
+
+		adapter.setCompact(true);
+		ConfigRoot compact = adapter.read(new ByteArrayInputStream(INPUT));
+
+		assertTrue(compact instanceof CompactConfigRoot);
+		assertEquals(expected, compact);
+
+		ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+		ByteArrayOutputStream compactOutput = new ByteArrayOutputStream();
+		adapter.write(expected, expectedOutput);
+		adapter.write(compact, compactOutput);
+		assertArrayEquals(expectedOutput.toByteArray(), compactOutput.toByteArray());
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void adapterRejectsDuplicateSections() throws Exception {
+		IniAdapter adapter = new IniAdapter();
+		adapter.setCompact(true);
+		adapter.read(new ByteArrayInputStream("[a]\nx = 1\n[a]\ny = 2\n".getBytes()));
+	}
+
+	@Test
+	public void mappersLoadSameObjects() {
+		List<ConfigRoot> configs = Arrays.asList(
+			config(
+				section("main",
+					new ScalarOption("optionString", "foo"),
+					new ScalarOption("optionInt", "42"),
+					new ScalarOption("optionBool", "on", ParsedBoolean.TRUE),
+					new ScalarOption("mode", "slow")
+				),
+				section("required", new ScalarOption("option", "bar"), new ListOption("list", Arrays.asList("a", "b"))),
+				section("optional", new ScalarOption("option", "baz"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionBool", "foo")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("unknown", "x")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(section("main", new ScalarOption("optionString", "foo")))
+		);
+
+		for (ConfigMapper mapper : Arrays.asList(new ConfigMapper(), compiledMapper())) {
+			for (ConfigRoot config : configs) {
+				assertEquals(
+					loadOutcome(mapper, config, CompiledMapperTest.MappedClass.class, LoadingMode.STRICT),
+					loadOutcome(mapper, CompactConfigRoot.copyOf(config), CompiledMapperTest.MappedClass.class, LoadingMode.STRICT)
+				);
+			}
+
+			ConfigRoot relaxed = config(
+				section("main", new ScalarOption("option", "foo"), new ScalarOption("extra", "bar")),
+				section("other", new ListOption("list", Arrays.asList("a", "b"), ":"))
+			);
+
+			assertEquals(
+				loadOutcome(mapper, relaxed, CompiledMapperTest.RelaxedClass.class, LoadingMode.RELAXED),
+				loadOutcome(mapper, CompactConfigRoot.copyOf(relaxed), CompiledMapperTest.RelaxedClass.class, LoadingMode.RELAXED)
+			);
+		}
+	}
+
+	private static ConfigMapper compiledMapper() {
+		ConfigMapper mapper = new ConfigMapper();
+		mapper.setCompiledMappers(true);
+		return mapper;
+	}
+
+	private static String loadOutcome(ConfigMapper mapper, ConfigRoot config, Class<?> cls, LoadingMode mode) {
+		try {
+			Object object = mapper.load(config, cls, mode);
+			String result = describe(new ConfigMapper().save(object, config, true));
+
+			if (object instanceof CompiledMapperTest.RelaxedClass) {
+				result += ((CompiledMapperTest.RelaxedClass) object).undeclared.toString();
+			}
+
+			return result;
+		} catch (MappingException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	private static String describe(ConfigNode node) {
+		StringBuilder builder = new StringBuilder(node.getName()).append('(').append(node.getDescription()).append(')');
+
+		if (node instanceof Section) {
+			builder.append('[');
+			for (ConfigNode child : ((Section) node).getChildren()) {
+				builder.append(describe(child)).append(';');
+			}
+			builder.append(']');
+		} else if (node instanceof ScalarOption) {
+			builder.append('=').append(((ScalarOption) node).getValue());
+		} else if (node instanceof ListOption) {
+			builder.append('=').append(((ListOption) node).getValue());
+		}
+
+		return builder.toString();
+	}
+
+	private static ConfigRoot config(Section... sections) {
+		return new ConfigRoot("", Arrays.asList(sections));
+	}
+
+	private static Section section(String name, ConfigNode... children) {
+		return new Section(name, Arrays.asList(children));
+	}
+}
@@ -0,0 +1,284 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Annotations.*;
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that compiled mappers produce the same results as the reflective mapping
+ */
+public class CompiledMapperTest {
+	static class MappedClass {
+		enum Mode {
+			FAST,
+			SLOW
+		}
+
+		static class SectionClass {
+			@ConfigOption(description = "Nested option")
+			String option = "default";
+
+			@ConfigOption(optional = true)
+			List<String> list;
+		}
+
+		@ConfigOption(section = "main")
+		String optionString;
+
+		@ConfigOption(section = "main", optional = true)
+		@IntegralConstraint(min = 0, max = 100)
+		int optionInt = 10;
+
+		@ConfigOption(section = "main", optional = true)
+		Integer optionBoxed;
+
+		@ConfigOption(section = "main", optional = true)
+		@DecimalConstraint(max = 1.0)
+		double optionDouble = 0.5;
+
+		@ConfigOption(section = "main", optional = true)
+		float optionFloat;
+
+		@ConfigOption(section = "main", optional = true)
+		boolean optionBool;
+
+		@ConfigOption(section = "main", optional = true)
+		@ConstantAlias(constant = "SLOW", alias = "slow")
+		Mode mode = Mode.FAST;
+
+		@ConfigSection(description = "Required section")
+		SectionClass required;
+
+		@ConfigSection(optional = true)
+		SectionClass optional;
+	}
+
+	static class RelaxedClass {
+		@ConfigOption(section = "main")
+		String option;
+
+		@UndeclaredOptions
+		Map<String, String> undeclared = new LinkedHashMap<>();
+	}
+
+	private static ConfigMapper reflective() {
+		return new ConfigMapper();
+	}
+
+	private static ConfigMapper compiled() {
+		ConfigMapper mapper = new ConfigMapper();
+		mapper.setCompiledMappers(true);
+		return mapper;
+	}
+
+	/**
+	 * Load a configuration with given mapper and describe the result
+	 */
+	private static String loadOutcome(ConfigMapper mapper, ConfigRoot config, Class<?> cls, LoadingMode mode) {
+		try {
+			Object object = mapper.load(config, cls, mode);
+			String result = describe(reflective().save(object, null, true));
+
+			if (object instanceof RelaxedClass) {
+				result += ((RelaxedClass) object).undeclared.toString();
+			}
+
+			return result;
+		} catch (MappingException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * Save an object with given mapper and describe the result
+	 */
+	private static String saveOutcome(ConfigMapper mapper, Object object, ConfigRoot original, boolean keepDefaults) {
+		try {
+			return describe(mapper.save(object, original, keepDefaults));
+		} catch (MappingException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * Make a textual representation of a configuration tree, including descriptions
+	 */
+	private static String describe(ConfigNode node) {
+		StringBuilder builder = new StringBuilder(node.getName()).append('(').append(node.getDescription()).append(')');
+
+		if (node instanceof Section) {
+			builder.append('[');
+			for (ConfigNode child : ((Section) node).getChildren()) {
+				builder.append(describe(child)).append(';');
+			}
+			builder.append(']');
+		} else if (node instanceof ScalarOption) {
+			builder.append('=').append(((ScalarOption) node).getValue());
+		} else if (node instanceof ListOption) {
+			builder.append('=').append(((ListOption) node).getValue());
+		}
+
+		return builder.toString();
+	}
+
+	private static void assertSameLoad(ConfigRoot config, Class<?> cls, LoadingMode mode) {
+		assertEquals(
+			loadOutcome(reflective(), config, cls, mode),
+			loadOutcome(compiled(), config, cls, mode)
+		);
+	}
+
+	private static ConfigRoot config(Section... sections) {
+		return new ConfigRoot("", Arrays.asList(sections));
+	}
+
+	private static Section section(String name, ConfigNode... children) {
+		return new Section(name, Arrays.asList(children));
+	}
+
+	@Test
+	public void loadEquivalent() {
+		ConfigRoot full = config(
+			section("main",
+				new ScalarOption("optionString", "foo"),
+				new ScalarOption("optionInt", "42"),
+				new ScalarOption("optionBoxed", "7"),
+				new ScalarOption("optionDouble", "0.25"),
+				new ScalarOption("optionFloat", "1.5"),
+				new ScalarOption("optionBool", "on", ParsedBoolean.TRUE),
+				new ScalarOption("mode", "slow")
+			),
+			section("required",
+				new ScalarOption("option", "bar"),
+				new ListOption("list", Arrays.asList("a", "b"))
+			),
+			section("optional",
+				new ScalarOption("option", "baz")
+			)
+		);
+
+		assertSameLoad(full, MappedClass.class, LoadingMode.STRICT);
+		assertFalse(loadOutcome(compiled(), full, MappedClass.class, LoadingMode.STRICT).startsWith("error"));
+
+		ConfigRoot minimal = config(
+			section("main", new ScalarOption("optionString", "foo")),
+			section("required", new ScalarOption("option", "bar"))
+		);
+
+		assertSameLoad(minimal, MappedClass.class, LoadingMode.STRICT);
+	}
+
+	@Test
+	public void loadErrorsEquivalent() {
+		List<ConfigRoot> configs = Arrays.asList(
+			// Missing required section
+			config(section("main", new ScalarOption("optionString", "foo"))),
+			// Missing required option
+			config(section("main"), section("required", new ScalarOption("option", "bar"))),
+			// Constraint violations
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionInt", "101")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionDouble", "1.5")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			// Invalid values
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionBool", "foo")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionBoxed", "x")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("mode", "MEDIUM")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ListOption("optionString", Arrays.asList("a", "b"))),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			// Undeclared option
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("unknown", "x")),
+				section("required", new ScalarOption("option", "bar"))
+			)
+		);
+
+		for (ConfigRoot config : configs) {
+			String outcome = loadOutcome(compiled(), config, MappedClass.class, LoadingMode.STRICT);
+			assertTrue(outcome.startsWith("error"));
+			assertEquals(loadOutcome(reflective(), config, MappedClass.class, LoadingMode.STRICT), outcome);
+		}
+
+		// Relaxed mode requires an undeclared option container
+		assertSameLoad(configs.get(0), MappedClass.class, LoadingMode.RELAXED);
+	}
+
+	@Test
+	public void loadRelaxedEquivalent() {
+		ConfigRoot config = config(
+			section("main", new ScalarOption("option", "foo"), new ScalarOption("extra", "bar")),
+			section("other", new ListOption("list", Arrays.asList("a", "b"), ":"))
+		);
+
+		assertSameLoad(config, RelaxedClass.class, LoadingMode.RELAXED);
+		assertSameLoad(config, RelaxedClass.class, LoadingMode.STRICT);
+	}
+
+	@Test
+	public void saveEquivalent() throws Exception {
+		MappedClass object = new MappedClass();
+		object.optionString = "foo";
+		object.optionInt = 20;
+		object.mode = MappedClass.Mode.SLOW;
+		object.required = new MappedClass.SectionClass();
+		object.required.list = Arrays.asList("a", "b");
+
+		ScalarOption original = new ScalarOption("optionString", "foo");
+		original.setDescription("Original description");
+		ConfigRoot originalConfig = config(section("main", original));
+
+		for (boolean keepDefaults : new boolean[]{true, false}) {
+			assertEquals(
+				saveOutcome(reflective(), object, originalConfig, keepDefaults),
+				saveOutcome(compiled(), object, originalConfig, keepDefaults)
+			);
+		}
+
+		object.optional = new MappedClass.SectionClass();
+		object.optional.option = "changed";
+		assertEquals(saveOutcome(reflective(), object, null, false), saveOutcome(compiled(), object, null, false));
+
+		// Constraint violation
+		object.optionInt = 1000;
+		assertEquals(saveOutcome(reflective(), object, null, false), saveOutcome(compiled(), object, null, false));
+
+		// Missing required section
+		object.optionInt = 0;
+		object.required = null;
+		assertEquals(saveOutcome(reflective(), object, null, false), saveOutcome(compiled(), object, null, false));
+
+		assertEquals(
+			describe(reflective().saveDefaults(MappedClass.SectionClass.class)),
+			describe(compiled().saveDefaults(MappedClass.SectionClass.class))
+		);
+	}
+
+	@Test
+	public void saveWithUndeclaredOptionsFallsBack() throws Exception {
+		RelaxedClass object = new RelaxedClass();
+		object.option = "foo";
+		object.undeclared.put("other#extra", "bar");
+		object.undeclared.put("main#extra", "baz");
+
+		assertEquals(saveOutcome(reflective(), object, null, false), saveOutcome(compiled(), object, null, false));
+	}
+}
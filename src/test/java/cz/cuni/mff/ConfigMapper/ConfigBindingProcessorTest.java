@@ -0,0 +1,216 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+import cz.cuni.mff.ConfigMapper.Processor.ConfigBindingProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiles mapped classes with the binding processor and checks that the generated bindings
+ * map them the same way as reflection does
+ */
+public class ConfigBindingProcessorTest {
+	private static final String SETTINGS_SOURCE = String.join("\n",
+		"package bindingtest;",
+		"import cz.cuni.mff.ConfigMapper.Annotations.*;",
+		"import java.util.*;",
+		"public class Settings {",
+		"	public enum Mode { FAST, SLOW }",
+		"	public static class Network {",
+		"		@ConfigOption(description = \"Host \\\"name\\\"\")",
+		"		String host = \"localhost\";",
+		"		@ConfigOption(optional = true)",
+		"		@IntegralConstraint(min = 1, max = 65535)",
+		"		int port = 80;",
+		"	}",
+		"	@ConfigOption(section = \"main\", name = \"title\")",
+		"	String name;",
+		"	@ConfigOption(section = \"main\", optional = true)",
+		"	@ConstantAlias(constant = \"SLOW\", alias = \"slow\")",
+		"	Mode mode = Mode.FAST;",
+		"	@ConfigOption(section = \"main\", optional = true)",
+		"	@DecimalConstraint(max = 1.0)",
+		"	double ratio = 0.5;",
+		"	@ConfigOption(section = \"main\", optional = true)",
+		"	boolean enabled;",
+		"	@ConfigOption(section = \"main\", optional = true)",
+		"	List<String> tags;",
+		"	@ConfigSection(description = \"Network settings\")",
+		"	Network network;",
+		"	@UndeclaredOptions",
+		"	Map<String, String> other = new LinkedHashMap<>();",
+		"}",
+		""
+	);
+
+	private static final String PRIVATE_SOURCE = String.join("\n",
+		"package bindingtest;",
+		"import cz.cuni.mff.ConfigMapper.Annotations.*;",
+		"public class PrivateSettings {",
+		"	@ConfigOption",
+		"	private String option;",
+		"}",
+		""
+	);
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("bindings");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		Files.walk(directory).forEach(paths::add);
+		Collections.reverse(paths);
+
+		for (Path path : paths) {
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * Compile the test sources into a directory and return a class loader for the result
+	 */
+	private ClassLoader compile(String name, boolean withProcessor) throws IOException {
+		Path sources = directory.resolve(name + "-src");
+		Path classes = directory.resolve(name);
+		Files.createDirectories(sources.resolve("bindingtest"));
+		Files.createDirectories(classes);
+
+		Path settings = sources.resolve("bindingtest/Settings.java");
+		Path privateSettings = sources.resolve("bindingtest/PrivateSettings.java");
+		Files.write(settings, SETTINGS_SOURCE.getBytes(StandardCharsets.UTF_8));
+		Files.write(privateSettings, PRIVATE_SOURCE.getBytes(StandardCharsets.UTF_8));
+
+		String libraryPath = new File(ConfigMapper.class.getProtectionDomain().getCodeSource().getLocation().getPath())
+			.getAbsolutePath();
+
+		List<String> arguments = new ArrayList<>(Arrays.asList(
+			"-classpath", libraryPath,
+			"-d", classes.toString(),
+			"-s", classes.toString()
+		));
+
+		if (withProcessor) {
+			arguments.addAll(Arrays.asList("-processor", ConfigBindingProcessor.class.getName()));
+		} else {
+			arguments.add("-proc:none");
+		}
+
+		arguments.add(settings.toString());
+		arguments.add(privateSettings.toString());
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+		return new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader());
+	}
+
+	private static String describe(ConfigNode node) {
+		StringBuilder builder = new StringBuilder(node.getName()).append('(').append(node.getDescription()).append(')');
+
+		if (node instanceof Section) {
+			builder.append('[');
+			for (ConfigNode child : ((Section) node).getChildren()) {
+				builder.append(describe(child)).append(';');
+			}
+			builder.append(']');
+		} else if (node instanceof ScalarOption) {
+			builder.append('=').append(((ScalarOption) node).getValue());
+		} else if (node instanceof ListOption) {
+			builder.append('=').append(((ListOption) node).getValue());
+		}
+
+		return builder.toString();
+	}
+
+	private static ConfigRoot config(String title, String port) {
+		return new ConfigRoot("", Arrays.asList(
+			new Section("main", Arrays.asList(
+				new ScalarOption("title", title),
+				new ScalarOption("mode", "slow"),
+				new ScalarOption("ratio", "0.25"),
+				new ScalarOption("enabled", "yes", ParsedBoolean.TRUE),
+				new ListOption("tags", Arrays.asList("a", "b")),
+				new ScalarOption("extra", "value")
+			)),
+			new Section("network", Arrays.asList(
+				new ScalarOption("host", "example.com"),
+				new ScalarOption("port", port)
+			))
+		));
+	}
+
+	private static String roundTrip(ConfigMapper mapper, Class<?> cls, ConfigRoot config) {
+		try {
+			Object object = mapper.load(config, cls, LoadingMode.RELAXED);
+			return describe(mapper.save(object, null, false)) + "|" + describe(mapper.save(object, config, true));
+		} catch (MappingException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	@Test
+	public void generatesBindings() throws Exception {
+		ClassLoader loader = compile("generated", true);
+
+		Class<?> settings = loader.loadClass("bindingtest.Settings");
+		Class<?> network = loader.loadClass("bindingtest.Settings$Network");
+
+		assertTrue(ConfigBinding.class.isAssignableFrom(loader.loadClass("bindingtest.SettingsConfigBinding")));
+		assertTrue(ConfigBinding.class.isAssignableFrom(loader.loadClass("bindingtest.Settings_NetworkConfigBinding")));
+		assertNotNull(ClassSchema.of(settings).binding);
+		assertNotNull(ClassSchema.of(network).binding);
+
+		// Classes with private fields are left to reflection
+		Class<?> privateSettings = loader.loadClass("bindingtest.PrivateSettings");
+		assertNull(ClassSchema.of(privateSettings).binding);
+
+		try {
+			loader.loadClass("bindingtest.PrivateSettingsConfigBinding");
+			fail("No binding should be generated for a class with private fields");
+		} catch (ClassNotFoundException ignored) {
+			// expected
+		}
+	}
+
+	@Test
+	public void bindingsMatchReflection() throws Exception {
+		Class<?> generated = compile("generated", true).loadClass("bindingtest.Settings");
+		Class<?> reflective = compile("reflective", false).loadClass("bindingtest.Settings");
+		assertNull(ClassSchema.of(reflective).binding);
+
+		for (ConfigMapper mapper : Arrays.asList(new ConfigMapper(), compiledMapper())) {
+			for (ConfigRoot config : Arrays.asList(config("foo", "8080"), config("foo", "0"), config("foo", "x"))) {
+				String expected = roundTrip(mapper, reflective, config);
+				assertEquals(expected, roundTrip(mapper, generated, config));
+			}
+		}
+
+		String outcome = roundTrip(new ConfigMapper(), generated, config("foo", "8080"));
+		assertFalse(outcome, outcome.startsWith("error"));
+	}
+
+	private static ConfigMapper compiledMapper() {
+		ConfigMapper mapper = new ConfigMapper();
+		mapper.setCompiledMappers(true);
+		return mapper;
+	}
+}
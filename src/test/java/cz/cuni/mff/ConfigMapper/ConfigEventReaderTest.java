@@ -0,0 +1,156 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.ConfigEventReader;
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Adapters.TreeEventReader;
+import cz.cuni.mff.ConfigMapper.Nodes.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the event API of the adapters and loading objects from events
+ */
+public class ConfigEventReaderTest {
+	private static final String INPUT = String.join("\n",
+		"[main]",
+		"; main section",
+		"",
+		"optionString = foo\t; a comment",
+		"optionBool = on",
+		"mode = slow",
+		"[empty]",
+		"; nothing here",
+		"[required]",
+		"option = ${main#optionString}",
+		"list = a, ${main#optionString}",
+		""
+	);
+
+	private static ConfigEventReader events(String input) throws ConfigurationException {
+		return new IniAdapter().readEvents(new ByteArrayInputStream(input.getBytes()));
+	}
+
+	@Test
+	public void iniEvents() throws Exception {
+		List<String> events = new ArrayList<>();
+
+		try (ConfigEventReader reader = events(INPUT)) {
+			for (ConfigEventReader.Event event = reader.next(); event != ConfigEventReader.Event.END; event = reader.next()) {
+				switch (event) {
+					case SECTION_START:
+						events.add("[" + reader.getName() + "(" + reader.getDescription() + ")");
+						break;
+					case OPTION:
+						events.add(reader.getName() + "=" + reader.getValue() + "(" + reader.getDescription() + ")"
+							+ reader.getBooleanValue());
+						break;
+					case LIST_OPTION:
+						events.add(reader.getName() + "=" + reader.getListValue() + reader.getSeparator());
+						break;
+					case SECTION_END:
+						events.add("]");
+						break;
+					default:
+						break;
+				}
+			}
+
+			assertEquals(ConfigEventReader.Event.END, reader.next());
+		}
+
+		assertEquals(Arrays.asList(
+			"[main(main section)",
+			"optionString=foo( a comment)NOT_BOOLEAN",
+			"optionBool=on()TRUE",
+			"mode=slow()NOT_BOOLEAN",
+			"]",
+			"[empty(nothing here)",
+			"]",
+			"[required()",
+			"option=foo()NOT_BOOLEAN",
+			"list=[a, foo],",
+			"]"
+		), events);
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void invalidLink() throws Exception {
+		try (ConfigEventReader reader = events("[a]\nx = ${b#y}\n")) {
+			while (reader.next() != ConfigEventReader.Event.END) {
+				// read everything
+			}
+		}
+	}
+
+	@Test
+	public void loadFromEvents() throws Exception {
+		ConfigMapper mapper = new ConfigMapper();
+		ConfigRoot tree = new IniAdapter().read(new ByteArrayInputStream(INPUT.getBytes()));
+
+		CompiledMapperTest.MappedClass expected = mapper.load(tree, CompiledMapperTest.MappedClass.class, LoadingMode.STRICT);
+		CompiledMapperTest.MappedClass actual;
+
+		try (ConfigEventReader reader = events(INPUT)) {
+			actual = mapper.load(reader, CompiledMapperTest.MappedClass.class, LoadingMode.STRICT);
+		}
+
+		assertEquals("foo", actual.optionString);
+		assertTrue(actual.optionBool);
+		assertEquals(CompiledMapperTest.MappedClass.Mode.SLOW, actual.mode);
+		assertEquals(Arrays.asList("a", "foo"), actual.required.list);
+		assertNull(actual.optional);
+		assertEquals(
+			mapper.save(expected, null, true),
+			mapper.save(actual, null, true)
+		);
+	}
+
+	@Test
+	public void loadErrorsFromEvents() {
+		List<ConfigRoot> configs = Arrays.asList(
+			config(section("main", new ScalarOption("optionString", "foo"))),
+			config(section("main"), section("required", new ScalarOption("option", "bar"))),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("optionInt", "101")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo"), new ScalarOption("unknown", "x")),
+				section("required", new ScalarOption("option", "bar"))
+			),
+			config(
+				section("main", new ScalarOption("optionString", "foo")),
+				section("required", new ScalarOption("option", "bar"), section("nested"))
+			)
+		);
+
+		for (ConfigRoot config : configs) {
+			assertEquals(loadOutcome(config, false), loadOutcome(config, true));
+		}
+	}
+
+	private static String loadOutcome(ConfigRoot config, boolean events) {
+		ConfigMapper mapper = new ConfigMapper();
+
+		try {
+			Object object = events
+				? mapper.load(new TreeEventReader(config), CompiledMapperTest.MappedClass.class, LoadingMode.STRICT)
+				: mapper.load(config, CompiledMapperTest.MappedClass.class, LoadingMode.STRICT);
+			return mapper.save(object, null, true).getChildren().size() + " sections";
+		} catch (MappingException | ConfigurationException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	private static ConfigRoot config(Section... sections) {
+		return new ConfigRoot("", Arrays.asList(sections));
+	}
+
+	private static Section section(String name, ConfigNode... children) {
+		return new Section(name, Arrays.asList(children));
+	}
+}
@@ -3,16 +3,38 @@ package cz.cuni.mff.ConfigMapper;
 import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
 import cz.cuni.mff.ConfigMapper.Annotations.ConfigSection;
 import cz.cuni.mff.ConfigMapper.Annotations.UndeclaredOptions;
+import cz.cuni.mff.ConfigMapper.Adapters.ConfigAdapter;
 import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 class StringInputStream extends ByteArrayInputStream {
 	public StringInputStream(String... lines) {
@@ -154,4 +176,284 @@ public class ConfigFacadeTest {
 
 		assertEquals(expected, output.toString());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void saveChangesIni() throws Exception {
+		StringInputStream input = new StringInputStream(
+			"[section2]",
+			"optionBool = on",
+			"[section1]",
+			"optionInt = 234 ; The number",
+			"optionString = value"
+		);
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		facade.setKeepLoadedConfigs(true);
+		BasicMappedClass object = facade.load(input, BasicMappedClass.class, LoadingMode.STRICT);
+		object.optionInt = 345;
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		facade.saveChanges(object, output);
+
+		String expected = String.join("\n", Arrays.asList(
+			"[section2]",
+			"optionBool=on",
+			"[section1]",
+			"optionInt=345\t; The number",
+			"optionString=value",
+			""
+		));
+
+		assertEquals(expected, output.toString());
+	}
+
+	@Test
+	public void saveChangesWithoutLoadedConfig() throws Exception {
+		StringInputStream input = new StringInputStream(
+			"[section2]",
+			"optionBool = on",
+			"[section1]",
+			"optionInt = 234 ; The number",
+			"optionString = value"
+		);
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		BasicMappedClass object = facade.load(input, BasicMappedClass.class, LoadingMode.STRICT);
+		object.optionInt = 345;
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		facade.saveChanges(object, output);
+
+		// The object is saved like with save(), but the description is kept
+		String expected = String.join("\n", Arrays.asList(
+			"[section1]",
+			"optionString=value",
+			"optionInt=345\t; The number",
+			"[section2]",
+			"optionBool=true",
+			""
+		));
+
+		assertEquals(expected, output.toString());
+	}
+
+	static class EqualMappedClass {
+		@ConfigOption(section = "section1")
+		public String optionString;
+
+		@ConfigOption(section = "section1")
+		public int optionInt;
+
+		@ConfigOption(section = "section2")
+		public boolean optionBool;
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof EqualMappedClass;
+		}
+
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+	}
+
+	@Test
+	public void saveChangesEqualObjects() throws Exception {
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		facade.setKeepLoadedConfigs(true);
+		EqualMappedClass first = facade.load(new StringInputStream(
+			"[section1]",
+			"optionString = first",
+			"optionInt = 1",
+			"[section2]",
+			"optionBool = on"
+		), EqualMappedClass.class);
+		EqualMappedClass second = facade.load(new StringInputStream(
+			"[section2]",
+			"optionBool = off",
+			"[section1]",
+			"optionString = second",
+			"optionInt = 2"
+		), EqualMappedClass.class);
+
+		// The objects are equal, but each of them keeps its own configuration
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		facade.saveChanges(first, output);
+		assertEquals("[section1]\noptionString=first\noptionInt=1\n[section2]\noptionBool=on\n", output.toString());
+	}
+
+	@Test
+	public void concurrentLoadAndSave() throws Exception {
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			List<Future<String>> results = new ArrayList<>();
+
+			for (int i = 0; i < 200; i++) {
+				int number = i;
+				results.add(executor.submit(() -> {
+					BasicMappedClass object = facade.load(new StringInputStream(
+						"[section1]",
+						"optionString = value" + number + " ; Description " + number,
+						"optionInt = " + number,
+						"[section2]",
+						"optionBool = on"
+					), BasicMappedClass.class);
+
+					object.optionInt++;
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					facade.saveChanges(object, output);
+					return output.toString();
+				}));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(String.format(
+					"[section1]\noptionString=value%d\t; Description %d\noptionInt=%d\n[section2]\noptionBool=true\n", i, i, i + 1),
+					results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void loadFromPath() throws Exception {
+		File file = folder.newFile("small.ini");
+		Files.write(file.toPath(), String.join("\n",
+			"[section1]",
+			"optionString = h\u00e9llo \ud83d\ude00",
+			"optionInt = 234",
+			"[section2]",
+			"optionBool = on"
+		).getBytes(StandardCharsets.UTF_8));
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		BasicMappedClass object = facade.load(file.toPath(), BasicMappedClass.class);
+
+		assertEquals("h\u00e9llo \ud83d\ude00", object.optionString);
+		assertEquals(234, object.optionInt);
+		assertEquals(true, object.optionBool);
+
+		BasicMappedClass fromFile = facade.load(file, BasicMappedClass.class);
+		assertEquals(object.optionString, fromFile.optionString);
+	}
+
+	@Test
+	public void loadFromLargePath() throws Exception {
+		StringBuilder content = new StringBuilder("[section1]\noptionString = \u017elu\u0165ou\u010dk\u00fd \ud83d\ude00\noptionInt = 234\n");
+		content.append("[section2]\noptionBool = on\n");
+
+		// Enough undeclared options to make the file larger than the mapping threshold
+		for (int i = 0; i < 20000; i++) {
+			content.append("option").append(i).append(" = \u00e1\u00e9\u00ed ").append(i).append('\n');
+		}
+
+		File file = folder.newFile("large.ini");
+		Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		BasicMappedRelaxedClass object = facade.load(file.toPath(), BasicMappedRelaxedClass.class, LoadingMode.RELAXED);
+
+		assertEquals("\u017elu\u0165ou\u010dk\u00fd \ud83d\ude00", object.optionString);
+		assertEquals(true, object.optionBool);
+		assertEquals(20001, object.undeclaredOpts.size());
+		assertEquals("\u00e1\u00e9\u00ed 19999", object.undeclaredOpts.get("section2#option19999"));
+	}
+
+	@Test
+	public void saveToFile() throws Exception {
+		File file = folder.newFile("saved.ini");
+		Files.write(file.toPath(), "[section]\noption = 100\n".getBytes(StandardCharsets.UTF_8));
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		facade.setSyncOnSave(true);
+		DefaultValueMappedClass object = facade.load(file, DefaultValueMappedClass.class);
+
+		object.option = 200;
+		facade.save(object, file);
+
+		assertEquals("[section]\noption=200\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		assertArrayEquals(new String[] {"saved.ini"}, folder.getRoot().list());
+	}
+
+	@Test
+	public void saveToFileUnchanged() throws Exception {
+		File file = folder.newFile("unchanged.ini");
+		Files.write(file.toPath(), "[section]\noption=100\n".getBytes(StandardCharsets.UTF_8));
+		FileTime modified = FileTime.fromMillis(1000000000000L);
+		Files.setLastModifiedTime(file.toPath(), modified);
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		DefaultValueMappedClass object = facade.load(file, DefaultValueMappedClass.class);
+		facade.save(object, file);
+
+		assertEquals(modified, Files.getLastModifiedTime(file.toPath()));
+		assertArrayEquals(new String[] {"unchanged.ini"}, folder.getRoot().list());
+	}
+
+	@Test
+	public void saveToFileFailure() throws Exception {
+		File file = folder.newFile("failed.ini");
+		Files.write(file.toPath(), "[section]\noption = 100\n".getBytes(StandardCharsets.UTF_8));
+
+		ConfigFacade facade = new ConfigFacade(new ConfigAdapter() {
+			@Override
+			public ConfigRoot read(InputStream input) {
+				return null;
+			}
+
+			@Override
+			public void write(ConfigRoot config, OutputStream output) throws IOException {
+				output.write("[section]\n".getBytes(StandardCharsets.UTF_8));
+				throw new IOException("Disk full");
+			}
+		});
+
+		try {
+			facade.saveDefaults(DefaultValueMappedClass.class, file);
+			fail();
+		} catch (IOException exception) {
+			assertEquals("Disk full", exception.getMessage());
+		}
+
+		assertEquals("[section]\noption = 100\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		assertArrayEquals(new String[] {"failed.ini"}, folder.getRoot().list());
+	}
+
+	@Test
+	public void saveToSymbolicLink() throws Exception {
+		File file = folder.newFile("linked.ini");
+		Files.write(file.toPath(), "[section]\noption = 100\n".getBytes(StandardCharsets.UTF_8));
+		File directory = folder.newFolder("links");
+		Path link = Files.createSymbolicLink(directory.toPath().resolve("link.ini"), file.toPath());
+
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		DefaultValueMappedClass object = facade.load(link.toFile(), DefaultValueMappedClass.class);
+
+		object.option = 200;
+		facade.save(object, link.toFile());
+
+		assertTrue(Files.isSymbolicLink(link));
+		assertEquals("[section]\noption=200\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		assertArrayEquals(new String[] {"link.ini"}, directory.list());
+	}
+
+	@Test
+	public void saveToNewFile() throws Exception {
+		Path reference = Files.createFile(folder.getRoot().toPath().resolve("reference"));
+		assumeTrue(Files.getFileAttributeView(reference, PosixFileAttributeView.class) != null);
+
+		File file = new File(folder.getRoot(), "new.ini");
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		facade.saveDefaults(DefaultValueMappedClass.class, file);
+
+		// The new file has the default permissions, like a file created directly
+		assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(file.toPath()));
+	}
+}
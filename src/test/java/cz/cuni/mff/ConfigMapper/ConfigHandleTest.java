@@ -0,0 +1,105 @@
+package cz.cuni.mff.ConfigMapper;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConfigHandleTest {
+	@Test
+	public void getAndSet() {
+		ConfigHandle<String> handle = new ConfigHandle<>("first");
+		assertEquals("first", handle.get());
+		assertEquals("first", handle.set("second"));
+		assertEquals("second", handle.get());
+	}
+
+	@Test
+	public void notifyListeners() throws Exception {
+		ConfigHandle<String> handle = new ConfigHandle<>("first");
+		CountDownLatch notified = new CountDownLatch(1);
+		List<String> changes = new CopyOnWriteArrayList<>();
+
+		handle.addListener((previous, current) -> {
+			changes.add(previous + " -> " + current);
+			notified.countDown();
+		});
+
+		handle.set("second");
+		assertTrue(notified.await(30, TimeUnit.SECONDS));
+		assertEquals("first -> second", changes.get(0));
+	}
+
+	@Test
+	public void slowListenerDoesNotBlock() throws Exception {
+		ConfigHandle<String> handle = new ConfigHandle<>("0");
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		List<String> changes = new CopyOnWriteArrayList<>();
+
+		handle.addListener((previous, current) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			changes.add(previous + " -> " + current);
+			if (current.equals("10")) {
+				done.countDown();
+			}
+		});
+
+		handle.set("1");
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+
+		// The listener is blocked, but publishing and reading go on
+		for (int i = 2; i <= 10; i++) {
+			handle.set(Integer.toString(i));
+			assertEquals(Integer.toString(i), handle.get());
+		}
+
+		release.countDown();
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+
+		// The changes that happened while the listener was busy are coalesced
+		assertEquals("0 -> 1", changes.get(0));
+		assertEquals("1 -> 10", changes.get(1));
+		assertEquals(2, changes.size());
+	}
+
+	@Test
+	public void failingListenerGetsNextChanges() throws Exception {
+		ConfigHandle<String> handle = new ConfigHandle<>("first", Runnable::run);
+		List<String> changes = new CopyOnWriteArrayList<>();
+		Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+		List<Throwable> failures = new CopyOnWriteArrayList<>();
+		Thread.currentThread().setUncaughtExceptionHandler((thread, exception) -> failures.add(exception));
+
+		try {
+			ConfigHandle<String>.Subscription subscription = handle.addListener((previous, current) -> {
+				changes.add(current);
+				if (current.equals("second")) {
+					throw new IllegalStateException("Listener failure");
+				}
+			});
+
+			handle.set("second");
+			handle.set("third");
+			assertEquals(2, changes.size());
+			assertEquals(1, failures.size());
+
+			subscription.close();
+			handle.set("fourth");
+			assertEquals(2, changes.size());
+		} finally {
+			Thread.currentThread().setUncaughtExceptionHandler(handler);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigSection;
+import cz.cuni.mff.ConfigMapper.Annotations.UndeclaredOptions;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigMapperDiffTest {
+	static class MappedClass {
+		static class Extra {
+			@ConfigOption(optional = true)
+			String name = "extra";
+		}
+
+		@ConfigOption(section = "main")
+		String text;
+
+		@ConfigOption(section = "main", optional = true)
+		int number = 10;
+
+		@ConfigOption(section = "main", optional = true)
+		boolean flag = false;
+
+		@ConfigOption(section = "main", optional = true)
+		List<String> list = new ArrayList<>();
+
+		@ConfigSection(optional = true, description = "Extra options")
+		Extra extra;
+	}
+
+	private ConfigRoot read(String... lines) throws Exception {
+		return new IniAdapter().read(new StringInputStream(lines));
+	}
+
+	private String write(ConfigRoot config) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new IniAdapter().write(config, output);
+		return output.toString("UTF-8");
+	}
+
+	@Test
+	public void diffUnchanged() throws Exception {
+		ConfigRoot config = read(
+			"[main]",
+			"text = hello ; a comment",
+			"number = 010",
+			"flag = on",
+			"list = a:b"
+		);
+
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+
+		// The values are equal to the fields, even though they would be saved differently
+		assertTrue(mapper.diff(object, config).isEmpty());
+	}
+
+	@Test
+	public void diffChanges() throws Exception {
+		ConfigRoot config = read(
+			"[main]",
+			"text = hello",
+			"number = 20",
+			"flag = on"
+		);
+
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+
+		object.text = "world";
+		object.number = 10;
+		object.list.add("item");
+		object.extra = new MappedClass.Extra();
+		object.extra.name = "changed";
+
+		ConfigDiff diff = mapper.diff(object, config);
+
+		assertEquals(Arrays.asList("main#list", "extra#name"), diff.getAdded());
+		assertEquals(Collections.singletonList("main#text"), diff.getChanged());
+		assertEquals(Collections.singletonList("main#number"), diff.getRemoved());
+	}
+
+	@Test
+	public void saveChanges() throws Exception {
+		ConfigRoot config = read(
+			"[main]",
+			"flag = on",
+			"text = hello ;Greeting",
+			"list = a:b",
+			"[extra]",
+			"name = something"
+		);
+
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+
+		object.text = "world";
+		object.number = 5;
+		object.list.add("c");
+		object.extra = null;
+
+		assertSame(config, mapper.saveChanges(object, config));
+
+		String expected = String.join("\n", Arrays.asList(
+			"[main]",
+			"flag=on",
+			"text=world\t;Greeting",
+			"list=a:b:c",
+			"number=5",
+			""
+		));
+
+		assertEquals(expected, write(config));
+
+		// The configuration now matches the object, but doesn't share its lists
+		assertTrue(mapper.diff(object, config).isEmpty());
+		object.list.add("d");
+		assertEquals(Collections.singletonList("main#list"), mapper.diff(object, config).getChanged());
+	}
+
+	@Test
+	public void saveChangesNewSection() throws Exception {
+		ConfigRoot config = read(
+			"[main]",
+			"text = hello"
+		);
+
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+		object.extra = new MappedClass.Extra();
+		object.extra.name = "new";
+
+		mapper.saveChanges(object, config);
+
+		String expected = String.join("\n", Arrays.asList(
+			"[main]",
+			"text=hello",
+			"[extra]",
+			"; Extra options",
+			"name=new",
+			""
+		));
+
+		assertEquals(expected, write(config));
+	}
+
+	static class RelaxedClass {
+		@ConfigOption(section = "main")
+		String text;
+
+		@UndeclaredOptions
+		Map<String, String> undeclared = new LinkedHashMap<>();
+	}
+
+	@Test
+	public void diffUndeclared() throws Exception {
+		ConfigRoot config = read(
+			"[main]",
+			"text = hello",
+			"list = a,b",
+			"removed = 1",
+			"[other]",
+			"changed = 2"
+		);
+
+		ConfigMapper mapper = new ConfigMapper();
+		RelaxedClass object = mapper.load(config, RelaxedClass.class, LoadingMode.RELAXED);
+
+		object.undeclared.remove("main#removed");
+		object.undeclared.put("other#changed", "3");
+		object.undeclared.put("other#added", "4");
+
+		ConfigDiff diff = mapper.diff(object, config);
+
+		assertEquals(Collections.singletonList("other#added"), diff.getAdded());
+		assertEquals(Collections.singletonList("other#changed"), diff.getChanged());
+		assertEquals(Collections.singletonList("main#removed"), diff.getRemoved());
+	}
+}
@@ -0,0 +1,156 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigSection;
+import cz.cuni.mff.ConfigMapper.Annotations.UndeclaredOptions;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Section;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConfigMapperDirtyTrackingTest {
+	static class MappedClass {
+		static class Extra {
+			@ConfigOption
+			double ratio;
+		}
+
+		@ConfigOption(section = "main")
+		String text;
+
+		@ConfigOption(section = "main")
+		boolean flag;
+
+		@ConfigOption(section = "main", optional = true)
+		List<String> list = new ArrayList<>();
+
+		@ConfigSection
+		Extra extra;
+
+		@UndeclaredOptions
+		Map<String, String> undeclared = new HashMap<>();
+	}
+
+	private final ConfigRoot config;
+
+	public ConfigMapperDirtyTrackingTest() throws Exception {
+		config = new IniAdapter().read(new StringInputStream(
+			"[main]",
+			"text = hello",
+			"flag = on",
+			"list = a,b",
+			"other = 1",
+			"[extra]",
+			"ratio = 0.5"
+		));
+	}
+
+	private ConfigMapper mapper() {
+		ConfigMapper mapper = new ConfigMapper();
+		mapper.setDirtyTracking(true);
+		return mapper;
+	}
+
+	@Test
+	public void cleanAfterLoad() throws Exception {
+		ConfigMapper mapper = mapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+
+		assertFalse(mapper.isDirty(object));
+
+		// Setting the same values doesn't make the object dirty
+		object.text = new String("hello");
+		object.list = new ArrayList<>(Arrays.asList("a", "b"));
+		assertFalse(mapper.isDirty(object));
+	}
+
+	@Test
+	public void dirtyAfterChange() throws Exception {
+		ConfigMapper mapper = mapper();
+
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.flag = false;
+		assertTrue(mapper.isDirty(object));
+
+		object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.list.add("c");
+		assertTrue(mapper.isDirty(object));
+
+		object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.extra = new MappedClass.Extra();
+		object.extra.ratio = 0.5;
+		assertTrue(mapper.isDirty(object));
+
+		object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.undeclared.put("main#new", "2");
+		assertTrue(mapper.isDirty(object));
+	}
+
+	@Test
+	public void untrackedIsDirty() throws Exception {
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+
+		assertTrue(mapper.isDirty(object));
+		assertTrue(mapper().isDirty(new MappedClass()));
+	}
+
+	@Test
+	public void saveReusesCleanOptions() throws Exception {
+		ConfigMapper mapper = mapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.text = "world";
+
+		ConfigRoot saved = mapper.save(object, config, false);
+		Section main = (Section) saved.getChild("main");
+		Section originalMain = (Section) config.getChild("main");
+
+		assertSame(originalMain.getChild("list"), main.getChild("list"));
+		assertEquals(new ScalarOption("text", "world"), main.getChild("text"));
+
+		// The original node is written differently
+		assertNotSame(originalMain.getChild("flag"), main.getChild("flag"));
+		assertEquals("true", ((ScalarOption) main.getChild("flag")).getValue());
+		assertEquals(Arrays.asList("main", "extra"), Arrays.asList(saved.getChildren().get(0).getName(), saved.getChildren().get(1).getName()));
+	}
+
+	@Test
+	public void saveSameAsUntracked() throws Exception {
+		ConfigMapper untracked = new ConfigMapper();
+		MappedClass object = untracked.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.text = "world";
+		String expected = write(untracked.save(object, config, false));
+
+		ConfigMapper tracked = mapper();
+		object = tracked.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.text = "world";
+		assertEquals(expected, write(tracked.save(object, config, false)));
+
+		object = tracked.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.text = "world";
+		assertEquals(write(untracked.save(object, config, true)), write(tracked.save(object, config, true)));
+	}
+
+	private static String write(ConfigRoot config) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new IniAdapter().write(config, output);
+		return output.toString("UTF-8");
+	}
+
+	@Test
+	public void cleanAfterSaveChanges() throws Exception {
+		ConfigMapper mapper = mapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.RELAXED);
+		object.extra.ratio = 0.25;
+
+		assertTrue(mapper.isDirty(object));
+		mapper.saveChanges(object, config);
+		assertFalse(mapper.isDirty(object));
+	}
+}
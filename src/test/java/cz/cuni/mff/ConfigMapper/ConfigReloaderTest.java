@@ -0,0 +1,118 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
+import cz.cuni.mff.ConfigMapper.Annotations.IntegralConstraint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConfigReloaderTest {
+	static class MappedClass {
+		@ConfigOption(section = "section")
+		@IntegralConstraint(max = 100)
+		int number;
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path write(String content) throws Exception {
+		Path file = folder.getRoot().toPath().resolve("reloaded.ini");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void reload() throws Exception {
+		Path file = write("[section]\nnumber = 1\n");
+		ConfigReloader<MappedClass> reloader = new ConfigReloader<>(new ConfigFacade(new IniAdapter()), file, MappedClass.class);
+		MappedClass first = reloader.get();
+		assertEquals(1, first.number);
+
+		write("[section]\nnumber = 2\n");
+		assertTrue(reloader.reload());
+		assertEquals(2, reloader.get().number);
+		assertEquals(1, first.number);
+		assertEquals(1, reloader.getReloadCount());
+		assertEquals(0, reloader.getFailureCount());
+	}
+
+	@Test
+	public void failedReloadKeepsPrevious() throws Exception {
+		Path file = write("[section]\nnumber = 1\n");
+		ConfigReloader<MappedClass> reloader = new ConfigReloader<>(new ConfigFacade(new IniAdapter()), file, MappedClass.class);
+		MappedClass first = reloader.get();
+
+		// Violates the constraint
+		write("[section]\nnumber = 1000\n");
+		assertFalse(reloader.reload());
+		assertSame(first, reloader.get());
+		assertTrue(reloader.getLastFailure() instanceof MappingException);
+
+		// Undeclared option
+		write("[section]\nnumber = 5\nother = 1\n");
+		assertFalse(reloader.reload());
+		assertSame(first, reloader.get());
+		assertEquals(2, reloader.getFailureCount());
+
+		write("[section]\nnumber = 5\n");
+		assertTrue(reloader.reload());
+		assertNull(reloader.getLastFailure());
+		assertEquals(5, reloader.get().number);
+	}
+
+	@Test
+	public void notifyHandleListeners() throws Exception {
+		Path file = write("[section]\nnumber = 1\n");
+		ConfigReloader<MappedClass> reloader = new ConfigReloader<>(new ConfigFacade(new IniAdapter()), file, MappedClass.class);
+		CountDownLatch notified = new CountDownLatch(1);
+		AtomicReference<MappedClass> published = new AtomicReference<>();
+
+		reloader.getHandle().addListener((previous, current) -> {
+			published.set(current);
+			notified.countDown();
+		});
+
+		// A failed reload doesn't publish anything
+		write("[section]\nnumber = 1000\n");
+		assertFalse(reloader.reload());
+
+		write("[section]\nnumber = 2\n");
+		assertTrue(reloader.reload());
+		assertTrue(notified.await(30, TimeUnit.SECONDS));
+		assertEquals(2, published.get().number);
+		assertSame(reloader.get(), published.get());
+	}
+
+	@Test
+	public void reloadOnChange() throws Exception {
+		Path file = write("[section]\nnumber = 1\n");
+
+		try (ConfigReloader<MappedClass> reloader = new ConfigReloader<>(new ConfigFacade(new IniAdapter()), file, MappedClass.class)) {
+			reloader.start();
+
+			ConfigFacade facade = new ConfigFacade(new IniAdapter());
+			MappedClass changed = new MappedClass();
+			changed.number = 42;
+			facade.save(changed, file.toFile());
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			while (reloader.get().number != 42 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+
+			assertEquals(42, reloader.get().number);
+			assertTrue(reloader.getLastReloadTime(TimeUnit.NANOSECONDS) > 0);
+		}
+	}
+}
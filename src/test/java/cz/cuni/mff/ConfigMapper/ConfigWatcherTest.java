@@ -0,0 +1,135 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConfigWatcherTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void await(long seconds, Condition condition) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		while (!condition.test() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private interface Condition {
+		boolean test() throws Exception;
+	}
+
+	@Test
+	public void coalesceBurst() throws Exception {
+		int files = 10;
+		Path[] paths = new Path[files];
+		Map<Path, AtomicInteger> reloads = new ConcurrentHashMap<>();
+		Map<Path, String> contents = new ConcurrentHashMap<>();
+
+		try (ConfigWatcher watcher = new ConfigWatcher(300, TimeUnit.MILLISECONDS, 2)) {
+			for (int i = 0; i < files; i++) {
+				Path path = folder.newFile("tenant" + i + ".ini").toPath();
+				paths[i] = path;
+				reloads.put(path, new AtomicInteger());
+
+				watcher.watch(path, () -> {
+					reloads.get(path).incrementAndGet();
+					try {
+						contents.put(path, new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				});
+			}
+
+			for (int round = 0; round < 20; round++) {
+				for (Path path : paths) {
+					Files.write(path, ("round " + round).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+
+			await(30, () -> contents.size() == files && contents.values().stream().allMatch("round 19"::equals));
+
+			for (Path path : paths) {
+				assertEquals("round 19", contents.get(path));
+			}
+
+			// Each file is reloaded once, or twice if the burst was split, instead of once per event
+			assertTrue(watcher.getEventCount() >= files);
+			assertTrue(watcher.getReloadCount() < watcher.getEventCount());
+			for (AtomicInteger count : reloads.values()) {
+				assertTrue(count.get() <= 2);
+			}
+		}
+	}
+
+	@Test
+	public void rerunAfterChangeDuringReload() throws Exception {
+		Path path = folder.newFile("slow.ini").toPath();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger reloads = new AtomicInteger();
+
+		try (ConfigWatcher watcher = new ConfigWatcher(50, TimeUnit.MILLISECONDS, 1)) {
+			watcher.watch(path, () -> {
+				reloads.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			Files.write(path, "first".getBytes(StandardCharsets.UTF_8));
+			assertTrue(started.await(30, TimeUnit.SECONDS));
+
+			// Changes during the reload cause a single additional reload
+			long events = watcher.getEventCount();
+			for (int i = 0; i < 10; i++) {
+				Files.write(path, ("second " + i).getBytes(StandardCharsets.UTF_8));
+			}
+			await(30, () -> watcher.getEventCount() > events);
+
+			release.countDown();
+			await(30, () -> reloads.get() >= 2);
+			Thread.sleep(500);
+
+			assertEquals(2, reloads.get());
+		}
+	}
+
+	@Test
+	public void watchReloader() throws Exception {
+		Path path = folder.newFile("watched.ini").toPath();
+		Files.write(path, "[section]\nnumber = 1\n".getBytes(StandardCharsets.UTF_8));
+
+		try (ConfigWatcher watcher = new ConfigWatcher(50, TimeUnit.MILLISECONDS, 1)) {
+			ConfigReloader<ConfigReloaderTest.MappedClass> reloader =
+				watcher.watch(new ConfigFacade(new IniAdapter()), path, ConfigReloaderTest.MappedClass.class);
+			assertEquals(1, reloader.get().number);
+
+			Files.write(path, "[section]\nnumber = 2\n".getBytes(StandardCharsets.UTF_8));
+			await(30, () -> reloader.get().number == 2);
+			assertEquals(2, reloader.get().number);
+
+			// Closing the reloader stops the watching
+			reloader.close();
+			Files.write(path, "[section]\nnumber = 3\n".getBytes(StandardCharsets.UTF_8));
+			Thread.sleep(500);
+			assertEquals(2, reloader.get().number);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package cz.cuni.mff.ConfigMapper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FieldAccessorTest {
+	static class Fields {
+		int intField;
+		Integer boxedField;
+		double doubleField;
+		boolean booleanField;
+		String stringField;
+		static String staticField;
+	}
+
+	private static FieldAccessor accessor(String name) throws Exception {
+		return new FieldAccessor(Fields.class.getDeclaredField(name));
+	}
+
+	@Test
+	public void primitiveAccess() throws Exception {
+		Fields object = new Fields();
+
+		accessor("intField").setInt(object, 42);
+		accessor("doubleField").setDouble(object, 1.5);
+		accessor("booleanField").setBoolean(object, true);
+
+		assertEquals(42, object.intField);
+		assertEquals(1.5, object.doubleField, 0);
+		assertTrue(object.booleanField);
+		assertEquals("42", accessor("intField").getString(object));
+		assertEquals("1.5", accessor("doubleField").getString(object));
+	}
+
+	@Test
+	public void boxedAccess() throws Exception {
+		Fields object = new Fields();
+		FieldAccessor accessor = accessor("boxedField");
+
+		assertNull(accessor.getString(object));
+
+		accessor.setInt(object, 7);
+		assertEquals(Integer.valueOf(7), object.boxedField);
+		assertEquals(7, accessor.get(object));
+	}
+
+	@Test
+	public void staticAccess() throws Exception {
+		accessor("staticField").set(new Fields(), "foo");
+		assertEquals("foo", Fields.staticField);
+		assertEquals("foo", accessor("staticField").get(null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wrongTypeThrows() throws Exception {
+		accessor("stringField").set(new Fields(), 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullIntoPrimitiveThrows() throws Exception {
+		accessor("intField").set(new Fields(), null);
+	}
+
+	@Test
+	public void valuesEqual() throws Exception {
+		Fields first = new Fields();
+		Fields second = new Fields();
+
+		first.doubleField = Double.NaN;
+		second.doubleField = Double.NaN;
+		first.stringField = "foo";
+		second.stringField = "bar";
+
+		assertTrue(accessor("doubleField").valuesEqual(first, second));
+		assertTrue(accessor("intField").valuesEqual(first, second));
+		assertFalse(accessor("stringField").valuesEqual(first, second));
+	}
+}
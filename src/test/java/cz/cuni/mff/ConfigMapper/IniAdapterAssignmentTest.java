@@ -134,6 +134,15 @@ public class IniAdapterAssignmentTest {
 		assertEquals(expectedConfig, config);
 	}
 
+	@Test
+	public void readAssignmentExampleCompact() throws Exception {
+		IniAdapter adapter = new IniAdapter();
+		adapter.setCompact(true);
+		ConfigRoot config = adapter.read(new ByteArrayInputStream(fileContent));
+
+		assertEquals(expectedConfig, config);
+	}
+
     @Test
 	public void writeAssignmentExample() throws Exception {
         IniAdapter adapter = new IniAdapter();
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -238,6 +239,32 @@ public class IniAdapterTest {
         assertArrayEquals(listsTestFileContent,outputStream.toByteArray());
     }
 
+    @Test
+    public void writeLarge() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; ++i) {
+            value.append("\u00e9\ud83d\ude00:");
+        }
+
+        ConfigRoot largeConfig = new ConfigRoot("", Arrays.asList(
+                new Section("large", Arrays.asList(
+                        new ScalarOption("value", value.toString()),
+                        new ListOption("list", Arrays.asList(" " + value, "b"), ":")
+                ))
+        ));
+
+        IniAdapter adapter = new IniAdapter();
+        ByteArrayOutputStream streamOutput = new ByteArrayOutputStream();
+        adapter.write(largeConfig, streamOutput);
+
+        String expected = "[large]\nvalue=" + value + "\nlist=\\ " + value.toString().replace(":", "\\:") + ":b\n";
+        assertArrayEquals(expected.getBytes("UTF-8"), streamOutput.toByteArray());
+
+        ByteArrayOutputStream channelOutput = new ByteArrayOutputStream();
+        adapter.write(largeConfig, Channels.newChannel(channelOutput));
+        assertArrayEquals(streamOutput.toByteArray(), channelOutput.toByteArray());
+    }
+
     @Test(expected = ConfigurationException.class)
     public void writeFailWrongStructure() throws Exception {
         IniAdapter adapter = new IniAdapter();
@@ -246,7 +273,217 @@ public class IniAdapterTest {
                 new ScalarOption("option2", "bar")
         ));
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        adapter.write(wrongStructuredConfig,outputStream);
+        try {
+            adapter.write(wrongStructuredConfig,outputStream);
+        } finally {
+            // nothing is written for an invalid configuration
+            assertEquals(0, outputStream.size());
+        }
+    }
+
+    @Test
+    public void readEscapes() throws Exception {
+        byte[] escapeTestFileContent = (String.join("\n",
+                "[Sekce]",
+                "list=x\\:y, z\t;comment",
+                "scalar=a\\:b",
+                "spaces=\\ a b\\ \\ ",
+                "link=a\\${Sekce#scalar}",
+                ""
+        )).getBytes();
+
+        ConfigRoot expected = new ConfigRoot("", Arrays.asList(
+                new Section("Sekce", Arrays.asList(
+                        new ListOption("list", Arrays.asList("x\\:y", "z"), ","),
+                        new ScalarOption("scalar", "a\\:b"),
+                        new ScalarOption("spaces", " a b  "),
+                        new ScalarOption("link", "a\\${Sekce#scalar}")
+                ))
+        ));
+        ((Option) ((Section) expected.getChild("Sekce")).getChild("list")).setDescription("comment");
+
+        IniAdapter adapter = new IniAdapter();
+        ConfigRoot config = adapter.read(new ByteArrayInputStream(escapeTestFileContent));
+        assertEquals(expected, config);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testMissingValueException() throws Exception {
+        byte[] missingValueTestFileContent = (String.join("\n",
+                "[Sekce 1]",
+                "easy1",
+                ""
+        )).getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        adapter.read(new ByteArrayInputStream(missingValueTestFileContent));
+    }
+
+    private static byte[] generateLargeFile(int sections) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < sections; ++i) {
+            String lineEnd = i % 3 == 0 ? "\r\n" : "\n";
+            content.append("[section").append(i).append("]").append(lineEnd)
+                    .append("; section number ").append(i).append(lineEnd)
+                    .append("scalar = value ").append(i).append("\t; comment").append(lineEnd)
+                    .append("flag = ").append(i % 2 == 0 ? "on" : "off").append(lineEnd)
+                    .append("list = a:b:").append(i).append(lineEnd)
+                    .append(lineEnd);
+            if (i > 0) {
+                content.append("linked = ${section").append(i - 1).append("#scalar}").append(lineEnd)
+                        .append("linkedList = x, ${section").append(i / 2).append("#list}").append(lineEnd);
+            }
+        }
+        return content.toString().getBytes();
+    }
+
+    @Test
+    public void readParallel() throws Exception {
+        byte[] input = generateLargeFile(5000);
+
+        IniAdapter adapter = new IniAdapter();
+        ConfigRoot expected = adapter.read(new ByteArrayInputStream(input));
+
+        adapter.setParallel(true);
+        assertEquals(expected, adapter.read(new ByteArrayInputStream(input)));
+
+        adapter.setCompact(true);
+        assertEquals(expected, adapter.read(new ByteArrayInputStream(input)));
+    }
+
+    @Test
+    public void readParallelForwardLink() throws Exception {
+        byte[] input = (new String(generateLargeFile(2000)) + "[last]\nfoo = bar\n")
+                .replace("${section1#scalar}", "${last#foo}")
+                .getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        String expected = null;
+        try {
+            adapter.read(new ByteArrayInputStream(input));
+        } catch (ConfigurationException e) {
+            expected = e.getMessage();
+        }
+        assertNotNull(expected);
+
+        adapter.setParallel(true);
+        try {
+            adapter.read(new ByteArrayInputStream(input));
+            fail("Link to a later section should be rejected");
+        } catch (ConfigurationException e) {
+            assertEquals(expected, e.getMessage());
+        }
+    }
+
+    @Test
+    public void readForwardLinks() throws Exception {
+        byte[] forwardLinkTestFileContent = (String.join("\n",
+                "[first]",
+                "scalar = ${second#scalar}",
+                "list = x, ${second#list}",
+                "flag = ${first#other}",
+                "other = on",
+                "[second]",
+                "scalar = ${third#value}",
+                "list = a, b",
+                "[third]",
+                "value = foo",
+                ""
+        )).getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        adapter.setForwardLinks(true);
+        ConfigRoot config = adapter.read(new ByteArrayInputStream(forwardLinkTestFileContent));
+
+        Section first = (Section) config.getChild("first");
+        assertEquals(Arrays.asList("scalar", "list", "flag", "other"),
+                Arrays.asList(first.getChildren().stream().map(ConfigNode::getName).toArray()));
+        assertEquals("foo", ((ScalarOption) first.getChild("scalar")).getValue());
+        assertEquals(Arrays.asList("x", "a", "b"), ((ListOption) first.getChild("list")).getValue());
+        assertEquals(ParsedBoolean.TRUE, ((ScalarOption) first.getChild("flag")).getBooleanValue());
+        assertEquals("foo", ((ScalarOption) ((Section) config.getChild("second")).getChild("scalar")).getValue());
+
+        adapter.setForwardLinks(false);
+        try {
+            adapter.read(new ByteArrayInputStream(forwardLinkTestFileContent));
+            fail("Forward links should be rejected by default");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void readForwardLinkCycle() throws Exception {
+        byte[] cycleTestFileContent = (String.join("\n",
+                "[first]",
+                "start = ${first#a}",
+                "a = ${second#b}",
+                "[second]",
+                "b = x, ${first#a}",
+                ""
+        )).getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        adapter.setForwardLinks(true);
+        try {
+            adapter.read(new ByteArrayInputStream(cycleTestFileContent));
+            fail("Cyclic links should be rejected");
+        } catch (ConfigurationException e) {
+            assertEquals("Links forming a cycle: first#a -> second#b -> first#a", e.getMessage());
+        }
+    }
+
+    @Test
+    public void readSplicedLists() throws Exception {
+        byte[] spliceTestFileContent = (String.join("\n",
+                "[hosts]",
+                "all = a, b, c",
+                "[first]",
+                "start = ${hosts#all}, x",
+                "middle = x, y, ${hosts#all}, z",
+                "nested = ${first#middle}, ${hosts#all}",
+                "joined = x: ${hosts#all}",
+                "copy = ${hosts#all}",
+                ""
+        )).getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        ConfigRoot config = adapter.read(new ByteArrayInputStream(spliceTestFileContent));
+        Section first = (Section) config.getChild("first");
+
+        assertEquals(Arrays.asList("a", "b", "c", "x"), ((ListOption) first.getChild("start")).getValue());
+        assertEquals(Arrays.asList("x", "y", "a", "b", "c", "z"), ((ListOption) first.getChild("middle")).getValue());
+        assertEquals(Arrays.asList("x", "y", "a", "b", "c", "z", "a", "b", "c"),
+                ((ListOption) first.getChild("nested")).getValue());
+        assertEquals(Arrays.asList("x", "a,b,c"), ((ListOption) first.getChild("joined")).getValue());
+        assertSame(((ListOption) ((Section) config.getChild("hosts")).getChild("all")).getValueView(),
+                ((ListOption) first.getChild("copy")).getValueView());
+    }
+
+    @Test
+    public void modifySharedLists() throws Exception {
+        byte[] shareTestFileContent = (String.join("\n",
+                "[hosts]",
+                "all = a, b, c",
+                "[first]",
+                "copy = ${hosts#all}",
+                "middle = x, ${hosts#all}, z",
+                ""
+        )).getBytes();
+
+        IniAdapter adapter = new IniAdapter();
+        ConfigRoot config = adapter.read(new ByteArrayInputStream(shareTestFileContent));
+        Section first = (Section) config.getChild("first");
+        ListOption all = (ListOption) ((Section) config.getChild("hosts")).getChild("all");
+
+        // The values of parsed lists can be modified without affecting the options that share them
+        ((ListOption) first.getChild("copy")).getValue().add("d");
+        ((ListOption) first.getChild("middle")).getValue().set(1, "w");
+        all.getValue().remove("c");
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ((ListOption) first.getChild("copy")).getValue());
+        assertEquals(Arrays.asList("x", "w", "b", "c", "z"), ((ListOption) first.getChild("middle")).getValue());
+        assertEquals(Arrays.asList("a", "b"), all.getValue());
     }
 
     @Test(expected = ConfigurationException.class)
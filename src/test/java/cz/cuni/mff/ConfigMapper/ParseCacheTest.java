@@ -0,0 +1,276 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.ConfigAdapter;
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Nodes.CompactConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ListOption;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Section;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParseCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path write(String name, String content, long modifiedMillis) throws Exception {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedMillis));
+		return file;
+	}
+
+	private long anHourAgo() {
+		return System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+	}
+
+	@Test
+	public void unchangedFileIsParsedOnce() throws Exception {
+		Path file = write("cached.ini", "[section]\nnumber = 1\n", anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+
+		ConfigRoot first = cache.read(new IniAdapter(), file);
+		ConfigRoot second = cache.read(new IniAdapter(), file);
+		ConfigRoot third = cache.read(new IniAdapter(), folder.getRoot().toPath().resolve("./cached.ini"));
+
+		assertTrue(first instanceof CompactConfigRoot);
+		assertSame(first, second);
+		assertSame(first, third);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.size());
+		assertEquals(((CompactConfigRoot) first).estimateSize(), cache.getWeight());
+	}
+
+	@Test
+	public void cachedTreeCannotBeModified() throws Exception {
+		Path file = write("cached.ini", "[section]\nflag = on\nlist = a,b\n", anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+
+		Section section = (Section) cache.read(new IniAdapter(), file).getChild("section");
+		ScalarOption flag = (ScalarOption) section.getChild("flag");
+		ListOption list = (ListOption) section.getChild("list");
+
+		try {
+			flag.setBooleanValue(ParsedBoolean.FALSE);
+			fail();
+		} catch (UnsupportedOperationException exception) {
+			// the tree is shared
+		}
+
+		try {
+			flag.setDescription("changed");
+			fail();
+		} catch (UnsupportedOperationException exception) {
+			// the tree is shared
+		}
+
+		try {
+			list.getValue().add("c");
+			fail();
+		} catch (UnsupportedOperationException exception) {
+			// the tree is shared
+		}
+
+		Section hit = (Section) cache.read(new IniAdapter(), file).getChild("section");
+		assertEquals(ParsedBoolean.TRUE, ((ScalarOption) hit.getChild("flag")).getBooleanValue());
+		assertEquals("", hit.getChild("flag").getDescription());
+		assertEquals(Arrays.asList("a", "b"), ((ListOption) hit.getChild("list")).getValue());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void changedFileIsParsedAgain() throws Exception {
+		long modified = anHourAgo();
+		Path file = write("cached.ini", "[section]\nnumber = 1\n", modified);
+		ParseCache cache = new ParseCache(1024 * 1024);
+		ConfigRoot first = cache.read(new IniAdapter(), file);
+
+		write("cached.ini", "[section]\nnumber = 22\n", modified);
+		ConfigRoot second = cache.read(new IniAdapter(), file);
+
+		assertNotSame(first, second);
+		assertEquals(new ScalarOption("number", "22"), ((Section) second.getChild("section")).getChild("number"));
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void recentlyModifiedFileIsCheckedByContent() throws Exception {
+		long modified = System.currentTimeMillis();
+		Path file = write("cached.ini", "[section]\nnumber = 1\n", modified);
+		ParseCache cache = new ParseCache(1024 * 1024);
+		ConfigRoot first = cache.read(new IniAdapter(), file);
+
+		// The content is the same, so the tree is reused
+		assertSame(first, cache.read(new IniAdapter(), file));
+
+		// Same size and modification time, but different content
+		write("cached.ini", "[section]\nnumber = 2\n", modified);
+		ConfigRoot second = cache.read(new IniAdapter(), file);
+
+		assertNotSame(first, second);
+		assertEquals(new ScalarOption("number", "2"), ((Section) second.getChild("section")).getChild("number"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void adaptersWithDifferentSettingsDontShare() throws Exception {
+		Path file = write("cached.ini", "[section]\nnumber = 1\n", anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+
+		IniAdapter forwardLinks = new IniAdapter();
+		forwardLinks.setForwardLinks(true);
+
+		IniAdapter compact = new IniAdapter();
+		compact.setCompact(true);
+
+		ConfigRoot first = cache.read(new IniAdapter(), file);
+		assertNotSame(first, cache.read(forwardLinks, file));
+		assertSame(first, cache.read(compact, file));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		Path first = write("first.ini", "[section]\nnumber = 1\n", anHourAgo());
+		Path second = write("second.ini", "[section]\nnumber = 2\n", anHourAgo());
+		Path third = write("third.ini", "[section]\nnumber = 3\n", anHourAgo());
+		long weight = CompactConfigRoot.copyOf(new IniAdapter().read(Files.newInputStream(first))).estimateSize();
+		ParseCache cache = new ParseCache(2 * weight);
+
+		cache.read(new IniAdapter(), first);
+		cache.read(new IniAdapter(), second);
+		cache.read(new IniAdapter(), first);
+		cache.read(new IniAdapter(), third);
+
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.size());
+		assertEquals(2 * weight, cache.getWeight());
+
+		// The second file was used least recently
+		cache.read(new IniAdapter(), first);
+		assertEquals(2, cache.getHitCount());
+		cache.read(new IniAdapter(), second);
+		assertEquals(4, cache.getMissCount());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void weightIsTreeSize() throws Exception {
+		StringBuilder content = new StringBuilder("[section]\n");
+
+		for (int i = 0; i < 100; i++) {
+			content.append("option").append(i).append(" = ").append(i).append('\n');
+		}
+
+		Path file = write("large.ini", content.toString(), anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+		CompactConfigRoot config = (CompactConfigRoot) cache.read(new IniAdapter(), file);
+
+		assertEquals(101, config.getEntryCount());
+		assertTrue(cache.getWeight() > Files.size(file));
+
+		// A tree larger than the limit is not cached
+		ParseCache small = new ParseCache(Files.size(file));
+		small.read(new IniAdapter(), file);
+		assertEquals(0, small.size());
+	}
+
+	@Test
+	public void concurrentReadsParseOnce() throws Exception {
+		Path file = write("shared.ini", "[section]\nnumber = 1\n", anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+		AtomicInteger parses = new AtomicInteger();
+
+		ConfigAdapter adapter = new ConfigAdapter() {
+			@Override
+			public ConfigRoot read(InputStream input) throws ConfigurationException {
+				parses.incrementAndGet();
+
+				try {
+					// Keep the other threads waiting for the tree
+					Thread.sleep(100);
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+
+				return new IniAdapter().read(input);
+			}
+
+			@Override
+			public void write(ConfigRoot config, OutputStream output) {
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			List<Future<ConfigRoot>> results = new ArrayList<>();
+
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.read(adapter, file)));
+			}
+
+			ConfigRoot first = results.get(0).get();
+
+			for (Future<ConfigRoot> result : results) {
+				assertSame(first, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(1, parses.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(7, cache.getHitCount());
+	}
+
+	@Test
+	public void facadeUsesCache() throws Exception {
+		Path file = write("cached.ini", "[section]\nnumber = 1\n", anHourAgo());
+		ParseCache cache = new ParseCache(1024 * 1024);
+		ConfigFacade facade = new ConfigFacade(new IniAdapter());
+		facade.setParseCache(cache);
+		facade.setKeepLoadedConfigs(true);
+
+		ConfigReloaderTest.MappedClass first = facade.load(file, ConfigReloaderTest.MappedClass.class);
+		ConfigReloaderTest.MappedClass second = facade.load(file.toFile(), ConfigReloaderTest.MappedClass.class);
+
+		assertNotSame(first, second);
+		assertEquals(1, second.number);
+		assertEquals(1, cache.getHitCount());
+
+		// Saving changes doesn't modify the cached tree
+		first.number = 5;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		facade.saveChanges(first, output);
+		assertEquals("[section]\nnumber=5\n", output.toString());
+		assertEquals(1, facade.load(file, ConfigReloaderTest.MappedClass.class).number);
+		assertEquals(2, cache.getHitCount());
+	}
+}
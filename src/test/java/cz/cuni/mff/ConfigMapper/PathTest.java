@@ -0,0 +1,64 @@
+package cz.cuni.mff.ConfigMapper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PathTest {
+	@Test
+	public void interned() {
+		Path path = Path.ROOT.intern("section").intern("option");
+
+		assertSame(path, Path.of("section", "option"));
+		assertSame(path, Path.ROOT.add("section").add("option"));
+		assertSame(path.prefix(), Path.of("section"));
+		assertSame(Path.ROOT, Path.of("section").prefix());
+		assertSame(Path.ROOT, Path.ROOT.prefix());
+	}
+
+	@Test
+	public void notInternedWhenAdded() {
+		Path first = Path.of("undeclared", "option");
+		Path second = Path.ROOT.add("undeclared").add("option");
+
+		assertNotSame(first, second);
+		assertNotSame(first.prefix(), second.prefix());
+		assertEquals(first, second);
+		assertEquals(first, Path.ROOT.intern("undeclared").add("option"));
+	}
+
+	@Test
+	public void components() {
+		Path path = Path.of("a", "b", "c");
+
+		assertEquals(3, path.size());
+		assertEquals("a", path.get(0));
+		assertEquals("b", path.get(1));
+		assertEquals("c", path.lastComponent());
+		assertEquals("a#b#c", path.toString());
+		assertEquals("", Path.ROOT.toString());
+		assertEquals(Arrays.asList("a", "b", "c").hashCode(), path.hashCode());
+	}
+
+	@Test
+	public void equalBeyondInterningLimit() {
+		Path parent = Path.ROOT.intern("limit");
+
+		for (int i = 0; i < Path.MAX_INTERNED_CHILDREN; i++) {
+			parent.intern("option" + i);
+		}
+
+		Path first = parent.intern("overflow").intern("nested");
+		Path second = parent.intern("overflow").intern("nested");
+
+		assertNotSame(first, second);
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertEquals(first.prefix(), second.prefix());
+		assertSame(parent, first.prefix().prefix());
+		assertEquals(parent.add("option0"), Path.of("limit", "option0"));
+		assertNotEquals(first, parent.add("overflow").add("other"));
+	}
+}
@@ -0,0 +1,136 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Adapters.IniAdapter;
+import cz.cuni.mff.ConfigMapper.Annotations.ConfigOption;
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigRoot;
+import cz.cuni.mff.ConfigMapper.Nodes.ListOption;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Section;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SaveHintsTest {
+	static class MappedClass {
+		@ConfigOption(section = "section", optional = true)
+		int number = 10;
+
+		@ConfigOption(section = "section", optional = true, description = "A text")
+		String text = "default";
+
+		@ConfigOption(section = "section", optional = true)
+		List<String> list = new ArrayList<>();
+
+		@ConfigOption(section = "other", optional = true)
+		boolean flag = false;
+	}
+
+	private final ConfigRoot config;
+
+	public SaveHintsTest() throws Exception {
+		config = new IniAdapter().read(new StringInputStream(
+			"[section]",
+			"number = 10 ; Explicit default",
+			"text = hello",
+			"list = a,b",
+			"[other]",
+			"flag = off"
+		));
+	}
+
+	@Test
+	public void recordOptions() {
+		SaveHints hints = new ConfigMapper().saveHints(MappedClass.class, config);
+
+		assertTrue(hints.isFor(MappingLayout.of(MappedClass.class)));
+		assertTrue(hints.isPresent(0));
+		assertEquals(" Explicit default", hints.getDescription(0));
+		assertEquals("", hints.getDescription(1));
+		assertTrue(hints.isOriginal(1, new ScalarOption("text", "hello")));
+		assertFalse(hints.isOriginal(1, new ScalarOption("text", "world")));
+		assertTrue(hints.isOriginal(2, new ListOption("list", Arrays.asList("a", "b"))));
+		assertFalse(hints.isOriginal(2, new ListOption("list", Arrays.asList("a"))));
+	}
+
+	@Test
+	public void valuesAreComparedExactly() throws Exception {
+		// "Aa" and "BB" have the same String hash code
+		ConfigRoot colliding = new IniAdapter().read(new StringInputStream(
+			"[section]",
+			"text = Aa",
+			"list = Aa,b"
+		));
+		SaveHints hints = new ConfigMapper().saveHints(MappedClass.class, colliding);
+
+		assertTrue(hints.isOriginal(1, new ScalarOption("text", "Aa")));
+		assertFalse(hints.isOriginal(1, new ScalarOption("text", "BB")));
+		assertFalse(hints.isOriginal(1, new ListOption("text", Arrays.asList("Aa"))));
+		assertTrue(hints.isOriginal(2, new ListOption("list", Arrays.asList("Aa", "b"))));
+		assertFalse(hints.isOriginal(2, new ListOption("list", Arrays.asList("BB", "b"))));
+		assertFalse(hints.isOriginal(2, new ListOption("list", Arrays.asList("Aab"))));
+
+		// Long values are hashed
+		String longValue = String.join("", Collections.nCopies(100, "Aa"));
+		hints = new ConfigMapper().saveHints(MappedClass.class, new IniAdapter().read(new StringInputStream(
+			"[section]",
+			"text = " + longValue
+		)));
+
+		assertTrue(hints.isOriginal(1, new ScalarOption("text", longValue)));
+		assertFalse(hints.isOriginal(1, new ScalarOption("text", longValue.replaceFirst("Aa", "BB"))));
+	}
+
+	@Test
+	public void descriptionsAreShared() throws Exception {
+		SaveHints first = new ConfigMapper().saveHints(MappedClass.class, config);
+		SaveHints second = new ConfigMapper().saveHints(MappedClass.class, new IniAdapter().read(new StringInputStream(
+			"[section]",
+			"number = 10 ; Explicit default"
+		)));
+
+		assertEquals(" Explicit default", second.getDescription(0));
+		assertSame(first.getDescription(0), second.getDescription(0));
+	}
+
+	@Test
+	public void saveLikeWithConfig() throws Exception {
+		for (boolean compiled : new boolean[] {false, true}) {
+			ConfigMapper mapper = new ConfigMapper();
+			mapper.setCompiledMappers(compiled);
+			MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+			SaveHints hints = mapper.saveHints(MappedClass.class, config);
+
+			assertEquals(mapper.save(object, config, false), mapper.saveWithHints(object, hints, false));
+
+			// Explicit defaults are kept, unless their value changes to a default
+			object.text = "default";
+			object.flag = true;
+			ConfigRoot saved = mapper.saveWithHints(object, hints, false);
+			assertEquals(mapper.save(object, config, false), saved);
+
+			Section section = (Section) saved.getChild("section");
+			assertEquals(new ScalarOption("number", "10"), withoutDescription(section, "number"));
+			assertEquals(" Explicit default", section.getChild("number").getDescription());
+			assertNull(section.getChild("text"));
+		}
+	}
+
+	@Test
+	public void hintsOfOtherClassAreIgnored() throws Exception {
+		ConfigMapper mapper = new ConfigMapper();
+		MappedClass object = mapper.load(config, MappedClass.class, LoadingMode.STRICT);
+		SaveHints hints = mapper.saveHints(ConfigReloaderTest.MappedClass.class, new ConfigRoot("", new ArrayList<>()));
+
+		assertEquals(mapper.save(object, null, false), mapper.saveWithHints(object, hints, false));
+	}
+
+	private static ScalarOption withoutDescription(Section section, String name) {
+		ScalarOption option = (ScalarOption) section.getChild(name);
+		return new ScalarOption(option.getName(), option.getValue());
+	}
+}
@@ -0,0 +1,64 @@
+package cz.cuni.mff.ConfigMapper;
+
+import cz.cuni.mff.ConfigMapper.Nodes.ConfigNode;
+import cz.cuni.mff.ConfigMapper.Nodes.ScalarOption;
+import cz.cuni.mff.ConfigMapper.Nodes.Section;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SectionTest {
+	@Test
+	public void getChild() throws Exception {
+		ScalarOption first = new ScalarOption("foo", "1");
+		Section section = new Section("section", new ArrayList<>(Arrays.asList(first, new ScalarOption("foo", "2"))));
+
+		assertSame(first, section.getChild("foo"));
+		assertNull(section.getChild("bar"));
+
+		ScalarOption added = new ScalarOption("bar", "3");
+		section.addChild(added);
+		assertSame(added, section.getChild("bar"));
+		assertEquals(3, section.getChildren().size());
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void addDuplicateChild() throws Exception {
+		Section section = new Section("section", new ArrayList<>());
+		section.addChild(new ScalarOption("foo", "1"));
+		section.addChild(new ScalarOption("foo", "2"));
+	}
+
+	@Test
+	public void followsDirectModifications() {
+		Section section = new Section("section", new ArrayList<>());
+		assertNull(section.getChild("foo"));
+
+		ScalarOption appended = new ScalarOption("foo", "1");
+		section.getChildren().add(appended);
+		assertSame(appended, section.getChild("foo"));
+
+		ScalarOption replacement = new ScalarOption("bar", "2");
+		section.getChildren().add(0, replacement);
+		assertSame(replacement, section.getChild("bar"));
+		assertSame(appended, section.getChild("foo"));
+
+		section.getChildren().clear();
+		assertNull(section.getChild("foo"));
+	}
+
+	@Test
+	public void manyChildren() throws Exception {
+		Section section = new Section("section", new ArrayList<>());
+
+		for (int i = 0; i < 50000; i++) {
+			section.addChild(new ScalarOption("option" + i, Integer.toString(i)));
+		}
+
+		ConfigNode node = section.getChild("option49999");
+		assertEquals("49999", ((ScalarOption) node).getValue());
+	}
+}
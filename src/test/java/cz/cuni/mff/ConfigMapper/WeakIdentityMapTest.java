@@ -0,0 +1,60 @@
+package cz.cuni.mff.ConfigMapper;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WeakIdentityMapTest {
+	@Test
+	public void identityKeys() {
+		WeakIdentityMap<Object, String> map = new WeakIdentityMap<>();
+		List<String> first = new ArrayList<>();
+		List<String> second = new ArrayList<>();
+
+		map.put(first, "first");
+		map.put(second, "second");
+
+		// The keys are equal, but they are different objects
+		assertEquals("first", map.get(first));
+		assertEquals("second", map.get(second));
+		assertNull(map.get(new ArrayList<>()));
+		assertEquals(2, map.size());
+
+		map.put(first, "replaced");
+		assertEquals("replaced", map.get(first));
+		assertEquals(2, map.size());
+
+		map.remove(first);
+		assertNull(map.get(first));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertNull(map.get(second));
+		assertNull(map.get(null));
+	}
+
+	@Test
+	public void collectedKeysAreRemoved() throws Exception {
+		WeakIdentityMap<Object, String> map = new WeakIdentityMap<>();
+		Object kept = new Object();
+		map.put(kept, "kept");
+
+		Object collected = new Object();
+		WeakReference<Object> reference = new WeakReference<>(collected);
+		map.put(collected, "collected");
+		collected = null;
+
+		for (int i = 0; i < 100 && (reference.get() != null || map.size() > 1); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		assertNull(reference.get());
+		assertEquals(1, map.size());
+		assertEquals("kept", map.get(kept));
+	}
+}